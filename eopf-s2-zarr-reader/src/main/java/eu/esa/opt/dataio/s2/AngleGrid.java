@@ -0,0 +1,112 @@
+package eu.esa.opt.dataio.s2;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * A grid of angles, such as the 23 x 23 sun or viewing angles at 5 km spacing, located in the pixel coordinates of
+ * an image grid. The angles are loaded on first use and interpolated bilinearly between the grid points, like
+ * SNAP tie-point grids. Grid points without an angle (NaN) are left out of the interpolation, and azimuths are
+ * interpolated as unit vectors, so that they do not jump at 0 and 360 degrees.
+ */
+final class AngleGrid {
+
+    private final int width;
+    private final int height;
+    private final double x0;
+    private final double y0;
+    private final double stepX;
+    private final double stepY;
+    private final boolean azimuth;
+    private final Callable<double[]> loader;
+    private volatile double[] values;
+
+    /**
+     * Constructor.
+     *
+     * @param width   The number of grid points along x.
+     * @param height  The number of grid points along y.
+     * @param x0      The pixel x coordinate of the first grid point, with pixel centres at 0.5.
+     * @param y0      The pixel y coordinate of the first grid point.
+     * @param stepX   The distance of the grid points along x in pixels.
+     * @param stepY   The distance of the grid points along y in pixels.
+     * @param azimuth Whether the angles are azimuths.
+     * @param loader  Loads the angles in C order, i.e. row by row.
+     */
+    AngleGrid(int width, int height, double x0, double y0, double stepX, double stepY, boolean azimuth,
+              Callable<double[]> loader) {
+        this.width = width;
+        this.height = height;
+        this.x0 = x0;
+        this.y0 = y0;
+        this.stepX = stepX;
+        this.stepY = stepY;
+        this.azimuth = azimuth;
+        this.loader = loader;
+    }
+
+    double[] getValues() throws IOException {
+        double[] values = this.values;
+        if (values == null) {
+            synchronized (this) {
+                values = this.values;
+                if (values == null) {
+                    try {
+                        values = loader.call();
+                    } catch (IOException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new IOException(e.getMessage(), e);
+                    }
+                    this.values = values;
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Interpolates the angle at a position. Positions beyond the grid take the values of its edges.
+     *
+     * @param x The pixel x coordinate, with pixel centres at 0.5.
+     * @param y The pixel y coordinate.
+     *
+     * @return The angle in degrees, or NaN if none of the surrounding grid points has an angle.
+     */
+    double interpolate(double x, double y) throws IOException {
+        final double[] values = getValues();
+        final double gridX = Math.min(Math.max((x - x0) / stepX, 0), width - 1);
+        final double gridY = Math.min(Math.max((y - y0) / stepY, 0), height - 1);
+        final int i0 = Math.min((int) gridX, width - 2);
+        final int j0 = Math.min((int) gridY, height - 2);
+        final double wx = gridX - i0;
+        final double wy = gridY - j0;
+        double sum = 0;
+        double sumSin = 0;
+        double sumCos = 0;
+        double sumWeights = 0;
+        for (int j = 0; j < 2; j++) {
+            for (int i = 0; i < 2; i++) {
+                final double value = values[(j0 + j) * width + i0 + i];
+                final double weight = (i == 0 ? 1 - wx : wx) * (j == 0 ? 1 - wy : wy);
+                if (Double.isNaN(value) || weight == 0) {
+                    continue;
+                }
+                if (azimuth) {
+                    sumSin += weight * Math.sin(Math.toRadians(value));
+                    sumCos += weight * Math.cos(Math.toRadians(value));
+                } else {
+                    sum += weight * value;
+                }
+                sumWeights += weight;
+            }
+        }
+        if (sumWeights == 0) {
+            return Double.NaN;
+        }
+        if (azimuth) {
+            return (Math.toDegrees(Math.atan2(sumSin, sumCos)) + 360) % 360;
+        }
+        return sum / sumWeights;
+    }
+}
@@ -0,0 +1,73 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.storage.Store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link Store} reading the entries of several keys at once, e.g. by merging the reads of adjacent byte ranges
+ * into single I/O operations.
+ */
+interface BatchReadStore extends Store {
+
+    /**
+     * Reads the entries of several keys.
+     *
+     * @param keys The keys to read.
+     *
+     * @return The bytes of the entries by key. Keys without an entry are not contained.
+     */
+    Map<String, ByteBuffer> getByteBuffers(Collection<String> keys) throws IOException;
+
+    /**
+     * Reads the entry of a key, as a batch of one key unless the store reads single entries more directly.
+     *
+     * @param key The key to read.
+     *
+     * @return The bytes of the entry, or {@code null} if there is no such entry.
+     */
+    default ByteBuffer getByteBuffer(String key) throws IOException {
+        return getByteBuffers(List.of(key)).get(key);
+    }
+
+    /**
+     * Reads the entries of several keys from any store, in a batch if the store supports it and one by one otherwise.
+     *
+     * @return The bytes of the entries by key. Keys without an entry are not contained.
+     */
+    static Map<String, ByteBuffer> getByteBuffers(Store store, Collection<String> keys) throws IOException {
+        if (store instanceof BatchReadStore) {
+            return ((BatchReadStore) store).getByteBuffers(keys);
+        }
+        final Map<String, ByteBuffer> buffers = new HashMap<>();
+        for (String key : keys) {
+            try (InputStream inputStream = store.getInputStream(key)) {
+                if (inputStream != null) {
+                    buffers.put(key, ByteBuffer.wrap(inputStream.readAllBytes()));
+                }
+            }
+        }
+        return buffers;
+    }
+
+    /**
+     * Reads the entry of a key from any store. Buffers held by a batch reading store, e.g. direct buffers of
+     * prefetched or memory-mapped entries, are returned as they are rather than copied into a stream.
+     *
+     * @return The bytes of the entry, or {@code null} if there is no such entry.
+     */
+    static ByteBuffer getByteBuffer(Store store, String key) throws IOException {
+        if (store instanceof BatchReadStore) {
+            return ((BatchReadStore) store).getByteBuffer(key);
+        }
+        try (InputStream inputStream = store.getInputStream(key)) {
+            return inputStream != null ? ByteBuffer.wrap(inputStream.readAllBytes()) : null;
+        }
+    }
+}
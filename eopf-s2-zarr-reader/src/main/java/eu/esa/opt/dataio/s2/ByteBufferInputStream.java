@@ -0,0 +1,46 @@
+package eu.esa.opt.dataio.s2;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@code InputStream} reading the remaining bytes of a {@code ByteBuffer}, e.g. of a memory-mapped region.
+ */
+class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        final int numRead = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, numRead);
+        return numRead;
+    }
+
+    @Override
+    public long skip(long n) {
+        final int numSkipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + numSkipped);
+        return numSkipped;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+}
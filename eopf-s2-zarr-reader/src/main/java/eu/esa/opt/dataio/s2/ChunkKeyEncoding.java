@@ -0,0 +1,47 @@
+package eu.esa.opt.dataio.s2;
+
+/**
+ * The encoding of chunk indices in the keys of the chunks of an array.
+ */
+final class ChunkKeyEncoding {
+
+    private final String prefix;
+    private final String separator;
+    private final String scalarKey;
+
+    private ChunkKeyEncoding(String prefix, String separator, String scalarKey) {
+        this.prefix = prefix;
+        this.separator = separator;
+        this.scalarKey = scalarKey;
+    }
+
+    /**
+     * The encoding of Zarr version 2, e.g. {@code array/0.1}, also available in version 3 by the name {@code v2}.
+     */
+    static ChunkKeyEncoding v2(String arrayKey, String separator) {
+        final String arrayPrefix = arrayKey.isEmpty() ? "" : arrayKey + "/";
+        return new ChunkKeyEncoding(arrayPrefix, separator, arrayPrefix + "0");
+    }
+
+    /**
+     * The {@code default} encoding of Zarr version 3, e.g. {@code array/c/0/1}.
+     */
+    static ChunkKeyEncoding v3Default(String arrayKey, String separator) {
+        final String arrayPrefix = arrayKey.isEmpty() ? "" : arrayKey + "/";
+        return new ChunkKeyEncoding(arrayPrefix + "c" + separator, separator, arrayPrefix + "c");
+    }
+
+    String getKey(int[] chunkIndices) {
+        if (chunkIndices.length == 0) {
+            return scalarKey;
+        }
+        final StringBuilder key = new StringBuilder(prefix);
+        for (int i = 0; i < chunkIndices.length; i++) {
+            if (i > 0) {
+                key.append(separator);
+            }
+            key.append(chunkIndices[i]);
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package eu.esa.opt.dataio.s2;
+
+import org.esa.snap.runtime.Config;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.prefs.Preferences;
+
+import static eu.esa.opt.dataio.s2.S2ZarrConstants.*;
+
+/**
+ * The two stages of asynchronous chunk reads. Chunks are fetched on virtual threads, so that many fetches from
+ * high-latency stores can be in flight without occupying platform threads, and are decoded on a pool bounded
+ * by the number of processors, so that decoding does not oversubscribe the CPU.
+ */
+final class ChunkPipeline {
+
+    @FunctionalInterface
+    interface IOSupplier<T> {
+        T get() throws IOException;
+    }
+
+    @FunctionalInterface
+    interface IOFunction<T, R> {
+        R apply(T t) throws IOException;
+    }
+
+    private static final ExecutorService FETCH_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+    private static final Semaphore FETCH_PERMITS;
+    private static final ExecutorService DECODE_EXECUTOR;
+
+    static {
+        final Preferences preferences = Config.instance().preferences();
+        FETCH_PERMITS = new Semaphore(Math.max(1,
+                preferences.getInt(PROPERTY_KEY_READ_MAX_CONCURRENT_FETCHES, DEFAULT_READ_MAX_CONCURRENT_FETCHES)));
+        final int decodeThreads = Math.max(1,
+                preferences.getInt(PROPERTY_KEY_DECODE_THREADS, Runtime.getRuntime().availableProcessors()));
+        DECODE_EXECUTOR = Executors.newFixedThreadPool(decodeThreads,
+                Thread.ofPlatform().name("s2zarr-decode-", 0).daemon().factory());
+    }
+
+    private ChunkPipeline() {
+    }
+
+    /**
+     * Runs an I/O operation on a virtual thread, limited to the configured number of concurrent fetches.
+     */
+    static <T> CompletableFuture<T> fetch(IOSupplier<T> fetch) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                FETCH_PERMITS.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for a fetch permit");
+            }
+            try {
+                return fetch.get();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                FETCH_PERMITS.release();
+            }
+        }, FETCH_EXECUTOR);
+    }
+
+    /**
+     * Decodes the result of a fetch on the decode pool.
+     */
+    static <T, R> CompletableFuture<R> decode(CompletableFuture<T> fetched, IOFunction<T, R> decode) {
+        return fetched.thenApplyAsync(value -> {
+            try {
+                return decode.apply(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, DECODE_EXECUTOR);
+    }
+
+    /**
+     * Waits for a read, rethrowing an {@code IOException} of one of its stages.
+     */
+    static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
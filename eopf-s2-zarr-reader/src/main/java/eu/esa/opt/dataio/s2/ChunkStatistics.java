@@ -0,0 +1,237 @@
+package eu.esa.opt.dataio.s2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.esa.snap.core.util.SystemUtils.LOG;
+
+/**
+ * Summaries of the chunks of a two-dimensional array: the minimum, maximum and number of valid samples of each
+ * chunk, where samples equal to the fill value and NaN are not valid. Chunks are indexed in C order of the chunk
+ * grid. Summaries are collected as the chunks are decoded, or by an explicit pass over all chunks, so that
+ * range queries and thresholding jobs can skip chunks without decoding them again.
+ * <p>
+ * Statistics can be persisted in a cache directory. Like the chunk cache, they are identified by the product,
+ * which must have an identifier that changes whenever its content changes, and by the key of the array.
+ *
+ * @see S2ZarrProductReader#getChunkStatistics(org.esa.snap.core.datamodel.Band)
+ */
+public final class ChunkStatistics {
+
+    /**
+     * The summary of a chunk.
+     *
+     * @param min        The minimum of the valid samples, or NaN if there are none.
+     * @param max        The maximum of the valid samples, or NaN if there are none.
+     * @param validCount The number of valid samples.
+     */
+    public record Summary(double min, double max, long validCount) {
+
+        static final Summary FILL_ONLY = new Summary(Double.NaN, Double.NaN, 0);
+
+        /**
+         * @return Whether the chunk consists of the fill value only, or is not stored at all.
+         */
+        public boolean isFillOnly() {
+            return validCount == 0;
+        }
+
+        /**
+         * @return Whether the chunk may have valid samples within the given range.
+         */
+        public boolean intersects(double lower, double upper) {
+            return validCount > 0 && max >= lower && min <= upper;
+        }
+
+        Summary merge(Summary other) {
+            if (other.isFillOnly()) {
+                return this;
+            }
+            if (isFillOnly()) {
+                return other;
+            }
+            return new Summary(Math.min(min, other.min), Math.max(max, other.max), validCount + other.validCount);
+        }
+    }
+
+    private static final int CACHE_FILE_MAGIC = 0x53545453;
+    private static final int CACHE_FILE_VERSION = 1;
+    private static final String CACHE_FILE_EXTENSION = ".stats";
+
+    private final AtomicReferenceArray<Summary> summaries;
+    private final Set<Integer> transientChunks = ConcurrentHashMap.newKeySet();
+    private volatile boolean modified;
+
+    ChunkStatistics(int numChunks) {
+        summaries = new AtomicReferenceArray<>(numChunks);
+    }
+
+    /**
+     * @return The number of chunks of the array.
+     */
+    public int getNumChunks() {
+        return summaries.length();
+    }
+
+    /**
+     * @return The summary of a chunk, or {@code null} if the chunk has not been summarized yet.
+     */
+    public Summary get(int chunkIndex) {
+        return summaries.get(chunkIndex);
+    }
+
+    /**
+     * @return Whether all chunks are summarized.
+     */
+    public boolean isComplete() {
+        for (int i = 0; i < summaries.length(); i++) {
+            if (summaries.get(i) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The summary of the whole array, or {@code null} if not all chunks are summarized.
+     */
+    public Summary getTotal() {
+        Summary total = Summary.FILL_ONLY;
+        for (int i = 0; i < summaries.length(); i++) {
+            final Summary summary = summaries.get(i);
+            if (summary == null) {
+                return null;
+            }
+            total = total.merge(summary);
+        }
+        return total;
+    }
+
+    /**
+     * Selects the chunks which must be read to find the valid samples within a range. Chunks without a summary
+     * are selected as well.
+     *
+     * @return A bitmap over the chunk grid in C order, with the bits of the chunks to read set.
+     */
+    public BitSet selectChunks(double lower, double upper) {
+        final BitSet selected = new BitSet(summaries.length());
+        for (int i = 0; i < summaries.length(); i++) {
+            final Summary summary = summaries.get(i);
+            selected.set(i, summary == null || summary.intersects(lower, upper));
+        }
+        return selected;
+    }
+
+    void put(int chunkIndex, Summary summary) {
+        if (summaries.compareAndSet(chunkIndex, null, summary)) {
+            modified = true;
+        }
+    }
+
+    /**
+     * Adds a summary which is kept in memory only and never written, e.g. of a chunk which is not known for
+     * certain to be missing.
+     */
+    void putTransient(int chunkIndex, Summary summary) {
+        transientChunks.add(chunkIndex);
+        if (!summaries.compareAndSet(chunkIndex, null, summary)) {
+            transientChunks.remove(chunkIndex);
+        }
+    }
+
+    /**
+     * @return Whether summaries have been added since the statistics were read or written.
+     */
+    boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Reads the statistics of an array from the cache directory.
+     *
+     * @param id        The identifier of the array, i.e. of the product and the key of the array.
+     * @param numChunks The number of chunks of the array.
+     *
+     * @return The statistics, which are empty if there is no valid cache file.
+     */
+    static ChunkStatistics read(Path cacheDir, String id, int numChunks) {
+        final ChunkStatistics statistics = new ChunkStatistics(numChunks);
+        final Path cacheFile = cacheDir.resolve(getCacheFileName(id));
+        if (!Files.isRegularFile(cacheFile)) {
+            return statistics;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != CACHE_FILE_MAGIC || in.readInt() != CACHE_FILE_VERSION ||
+                    !in.readUTF().equals(id) || in.readInt() != numChunks) {
+                return statistics;
+            }
+            for (int i = 0; i < numChunks; i++) {
+                if (in.readBoolean()) {
+                    statistics.summaries.set(i, new Summary(in.readDouble(), in.readDouble(), in.readLong()));
+                }
+            }
+        } catch (IOException e) {
+            LOG.fine("Ignoring invalid chunk statistics file '" + cacheFile + "': " + e.getMessage());
+            return new ChunkStatistics(numChunks);
+        }
+        return statistics;
+    }
+
+    /**
+     * Writes the statistics of an array to the cache directory.
+     *
+     * @param id The identifier of the array, i.e. of the product and the key of the array.
+     */
+    void write(Path cacheDir, String id) throws IOException {
+        final Path cacheFile = cacheDir.resolve(getCacheFileName(id));
+        Files.createDirectories(cacheDir);
+        final Path tempFile = Files.createTempFile(cacheDir, cacheFile.getFileName().toString(), ".tmp");
+        modified = false;
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(CACHE_FILE_MAGIC);
+                out.writeInt(CACHE_FILE_VERSION);
+                out.writeUTF(id);
+                out.writeInt(summaries.length());
+                for (int i = 0; i < summaries.length(); i++) {
+                    final Summary summary = transientChunks.contains(i) ? null : summaries.get(i);
+                    out.writeBoolean(summary != null);
+                    if (summary != null) {
+                        out.writeDouble(summary.min());
+                        out.writeDouble(summary.max());
+                        out.writeLong(summary.validCount());
+                    }
+                }
+            }
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            modified = true;
+            throw e;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    static String getCacheFileName(String id) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(id.getBytes(StandardCharsets.UTF_8))) + CACHE_FILE_EXTENSION;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
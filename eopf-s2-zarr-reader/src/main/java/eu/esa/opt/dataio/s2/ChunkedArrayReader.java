@@ -0,0 +1,607 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.DataType;
+import com.bc.zarr.storage.Store;
+import ucar.ma2.InvalidRangeException;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Base class of {@link ZarrArrayReader}s decoding the chunks of an array themselves.
+ * Subclasses fetch and decode single chunks; regions spanning several chunks are assembled here,
+ * with missing chunks filled with the fill value. The chunks of a region are fetched concurrently and decoded
+ * as they arrive, see {@link ChunkPipeline}, and each decoded chunk is copied straight to the rows of the region
+ * in the destination, which may be part of a larger array such as the data buffer of a raster.
+ * Arrays read by several images can keep their decoded chunks in a {@link DecodedChunkCache}. If the store can list
+ * the stored chunks, chunks which are not stored are filled with the fill value without being requested.
+ * Decoded chunks can be summarized in {@link ChunkStatistics}; chunks summarized as holding the fill value only
+ * are filled as well.
+ */
+abstract class ChunkedArrayReader implements ZarrArrayReader {
+
+    private final int[] shape;
+    private final int[] chunks;
+    private final DataType dataType;
+    private final Number fillValue;
+    private final int chunkSize;
+    private volatile DecodedChunkCache.ArrayChunks chunkCache;
+    private volatile ChunkStatistics chunkStatistics;
+    private volatile Predicate<String> deniedKeys;
+    private BitSet missingChunks;
+    private boolean missingChunksListed;
+
+    ChunkedArrayReader(int[] shape, int[] chunks, DataType dataType, Number fillValue) {
+        this.shape = shape;
+        this.chunks = chunks;
+        this.dataType = dataType;
+        this.fillValue = fillValue != null ? fillValue : 0;
+        int size = 1;
+        for (int chunk : chunks) {
+            size *= chunk;
+        }
+        chunkSize = size;
+    }
+
+    /**
+     * Converts the fill value of array metadata, a number, a boolean or one of the strings {@code NaN},
+     * {@code Infinity}, {@code -Infinity} and hexadecimal float bits like {@code 0x7fc00000}.
+     *
+     * @return The fill value, or {@code null} if the metadata has none.
+     */
+    static Number getFillValue(Object fillValue, DataType dataType) {
+        if (fillValue instanceof Number) {
+            return (Number) fillValue;
+        } else if (fillValue instanceof Boolean) {
+            return (Boolean) fillValue ? 1 : 0;
+        } else if (fillValue instanceof String value) {
+            if (value.startsWith("0x")) {
+                final long bits = Long.parseUnsignedLong(value.substring(2), 16);
+                return dataType == DataType.f4 ? Float.intBitsToFloat((int) bits) : Double.longBitsToDouble(bits);
+            }
+            return switch (value) {
+                case "NaN" -> Double.NaN;
+                case "Infinity" -> Double.POSITIVE_INFINITY;
+                case "-Infinity" -> Double.NEGATIVE_INFINITY;
+                default -> throw new IllegalArgumentException("Unsupported fill value '" + value + "'");
+            };
+        }
+        return null;
+    }
+
+    static int[] toIntArray(List<Number> values) {
+        final int[] ints = new int[values.size()];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = values.get(i).intValue();
+        }
+        return ints;
+    }
+
+    /**
+     * Reads the encoded bytes of a chunk. Called on a fetch thread.
+     *
+     * @param chunkIndices The indices of the chunk in the chunk grid.
+     *
+     * @return The encoded chunk, or {@code null} if the chunk does not exist.
+     */
+    protected abstract ByteBuffer fetchChunk(int[] chunkIndices) throws IOException;
+
+    /**
+     * Decodes a chunk. Called on a decode thread.
+     *
+     * @param encoded The encoded chunk, as fetched.
+     *
+     * @return The elements of the chunk in C order, in a buffer with the byte order of the elements set.
+     */
+    protected abstract ByteBuffer decodeChunk(ByteBuffer encoded) throws IOException;
+
+    /**
+     * Lists the keys of the stored entries of the array, e.g. from the index of a zipped product, without reading
+     * the entries.
+     *
+     * @return The keys, or {@code null} if the store cannot list them.
+     */
+    protected abstract Set<String> listStoredKeys();
+
+    /**
+     * @return The key of the stored entry holding a chunk, i.e. of the chunk itself or of its shard.
+     */
+    protected abstract String getStoredKey(int[] chunkIndices);
+
+    /**
+     * Lists the keys of the entries below an array.
+     *
+     * @return The keys, or {@code null} if the store cannot list them, e.g. a remote store.
+     */
+    static Set<String> listKeys(Store store, String arrayKey) {
+        final String prefix = arrayKey.isEmpty() ? "" : arrayKey + "/";
+        try (Stream<String> keys = store.getRelativeLeafKeys(arrayKey)) {
+            return keys.map(key -> prefix + key).collect(Collectors.toSet());
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the chunks which are not stored and consist of the fill value only, as a bitmap over the chunk grid
+     * in C order. The stored chunks are listed once; missing chunks are then filled without being requested.
+     *
+     * @return The bitmap, or {@code null} if the store cannot list the stored chunks.
+     */
+    synchronized BitSet getMissingChunks() {
+        if (!missingChunksListed) {
+            missingChunksListed = true;
+            final Set<String> storedKeys = listStoredKeys();
+            if (storedKeys != null) {
+                final BitSet missing = new BitSet();
+                final int[] chunkGridShape = getChunkGridShape();
+                final int[] chunkIndices = new int[chunkGridShape.length];
+                for (int i = 0; i < getNumChunks(); i++) {
+                    int index = i;
+                    for (int dim = chunkGridShape.length - 1; dim >= 0; dim--) {
+                        chunkIndices[dim] = index % chunkGridShape[dim];
+                        index /= chunkGridShape[dim];
+                    }
+                    missing.set(i, !storedKeys.contains(getStoredKey(chunkIndices)));
+                }
+                missingChunks = missing;
+            }
+        }
+        return missingChunks;
+    }
+
+    /**
+     * @return The number of chunks along each dimension.
+     */
+    int[] getChunkGridShape() {
+        final int[] chunkGridShape = new int[shape.length];
+        for (int i = 0; i < shape.length; i++) {
+            chunkGridShape[i] = (shape[i] + chunks[i] - 1) / chunks[i];
+        }
+        return chunkGridShape;
+    }
+
+    int getNumChunks() {
+        int numChunks = 1;
+        for (int chunksAlongDimension : getChunkGridShape()) {
+            numChunks *= chunksAlongDimension;
+        }
+        return numChunks;
+    }
+
+    private boolean isMissing(int[] chunkIndices) {
+        final BitSet missing = getMissingChunks();
+        return missing != null && missing.get(getChunkIndex(chunkIndices));
+    }
+
+    // A chunk holds the fill value only if it is not stored, or if its summary says so
+    private boolean isFillOnly(int[] chunkIndices) {
+        if (isMissing(chunkIndices)) {
+            return true;
+        }
+        final ChunkStatistics statistics = chunkStatistics;
+        if (statistics == null) {
+            return false;
+        }
+        final ChunkStatistics.Summary summary = statistics.get(getChunkIndex(chunkIndices));
+        return summary != null && summary.isFillOnly();
+    }
+
+    /**
+     * @return The index of a chunk in C order of the chunk grid.
+     */
+    int getChunkIndex(int[] chunkIndices) {
+        final int[] chunkGridShape = getChunkGridShape();
+        int index = 0;
+        for (int i = 0; i < chunkIndices.length; i++) {
+            index = index * chunkGridShape[i] + chunkIndices[i];
+        }
+        return index;
+    }
+
+    /**
+     * @return Whether all chunks intersecting a region are missing or summarized as holding the fill value only,
+     * i.e. whether the region is known to consist of the fill value only.
+     */
+    boolean isFillOnly(int[] bufferShape, int[] offset) {
+        if (getMissingChunks() == null && chunkStatistics == null) {
+            return false;
+        }
+        final int rank = shape.length;
+        final int[] firstChunk = new int[rank];
+        final int[] lastChunk = new int[rank];
+        for (int i = 0; i < rank; i++) {
+            if (bufferShape[i] == 0) {
+                return true;
+            }
+            firstChunk[i] = offset[i] / chunks[i];
+            lastChunk[i] = (offset[i] + bufferShape[i] - 1) / chunks[i];
+        }
+        final int[] chunkIndices = firstChunk.clone();
+        while (true) {
+            if (!isFillOnly(chunkIndices)) {
+                return false;
+            }
+            int dim = rank - 1;
+            while (dim >= 0 && chunkIndices[dim] == lastChunk[dim]) {
+                chunkIndices[dim] = firstChunk[dim];
+                dim--;
+            }
+            if (dim < 0) {
+                return true;
+            }
+            chunkIndices[dim]++;
+        }
+    }
+
+    /**
+     * Sets a cache for the decoded chunks of this array, for arrays read by several images.
+     *
+     * @param chunkCache The part of the cache for this array, or {@code null} to decode chunks whenever they are read.
+     */
+    void setChunkCache(DecodedChunkCache.ArrayChunks chunkCache) {
+        this.chunkCache = chunkCache;
+    }
+
+    DecodedChunkCache.ArrayChunks getChunkCache() {
+        return chunkCache;
+    }
+
+    /**
+     * Sets the statistics to which the summaries of chunks are added as they are decoded.
+     *
+     * @param chunkStatistics The statistics, for all chunks of this array, or {@code null} to not summarize chunks.
+     */
+    void setChunkStatistics(ChunkStatistics chunkStatistics) {
+        this.chunkStatistics = chunkStatistics;
+    }
+
+    /**
+     * Sets which keys the store took as missing only because access to them was denied. Such chunks are summarized
+     * as holding the fill value only for the current session, but their summaries are never written.
+     *
+     * @param deniedKeys Tells whether a key was taken as missing this way, or {@code null} if the store never does.
+     */
+    void setDeniedKeys(Predicate<String> deniedKeys) {
+        this.deniedKeys = deniedKeys;
+    }
+
+    ChunkStatistics getChunkStatistics() {
+        return chunkStatistics;
+    }
+
+    /**
+     * Fetches and decodes a chunk only to summarize it, unless it is summarized already.
+     */
+    CompletableFuture<Void> summarizeChunk(int[] chunkIndices) {
+        final ChunkStatistics statistics = chunkStatistics;
+        final int chunkIndex = getChunkIndex(chunkIndices);
+        if (statistics == null || statistics.get(chunkIndex) != null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (isMissing(chunkIndices)) {
+            statistics.put(chunkIndex, ChunkStatistics.Summary.FILL_ONLY);
+            return CompletableFuture.completedFuture(null);
+        }
+        return ChunkPipeline.decode(ChunkPipeline.fetch(() -> fetchChunk(chunkIndices)), encoded -> {
+            summarize(chunkIndices, encoded != null ? decodeChunk(encoded) : null);
+            return null;
+        });
+    }
+
+    // Summarizes the part of a decoded chunk inside the array, as edge chunks are stored in full
+    private void summarize(int[] chunkIndices, ByteBuffer chunk) throws IOException {
+        final ChunkStatistics statistics = chunkStatistics;
+        final int chunkIndex;
+        if (statistics == null || statistics.get(chunkIndex = getChunkIndex(chunkIndices)) != null) {
+            return;
+        }
+        if (chunk == null) {
+            final Predicate<String> denied = deniedKeys;
+            if (denied != null && denied.test(getStoredKey(chunkIndices))) {
+                statistics.putTransient(chunkIndex, ChunkStatistics.Summary.FILL_ONLY);
+            } else {
+                statistics.put(chunkIndex, ChunkStatistics.Summary.FILL_ONLY);
+            }
+            return;
+        }
+        final Buffer view = createView(chunk);
+        if (view.remaining() < chunkSize) {
+            throw new IOException("Chunk " + Arrays.toString(chunkIndices) + " has " + view.remaining() +
+                    " elements instead of " + chunkSize);
+        }
+        final int rank = shape.length;
+        final int[] extent = new int[rank];
+        for (int i = 0; i < rank; i++) {
+            extent[i] = Math.min(chunks[i], shape[i] - chunkIndices[i] * chunks[i]);
+        }
+        final double fill = fillValue.doubleValue();
+        final boolean fillIsNaN = Double.isNaN(fill);
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        long validCount = 0;
+        final int rowLength = rank > 0 ? extent[rank - 1] : 1;
+        final int[] position = new int[rank];
+        while (true) {
+            int rowStart = 0;
+            for (int i = 0; i < rank; i++) {
+                rowStart = rowStart * chunks[i] + position[i];
+            }
+            for (int i = rowStart; i < rowStart + rowLength; i++) {
+                final double value = getValue(view, i);
+                // NaN is never valid, also if it is not the fill value
+                if (!Double.isNaN(value) && (fillIsNaN || value != fill)) {
+                    validCount++;
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+            }
+            int dim = rank - 2;
+            while (dim >= 0 && position[dim] == extent[dim] - 1) {
+                position[dim] = 0;
+                dim--;
+            }
+            if (dim < 0) {
+                break;
+            }
+            position[dim]++;
+        }
+        if (validCount == 0) {
+            statistics.put(chunkIndex, ChunkStatistics.Summary.FILL_ONLY);
+        } else {
+            statistics.put(chunkIndex, new ChunkStatistics.Summary(min, max, validCount));
+        }
+    }
+
+    private double getValue(Buffer view, int index) {
+        return switch (dataType) {
+            case i1 -> ((ByteBuffer) view).get(index);
+            case u1 -> Byte.toUnsignedInt(((ByteBuffer) view).get(index));
+            case i2 -> ((ShortBuffer) view).get(index);
+            case u2 -> Short.toUnsignedInt(((ShortBuffer) view).get(index));
+            case i4 -> ((IntBuffer) view).get(index);
+            case u4 -> Integer.toUnsignedLong(((IntBuffer) view).get(index));
+            case i8 -> ((LongBuffer) view).get(index);
+            case f4 -> ((FloatBuffer) view).get(index);
+            case f8 -> ((DoubleBuffer) view).get(index);
+        };
+    }
+
+    @Override
+    public int[] getShape() {
+        return shape.clone();
+    }
+
+    @Override
+    public int[] getChunks() {
+        return chunks.clone();
+    }
+
+    @Override
+    public DataType getDataType() {
+        return dataType;
+    }
+
+    @Override
+    public Number getFillValue() {
+        return fillValue;
+    }
+
+    @Override
+    public void read(Object buffer, int[] bufferShape, int[] offset) throws IOException, InvalidRangeException {
+        checkRegion(bufferShape, offset);
+        ChunkPipeline.join(readChunks(buffer, 0, getRowLength(bufferShape), bufferShape, offset));
+    }
+
+    @Override
+    public CompletableFuture<Void> readAsync(Object buffer, int[] bufferShape, int[] offset) {
+        return readAsync(buffer, 0, getRowLength(bufferShape), bufferShape, offset);
+    }
+
+    /**
+     * Reads a region asynchronously, copying each chunk straight to the rows of the region in the buffer.
+     */
+    @Override
+    public CompletableFuture<Void> readAsync(Object buffer, int bufferOffset, int rowStride, int[] bufferShape,
+                                             int[] offset) {
+        try {
+            checkRegion(bufferShape, offset);
+        } catch (InvalidRangeException e) {
+            return CompletableFuture.failedFuture(new IOException(e.getMessage(), e));
+        }
+        return readChunks(buffer, bufferOffset, rowStride, bufferShape, offset);
+    }
+
+    private static int getRowLength(int[] bufferShape) {
+        return bufferShape.length > 0 ? bufferShape[bufferShape.length - 1] : 1;
+    }
+
+    private void checkRegion(int[] bufferShape, int[] offset) throws InvalidRangeException {
+        final int rank = shape.length;
+        if (bufferShape.length != rank || offset.length != rank) {
+            throw new InvalidRangeException("Region rank does not match array rank " + rank);
+        }
+        for (int i = 0; i < rank; i++) {
+            if (offset[i] < 0 || bufferShape[i] < 0 || offset[i] + bufferShape[i] > shape[i]) {
+                throw new InvalidRangeException("Region exceeds array in dimension " + i);
+            }
+        }
+    }
+
+    // Each chunk is copied into the buffer by its decode task; the chunks cover disjoint parts of the buffer
+    private CompletableFuture<Void> readChunks(Object buffer, int bufferOffset, int rowStride, int[] bufferShape,
+                                               int[] offset) {
+        final int rank = shape.length;
+        for (int i = 0; i < rank; i++) {
+            if (bufferShape[i] == 0) {
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+        final int[] firstChunk = new int[rank];
+        final int[] lastChunk = new int[rank];
+        for (int i = 0; i < rank; i++) {
+            firstChunk[i] = offset[i] / chunks[i];
+            lastChunk[i] = (offset[i] + bufferShape[i] - 1) / chunks[i];
+        }
+        final List<CompletableFuture<Void>> chunkReads = new ArrayList<>();
+        final int[] chunkIndices = firstChunk.clone();
+        while (true) {
+            final int[] indices = chunkIndices.clone();
+            final DecodedChunkCache.ArrayChunks cache = chunkCache;
+            if (isFillOnly(indices)) {
+                chunkReads.add(ChunkPipeline.decode(CompletableFuture.completedFuture(null), none -> {
+                    summarize(indices, null);
+                    copyChunk(null, indices, buffer, bufferOffset, rowStride, bufferShape, offset);
+                    return null;
+                }));
+            } else if (cache != null) {
+                chunkReads.add(ChunkPipeline.decode(cache.get(indices, () -> readChunk(indices, cache)), chunk -> {
+                    copyChunk(chunk, indices, buffer, bufferOffset, rowStride, bufferShape, offset);
+                    return null;
+                }));
+            } else {
+                chunkReads.add(ChunkPipeline.decode(ChunkPipeline.fetch(() -> fetchChunk(indices)), encoded -> {
+                    final ByteBuffer chunk = encoded != null ? decodeChunk(encoded) : null;
+                    summarize(indices, chunk);
+                    copyChunk(chunk, indices, buffer, bufferOffset, rowStride, bufferShape, offset);
+                    return null;
+                }));
+            }
+            int dim = rank - 1;
+            while (dim >= 0 && chunkIndices[dim] == lastChunk[dim]) {
+                chunkIndices[dim] = firstChunk[dim];
+                dim--;
+            }
+            if (dim < 0) {
+                return CompletableFuture.allOf(chunkReads.toArray(new CompletableFuture[0]));
+            }
+            chunkIndices[dim]++;
+        }
+    }
+
+    // Decodes a chunk into a buffer of the cache, as the decoded chunk may be in a buffer of the decoding thread
+    private CompletableFuture<ByteBuffer> readChunk(int[] chunkIndices, DecodedChunkCache.ArrayChunks cache) {
+        return ChunkPipeline.decode(ChunkPipeline.fetch(() -> fetchChunk(chunkIndices)), encoded -> {
+            if (encoded == null) {
+                summarize(chunkIndices, null);
+                return null;
+            }
+            final ByteBuffer decoded = decodeChunk(encoded);
+            summarize(chunkIndices, decoded);
+            return cache.allocate(decoded.remaining()).order(decoded.order()).put(decoded).flip();
+        });
+    }
+
+    // Copies the intersection of a chunk and the region row by row, or fills it if the chunk is missing
+    private void copyChunk(ByteBuffer chunk, int[] chunkIndices, Object buffer, int bufferOffset, int rowStride,
+                           int[] bufferShape, int[] offset) throws IOException {
+        final int rank = shape.length;
+        final Buffer view = chunk != null ? createView(chunk) : null;
+        if (view != null && view.remaining() < chunkSize) {
+            throw new IOException("Chunk " + Arrays.toString(chunkIndices) + " has " + view.remaining() +
+                    " elements instead of " + chunkSize);
+        }
+        if (rank == 0) {
+            copyRow(view, 0, buffer, bufferOffset, 1);
+            return;
+        }
+        final int[] start = new int[rank];
+        final int[] end = new int[rank];
+        for (int i = 0; i < rank; i++) {
+            start[i] = Math.max(offset[i], chunkIndices[i] * chunks[i]);
+            end[i] = Math.min(offset[i] + bufferShape[i], (chunkIndices[i] + 1) * chunks[i]);
+        }
+        final int rowLength = end[rank - 1] - start[rank - 1];
+        final int[] position = start.clone();
+        while (true) {
+            int chunkIndex = 0;
+            int bufferRow = 0;
+            for (int i = 0; i < rank; i++) {
+                chunkIndex = chunkIndex * chunks[i] + position[i] - chunkIndices[i] * chunks[i];
+            }
+            for (int i = 0; i < rank - 1; i++) {
+                bufferRow = bufferRow * bufferShape[i] + position[i] - offset[i];
+            }
+            final int bufferIndex = bufferOffset + bufferRow * rowStride + position[rank - 1] - offset[rank - 1];
+            copyRow(view, chunkIndex, buffer, bufferIndex, rowLength);
+            int dim = rank - 2;
+            while (dim >= 0 && position[dim] == end[dim] - 1) {
+                position[dim] = start[dim];
+                dim--;
+            }
+            if (dim < 0) {
+                return;
+            }
+            position[dim]++;
+        }
+    }
+
+    private Buffer createView(ByteBuffer chunk) {
+        return switch (dataType) {
+            case i1, u1 -> chunk.duplicate();
+            case i2, u2 -> chunk.asShortBuffer();
+            case i4, u4 -> chunk.asIntBuffer();
+            case i8 -> chunk.asLongBuffer();
+            case f4 -> chunk.asFloatBuffer();
+            case f8 -> chunk.asDoubleBuffer();
+        };
+    }
+
+    private void copyRow(Buffer view, int chunkIndex, Object buffer, int bufferIndex, int length) {
+        final int bufferEnd = bufferIndex + length;
+        if (buffer instanceof byte[] array) {
+            if (view != null) {
+                ((ByteBuffer) view).get(chunkIndex, array, bufferIndex, length);
+            } else {
+                Arrays.fill(array, bufferIndex, bufferEnd, fillValue.byteValue());
+            }
+        } else if (buffer instanceof short[] array) {
+            if (view != null) {
+                ((ShortBuffer) view).get(chunkIndex, array, bufferIndex, length);
+            } else {
+                Arrays.fill(array, bufferIndex, bufferEnd, fillValue.shortValue());
+            }
+        } else if (buffer instanceof int[] array) {
+            if (view != null) {
+                ((IntBuffer) view).get(chunkIndex, array, bufferIndex, length);
+            } else {
+                Arrays.fill(array, bufferIndex, bufferEnd, fillValue.intValue());
+            }
+        } else if (buffer instanceof long[] array) {
+            if (view != null) {
+                ((LongBuffer) view).get(chunkIndex, array, bufferIndex, length);
+            } else {
+                Arrays.fill(array, bufferIndex, bufferEnd, fillValue.longValue());
+            }
+        } else if (buffer instanceof float[] array) {
+            if (view != null) {
+                ((FloatBuffer) view).get(chunkIndex, array, bufferIndex, length);
+            } else {
+                Arrays.fill(array, bufferIndex, bufferEnd, fillValue.floatValue());
+            }
+        } else if (buffer instanceof double[] array) {
+            if (view != null) {
+                ((DoubleBuffer) view).get(chunkIndex, array, bufferIndex, length);
+            } else {
+                Arrays.fill(array, bufferIndex, bufferEnd, fillValue.doubleValue());
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported buffer type " + buffer.getClass().getSimpleName());
+        }
+    }
+}
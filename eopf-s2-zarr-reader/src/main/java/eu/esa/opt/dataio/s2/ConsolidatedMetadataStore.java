@@ -0,0 +1,223 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.ZarrConstants;
+import com.bc.zarr.storage.Store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static eu.esa.opt.dataio.s2.S2ZarrConstants.CONSOLIDATED_METADATA_KEY;
+import static org.esa.snap.core.util.SystemUtils.LOG;
+
+/**
+ * A {@link Store} serving the metadata of a Zarr product from its consolidated {@code .zmetadata} document.
+ * The document is read once; {@code .zarray}, {@code .zattrs} and {@code .zgroup} keys and the array and group
+ * listings are then answered from memory. As for consolidated metadata in zarr-python, the document is
+ * authoritative: metadata keys it does not contain are reported as missing without asking the wrapped store.
+ * All other keys, i.e. chunks, are read from the wrapped store.
+ * <p>
+ * The wrapped store is never modified. Keys written through {@link #getOutputStream(String)} are kept in memory
+ * and take precedence; {@link #delete(String)} only affects such keys.
+ */
+final class ConsolidatedMetadataStore implements BatchReadStore, RangeReadStore {
+
+    private static final String CONSOLIDATED_FORMAT_NAME = "zarr_consolidated_format";
+    private static final String METADATA_NAME = "metadata";
+
+    private final Store store;
+    private final Map<String, byte[]> metadata;
+    private final ZarrKeyIndex keyIndex;
+    private final Map<String, byte[]> writtenEntries = new ConcurrentHashMap<>();
+
+    private ConsolidatedMetadataStore(Store store, Map<String, byte[]> metadata) {
+        this.store = store;
+        this.metadata = metadata;
+        keyIndex = new ZarrKeyIndex(metadata.keySet());
+    }
+
+    /**
+     * Wraps a store in a {@code ConsolidatedMetadataStore}, if it provides consolidated metadata.
+     *
+     * @param store The store of a Zarr product.
+     *
+     * @return A store serving metadata from the consolidated metadata document, or the given store if there is no
+     * such document or it cannot be used.
+     */
+    static Store wrap(Store store) throws IOException {
+        final String document;
+        try (InputStream inputStream = store.getInputStream(CONSOLIDATED_METADATA_KEY)) {
+            if (inputStream == null) {
+                return store;
+            }
+            document = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try {
+            final Map<String, String> members = ZarrJson.getRawMembers(document);
+            if (!"1".equals(members.get(CONSOLIDATED_FORMAT_NAME)) || !members.containsKey(METADATA_NAME)) {
+                LOG.warning("Unsupported consolidated metadata, reading metadata keys individually");
+                return store;
+            }
+            final Map<String, String> entries = ZarrJson.getRawMembers(members.get(METADATA_NAME));
+            final Map<String, byte[]> metadata = new HashMap<>();
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                metadata.put(entry.getKey(), entry.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+            return new ConsolidatedMetadataStore(store, metadata);
+        } catch (IllegalArgumentException e) {
+            LOG.warning("Cannot parse consolidated metadata, reading metadata keys individually: " + e.getMessage());
+            return store;
+        }
+    }
+
+    private static boolean isMetadataKey(String key) {
+        return key.endsWith(ZarrConstants.FILENAME_DOT_ZARRAY) || key.endsWith(ZarrConstants.FILENAME_DOT_ZATTRS) ||
+                key.endsWith(ZarrConstants.FILENAME_DOT_ZGROUP);
+    }
+
+    @Override
+    public InputStream getInputStream(String key) throws IOException {
+        final byte[] writtenBytes = writtenEntries.get(key);
+        if (writtenBytes != null) {
+            return new ByteArrayInputStream(writtenBytes);
+        }
+        if (isMetadataKey(key)) {
+            final byte[] metadataBytes = metadata.get(key);
+            return metadataBytes != null ? new ByteArrayInputStream(metadataBytes) : null;
+        }
+        return store.getInputStream(key);
+    }
+
+    // Written keys and metadata keys are never read from the wrapped store
+    private byte[] getMemoryEntry(String key) {
+        final byte[] writtenBytes = writtenEntries.get(key);
+        if (writtenBytes != null) {
+            return writtenBytes;
+        }
+        return isMetadataKey(key) ? metadata.get(key) : null;
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer(String key) throws IOException {
+        final byte[] bytes = getMemoryEntry(key);
+        if (bytes != null) {
+            return ByteBuffer.wrap(bytes);
+        }
+        return isMetadataKey(key) ? null : BatchReadStore.getByteBuffer(store, key);
+    }
+
+    @Override
+    public ByteBuffer getRange(String key, long offset, int length) throws IOException {
+        final byte[] bytes = getMemoryEntry(key);
+        if (bytes != null) {
+            return RangeReadStore.slice(ByteBuffer.wrap(bytes), key, offset, length);
+        }
+        return isMetadataKey(key) ? null : RangeReadStore.getRange(store, key, offset, length);
+    }
+
+    @Override
+    public ByteBuffer getSuffix(String key, int length) throws IOException {
+        final byte[] bytes = getMemoryEntry(key);
+        if (bytes != null) {
+            return RangeReadStore.slice(ByteBuffer.wrap(bytes), key, bytes.length - (long) length, length);
+        }
+        return isMetadataKey(key) ? null : RangeReadStore.getSuffix(store, key, length);
+    }
+
+    @Override
+    public Map<String, ByteBuffer> getByteBuffers(Collection<String> keys) throws IOException {
+        final Map<String, ByteBuffer> buffers = new HashMap<>();
+        final List<String> chunkKeys = new ArrayList<>();
+        for (String key : keys) {
+            final byte[] bytes = getMemoryEntry(key);
+            if (bytes != null) {
+                buffers.put(key, ByteBuffer.wrap(bytes));
+            } else if (!isMetadataKey(key)) {
+                chunkKeys.add(key);
+            }
+        }
+        buffers.putAll(BatchReadStore.getByteBuffers(store, chunkKeys));
+        return buffers;
+    }
+
+    @Override
+    public OutputStream getOutputStream(String key) {
+        return new ByteArrayOutputStream() {
+            private boolean closed = false;
+
+            @Override
+            public void close() {
+                if (!closed) {
+                    writtenEntries.put(key, toByteArray());
+                    closed = true;
+                }
+            }
+        };
+    }
+
+    @Override
+    public void delete(String key) {
+        final String prefix = key.endsWith("/") ? key : key + "/";
+        writtenEntries.keySet().removeIf(writtenKey -> writtenKey.equals(key) || writtenKey.startsWith(prefix));
+    }
+
+    @Override
+    public TreeSet<String> getArrayKeys() {
+        final TreeSet<String> arrayKeys = keyIndex.getArrayKeys();
+        addWrittenKeys(arrayKeys, ZarrConstants.FILENAME_DOT_ZARRAY, true);
+        return arrayKeys;
+    }
+
+    @Override
+    public TreeSet<String> getGroupKeys() {
+        final TreeSet<String> groupKeys = keyIndex.getGroupKeys();
+        addWrittenKeys(groupKeys, ZarrConstants.FILENAME_DOT_ZGROUP, true);
+        return groupKeys;
+    }
+
+    @Override
+    public TreeSet<String> getKeysEndingWith(String suffix) throws IOException {
+        final TreeSet<String> keys = isMetadataKey(suffix) ? keyIndex.getKeysEndingWith(suffix) :
+                store.getKeysEndingWith(suffix);
+        addWrittenKeys(keys, suffix, false);
+        return keys;
+    }
+
+    private void addWrittenKeys(TreeSet<String> keys, String suffix, boolean addParents) {
+        for (String writtenKey : writtenEntries.keySet()) {
+            if (writtenKey.endsWith(suffix)) {
+                keys.add(addParents ? ZarrKeyIndex.getParent(writtenKey) : writtenKey);
+            }
+        }
+    }
+
+    // chunk keys are not part of the consolidated metadata, so leaf keys are listed by the wrapped store
+    @Override
+    public Stream<String> getRelativeLeafKeys(String key) throws IOException {
+        if (writtenEntries.isEmpty()) {
+            return store.getRelativeLeafKeys(key);
+        }
+        final String prefix = key.isEmpty() || key.endsWith("/") ? key : key + "/";
+        final Stream<String> writtenLeafKeys = writtenEntries.keySet().stream()
+                .filter(writtenKey -> writtenKey.startsWith(prefix))
+                .map(writtenKey -> writtenKey.substring(prefix.length()));
+        return Stream.concat(store.getRelativeLeafKeys(key), writtenLeafKeys).distinct();
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+}
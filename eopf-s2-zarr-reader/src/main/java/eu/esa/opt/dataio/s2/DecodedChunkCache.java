@@ -0,0 +1,253 @@
+package eu.esa.opt.dataio.s2;
+
+import org.esa.snap.runtime.Config;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.prefs.Preferences;
+
+import static eu.esa.opt.dataio.s2.S2ZarrConstants.*;
+
+/**
+ * A process-wide cache of decoded chunks within a byte budget, shared by all open products. It serves arrays read
+ * by several images, e.g. the bands split out of a multidimensional array or images with tiles smaller than the
+ * chunks, so that each chunk is decoded once for all of them. A chunk requested while it is being decoded is not
+ * decoded again, the request waits for the decoding instead.
+ * <p>
+ * Eviction is frequency-aware: new chunks enter a probationary segment and are promoted to a protected segment
+ * when requested again, so that chunks read only once, e.g. by a scan over a large product, do not evict chunks
+ * in repeated use. The chunks can be kept off-heap. The size of the chunks of each product is accounted for, and
+ * the chunks of a product are removed when it is released, i.e. when its reader is closed.
+ */
+final class DecodedChunkCache {
+
+    private static final double PROTECTED_SHARE = 0.8;
+
+    /**
+     * Statistics of a cache.
+     *
+     * @param hits      The number of requests for chunks which were cached or being decoded.
+     * @param misses    The number of requests for chunks which had to be decoded.
+     * @param evictions The number of chunks removed to stay within the budget.
+     * @param size      The number of bytes of the cached chunks.
+     * @param maxSize   The budget in bytes.
+     */
+    record Statistics(long hits, long misses, long evictions, long size, long maxSize) {
+    }
+
+    private record ChunkKey(Object product, String arrayKey, int[] indices) {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ChunkKey other && product == other.product && arrayKey.equals(other.arrayKey) &&
+                    Arrays.equals(indices, other.indices);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * System.identityHashCode(product) + arrayKey.hashCode()) + Arrays.hashCode(indices);
+        }
+    }
+
+    private record Entry(CompletableFuture<ByteBuffer> chunk, long size) {
+    }
+
+    private static DecodedChunkCache instance;
+
+    private final long maxSize;
+    private final long maxProtectedSize;
+    private final boolean offHeap;
+    private final Map<ChunkKey, CompletableFuture<ByteBuffer>> decoding = new HashMap<>();
+    private final LinkedHashMap<ChunkKey, Entry> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<ChunkKey, Entry> protectedChunks = new LinkedHashMap<>();
+    private final Map<Object, Long> productSizes = new HashMap<>();
+    private long size;
+    private long protectedSize;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxSize The maximum number of bytes of the decoded chunks kept.
+     * @param offHeap Whether the chunks are kept in direct buffers rather than on the heap.
+     */
+    DecodedChunkCache(long maxSize, boolean offHeap) {
+        this.maxSize = maxSize;
+        this.maxProtectedSize = (long) (maxSize * PROTECTED_SHARE);
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * @return The cache with the configured budget, or {@code null} if the cache is disabled.
+     */
+    static synchronized DecodedChunkCache getInstance() {
+        if (instance == null) {
+            final Preferences preferences = Config.instance().preferences();
+            final long maxSizeMB = preferences.getLong(PROPERTY_KEY_DECODED_CHUNK_CACHE_MAX_SIZE,
+                    DEFAULT_DECODED_CHUNK_CACHE_MAX_SIZE_MB);
+            if (maxSizeMB <= 0) {
+                return null;
+            }
+            instance = new DecodedChunkCache(maxSizeMB << 20,
+                    preferences.getBoolean(PROPERTY_KEY_DECODED_CHUNK_CACHE_OFF_HEAP, false));
+        }
+        return instance;
+    }
+
+    /**
+     * The part of the cache holding the chunks of one array of a product.
+     */
+    final class ArrayChunks {
+
+        private final Object product;
+        private final String arrayKey;
+
+        private ArrayChunks(Object product, String arrayKey) {
+            this.product = product;
+            this.arrayKey = arrayKey;
+        }
+
+        /**
+         * Gets a decoded chunk.
+         *
+         * @param chunkIndices The indices of the chunk in the chunk grid.
+         * @param decode       Reads and decodes the chunk if it is neither cached nor being decoded, into a buffer
+         *                     allocated by {@link #allocate(int)}. {@code null} stands for a missing chunk.
+         *
+         * @return The decoded chunk, shared by all requests. Its content must not be modified.
+         */
+        CompletableFuture<ByteBuffer> get(int[] chunkIndices, Supplier<CompletableFuture<ByteBuffer>> decode) {
+            return DecodedChunkCache.this.get(new ChunkKey(product, arrayKey, chunkIndices.clone()), decode);
+        }
+
+        /**
+         * Allocates a buffer for a decoded chunk, on the heap or off-heap as configured.
+         */
+        ByteBuffer allocate(int capacity) {
+            return offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        }
+    }
+
+    /**
+     * Returns the part of the cache for the chunks of an array.
+     *
+     * @param product  The product the array belongs to, e.g. its reader, compared by identity.
+     * @param arrayKey The key of the array.
+     */
+    synchronized ArrayChunks getArrayChunks(Object product, String arrayKey) {
+        productSizes.putIfAbsent(product, 0L);
+        return new ArrayChunks(product, arrayKey);
+    }
+
+    private CompletableFuture<ByteBuffer> get(ChunkKey key, Supplier<CompletableFuture<ByteBuffer>> decode) {
+        final CompletableFuture<ByteBuffer> chunk = new CompletableFuture<>();
+        synchronized (this) {
+            final CompletableFuture<ByteBuffer> cachedChunk = getCached(key);
+            if (cachedChunk != null) {
+                hits++;
+                return cachedChunk;
+            }
+            misses++;
+            decoding.put(key, chunk);
+        }
+        decode.get().whenComplete((decoded, error) -> {
+            synchronized (this) {
+                decoding.remove(key, chunk);
+                if (error == null && productSizes.containsKey(key.product())) {
+                    final long chunkSize = decoded != null ? decoded.capacity() : 0;
+                    probation.put(key, new Entry(CompletableFuture.completedFuture(decoded), chunkSize));
+                    size += chunkSize;
+                    productSizes.merge(key.product(), chunkSize, Long::sum);
+                    evict();
+                }
+            }
+            if (error != null) {
+                chunk.completeExceptionally(error);
+            } else {
+                chunk.complete(decoded);
+            }
+        });
+        return chunk;
+    }
+
+    // A chunk found in the probationary segment is promoted, the least recently used protected chunks are demoted
+    private CompletableFuture<ByteBuffer> getCached(ChunkKey key) {
+        Entry entry = protectedChunks.remove(key);
+        if (entry == null) {
+            entry = probation.remove(key);
+            if (entry == null) {
+                return decoding.get(key);
+            }
+        } else {
+            protectedSize -= entry.size();
+        }
+        protectedChunks.put(key, entry);
+        protectedSize += entry.size();
+        final Iterator<Map.Entry<ChunkKey, Entry>> iterator = protectedChunks.entrySet().iterator();
+        while (protectedSize > maxProtectedSize && iterator.hasNext()) {
+            final Map.Entry<ChunkKey, Entry> demoted = iterator.next();
+            if (demoted.getKey().equals(key)) {
+                break;
+            }
+            iterator.remove();
+            protectedSize -= demoted.getValue().size();
+            probation.put(demoted.getKey(), demoted.getValue());
+        }
+        return entry.chunk();
+    }
+
+    private void evict() {
+        while (size > maxSize && !(probation.isEmpty() && protectedChunks.isEmpty())) {
+            final boolean fromProtected = probation.isEmpty();
+            final Iterator<Map.Entry<ChunkKey, Entry>> iterator =
+                    (fromProtected ? protectedChunks : probation).entrySet().iterator();
+            final Map.Entry<ChunkKey, Entry> evicted = iterator.next();
+            iterator.remove();
+            remove(evicted.getKey(), evicted.getValue(), fromProtected);
+            evictions++;
+        }
+    }
+
+    private void remove(ChunkKey key, Entry entry, boolean fromProtected) {
+        size -= entry.size();
+        if (fromProtected) {
+            protectedSize -= entry.size();
+        }
+        productSizes.computeIfPresent(key.product(), (product, productSize) -> productSize - entry.size());
+    }
+
+    /**
+     * Removes the chunks of a product. Chunks of the product still being decoded are not cached.
+     */
+    synchronized void release(Object product) {
+        for (LinkedHashMap<ChunkKey, Entry> segment : List.of(probation, protectedChunks)) {
+            final Iterator<Map.Entry<ChunkKey, Entry>> iterator = segment.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Map.Entry<ChunkKey, Entry> entry = iterator.next();
+                if (entry.getKey().product() == product) {
+                    iterator.remove();
+                    remove(entry.getKey(), entry.getValue(), segment == protectedChunks);
+                }
+            }
+        }
+        productSizes.remove(product);
+    }
+
+    /**
+     * @return The number of bytes of the cached chunks of a product.
+     */
+    synchronized long getSize(Object product) {
+        return productSizes.getOrDefault(product, 0L);
+    }
+
+    synchronized Statistics getStatistics() {
+        return new Statistics(hits, misses, evictions, size, maxSize);
+    }
+}
@@ -0,0 +1,168 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.storage.Store;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * A {@link Store} decorator keeping the bytes read from the wrapped store in a {@link DiskChunkCache}.
+ * Entries are identified by the product and the key, so that a product must have a stable identifier that changes
+ * whenever its content changes, e.g. its path together with size and modification time.
+ * Byte ranges read with {@link #getRange} and {@link #getSuffix} are cached separately from whole entries.
+ * Keys missing in the wrapped store are not cached. All other operations are delegated; keys written or deleted
+ * through this store are read from the wrapped store from then on.
+ */
+final class DiskCacheStore implements BatchReadStore, RangeReadStore {
+
+    private final Store store;
+    private final String productId;
+    private final DiskChunkCache cache;
+    private final Set<String> modifiedKeys = ConcurrentHashMap.newKeySet();
+
+    DiskCacheStore(Store store, String productId, DiskChunkCache cache) {
+        this.store = store;
+        this.productId = productId;
+        this.cache = cache;
+    }
+
+    @Override
+    public InputStream getInputStream(String key) throws IOException {
+        if (!modifiedKeys.isEmpty() && isModified(key)) {
+            return store.getInputStream(key);
+        }
+        final String id = DiskChunkCache.getId(productId, key);
+        byte[] bytes = cache.get(id);
+        if (bytes == null) {
+            try (InputStream inputStream = store.getInputStream(key)) {
+                if (inputStream == null) {
+                    return null;
+                }
+                bytes = inputStream.readAllBytes();
+            }
+            cache.put(id, bytes);
+        }
+        return new ByteArrayInputStream(bytes);
+    }
+
+    // keys missing in the cache are read from the wrapped store in a single batch
+    @Override
+    public Map<String, ByteBuffer> getByteBuffers(Collection<String> keys) throws IOException {
+        final Map<String, ByteBuffer> buffers = new HashMap<>();
+        final List<String> missingKeys = new ArrayList<>();
+        for (String key : keys) {
+            if (modifiedKeys.isEmpty() || !isModified(key)) {
+                final byte[] bytes = cache.get(DiskChunkCache.getId(productId, key));
+                if (bytes != null) {
+                    buffers.put(key, ByteBuffer.wrap(bytes));
+                    continue;
+                }
+            }
+            missingKeys.add(key);
+        }
+        for (Map.Entry<String, ByteBuffer> entry : BatchReadStore.getByteBuffers(store, missingKeys).entrySet()) {
+            final String key = entry.getKey();
+            if (modifiedKeys.isEmpty() || !isModified(key)) {
+                buffers.put(key, putBuffer(DiskChunkCache.getId(productId, key), entry.getValue()));
+            } else {
+                buffers.put(key, entry.getValue());
+            }
+        }
+        return buffers;
+    }
+
+    // ranges are cached as entries of their own, identified by key and range
+    @Override
+    public ByteBuffer getRange(String key, long offset, int length) throws IOException {
+        if (!modifiedKeys.isEmpty() && isModified(key)) {
+            return RangeReadStore.getRange(store, key, offset, length);
+        }
+        final String id = DiskChunkCache.getId(productId, key + "#" + offset + "+" + length);
+        final byte[] bytes = cache.get(id);
+        if (bytes != null) {
+            return ByteBuffer.wrap(bytes);
+        }
+        return putBuffer(id, RangeReadStore.getRange(store, key, offset, length));
+    }
+
+    @Override
+    public ByteBuffer getSuffix(String key, int length) throws IOException {
+        if (!modifiedKeys.isEmpty() && isModified(key)) {
+            return RangeReadStore.getSuffix(store, key, length);
+        }
+        final String id = DiskChunkCache.getId(productId, key + "#-" + length);
+        final byte[] bytes = cache.get(id);
+        if (bytes != null) {
+            return ByteBuffer.wrap(bytes);
+        }
+        return putBuffer(id, RangeReadStore.getSuffix(store, key, length));
+    }
+
+    private ByteBuffer putBuffer(String id, ByteBuffer buffer) {
+        if (buffer == null) {
+            return null;
+        }
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        cache.put(id, bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private boolean isModified(String key) {
+        for (String modifiedKey : modifiedKeys) {
+            if (key.equals(modifiedKey) || key.startsWith(modifiedKey + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public OutputStream getOutputStream(String key) throws IOException {
+        modifiedKeys.add(key);
+        return store.getOutputStream(key);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        modifiedKeys.add(key.endsWith("/") ? key.substring(0, key.length() - 1) : key);
+        store.delete(key);
+    }
+
+    @Override
+    public TreeSet<String> getArrayKeys() throws IOException {
+        return store.getArrayKeys();
+    }
+
+    @Override
+    public TreeSet<String> getGroupKeys() throws IOException {
+        return store.getGroupKeys();
+    }
+
+    @Override
+    public TreeSet<String> getKeysEndingWith(String suffix) throws IOException {
+        return store.getKeysEndingWith(suffix);
+    }
+
+    @Override
+    public Stream<String> getRelativeLeafKeys(String key) throws IOException {
+        return store.getRelativeLeafKeys(key);
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+}
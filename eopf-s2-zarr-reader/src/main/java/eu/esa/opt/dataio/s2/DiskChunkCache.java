@@ -0,0 +1,236 @@
+package eu.esa.opt.dataio.s2;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.esa.snap.core.util.SystemUtils.LOG;
+
+/**
+ * A size-bounded cache of byte arrays in a local directory, shared by all products read in this JVM.
+ * Entries are files named by the SHA-256 hash of their identifier, spread over 256 sub-directories.
+ * <p>
+ * Entries are written to a temporary file and then atomically moved into place, so that concurrent writers,
+ * also in other processes, never expose partially written entries. The modification time of an entry file is
+ * its last access time; it is used for LRU eviction and survives restarts, as the cache directory is scanned
+ * once when the cache is first used. Entries written by other processes are not accounted for until then,
+ * so with several processes the size bound is approximate.
+ */
+final class DiskChunkCache {
+
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final double EVICTION_TARGET_RATIO = 0.9;
+    // access times are only persisted if they changed by more than this, to save file system updates on hot entries
+    private static final long ACCESS_TIME_RESOLUTION_MILLIS = 60_000;
+
+    private static final Map<Path, DiskChunkCache> INSTANCES = new HashMap<>();
+
+    private final Path cacheDir;
+    private final long maxSize;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong totalSize = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * @return The cache on the given directory. The size bound of the first call for a directory applies.
+     */
+    static synchronized DiskChunkCache getInstance(Path cacheDir, long maxSize) throws IOException {
+        final Path normalizedDir = cacheDir.toAbsolutePath().normalize();
+        DiskChunkCache cache = INSTANCES.get(normalizedDir);
+        if (cache == null) {
+            cache = new DiskChunkCache(normalizedDir, maxSize);
+            INSTANCES.put(normalizedDir, cache);
+        }
+        return cache;
+    }
+
+    DiskChunkCache(Path cacheDir, long maxSize) throws IOException {
+        this.cacheDir = cacheDir;
+        this.maxSize = maxSize;
+        Files.createDirectories(cacheDir);
+        scan();
+    }
+
+    private void scan() throws IOException {
+        try (DirectoryStream<Path> subDirs = Files.newDirectoryStream(cacheDir, Files::isDirectory)) {
+            for (Path subDir : subDirs) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(subDir)) {
+                    for (Path file : files) {
+                        final String fileName = file.getFileName().toString();
+                        try {
+                            final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                            if (fileName.endsWith(TEMP_FILE_SUFFIX)) {
+                                // left over by a writer that did not finish, unless it is still writing
+                                if (attributes.lastModifiedTime().toMillis() < System.currentTimeMillis() - 3_600_000) {
+                                    Files.deleteIfExists(file);
+                                }
+                                continue;
+                            }
+                            entries.put(fileName, new Entry(attributes.size(), attributes.lastModifiedTime().toMillis()));
+                            totalSize.addAndGet(attributes.size());
+                        } catch (NoSuchFileException e) {
+                            // evicted by another process meanwhile
+                        }
+                    }
+                }
+            }
+        }
+        evictIfNeeded();
+    }
+
+    static String getId(String productId, String key) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(productId.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Path getPath(String id) {
+        return cacheDir.resolve(id.substring(0, 2)).resolve(id);
+    }
+
+    long getMaxSize() {
+        return maxSize;
+    }
+
+    long getTotalSize() {
+        return totalSize.get();
+    }
+
+    /**
+     * @return The cached bytes, or {@code null} if there is no entry for the identifier.
+     */
+    byte[] get(String id) throws IOException {
+        final Path path = getPath(id);
+        final byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            remove(id);
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            // written by another process
+            entry = new Entry(bytes.length, 0);
+            if (entries.putIfAbsent(id, entry) == null) {
+                totalSize.addAndGet(bytes.length);
+            }
+        }
+        if (now - entry.lastAccess > ACCESS_TIME_RESOLUTION_MILLIS) {
+            try {
+                Files.setLastModifiedTime(path, FileTime.fromMillis(now));
+            } catch (IOException e) {
+                // the entry is still valid, only its age is not updated
+            }
+        }
+        entry.lastAccess = now;
+        return bytes;
+    }
+
+    /**
+     * Adds an entry. Failures are logged, as the cache is an optimisation only.
+     */
+    void put(String id, byte[] bytes) {
+        if (bytes.length > maxSize * (1 - EVICTION_TARGET_RATIO)) {
+            return;
+        }
+        final Path path = getPath(id);
+        Path tempFile = null;
+        try {
+            Files.createDirectories(path.getParent());
+            tempFile = Files.createTempFile(path.getParent(), id, TEMP_FILE_SUFFIX);
+            Files.write(tempFile, bytes);
+            try {
+                Files.move(tempFile, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tempFile = null;
+        } catch (IOException e) {
+            LOG.fine("Could not write chunk cache entry '" + path + "': " + e.getMessage());
+            return;
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e) {
+                    // removed on the next scan
+                }
+            }
+        }
+        final Entry previous = entries.put(id, new Entry(bytes.length, System.currentTimeMillis()));
+        totalSize.addAndGet(bytes.length - (previous != null ? previous.size : 0));
+        evictIfNeeded();
+    }
+
+    private void remove(String id) {
+        final Entry entry = entries.remove(id);
+        if (entry != null) {
+            totalSize.addAndGet(-entry.size);
+        }
+    }
+
+    // Removes the least recently used entries until the cache is below the target size. Only one thread evicts.
+    private void evictIfNeeded() {
+        if (totalSize.get() <= maxSize || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            final List<Map.Entry<String, Entry>> candidates = new ArrayList<>(entries.entrySet());
+            candidates.sort(Comparator.comparingLong(candidate -> candidate.getValue().lastAccess));
+            final long targetSize = (long) (maxSize * EVICTION_TARGET_RATIO);
+            for (Map.Entry<String, Entry> candidate : candidates) {
+                if (totalSize.get() <= targetSize) {
+                    break;
+                }
+                try {
+                    Files.deleteIfExists(getPath(candidate.getKey()));
+                } catch (IOException e) {
+                    LOG.fine("Could not evict chunk cache entry '" + candidate.getKey() + "': " + e.getMessage());
+                    continue;
+                }
+                if (entries.remove(candidate.getKey(), candidate.getValue())) {
+                    totalSize.addAndGet(-candidate.getValue().size);
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class Entry {
+
+        private final long size;
+        private volatile long lastAccess;
+
+        private Entry(long size, long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package eu.esa.opt.dataio.s2;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A {@link RangeReader} on a local file. Reads are positional and do not touch the channel position,
+ * so any number of threads may read concurrently without locking.
+ * <p>
+ * In memory-mapped mode, {@link #view(long, int)} returns slices of a mapping of the file.
+ * The file is mapped lazily in overlapping segments of 1 GiB, so that every range of up to
+ * 128 MiB is contained in a single segment.
+ */
+class FileRangeReader implements RangeReader {
+
+    private static final long SEGMENT_SIZE = 1L << 30;
+    private static final long SEGMENT_OVERLAP = 1L << 27;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long size;
+    private final AtomicReferenceArray<MappedByteBuffer> segments;
+
+    FileRangeReader(Path path) throws IOException {
+        this(path, false);
+    }
+
+    FileRangeReader(Path path, boolean memoryMapped) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        size = channel.size();
+        if (memoryMapped) {
+            segments = new AtomicReferenceArray<>((int) (size / SEGMENT_SIZE) + 1);
+        } else {
+            segments = null;
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void readFully(ByteBuffer buffer, long position) throws IOException {
+        long currentPosition = position;
+        while (buffer.hasRemaining()) {
+            final int numRead = channel.read(buffer, currentPosition);
+            if (numRead < 0) {
+                throw new EOFException("Unexpected end of file '" + path + "' at position " + currentPosition);
+            }
+            currentPosition += numRead;
+        }
+    }
+
+    @Override
+    public ByteBuffer view(long position, int length) throws IOException {
+        if (segments == null || position < 0 || length < 0 || length > SEGMENT_OVERLAP || position + length > size) {
+            return null;
+        }
+        final int segmentIndex = (int) (position / SEGMENT_SIZE);
+        final MappedByteBuffer segment = getSegment(segmentIndex);
+        final int offset = (int) (position - segmentIndex * SEGMENT_SIZE);
+        if (offset + length > segment.capacity()) {
+            return null;
+        }
+        return segment.slice(offset, length);
+    }
+
+    private MappedByteBuffer getSegment(int segmentIndex) throws IOException {
+        MappedByteBuffer segment = segments.get(segmentIndex);
+        if (segment == null) {
+            final long segmentStart = segmentIndex * SEGMENT_SIZE;
+            final long segmentLength = Math.min(size - segmentStart, SEGMENT_SIZE + SEGMENT_OVERLAP);
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentLength);
+            if (!segments.compareAndSet(segmentIndex, null, segment)) {
+                segment = segments.get(segmentIndex);
+            }
+        }
+        return segment;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,56 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.storage.FileSystemStore;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link FileSystemStore} on a Zarr product directory which also reads byte ranges of files,
+ * e.g. the index and single inner chunks of Zarr v3 shards.
+ */
+class FileSystemRangeStore extends FileSystemStore implements RangeReadStore {
+
+    private final Path rootPath;
+
+    FileSystemRangeStore(Path rootPath) {
+        super(rootPath);
+        this.rootPath = rootPath;
+    }
+
+    @Override
+    public ByteBuffer getRange(String key, long offset, int length) throws IOException {
+        try (FileChannel channel = FileChannel.open(rootPath.resolve(key), StandardOpenOption.READ)) {
+            return read(channel, key, offset, length);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public ByteBuffer getSuffix(String key, int length) throws IOException {
+        try (FileChannel channel = FileChannel.open(rootPath.resolve(key), StandardOpenOption.READ)) {
+            return read(channel, key, channel.size() - length, length);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, String key, long offset, int length) throws IOException {
+        if (offset < 0 || offset + length > channel.size()) {
+            throw new EOFException("Range exceeds file '" + key + "'");
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file '" + key + "'");
+            }
+        }
+        return buffer.flip();
+    }
+}
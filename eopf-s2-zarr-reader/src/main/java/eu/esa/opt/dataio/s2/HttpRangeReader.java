@@ -0,0 +1,148 @@
+package eu.esa.opt.dataio.s2;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A {@link RangeReader} on a remote resource, reading ranges with HTTP range requests.
+ * The server must support range requests, i.e. answer them with status 206 (Partial Content). Responses are
+ * streamed, and the response of a server answering with the whole resource instead is closed without being read.
+ * Requests to S3 objects can be signed.
+ */
+class HttpRangeReader implements RangeReader {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final HttpClient client;
+    private final URI uri;
+    private final S3RequestSigner signer;
+    private volatile long size = -1;
+
+    HttpRangeReader(URI uri) {
+        this(uri, null);
+    }
+
+    /**
+     * @param uri    The URI of the resource.
+     * @param signer The signer of S3 requests, or {@code null} to send requests unsigned.
+     */
+    HttpRangeReader(URI uri, S3RequestSigner signer) {
+        client = HttpStore.createClient();
+        this.uri = uri;
+        this.signer = signer;
+    }
+
+    @Override
+    public long size() throws IOException {
+        if (size < 0) {
+            size = fetchSize();
+        }
+        return size;
+    }
+
+    // Servers may not answer HEAD requests with a content length, so a single byte is requested as fallback
+    private long fetchSize() throws IOException {
+        final HttpRequest headRequest = createRequest("HEAD", null);
+        final HttpResponse<Void> headResponse = send(headRequest, HttpResponse.BodyHandlers.discarding());
+        if (headResponse.statusCode() == 200) {
+            final Optional<String> contentLength = headResponse.headers().firstValue("Content-Length");
+            if (contentLength.isPresent()) {
+                return parseLong(contentLength.get());
+            }
+        } else if (headResponse.statusCode() != 405) {
+            throw new IOException("Cannot access '" + uri + "': HTTP status " + headResponse.statusCode());
+        }
+        final HttpRequest rangeRequest = createRequest("GET", "bytes=0-0");
+        final HttpResponse<InputStream> rangeResponse = send(rangeRequest, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream ignored = rangeResponse.body()) {
+            checkPartialContent(rangeResponse);
+            final String contentRange = rangeResponse.headers().firstValue("Content-Range").orElse("");
+            final int separatorIndex = contentRange.lastIndexOf('/');
+            if (separatorIndex >= 0 && !contentRange.endsWith("*")) {
+                return parseLong(contentRange.substring(separatorIndex + 1));
+            }
+        }
+        throw new IOException("Cannot determine the size of '" + uri + "'");
+    }
+
+    private long parseLong(String value) throws IOException {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid size '" + value + "' of '" + uri + "'");
+        }
+    }
+
+    @Override
+    public void readFully(ByteBuffer buffer, long position) throws IOException {
+        final int length = buffer.remaining();
+        if (length == 0) {
+            return;
+        }
+        final HttpRequest request = createRequest("GET", "bytes=" + position + "-" + (position + length - 1));
+        final HttpResponse<InputStream> response = send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream inputStream = response.body()) {
+            if (response.statusCode() == 416) {
+                throw new EOFException("Range " + position + "+" + length + " is beyond the end of '" + uri + "'");
+            }
+            checkPartialContent(response);
+            if (buffer.hasArray()) {
+                final int read = inputStream.readNBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+                buffer.position(buffer.position() + read);
+            } else {
+                final byte[] bytes = new byte[Math.min(length, COPY_BUFFER_SIZE)];
+                int read;
+                while (buffer.hasRemaining() &&
+                        (read = inputStream.readNBytes(bytes, 0, Math.min(bytes.length, buffer.remaining()))) > 0) {
+                    buffer.put(bytes, 0, read);
+                }
+            }
+        }
+        if (buffer.hasRemaining()) {
+            throw new EOFException("Unexpected end of '" + uri + "' at position " + (position + length - buffer.remaining()));
+        }
+    }
+
+    // The body of any other answer, e.g. the whole resource of a server ignoring the range, is left unread
+    private void checkPartialContent(HttpResponse<InputStream> response) throws IOException {
+        if (response.statusCode() == 200) {
+            throw new IOException("Server of '" + uri + "' does not support range requests");
+        } else if (response.statusCode() != 206) {
+            throw new IOException("Cannot read '" + uri + "': HTTP status " + response.statusCode());
+        }
+    }
+
+    private HttpRequest createRequest(String method, String range) {
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(uri).method(method, HttpRequest.BodyPublishers.noBody());
+        final Map<String, String> headers = range != null ? Map.of("Range", range) : Map.of();
+        headers.forEach(builder::header);
+        if (signer != null) {
+            signer.sign(method, uri, headers, Instant.now()).forEach(builder::header);
+        }
+        return builder.build();
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException {
+        try {
+            return client.send(request, bodyHandler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading '" + uri + "'");
+        }
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+}
@@ -0,0 +1,173 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.storage.Store;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * A read-only {@link Store} on a Zarr product served over HTTP(S). Each key is fetched from the URI of the key
+ * relative to the product root, so only the chunks actually read are transferred.
+ * Byte ranges of keys are read with range requests.
+ * <p>
+ * Plain HTTP servers cannot list keys, so this store is meant to be wrapped in a {@link ConsolidatedMetadataStore},
+ * which answers array and group listings from the consolidated metadata of the product.
+ */
+public class HttpStore implements RangeReadStore {
+
+    static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient client;
+    private final String rootUri;
+
+    /**
+     * @param rootUri The HTTP(S) URI of the product root directory.
+     */
+    public HttpStore(URI rootUri) {
+        this(rootUri, createClient());
+    }
+
+    protected HttpStore(URI rootUri, HttpClient client) {
+        this.client = client;
+        final String root = rootUri.toString();
+        this.rootUri = root.endsWith("/") ? root : root + "/";
+    }
+
+    static HttpClient createClient() {
+        return HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .build();
+    }
+
+    @Override
+    public InputStream getInputStream(String key) throws IOException {
+        final URI uri = getUri(key);
+        final HttpResponse<byte[]> response = send(createRequest(uri));
+        if (isMissing(key, response)) {
+            return null;
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("Cannot read '" + uri + "': HTTP status " + response.statusCode());
+        }
+        return new ByteArrayInputStream(response.body());
+    }
+
+    @Override
+    public ByteBuffer getRange(String key, long offset, int length) throws IOException {
+        if (length == 0) {
+            return ByteBuffer.allocate(0);
+        }
+        return getRange(key, "bytes=" + offset + "-" + (offset + length - 1), offset, length);
+    }
+
+    @Override
+    public ByteBuffer getSuffix(String key, int length) throws IOException {
+        if (length == 0) {
+            return ByteBuffer.allocate(0);
+        }
+        return getRange(key, "bytes=-" + length, -1, length);
+    }
+
+    // Servers ignoring the range answer with the whole entry, which is then sliced
+    private ByteBuffer getRange(String key, String range, long offset, int length) throws IOException {
+        final URI uri = getUri(key);
+        final HttpRequest request = HttpRequest.newBuilder(createRequest(uri), (name, value) -> true)
+                .header("Range", range)
+                .build();
+        final HttpResponse<byte[]> response = send(request);
+        final int statusCode = response.statusCode();
+        if (isMissing(key, response)) {
+            return null;
+        }
+        if (statusCode == 416) {
+            throw new EOFException("Range " + range + " exceeds '" + uri + "'");
+        }
+        if (statusCode == 206) {
+            if (response.body().length != length) {
+                throw new EOFException("Range " + range + " exceeds '" + uri + "'");
+            }
+            return ByteBuffer.wrap(response.body());
+        }
+        if (statusCode != 200) {
+            throw new IOException("Cannot read '" + uri + "': HTTP status " + statusCode);
+        }
+        final ByteBuffer entry = ByteBuffer.wrap(response.body());
+        return RangeReadStore.slice(entry, key, offset >= 0 ? offset : entry.remaining() - (long) length, length);
+    }
+
+    /**
+     * @return Whether a response tells that there is no entry for a key. Subclasses may accept other answers
+     * than 404 and 410 of servers which do not reveal whether an entry exists.
+     */
+    protected boolean isMissing(String key, HttpResponse<byte[]> response) throws IOException {
+        return response.statusCode() == 404 || response.statusCode() == 410;
+    }
+
+    protected URI getUri(String key) {
+        return URI.create(rootUri + key);
+    }
+
+    /**
+     * Creates the GET request for a key. Subclasses may add headers, e.g. for authentication.
+     */
+    protected HttpRequest createRequest(URI uri) throws IOException {
+        return HttpRequest.newBuilder(uri).build();
+    }
+
+    protected HttpResponse<byte[]> send(HttpRequest request) throws IOException {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading '" + request.uri() + "'");
+        }
+    }
+
+    @Override
+    public OutputStream getOutputStream(String key) throws IOException {
+        throw new IOException("HTTP store is read-only");
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        throw new IOException("HTTP store is read-only");
+    }
+
+    @Override
+    public TreeSet<String> getArrayKeys() throws IOException {
+        throw new IOException("HTTP store cannot list keys");
+    }
+
+    @Override
+    public TreeSet<String> getGroupKeys() throws IOException {
+        throw new IOException("HTTP store cannot list keys");
+    }
+
+    @Override
+    public TreeSet<String> getKeysEndingWith(String suffix) throws IOException {
+        throw new IOException("HTTP store cannot list keys");
+    }
+
+    @Override
+    public Stream<String> getRelativeLeafKeys(String key) throws IOException {
+        throw new IOException("HTTP store cannot list keys");
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+}
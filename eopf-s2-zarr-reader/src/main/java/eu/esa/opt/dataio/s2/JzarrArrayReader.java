@@ -0,0 +1,54 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.DataType;
+import com.bc.zarr.ZarrArray;
+import ucar.ma2.InvalidRangeException;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A {@link ZarrArrayReader} on a Zarr version 2 array read by jzarr.
+ */
+final class JzarrArrayReader implements ZarrArrayReader {
+
+    private final ZarrArray array;
+
+    JzarrArrayReader(ZarrArray array) {
+        this.array = array;
+    }
+
+    ZarrArray getArray() {
+        return array;
+    }
+
+    @Override
+    public int[] getShape() {
+        return array.getShape();
+    }
+
+    @Override
+    public int[] getChunks() {
+        return array.getChunks();
+    }
+
+    @Override
+    public DataType getDataType() {
+        return array.getDataType();
+    }
+
+    @Override
+    public Number getFillValue() {
+        return array.getFillValue();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() throws IOException {
+        return array.getAttributes();
+    }
+
+    @Override
+    public void read(Object buffer, int[] bufferShape, int[] offset) throws IOException, InvalidRangeException {
+        array.read(buffer, bufferShape, offset);
+    }
+}
@@ -0,0 +1,350 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.Compressor;
+import com.bc.zarr.CompressorFactory;
+import org.esa.snap.core.datamodel.ProductData;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.esa.snap.core.util.SystemUtils.LOG;
+
+/**
+ * The overview levels of the bands of a product, persisted as a Zarr version 2 group in a cache directory.
+ * Each level of a band is a blosc-compressed array below the key of the band's array, e.g.
+ * {@code measurements/reflectance/r10m/b08/2}, whose chunks are the tiles of the level image.
+ * Tiles are written one by one as they are computed, so that the overviews of a product are generated
+ * incrementally, are resumed when the product is opened again, and are read instead of being computed
+ * from the full resolution once they exist.
+ * <p>
+ * The overviews of all products in a cache directory are bounded in size. When they exceed the bound, the
+ * groups of the least recently opened products are evicted, except those opened in this JVM; if these alone
+ * exceed the bound, further tiles are computed but not written. As with the chunk cache, groups written by
+ * other processes are only accounted for when the directory is first used, so the bound is approximate.
+ */
+final class OverviewStore {
+
+    private static final String CACHE_DIR_EXTENSION = ".zarr";
+    private static final String GROUP_FILE_NAME = ".zgroup";
+    private static final String COMPRESSOR_METADATA = "{\"blocksize\": 0, \"clevel\": 5, \"cname\": \"lz4\"," +
+            " \"id\": \"blosc\", \"shuffle\": 1}";
+    private static final double EVICTION_TARGET_RATIO = 0.9;
+
+    private static final Map<Path, CacheDirectory> CACHE_DIRECTORIES = new HashMap<>();
+
+    private final Path rootDir;
+    private final CacheDirectory cacheDirectory;
+    private final Compressor compressor;
+
+    private OverviewStore(Path rootDir, CacheDirectory cacheDirectory) {
+        this.rootDir = rootDir;
+        this.cacheDirectory = cacheDirectory;
+        compressor = CompressorFactory.create("blosc", "cname", "lz4", "clevel", 5, "shuffle", 1, "blocksize", 0);
+    }
+
+    /**
+     * Opens the overviews of a product in a cache directory, creating the group if it does not exist.
+     *
+     * @param productId An identifier of the product which changes whenever the product changes.
+     * @param maxSize   The maximum size in bytes of the overviews of all products in the cache directory. The
+     *                  bound of the first call for a directory applies.
+     */
+    static OverviewStore open(Path cacheDir, String productId, long maxSize) throws IOException {
+        final CacheDirectory cacheDirectory = getCacheDirectory(cacheDir, maxSize);
+        final Path rootDir = cacheDirectory.cacheDir.resolve(getCacheDirName(productId));
+        Files.createDirectories(rootDir);
+        if (!Files.isRegularFile(rootDir.resolve(GROUP_FILE_NAME))) {
+            writeAtomically(rootDir.resolve(".zattrs"), ("{\"product\": \"" + escape(productId) + "\"}")
+                    .getBytes(StandardCharsets.UTF_8));
+            writeAtomically(rootDir.resolve(GROUP_FILE_NAME), "{\"zarr_format\": 2}".getBytes(StandardCharsets.UTF_8));
+        }
+        cacheDirectory.open(rootDir);
+        return new OverviewStore(rootDir, cacheDirectory);
+    }
+
+    private static synchronized CacheDirectory getCacheDirectory(Path cacheDir, long maxSize) throws IOException {
+        final Path normalizedDir = cacheDir.toAbsolutePath().normalize();
+        CacheDirectory cacheDirectory = CACHE_DIRECTORIES.get(normalizedDir);
+        if (cacheDirectory == null) {
+            cacheDirectory = new CacheDirectory(normalizedDir, maxSize);
+            CACHE_DIRECTORIES.put(normalizedDir, cacheDirectory);
+        }
+        return cacheDirectory;
+    }
+
+    /**
+     * @return The size in bytes of the overviews of all products in the cache directory of this store.
+     */
+    long getTotalSize() {
+        return cacheDirectory.totalSize.get();
+    }
+
+    static String getCacheDirName(String productId) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(productId.getBytes(StandardCharsets.UTF_8))) +
+                    CACHE_DIR_EXTENSION;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Prepares the array of a level of a band. Tiles written with a different layout, e.g. another tile size,
+     * are discarded.
+     *
+     * @param dataType The product data type of the band.
+     */
+    void createLevel(String arrayKey, int level, int width, int height, int tileWidth, int tileHeight,
+                     int dataType, Number fillValue) throws IOException {
+        final Path levelDir = getLevelDir(arrayKey, level);
+        final String metadata = "{\"chunks\": [" + tileHeight + ", " + tileWidth + "], \"compressor\": " +
+                COMPRESSOR_METADATA + "," +
+                " \"dimension_separator\": \"/\", \"dtype\": \"" + getDtype(dataType) + "\"," +
+                " \"fill_value\": " + getFillValue(fillValue) + ", \"filters\": null, \"order\": \"C\"," +
+                " \"shape\": [" + height + ", " + width + "], \"zarr_format\": 2}";
+        final Path metadataFile = levelDir.resolve(".zarray");
+        if (Files.isRegularFile(metadataFile) && Files.readString(metadataFile).equals(metadata)) {
+            return;
+        }
+        if (Files.isDirectory(levelDir)) {
+            cacheDirectory.add(rootDir, -delete(levelDir));
+        }
+        Files.createDirectories(levelDir);
+        writeAtomically(metadataFile, metadata.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return The tile of a level, of the full tile size and in little-endian order, or {@code null} if it has not
+     * been written yet. The tile is decompressed into the buffers of the current thread and only valid until the
+     * thread decompresses its next chunk, see {@link PooledDecompressor}.
+     */
+    ByteBuffer readTile(String arrayKey, int level, int tileX, int tileY) throws IOException {
+        final byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(getTilePath(arrayKey, level, tileX, tileY));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        return PooledDecompressor.get().uncompressBlosc(ByteBuffer.wrap(bytes)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Writes a tile of a level, of the full tile size and in little-endian order. Concurrent writers of the same
+     * tile write the same data, the last one wins. Tiles which would exceed the size bound of the overviews are
+     * not written.
+     */
+    void writeTile(String arrayKey, int level, int tileX, int tileY, ByteBuffer data) throws IOException {
+        final byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2);
+        compressor.compress(new ByteArrayInputStream(bytes), compressed);
+        final Path tilePath = getTilePath(arrayKey, level, tileX, tileY);
+        final long previousSize = Files.isRegularFile(tilePath) ? Files.size(tilePath) : 0;
+        if (!cacheDirectory.reserve(rootDir, compressed.size() - previousSize)) {
+            return;
+        }
+        try {
+            Files.createDirectories(tilePath.getParent());
+            writeAtomically(tilePath, compressed.toByteArray());
+        } catch (IOException e) {
+            cacheDirectory.add(rootDir, previousSize - compressed.size());
+            throw e;
+        }
+    }
+
+    private Path getLevelDir(String arrayKey, int level) {
+        return rootDir.resolve(arrayKey).resolve(String.valueOf(level));
+    }
+
+    private Path getTilePath(String arrayKey, int level, int tileX, int tileY) {
+        return getLevelDir(arrayKey, level).resolve(String.valueOf(tileY)).resolve(String.valueOf(tileX));
+    }
+
+    /**
+     * @return The Zarr version 2 data type of a product data type.
+     */
+    static String getDtype(int dataType) {
+        return switch (dataType) {
+            case ProductData.TYPE_INT8 -> "|i1";
+            case ProductData.TYPE_UINT8 -> "|u1";
+            case ProductData.TYPE_INT16 -> "<i2";
+            case ProductData.TYPE_UINT16 -> "<u2";
+            case ProductData.TYPE_INT32 -> "<i4";
+            case ProductData.TYPE_UINT32 -> "<u4";
+            case ProductData.TYPE_FLOAT32 -> "<f4";
+            case ProductData.TYPE_FLOAT64 -> "<f8";
+            default -> throw new IllegalArgumentException("Unsupported data type " + dataType);
+        };
+    }
+
+    // non-finite fill values are strings in Zarr metadata
+    private static String getFillValue(Number fillValue) {
+        if (fillValue == null) {
+            return "0";
+        }
+        final double value = fillValue.doubleValue();
+        if (Double.isNaN(value)) {
+            return "\"NaN\"";
+        } else if (Double.isInfinite(value)) {
+            return value > 0 ? "\"Infinity\"" : "\"-Infinity\"";
+        }
+        return fillValue.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    // Deletes a directory with its contents and returns the size of the files deleted
+    private static long delete(Path dir) throws IOException {
+        long size = 0;
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                if (Files.isRegularFile(file)) {
+                    size += Files.size(file);
+                }
+                Files.deleteIfExists(file);
+            }
+        }
+        return size;
+    }
+
+    private static void writeAtomically(Path file, byte[] bytes) throws IOException {
+        final Path tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tempFile, bytes);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * The size of the overviews of all products in a cache directory, shared by the stores opened on it.
+     */
+    private static final class CacheDirectory {
+
+        private final Path cacheDir;
+        private final long maxSize;
+        private final Map<Path, AtomicLong> groupSizes = new ConcurrentHashMap<>();
+        private final Set<Path> openedGroups = ConcurrentHashMap.newKeySet();
+        private final AtomicLong totalSize = new AtomicLong();
+        private final ReentrantLock evictionLock = new ReentrantLock();
+
+        private CacheDirectory(Path cacheDir, long maxSize) throws IOException {
+            this.cacheDir = cacheDir;
+            this.maxSize = maxSize;
+            Files.createDirectories(cacheDir);
+            try (DirectoryStream<Path> groups = Files.newDirectoryStream(cacheDir,
+                    path -> Files.isDirectory(path) && path.getFileName().toString().endsWith(CACHE_DIR_EXTENSION))) {
+                for (Path group : groups) {
+                    long size = 0;
+                    try (Stream<Path> files = Files.walk(group)) {
+                        for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                            size += Files.size(file);
+                        }
+                    } catch (IOException e) {
+                        // evicted by another process meanwhile
+                    }
+                    add(group, size);
+                }
+            }
+        }
+
+        // The modification time of the group file is the time the product was last opened
+        private void open(Path group) throws IOException {
+            openedGroups.add(group);
+            groupSizes.computeIfAbsent(group, key -> new AtomicLong());
+            Files.setLastModifiedTime(group.resolve(GROUP_FILE_NAME), FileTime.fromMillis(System.currentTimeMillis()));
+            evictIfNeeded();
+        }
+
+        private void add(Path group, long size) {
+            groupSizes.computeIfAbsent(group, key -> new AtomicLong()).addAndGet(size);
+            totalSize.addAndGet(size);
+        }
+
+        // Accounts for bytes to be written, evicting other groups if needed, unless they cannot be made room for
+        private boolean reserve(Path group, long size) {
+            add(group, size);
+            if (size > 0 && totalSize.get() > maxSize) {
+                evictIfNeeded();
+                if (totalSize.get() > maxSize) {
+                    add(group, -size);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Removes the least recently opened groups until the directory is below the target size. Only one thread
+        // evicts.
+        private void evictIfNeeded() {
+            if (totalSize.get() <= maxSize || !evictionLock.tryLock()) {
+                return;
+            }
+            try {
+                final List<Path> candidates = new ArrayList<>();
+                final Map<Path, Long> openTimes = new HashMap<>();
+                for (Path group : groupSizes.keySet()) {
+                    if (!openedGroups.contains(group)) {
+                        candidates.add(group);
+                        openTimes.put(group, getOpenTime(group));
+                    }
+                }
+                candidates.sort(Comparator.comparingLong(openTimes::get));
+                final long targetSize = (long) (maxSize * EVICTION_TARGET_RATIO);
+                for (Path group : candidates) {
+                    if (totalSize.get() <= targetSize) {
+                        break;
+                    }
+                    try {
+                        delete(group);
+                    } catch (IOException e) {
+                        LOG.fine("Could not evict overviews '" + group + "': " + e.getMessage());
+                        continue;
+                    }
+                    final AtomicLong groupSize = groupSizes.remove(group);
+                    if (groupSize != null) {
+                        totalSize.addAndGet(-groupSize.get());
+                    }
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+
+        private static long getOpenTime(Path group) {
+            try {
+                return Files.getLastModifiedTime(group.resolve(GROUP_FILE_NAME)).toMillis();
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.Compressor;
+import org.blosc.JBlosc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decompresses chunks into buffers kept by the decoding thread and reused for its next chunk, so that decoding
+ * allocates neither the compressed nor the decompressed bytes of a chunk. The buffers of a thread grow to the
+ * largest chunk it has decompressed.
+ * <p>
+ * Blosc frames are decompressed by the native blosc library from and into direct buffers. Blosc undoes the
+ * shuffle of a frame while decompressing it into the target buffer, so the result already holds the elements
+ * in C order. A decompressed chunk is only valid until the thread decompresses its next chunk, it is therefore
+ * copied to its destination by the same decode task.
+ */
+final class PooledDecompressor {
+
+    private static final int BLOSC_HEADER_SIZE = 16;
+    private static final ThreadLocal<PooledDecompressor> DECOMPRESSORS =
+            ThreadLocal.withInitial(PooledDecompressor::new);
+
+    private final PooledOutputStream outputStream = new PooledOutputStream();
+    private ByteBuffer compressed = ByteBuffer.allocateDirect(0);
+    private ByteBuffer uncompressed = ByteBuffer.allocateDirect(0);
+
+    private PooledDecompressor() {
+    }
+
+    /**
+     * @return The decompressor of the current thread.
+     */
+    static PooledDecompressor get() {
+        return DECOMPRESSORS.get();
+    }
+
+    /**
+     * Decompresses a blosc frame.
+     *
+     * @param frame The frame, starting at the position of the buffer.
+     *
+     * @return The decompressed bytes, valid until the next call on this decompressor.
+     */
+    ByteBuffer uncompressBlosc(ByteBuffer frame) throws IOException {
+        if (frame.remaining() < BLOSC_HEADER_SIZE) {
+            throw new IOException("Truncated blosc frame of " + frame.remaining() + " bytes");
+        }
+        final ByteBuffer header = frame.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        final int uncompressedSize = header.getInt(frame.position() + 4);
+        final int compressedSize = header.getInt(frame.position() + 12);
+        if (uncompressedSize < 0 || compressedSize < BLOSC_HEADER_SIZE || compressedSize > frame.remaining()) {
+            throw new IOException("Invalid blosc frame header");
+        }
+        final ByteBuffer source;
+        if (frame.isDirect()) {
+            source = frame.slice(frame.position(), compressedSize);
+        } else {
+            if (compressed.capacity() < compressedSize) {
+                compressed = ByteBuffer.allocateDirect(compressedSize);
+            }
+            source = compressed.clear().put(0, frame, frame.position(), compressedSize).limit(compressedSize);
+        }
+        if (uncompressed.capacity() < uncompressedSize) {
+            uncompressed = ByteBuffer.allocateDirect(uncompressedSize);
+        }
+        final int size;
+        try {
+            size = JBlosc.decompressCtx(source, uncompressed.clear(), uncompressedSize, 1);
+        } catch (RuntimeException e) {
+            throw new IOException("Could not decompress blosc frame: " + e.getMessage(), e);
+        }
+        if (size != uncompressedSize) {
+            throw new IOException("Blosc frame decompressed to " + size + " bytes instead of " + uncompressedSize);
+        }
+        return uncompressed.slice(0, size);
+    }
+
+    /**
+     * Decompresses a stream.
+     *
+     * @param inputStream The compressed stream, closed when read.
+     * @param compressor  The compressor, or {@code null} if the stream is read as it is.
+     *
+     * @return The decompressed bytes, valid until the next call on this decompressor.
+     */
+    ByteBuffer uncompress(InputStream inputStream, Compressor compressor) throws IOException {
+        outputStream.reset();
+        try (InputStream in = inputStream) {
+            if (compressor != null) {
+                compressor.uncompress(in, outputStream);
+            } else {
+                in.transferTo(outputStream);
+            }
+        }
+        return outputStream.toByteBuffer();
+    }
+
+    // Keeps its array on reset, unlike the copy returned by toByteArray
+    private static final class PooledOutputStream extends ByteArrayOutputStream {
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.storage.Store;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * A {@link Store} serving entries which have been read ahead in a batch, e.g. the chunks of several tiles
+ * requested at once. This lets jzarr decode chunks read by a single {@link BatchReadStore#getByteBuffers} call.
+ * <p>
+ * A prefetched entry is handed out once and then dropped; the caller of {@link #prefetch(Collection)} releases
+ * the entries which have not been read. All other operations are delegated to the wrapped store.
+ */
+final class PrefetchStore implements BatchReadStore, RangeReadStore {
+
+    private final Store store;
+    private final Map<String, ByteBuffer> prefetchedEntries = new ConcurrentHashMap<>();
+
+    PrefetchStore(Store store) {
+        this.store = store;
+    }
+
+    /**
+     * Reads the entries of several keys in a batch and keeps them until they are read or released.
+     *
+     * @return The keys of the entries prefetched by this call. Entries already prefetched are not read again.
+     */
+    Collection<String> prefetch(Collection<String> keys) throws IOException {
+        final List<String> missingKeys = keys.stream().filter(key -> !prefetchedEntries.containsKey(key)).toList();
+        final Map<String, ByteBuffer> buffers = BatchReadStore.getByteBuffers(store, missingKeys);
+        prefetchedEntries.putAll(buffers);
+        return buffers.keySet();
+    }
+
+    /**
+     * Drops prefetched entries which have not been read.
+     */
+    void release(Collection<String> keys) {
+        prefetchedEntries.keySet().removeAll(keys);
+    }
+
+    @Override
+    public InputStream getInputStream(String key) throws IOException {
+        final ByteBuffer buffer = prefetchedEntries.remove(key);
+        if (buffer == null) {
+            return store.getInputStream(key);
+        }
+        if (buffer.hasArray()) {
+            return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        return new ByteBufferInputStream(buffer);
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer(String key) throws IOException {
+        final ByteBuffer buffer = prefetchedEntries.remove(key);
+        return buffer != null ? buffer : BatchReadStore.getByteBuffer(store, key);
+    }
+
+    @Override
+    public ByteBuffer getRange(String key, long offset, int length) throws IOException {
+        return RangeReadStore.getRange(store, key, offset, length);
+    }
+
+    @Override
+    public ByteBuffer getSuffix(String key, int length) throws IOException {
+        return RangeReadStore.getSuffix(store, key, length);
+    }
+
+    @Override
+    public Map<String, ByteBuffer> getByteBuffers(Collection<String> keys) throws IOException {
+        return BatchReadStore.getByteBuffers(store, keys);
+    }
+
+    @Override
+    public OutputStream getOutputStream(String key) throws IOException {
+        prefetchedEntries.remove(key);
+        return store.getOutputStream(key);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        prefetchedEntries.remove(key);
+        store.delete(key);
+    }
+
+    @Override
+    public TreeSet<String> getArrayKeys() throws IOException {
+        return store.getArrayKeys();
+    }
+
+    @Override
+    public TreeSet<String> getGroupKeys() throws IOException {
+        return store.getGroupKeys();
+    }
+
+    @Override
+    public TreeSet<String> getKeysEndingWith(String suffix) throws IOException {
+        return store.getKeysEndingWith(suffix);
+    }
+
+    @Override
+    public Stream<String> getRelativeLeafKeys(String key) throws IOException {
+        return store.getRelativeLeafKeys(key);
+    }
+
+    @Override
+    public void close() throws IOException {
+        prefetchedEntries.clear();
+        store.close();
+    }
+}
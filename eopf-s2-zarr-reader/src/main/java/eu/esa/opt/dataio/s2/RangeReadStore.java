@@ -0,0 +1,93 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.storage.Store;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link Store} reading byte ranges of entries without reading the entries as a whole,
+ * e.g. the index and single inner chunks of a Zarr v3 shard.
+ */
+interface RangeReadStore extends Store {
+
+    /**
+     * Reads a byte range of an entry.
+     *
+     * @param key    The key of the entry.
+     * @param offset The offset of the range in the entry.
+     * @param length The length of the range.
+     *
+     * @return The bytes of the range, or {@code null} if there is no entry for the key.
+     *
+     * @throws EOFException If the range exceeds the entry.
+     */
+    ByteBuffer getRange(String key, long offset, int length) throws IOException;
+
+    /**
+     * Reads the last bytes of an entry.
+     *
+     * @param key    The key of the entry.
+     * @param length The number of bytes to read.
+     *
+     * @return The last {@code length} bytes of the entry, or {@code null} if there is no entry for the key.
+     *
+     * @throws EOFException If the entry is shorter than {@code length}.
+     */
+    ByteBuffer getSuffix(String key, int length) throws IOException;
+
+    /**
+     * Reads a byte range of an entry from any store, reading only the range if the store supports it.
+     *
+     * @return The bytes of the range, or {@code null} if there is no entry for the key.
+     */
+    static ByteBuffer getRange(Store store, String key, long offset, int length) throws IOException {
+        if (store instanceof RangeReadStore) {
+            return ((RangeReadStore) store).getRange(key, offset, length);
+        }
+        try (InputStream inputStream = store.getInputStream(key)) {
+            if (inputStream == null) {
+                return null;
+            }
+            inputStream.skipNBytes(offset);
+            final byte[] bytes = inputStream.readNBytes(length);
+            if (bytes.length < length) {
+                throw new EOFException("Range exceeds entry '" + key + "'");
+            }
+            return ByteBuffer.wrap(bytes);
+        }
+    }
+
+    /**
+     * Reads the last bytes of an entry from any store, reading only these bytes if the store supports it.
+     *
+     * @return The last {@code length} bytes of the entry, or {@code null} if there is no entry for the key.
+     */
+    static ByteBuffer getSuffix(Store store, String key, int length) throws IOException {
+        if (store instanceof RangeReadStore) {
+            return ((RangeReadStore) store).getSuffix(key, length);
+        }
+        try (InputStream inputStream = store.getInputStream(key)) {
+            if (inputStream == null) {
+                return null;
+            }
+            final byte[] bytes = inputStream.readAllBytes();
+            if (bytes.length < length) {
+                throw new EOFException("Entry '" + key + "' is shorter than " + length + " bytes");
+            }
+            return ByteBuffer.wrap(bytes, bytes.length - length, length).slice();
+        }
+    }
+
+    /**
+     * @return The range of a buffer holding a whole entry.
+     */
+    static ByteBuffer slice(ByteBuffer entry, String key, long offset, int length) throws EOFException {
+        if (offset < 0 || offset + length > entry.remaining()) {
+            throw new EOFException("Range exceeds entry '" + key + "'");
+        }
+        return entry.slice(entry.position() + (int) offset, length);
+    }
+}
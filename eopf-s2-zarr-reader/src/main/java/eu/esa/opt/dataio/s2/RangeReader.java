@@ -0,0 +1,39 @@
+package eu.esa.opt.dataio.s2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Random access to the bytes of a single resource, e.g. a local file.
+ * Implementations must allow concurrent calls to {@link #readFully(ByteBuffer, long)}.
+ */
+interface RangeReader extends Closeable {
+
+    /**
+     * @return The total number of bytes of the resource.
+     */
+    long size() throws IOException;
+
+    /**
+     * Reads bytes starting at the given position until the buffer has no remaining space.
+     *
+     * @param buffer   The buffer to fill.
+     * @param position The position of the first byte to read.
+     *
+     * @throws java.io.EOFException If the end of the resource is reached before the buffer is filled.
+     */
+    void readFully(ByteBuffer buffer, long position) throws IOException;
+
+    /**
+     * Provides a read-only view of a range without copying it, if the implementation supports this.
+     *
+     * @param position The position of the first byte of the range.
+     * @param length   The length of the range.
+     *
+     * @return A view of the range, or {@code null} if no view can be provided for it.
+     */
+    default ByteBuffer view(long position, int length) throws IOException {
+        return null;
+    }
+}
@@ -0,0 +1,89 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.ceres.multilevel.MultiLevelModel;
+import com.bc.ceres.multilevel.MultiLevelSource;
+import com.bc.ceres.multilevel.support.AbstractMultiLevelSource;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.image.ImageManager;
+import org.esa.snap.core.image.ResolutionLevel;
+import org.esa.snap.core.image.SingleBandedOpImage;
+
+import javax.media.jai.PlanarImage;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.esa.snap.core.util.SystemUtils.LOG;
+
+/**
+ * An image of angles on an image grid, e.g. the sun zenith angles at 10 m, interpolated tile by tile from an
+ * {@link AngleGrid}, so that only the tiles in use are computed and the full-size raster is never materialised.
+ */
+final class S2ZarrAngleOpImage extends SingleBandedOpImage {
+
+    private final RasterDataNode rasterDataNode;
+    private final AngleGrid angleGrid;
+
+    /**
+     * Constructor.
+     *
+     * @param rasterDataNode The band, of type float32.
+     * @param tileSize       The size of the tiles.
+     * @param level          The resolution level.
+     * @param angleGrid      The angles, located in the pixel coordinates of the full resolution of the band.
+     */
+    S2ZarrAngleOpImage(RasterDataNode rasterDataNode, Dimension tileSize, ResolutionLevel level, AngleGrid angleGrid) {
+        super(ImageManager.getDataBufferType(rasterDataNode.getDataType()),
+                rasterDataNode.getRasterWidth(), rasterDataNode.getRasterHeight(), tileSize, null, level);
+        this.rasterDataNode = rasterDataNode;
+        this.angleGrid = angleGrid;
+    }
+
+    /**
+     * @return The levels of a band of angles.
+     */
+    static MultiLevelSource createMultiLevelSource(RasterDataNode rasterDataNode, Dimension tileSize,
+                                                   MultiLevelModel model, AngleGrid angleGrid) {
+        return new AbstractMultiLevelSource(model) {
+            @Override
+            protected RenderedImage createImage(int level) {
+                return new S2ZarrAngleOpImage(rasterDataNode, tileSize, ResolutionLevel.create(getModel(), level),
+                        angleGrid);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        String className = getClass().getSimpleName();
+        String productName = "";
+        if (rasterDataNode.getProduct() != null) {
+            productName = ":" + rasterDataNode.getProduct().getName();
+        }
+        String bandName = "." + rasterDataNode.getName();
+        return className + productName + bandName + "@" + getLevel().getIndex();
+    }
+
+    @Override
+    protected void computeRect(PlanarImage[] sourceImages, WritableRaster tile, Rectangle destRect) {
+        final double scale = getScale();
+        final float[] samples = new float[destRect.width * destRect.height];
+        try {
+            for (int y = 0; y < destRect.height; y++) {
+                // the centre of the pixel in pixel coordinates of the full resolution
+                final double fullY = (destRect.y + y + 0.5) * scale;
+                for (int x = 0; x < destRect.width; x++) {
+                    final double fullX = (destRect.x + x + 0.5) * scale;
+                    samples[y * destRect.width + x] = (float) angleGrid.interpolate(fullX, fullY);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warning("Could not read the angles of " + this + ": " + e.getMessage());
+            Arrays.fill(samples, Float.NaN);
+        }
+        tile.setSamples(destRect.x, destRect.y, destRect.width, destRect.height, 0, samples);
+    }
+}
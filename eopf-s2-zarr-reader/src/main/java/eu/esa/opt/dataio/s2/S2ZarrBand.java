@@ -0,0 +1,31 @@
+package eu.esa.opt.dataio.s2;
+
+import org.esa.snap.core.datamodel.Band;
+
+import java.awt.image.RenderedImage;
+import java.util.function.Supplier;
+
+/**
+ * A band whose image is created on first use, so that opening a product only declares its bands from the
+ * metadata of the arrays, and images, prefetchers and chunk statistics exist for the bands in use only.
+ */
+final class S2ZarrBand extends Band {
+
+    private Supplier<RenderedImage> sourceImageFactory;
+
+    S2ZarrBand(String name, int dataType, int width, int height) {
+        super(name, dataType, width, height);
+    }
+
+    void setSourceImageFactory(Supplier<RenderedImage> sourceImageFactory) {
+        this.sourceImageFactory = sourceImageFactory;
+    }
+
+    @Override
+    protected RenderedImage createSourceImage() {
+        if (sourceImageFactory != null) {
+            return sourceImageFactory.get();
+        }
+        return super.createSourceImage();
+    }
+}
@@ -10,9 +10,13 @@ final class S2ZarrConstants {
 
     static final String AUTO_GROUPING =
             "atmosphere:cams:classification:detector_footprint:ecmwf:geometry:probability:quicklook:" +
-            "mask:reflectance";
+            "mask:reflectance:angles";
     static final String ZARR_FILE_EXTENSION = ".zarr";
     static final String ZIP_CONTAINER_EXTENSION = ".zarr.zip";
+    static final String DIMENSION_SEPARATOR_NAME = "dimension_separator";
+    static final String DEFAULT_DIMENSION_SEPARATOR = ".";
+    static final String CONSOLIDATED_METADATA_KEY = ".zmetadata";
+    static final String ZARR_JSON_KEY = "zarr.json";
     static final String FORMAT_NAME = "Sentinel-2 ZARR Multi-Res";
     static final Class<?>[] IO_TYPES = new Class[]{
             Path.class,
@@ -27,6 +31,52 @@ final class S2ZarrConstants {
 
     static final List<String> RESOLUTIONS = Arrays.asList("r10m", "r20m", "r60m");
 
+    // Configuration properties, set in the SNAP configuration or as system properties
+    static final String PROPERTY_KEY_ZIP_MEMORY_MAPPED = "snap.dataio.s2zarr.zip.memoryMapped";
+    static final String PROPERTY_KEY_ZIP_INDEX_CACHE = "snap.dataio.s2zarr.zip.indexCache";
+    static final String PROPERTY_KEY_READ_COALESCING_MAX_GAP = "snap.dataio.s2zarr.read.coalescingMaxGap";
+    static final String PROPERTY_KEY_READ_COALESCING_MAX_SIZE = "snap.dataio.s2zarr.read.coalescingMaxSize";
+    static final String PROPERTY_KEY_READ_MAX_CONCURRENT_FETCHES = "snap.dataio.s2zarr.read.maxConcurrentFetches";
+    static final String PROPERTY_KEY_DECODE_THREADS = "snap.dataio.s2zarr.decode.threads";
+    static final String PROPERTY_KEY_CHUNK_CACHE_MAX_SIZE = "snap.dataio.s2zarr.chunkCache.maxSizeMB";
+    static final String PROPERTY_KEY_CHUNK_CACHE_LOCAL = "snap.dataio.s2zarr.chunkCache.local";
+    static final String PROPERTY_KEY_TILE_SIZE = "snap.dataio.s2zarr.tileSize";
+    static final String PROPERTY_KEY_DECODED_CHUNK_CACHE_MAX_SIZE = "snap.dataio.s2zarr.decodedChunkCache.maxSizeMB";
+    static final String PROPERTY_KEY_DECODED_CHUNK_CACHE_OFF_HEAP = "snap.dataio.s2zarr.decodedChunkCache.offHeap";
+    static final String PROPERTY_KEY_CHUNK_STATISTICS = "snap.dataio.s2zarr.chunkStatistics";
+    static final String PROPERTY_KEY_PYRAMID_STORED_LEVELS = "snap.dataio.s2zarr.pyramid.storedLevels";
+    static final String PROPERTY_KEY_PYRAMID_OVERVIEWS = "snap.dataio.s2zarr.pyramid.overviews";
+    static final String PROPERTY_KEY_PYRAMID_OVERVIEWS_MAX_SIZE = "snap.dataio.s2zarr.pyramid.overviewsMaxSizeMB";
+    static final String PROPERTY_KEY_QUICKLOOK_CACHE = "snap.dataio.s2zarr.quicklook.cache";
+    static final String PROPERTY_KEY_RESAMPLING = "snap.dataio.s2zarr.resampling";
+    static final String PROPERTY_KEY_ANGLE_BANDS = "snap.dataio.s2zarr.angleBands";
+    static final String PROPERTY_KEY_DETECTOR_ANGLE_BANDS = "snap.dataio.s2zarr.detectorAngleBands";
+    static final String PROPERTY_KEY_LAZY_BANDS = "snap.dataio.s2zarr.lazyBands";
+    static final String PROPERTY_KEY_S3_ENDPOINT = "snap.dataio.s2zarr.s3.endpoint";
+    static final String PROPERTY_KEY_S3_REGION = "snap.dataio.s2zarr.s3.region";
+    static final String PROPERTY_KEY_S3_MAX_CONNECTIONS = "snap.dataio.s2zarr.s3.maxConnections";
+
+    static final int DEFAULT_READ_COALESCING_MAX_GAP = 64 * 1024;
+    static final int DEFAULT_READ_COALESCING_MAX_SIZE = 16 * 1024 * 1024;
+    static final int DEFAULT_READ_MAX_CONCURRENT_FETCHES = 64;
+    static final String DEFAULT_S3_REGION = "us-east-1";
+    static final int DEFAULT_S3_MAX_CONNECTIONS = 32;
+    static final int DEFAULT_TILE_SIZE = 512;
+
+    static final String RESAMPLE_NONE = "none";
+    static final String RESAMPLE_NEAREST = "nearest";
+    static final String RESAMPLE_BILINEAR = "bilinear";
+
+    static final String CACHE_DIR_NAME = "s2zarr";
+    static final String ZIP_INDEX_CACHE_DIR_NAME = "zip-index";
+    static final String CHUNK_CACHE_DIR_NAME = "chunks";
+    static final String CHUNK_STATISTICS_DIR_NAME = "chunk-statistics";
+    static final String OVERVIEW_DIR_NAME = "overviews";
+    static final String QUICKLOOK_DIR_NAME = "quicklooks";
+    static final long DEFAULT_CHUNK_CACHE_MAX_SIZE_MB = 4096;
+    static final long DEFAULT_DECODED_CHUNK_CACHE_MAX_SIZE_MB = 1024;
+    static final long DEFAULT_OVERVIEWS_MAX_SIZE_MB = 2048;
+
     static final String RGB_10M_IMAGE_PROFILE_NAME = "Sentinel-2 Zarr (10m)";
     static final String RGB_20M_IMAGE_PROFILE_NAME = "Sentinel-2 Zarr (20m)";
     static final String RGB_60M_IMAGE_PROFILE_NAME = "Sentinel-2 Zarr (60m)";
@@ -49,6 +99,9 @@ final class S2ZarrConstants {
     static final String FILL_VALUE_ATTRIBUTES_NAME = "fill_value";
     static final String EOPF_ATTRS_ATTRIBUTES_NAME = "_eopf_attrs";
 
+    // Arrays of coordinates, which are neither bands nor metadata
+    static final List<String> COORDINATE_NAMES = List.of("x", "y", "longitude", "latitude", "detector", "band");
+
     static final String[] SUN_ANGLES_LIST = new String[]{"sun_zenith", "sun_azimuth"};
 
     static final String[] VIEWING_ANGLES_BAND_LIST = new String[]{
@@ -59,6 +112,10 @@ final class S2ZarrConstants {
     };
     static final String[] VIEWING_ANGLES_ANGLE_LIST = new String[]{"view_zenith", "view_azimuth"};
 
+    static final String SUN_ANGLES_ARRAY_NAME = "sun_angles";
+    static final String VIEWING_ANGLES_ARRAY_NAME = "viewing_incidence_angles";
+    static final String ANGLES_GROUP_NAME = "angles";
+
     static final String QUICKLOOK_BAND_NAME = "quicklook";
     static final String[] QUICKLOOK_BAND_LIST = new String[]{"1", "2", "3"};
 
@@ -0,0 +1,128 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.ceres.multilevel.MultiLevelModel;
+import com.bc.ceres.multilevel.MultiLevelSource;
+import com.bc.ceres.multilevel.support.AbstractMultiLevelSource;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.image.ImageManager;
+import org.esa.snap.core.image.ResolutionLevel;
+import org.esa.snap.core.image.SingleBandedOpImage;
+
+import javax.media.jai.PlanarImage;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.esa.snap.core.util.SystemUtils.LOG;
+
+/**
+ * An image of a viewing angle of a spectral band, resolved by detector: each pixel takes the angle interpolated
+ * from the angle grid of the detector which recorded it, as given by the detector footprint of the band. Each tile
+ * reads the matching tile of the footprint, and the grids of the detectors are read on first use, so that a
+ * single image replaces the bands of all detectors and their combination.
+ */
+final class S2ZarrDetectorAngleOpImage extends SingleBandedOpImage {
+
+    private final RasterDataNode rasterDataNode;
+    private final RenderedImage footprintImage;
+    private final AngleGrid[] detectorGrids;
+
+    /**
+     * Constructor.
+     *
+     * @param rasterDataNode The band, of type float32 and of the size of the footprint.
+     * @param tileSize       The size of the tiles, i.e. of the tiles of the footprint.
+     * @param level          The resolution level.
+     * @param footprintImage The detector footprint at the resolution level.
+     * @param detectorGrids  The angle grids indexed by detector number, {@code null} for detectors without one.
+     */
+    S2ZarrDetectorAngleOpImage(RasterDataNode rasterDataNode, Dimension tileSize, ResolutionLevel level,
+                               RenderedImage footprintImage, AngleGrid[] detectorGrids) {
+        super(ImageManager.getDataBufferType(rasterDataNode.getDataType()),
+                rasterDataNode.getRasterWidth(), rasterDataNode.getRasterHeight(), tileSize, null, level);
+        this.rasterDataNode = rasterDataNode;
+        this.footprintImage = footprintImage;
+        this.detectorGrids = detectorGrids;
+    }
+
+    /**
+     * @param footprint The detector footprint band, whose levels are used for the levels of the angles.
+     *
+     * @return The levels of a band of detector-resolved angles.
+     */
+    static MultiLevelSource createMultiLevelSource(RasterDataNode rasterDataNode, RasterDataNode footprint,
+                                                   MultiLevelModel model, AngleGrid[] detectorGrids) {
+        return new AbstractMultiLevelSource(model) {
+            @Override
+            protected RenderedImage createImage(int level) {
+                // the footprint image is created on first use of the angles
+                final RenderedImage footprintImage = footprint.getSourceImage().getImage(0);
+                final Dimension tileSize = new Dimension(footprintImage.getTileWidth(), footprintImage.getTileHeight());
+                return new S2ZarrDetectorAngleOpImage(rasterDataNode, tileSize, ResolutionLevel.create(getModel(), level),
+                        footprint.getSourceImage().getImage(level), detectorGrids);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        String className = getClass().getSimpleName();
+        String productName = "";
+        if (rasterDataNode.getProduct() != null) {
+            productName = ":" + rasterDataNode.getProduct().getName();
+        }
+        String bandName = "." + rasterDataNode.getName();
+        return className + productName + bandName + "@" + getLevel().getIndex();
+    }
+
+    @Override
+    protected void computeRect(PlanarImage[] sourceImages, WritableRaster tile, Rectangle destRect) {
+        final float[] samples = new float[destRect.width * destRect.height];
+        Arrays.fill(samples, Float.NaN);
+        // levels of the footprint may be rounded differently
+        final Rectangle footprintRect = destRect.intersection(new Rectangle(footprintImage.getMinX(),
+                footprintImage.getMinY(), footprintImage.getWidth(), footprintImage.getHeight()));
+        if (!footprintRect.isEmpty()) {
+            final int[] detectors = footprintImage.getData(footprintRect).getSamples(footprintRect.x, footprintRect.y,
+                    footprintRect.width, footprintRect.height, 0, (int[]) null);
+            try {
+                computeAngles(detectors, footprintRect, samples, destRect, getScale(), detectorGrids);
+            } catch (IOException e) {
+                LOG.warning("Could not read the angles of " + this + ": " + e.getMessage());
+                Arrays.fill(samples, Float.NaN);
+            }
+        }
+        tile.setSamples(destRect.x, destRect.y, destRect.width, destRect.height, 0, samples);
+    }
+
+    /**
+     * Sets the angles of the pixels of a footprint region, each from the grid of its detector. Pixels without a
+     * detector or of a detector without a grid are left as they are.
+     *
+     * @param detectors     The detector footprint of the region.
+     * @param footprintRect The region of the footprint, within the destination region.
+     * @param samples       The angles of the destination region.
+     * @param destRect      The destination region.
+     * @param scale         The scale of the resolution level.
+     * @param detectorGrids The angle grids indexed by detector number, {@code null} for detectors without one.
+     */
+    static void computeAngles(int[] detectors, Rectangle footprintRect, float[] samples, Rectangle destRect,
+                              double scale, AngleGrid[] detectorGrids) throws IOException {
+        for (int y = 0; y < footprintRect.height; y++) {
+            // the centre of the pixel in pixel coordinates of the full resolution
+            final double fullY = (footprintRect.y + y + 0.5) * scale;
+            for (int x = 0; x < footprintRect.width; x++) {
+                final int detector = detectors[y * footprintRect.width + x];
+                if (detector < 0 || detector >= detectorGrids.length || detectorGrids[detector] == null) {
+                    continue;
+                }
+                final double fullX = (footprintRect.x + x + 0.5) * scale;
+                samples[(footprintRect.y - destRect.y + y) * destRect.width + footprintRect.x - destRect.x + x] =
+                        (float) detectorGrids[detector].interpolate(fullX, fullY);
+            }
+        }
+    }
+}
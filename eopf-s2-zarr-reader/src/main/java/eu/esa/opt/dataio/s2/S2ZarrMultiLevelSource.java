@@ -0,0 +1,97 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.ceres.multilevel.MultiLevelModel;
+import com.bc.ceres.multilevel.support.AbstractMultiLevelSource;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.image.ResolutionLevel;
+
+import javax.media.jai.Interpolation;
+import javax.media.jai.operator.ScaleDescriptor;
+import java.awt.Dimension;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+
+import static org.esa.snap.core.util.SystemUtils.LOG;
+
+/**
+ * A multi-level source of a band which is stored at several resolutions, such as {@code b02} at r10m, r20m and
+ * r60m. Each level is served from the coarsest stored image which is at least as fine as the level, scaled down by
+ * the ratio of their resolutions, so that an overview only reads the chunks of the coarsest resolution.
+ * As levels are powers of two, the r20m image is level 1 as it is, and the r60m image serves levels 3 and above.
+ * <p>
+ * Levels which would be computed from the full resolution, e.g. all levels of bands stored at one resolution only,
+ * can be persisted overviews instead, see {@link S2ZarrOverviewOpImage}.
+ */
+final class S2ZarrMultiLevelSource extends AbstractMultiLevelSource {
+
+    private final RenderedImage[] storedImages;
+    private final int[] storedFactors;
+    private final RasterDataNode rasterDataNode;
+    private final String arrayKey;
+    private final OverviewStore overviewStore;
+
+    /**
+     * Constructor.
+     *
+     * @param model         The model of the levels, of powers of two.
+     * @param storedImages  The stored images, the first one being the image at full resolution.
+     * @param storedFactors The ratios of the resolutions of the stored images to the full resolution, e.g. 1, 2, 6.
+     *                      The images must be of the size of the full resolution image divided by these.
+     */
+    S2ZarrMultiLevelSource(MultiLevelModel model, RenderedImage[] storedImages, int[] storedFactors) {
+        this(model, storedImages, storedFactors, null, null, null);
+    }
+
+    /**
+     * Constructor for a source with persisted overviews.
+     *
+     * @param rasterDataNode The band.
+     * @param arrayKey       The key of the full resolution array of the band.
+     * @param overviewStore  The store of the overviews of the product, or {@code null} to not persist overviews.
+     */
+    S2ZarrMultiLevelSource(MultiLevelModel model, RenderedImage[] storedImages, int[] storedFactors,
+                           RasterDataNode rasterDataNode, String arrayKey, OverviewStore overviewStore) {
+        super(model);
+        this.storedImages = storedImages;
+        this.storedFactors = storedFactors;
+        this.rasterDataNode = rasterDataNode;
+        this.arrayKey = arrayKey;
+        this.overviewStore = overviewStore;
+    }
+
+    @Override
+    protected RenderedImage createImage(int level) {
+        final int levelFactor = 1 << level;
+        final int index = getStoredImageIndex(storedFactors, levelFactor);
+        if (storedFactors[index] == levelFactor) {
+            return storedImages[index];
+        }
+        if (index == 0 && overviewStore != null) {
+            final RenderedImage fullResolutionImage = storedImages[0];
+            try {
+                return new S2ZarrOverviewOpImage(rasterDataNode,
+                        new Dimension(fullResolutionImage.getTileWidth(), fullResolutionImage.getTileHeight()),
+                        ResolutionLevel.create(getModel(), level), getImage(level - 1), overviewStore, arrayKey);
+            } catch (IOException e) {
+                LOG.warning("Could not create overview level " + level + " of " + rasterDataNode.getName() + ": " +
+                        e.getMessage());
+            }
+        }
+        final float scale = (float) storedFactors[index] / levelFactor;
+        return ScaleDescriptor.create(storedImages[index], scale, scale, 0.0f, 0.0f,
+                Interpolation.getInstance(Interpolation.INTERP_NEAREST), null);
+    }
+
+    /**
+     * @return The index of the coarsest stored image which is at least as fine as a level.
+     */
+    static int getStoredImageIndex(int[] storedFactors, int levelFactor) {
+        int index = 0;
+        for (int i = 1; i < storedFactors.length; i++) {
+            if (storedFactors[i] <= levelFactor && storedFactors[i] > storedFactors[index]) {
+                index = i;
+            }
+        }
+        return index;
+    }
+}
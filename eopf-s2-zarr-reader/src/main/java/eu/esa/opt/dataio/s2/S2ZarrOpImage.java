@@ -9,17 +9,30 @@ import org.esa.snap.core.image.ImageManager;
 import org.esa.snap.core.image.ResolutionLevel;
 import org.esa.snap.core.image.SingleBandedOpImage;
 import org.esa.snap.core.util.ImageUtils;
-import ucar.ma2.InvalidRangeException;
 
 import javax.media.jai.PlanarImage;
 import java.awt.Dimension;
+import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.esa.snap.core.util.SystemUtils.LOG;
 
 /**
- * A class to derive an {@code OpImage} from a {@code ZarrArray}.
- * The ZarrArray may be multidimensional,
+ * A class to derive an {@code OpImage} from a {@code ZarrArray}, or from a Zarr version 3 array.
+ * The array may be multidimensional,
  * in which case dimension indices must be specified for the non-spatial dimensions.
  *
  * @author Tonio Fincke
@@ -30,8 +43,12 @@ import java.io.IOException;
 public class S2ZarrOpImage extends SingleBandedOpImage {
 
     private final RasterDataNode rasterDataNode;
-    private final ZarrArray arrayDataReader;
+    private final ZarrArrayReader arrayDataReader;
     private final int[] additionalIndices;
+    private final TilePrefetcher tilePrefetcher;
+    private final Class<?> elementsType;
+    private final Map<Point, PendingTile> pendingTiles = new ConcurrentHashMap<>();
+    private volatile WritableRaster fillTile;
 
     /**
      * Constructor.
@@ -42,13 +59,27 @@ public class S2ZarrOpImage extends SingleBandedOpImage {
      * @see ResolutionLevel#create(MultiLevelModel, int)
      */
     public S2ZarrOpImage(RasterDataNode rasterDataNode, int[] shape, int[] chunks, int[] additionalIndices, ZarrArray reader, ResolutionLevel level) {
+        this(rasterDataNode, shape, chunks, additionalIndices, ZarrArrayReader.of(reader), level, null);
+    }
+
+    /**
+     * Constructor for images with tiles of any size, which may fetch the chunks of their tiles through a prefetcher.
+     *
+     * @param tileSize       The height and width of the tiles, e.g. of the chunks of the array.
+     * @param tilePrefetcher The prefetcher for the chunks of the array, or {@code null} to let the reader fetch them.
+     *                       Only applicable if the tiles are the chunks of the array.
+     */
+    S2ZarrOpImage(RasterDataNode rasterDataNode, int[] shape, int[] tileSize, int[] additionalIndices, ZarrArrayReader reader,
+                  ResolutionLevel level, TilePrefetcher tilePrefetcher) {
         super(ImageManager.getDataBufferType(rasterDataNode.getDataType()),
                 shape[1], shape[0],
-                new Dimension(chunks[1], chunks[0]),
+                new Dimension(tileSize[1], tileSize[0]),
                 null, level);
         this.rasterDataNode = rasterDataNode;
         this.arrayDataReader = reader;
         this.additionalIndices = additionalIndices;
+        this.tilePrefetcher = tilePrefetcher;
+        this.elementsType = ProductData.createInstance(rasterDataNode.getDataType(), 0).getElems().getClass();
     }
 
     @Override
@@ -62,26 +93,250 @@ public class S2ZarrOpImage extends SingleBandedOpImage {
         return className + productName + bandName;
     }
 
+    /**
+     * Starts reading all requested tiles which are not cached before computing the tiles, so that their chunks are
+     * fetched concurrently and the computation of each tile only waits for its decoded data.
+     * If a prefetcher is set, the chunks are fetched in a single batch.
+     */
     @Override
-    protected void computeRect(PlanarImage[] sourceImages, WritableRaster tile, Rectangle destRect) {
-        ProductData productData;
-        boolean directMode = tile.getDataBuffer().getSize() == destRect.width * destRect.height;
-        if (directMode) {
-            productData = ProductData.createInstance(rasterDataNode.getDataType(),
-                    ImageUtils.getPrimitiveArray(tile.getDataBuffer()));
-        } else {
-            productData = ProductData.createInstance(rasterDataNode.getDataType(),
-                    destRect.width * destRect.height);
+    public Raster[] getTiles(Point[] tileIndices) {
+        final TileReads tileReads = startTileReads(tileIndices);
+        try {
+            return super.getTiles(tileIndices);
+        } finally {
+            finishTileReads(tileReads);
         }
+    }
 
+    @Override
+    public Raster getData(Rectangle region) {
+        final TileReads tileReads = startTileReads(getTileIndices(region));
         try {
-            computeProductData(productData, destRect);
+            return super.getData(region);
+        } finally {
+            finishTileReads(tileReads);
+        }
+    }
+
+    private record TileReads(List<Point> tileIndices, CompletableFuture<Collection<String>> prefetch) {
+    }
+
+    private record PendingTile(WritableRaster raster, CompletableFuture<Void> read) {
+    }
+
+    /**
+     * The position of a region in the primitive array of a data buffer.
+     *
+     * @param array          The primitive array.
+     * @param offset         The index of the first sample of the region.
+     * @param scanlineStride The distance between the first samples of two consecutive lines.
+     */
+    private record BufferRegion(Object array, int offset, int scanlineStride) {
+    }
+
+    private TileReads startTileReads(Point[] tileIndices) {
+        if (tileIndices == null || tileIndices.length < 2) {
+            return null;
+        }
+        final List<Point> uncachedTileIndices = new ArrayList<>();
+        for (Point tileIndex : tileIndices) {
+            if (getTileFromCache(tileIndex.x, tileIndex.y) == null && !pendingTiles.containsKey(tileIndex) &&
+                    !isEmpty(getTileRect(tileIndex.x, tileIndex.y))) {
+                uncachedTileIndices.add(tileIndex);
+            }
+        }
+        if (uncachedTileIndices.size() < 2) {
+            return null;
+        }
+        final CompletableFuture<Collection<String>> prefetch = prefetch(uncachedTileIndices);
+        final List<Point> pendingTileIndices = new ArrayList<>();
+        for (Point tileIndex : uncachedTileIndices) {
+            final WritableRaster raster = createTile(tileIndex.x, tileIndex.y);
+            final Rectangle tileRect = getTileRect(tileIndex.x, tileIndex.y);
+            final BufferRegion bufferRegion = getBufferRegion(raster, tileRect);
+            if (bufferRegion != null) {
+                pendingTiles.put(tileIndex, new PendingTile(raster, readAsync(bufferRegion, tileRect, prefetch)));
+                pendingTileIndices.add(tileIndex);
+            }
+        }
+        return new TileReads(pendingTileIndices, prefetch);
+    }
+
+    // Tiles computed from another request, or not at all, are dropped here
+    private void finishTileReads(TileReads tileReads) {
+        if (tileReads != null) {
+            for (Point tileIndex : tileReads.tileIndices()) {
+                pendingTiles.remove(tileIndex);
+            }
+            release(tileReads.prefetch());
+        }
+    }
+
+    private CompletableFuture<Collection<String>> prefetch(List<Point> tileIndices) {
+        if (tilePrefetcher == null) {
+            return null;
+        }
+        return ChunkPipeline.fetch(() -> tilePrefetcher.prefetch(tileIndices)).exceptionally(e -> {
+            // the chunks are read tile by tile then
+            LOG.fine("Could not prefetch tiles of " + this + ": " + e.getMessage());
+            return List.of();
+        });
+    }
+
+    private void release(CompletableFuture<Collection<String>> prefetch) {
+        if (prefetch != null) {
+            prefetch.thenAccept(tilePrefetcher::release);
+        }
+    }
+
+    /**
+     * Returns the region of a raster in its data buffer if it can be read into directly, i.e. if the raster has a
+     * single bank with one sample per pixel of the data type of the band, including edge tiles and child rasters.
+     */
+    private BufferRegion getBufferRegion(WritableRaster raster, Rectangle region) {
+        final DataBuffer dataBuffer = raster.getDataBuffer();
+        if (!(raster.getSampleModel() instanceof ComponentSampleModel sampleModel) ||
+                sampleModel.getPixelStride() != 1 || sampleModel.getNumBands() != 1 || dataBuffer.getNumBanks() != 1) {
+            return null;
+        }
+        final Object array = ImageUtils.getPrimitiveArray(dataBuffer);
+        if (array.getClass() != elementsType) {
+            return null;
+        }
+        final int offset = dataBuffer.getOffset() + sampleModel.getOffset(
+                region.x - raster.getSampleModelTranslateX(), region.y - raster.getSampleModelTranslateY());
+        return new BufferRegion(array, offset, sampleModel.getScanlineStride());
+    }
+
+    /**
+     * Reads a region. If the chunks of the region are prefetched, the region is decoded on a decode thread once they
+     * have arrived, otherwise the reader fetches and decodes the chunks itself. The chunks are copied straight to
+     * the lines of the region in the buffer.
+     */
+    private CompletableFuture<Void> readAsync(BufferRegion bufferRegion, Rectangle region,
+                                              CompletableFuture<Collection<String>> prefetch) {
+        final int[] bufferShape = getBufferShape(region);
+        final int[] offset = getOffset(region);
+        final Object buffer = bufferRegion.array();
+        final int bufferOffset = bufferRegion.offset();
+        final int rowStride = bufferRegion.scanlineStride();
+        if (prefetch == null) {
+            return arrayDataReader.readAsync(buffer, bufferOffset, rowStride, bufferShape, offset);
+        }
+        if (arrayDataReader instanceof ChunkedArrayReader) {
+            return prefetch.thenCompose(keys ->
+                    arrayDataReader.readAsync(buffer, bufferOffset, rowStride, bufferShape, offset));
+        }
+        return ChunkPipeline.decode(prefetch, keys ->
+                ChunkPipeline.join(arrayDataReader.readAsync(buffer, bufferOffset, rowStride, bufferShape, offset)));
+    }
+
+    private int[] getBufferShape(Rectangle region) {
+        final int fullDimSize = additionalIndices.length + 2;
+        final int[] bufferShape = new int[fullDimSize];
+        Arrays.fill(bufferShape, 1);
+        bufferShape[fullDimSize - 2] = region.height;
+        bufferShape[fullDimSize - 1] = region.width;
+        return bufferShape;
+    }
+
+    private int[] getOffset(Rectangle region) {
+        final int fullDimSize = additionalIndices.length + 2;
+        final int[] offset = Arrays.copyOf(additionalIndices, fullDimSize);
+        offset[fullDimSize - 2] = region.y;
+        offset[fullDimSize - 1] = region.x;
+        return offset;
+    }
+
+    // A region is empty if none of its chunks is stored or holds valid samples, which is only known for chunked
+    // arrays in listable stores or with chunk statistics
+    private boolean isEmpty(Rectangle region) {
+        return arrayDataReader instanceof ChunkedArrayReader chunkedArray &&
+                chunkedArray.isFillOnly(getBufferShape(region), getOffset(region));
+    }
+
+    /**
+     * Returns the tiles which consist of the fill value only, as their chunks are not stored or are summarized as
+     * such in the chunk statistics, as a bitmap over the tile grid in row-major order, i.e. with bit
+     * {@code tileY * getNumXTiles() + tileX} set for an empty tile.
+     *
+     * @return The bitmap, or {@code null} if neither the stored chunks nor chunk statistics are known.
+     */
+    public BitSet getEmptyTiles() {
+        if (!(arrayDataReader instanceof ChunkedArrayReader chunkedArray) ||
+                chunkedArray.getMissingChunks() == null && chunkedArray.getChunkStatistics() == null) {
+            return null;
+        }
+        final BitSet emptyTiles = new BitSet();
+        for (int tileY = 0; tileY < getNumYTiles(); tileY++) {
+            for (int tileX = 0; tileX < getNumXTiles(); tileX++) {
+                emptyTiles.set(tileY * getNumXTiles() + tileX, isEmpty(getTileRect(tileX, tileY)));
+            }
+        }
+        return emptyTiles;
+    }
+
+    /**
+     * Returns a tile read by a batch of tile reads, or else computes it. Empty tiles are served from a single
+     * raster holding the fill value, which is shared by all of them.
+     */
+    @Override
+    public Raster computeTile(int tileX, int tileY) {
+        final PendingTile pendingTile = pendingTiles.remove(new Point(tileX, tileY));
+        if (pendingTile == null) {
+            final Rectangle tileRect = getTileRect(tileX, tileY);
+            if (isEmpty(tileRect)) {
+                return getFillTile().createWritableChild(0, 0, tileRect.width, tileRect.height,
+                        tileRect.x, tileRect.y, null);
+            }
+            return super.computeTile(tileX, tileY);
+        }
+        try {
+            ChunkPipeline.join(pendingTile.read());
+            return pendingTile.raster();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+    }
+
+    private WritableRaster getFillTile() {
+        WritableRaster tile = fillTile;
+        if (tile == null) {
+            tile = createWritableRaster(getSampleModel(), new Point(0, 0));
+            final Number fillValue = arrayDataReader.getFillValue() != null ? arrayDataReader.getFillValue() : 0;
+            final DataBuffer dataBuffer = tile.getDataBuffer();
+            final boolean integral = dataBuffer.getDataType() <= DataBuffer.TYPE_INT;
+            for (int i = 0; i < dataBuffer.getSize(); i++) {
+                if (integral) {
+                    dataBuffer.setElem(i, fillValue.intValue());
+                } else {
+                    dataBuffer.setElemDouble(i, fillValue.doubleValue());
+                }
+            }
+            fillTile = tile;
+        }
+        return tile;
+    }
 
-        if (!directMode) {
+    /**
+     * Reads the region straight into the data buffer of the tile, at the scanline stride of the tile, which also
+     * applies to edge tiles and to tiles of multidimensional arrays. Only rasters with a different layout are
+     * computed into an intermediate buffer.
+     */
+    @Override
+    protected void computeRect(PlanarImage[] sourceImages, WritableRaster tile, Rectangle destRect) {
+        final BufferRegion bufferRegion = getBufferRegion(tile, destRect);
+        try {
+            if (bufferRegion != null) {
+                computeBufferRegion(bufferRegion, destRect);
+                return;
+            }
+            final ProductData productData = ProductData.createInstance(rasterDataNode.getDataType(),
+                    destRect.width * destRect.height);
+            computeProductData(productData, destRect);
             tile.setDataElements(destRect.x, destRect.y, destRect.width, destRect.height, productData.getElems());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
     }
 
@@ -95,21 +350,21 @@ public class S2ZarrOpImage extends SingleBandedOpImage {
      * @throws IOException May be thrown if an I/O error occurs during the computation.
      */
     protected void computeProductData(ProductData productData, Rectangle region) throws IOException {
+        computeBufferRegion(new BufferRegion(productData.getElems(), 0, region.width), region);
+    }
+
+    private void computeBufferRegion(BufferRegion bufferRegion, Rectangle region) throws IOException {
+        final CompletableFuture<Collection<String>> prefetch;
+        if (tilePrefetcher != null && !(arrayDataReader instanceof ChunkedArrayReader) &&
+                region.equals(getTileRect(XToTileX(region.x), YToTileY(region.y)))) {
+            prefetch = prefetch(List.of(new Point(XToTileX(region.x), YToTileY(region.y))));
+        } else {
+            prefetch = null;
+        }
         try {
-            int fullDimSize = additionalIndices.length + 2;
-            int[] bufferShape = new int[fullDimSize];
-            int[] offset = new int[fullDimSize];
-            for (int i = 0; i < fullDimSize - 2; i++) {
-                bufferShape[i] = 1;
-                offset[i] = additionalIndices[i];
-            }
-            bufferShape[fullDimSize - 2] = region.height;
-            bufferShape[fullDimSize - 1] = region.width;
-            offset[fullDimSize - 2] = region.y;
-            offset[fullDimSize - 1] = region.x;
-            arrayDataReader.read(productData.getElems(), bufferShape, offset);
-        } catch (InvalidRangeException e) {
-            throw new IOException(e);
+            ChunkPipeline.join(readAsync(bufferRegion, region, prefetch));
+        } finally {
+            release(prefetch);
         }
     }
 }
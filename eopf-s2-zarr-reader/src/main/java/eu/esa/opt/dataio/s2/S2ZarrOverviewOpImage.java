@@ -0,0 +1,209 @@
+package eu.esa.opt.dataio.s2;
+
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.image.ImageManager;
+import org.esa.snap.core.image.ResolutionLevel;
+import org.esa.snap.core.image.SingleBandedOpImage;
+
+import javax.media.jai.PlanarImage;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.esa.snap.core.util.SystemUtils.LOG;
+
+/**
+ * An overview level of a band, computed from the next finer level by aggregating blocks of 2 x 2 pixels:
+ * the mean of the valid pixels for measurements, and their most frequent value for flag and index bands.
+ * Computed tiles are written to an {@link OverviewStore} and read from there from then on, also when the
+ * product is opened again.
+ */
+final class S2ZarrOverviewOpImage extends SingleBandedOpImage {
+
+    private final RasterDataNode rasterDataNode;
+    private final RenderedImage finerLevelImage;
+    private final OverviewStore overviewStore;
+    private final String arrayKey;
+    private final int levelIndex;
+    private final int dataType;
+    private final boolean mode;
+    private final double noDataValue;
+
+    /**
+     * Constructor.
+     *
+     * @param rasterDataNode  The band.
+     * @param tileSize        The size of the tiles of the level, i.e. of the chunks of the persisted overview.
+     * @param level           The resolution level, which must be at least 1.
+     * @param finerLevelImage The image of the next finer level.
+     * @param overviewStore   The store of the overviews of the product.
+     * @param arrayKey        The key of the array of the band.
+     */
+    S2ZarrOverviewOpImage(RasterDataNode rasterDataNode, Dimension tileSize, ResolutionLevel level,
+                          RenderedImage finerLevelImage, OverviewStore overviewStore, String arrayKey) throws IOException {
+        super(ImageManager.getDataBufferType(rasterDataNode.getDataType()),
+                rasterDataNode.getRasterWidth(), rasterDataNode.getRasterHeight(), tileSize, null, level);
+        this.rasterDataNode = rasterDataNode;
+        this.finerLevelImage = finerLevelImage;
+        this.overviewStore = overviewStore;
+        this.arrayKey = arrayKey;
+        this.levelIndex = level.getIndex();
+        this.dataType = rasterDataNode.getDataType();
+        // codings are known by the time levels are created, which is on first display
+        this.mode = rasterDataNode.isFlagBand() || rasterDataNode.isIndexBand();
+        this.noDataValue = rasterDataNode.isNoDataValueUsed() ? rasterDataNode.getNoDataValue() : Double.NaN;
+        overviewStore.createLevel(arrayKey, levelIndex, getWidth(), getHeight(), getTileWidth(), getTileHeight(),
+                dataType, rasterDataNode.isNoDataValueUsed() ? rasterDataNode.getNoDataValue() : null);
+    }
+
+    @Override
+    public String toString() {
+        String className = getClass().getSimpleName();
+        String productName = "";
+        if (rasterDataNode.getProduct() != null) {
+            productName = ":" + rasterDataNode.getProduct().getName();
+        }
+        String bandName = "." + rasterDataNode.getName();
+        return className + productName + bandName + "@" + levelIndex;
+    }
+
+    /**
+     * Reads a tile from the overview store, or else computes it and writes it to the store. Regions other than
+     * whole tiles are computed only.
+     */
+    @Override
+    protected void computeRect(PlanarImage[] sourceImages, WritableRaster tile, Rectangle destRect) {
+        final int tileX = XToTileX(destRect.x);
+        final int tileY = YToTileY(destRect.y);
+        final boolean wholeTile = destRect.equals(getTileRect(tileX, tileY));
+        if (wholeTile) {
+            try {
+                final ByteBuffer stored = overviewStore.readTile(arrayKey, levelIndex, tileX, tileY);
+                if (stored != null && stored.remaining() == getTileWidth() * getTileHeight() * getElemSize()) {
+                    tile.setSamples(destRect.x, destRect.y, destRect.width, destRect.height, 0, toSamples(stored, destRect));
+                    return;
+                }
+            } catch (IOException e) {
+                LOG.fine("Could not read overview tile of " + this + ": " + e.getMessage());
+            }
+        }
+        final double[] samples = aggregate(destRect);
+        tile.setSamples(destRect.x, destRect.y, destRect.width, destRect.height, 0, samples);
+        if (wholeTile) {
+            try {
+                overviewStore.writeTile(arrayKey, levelIndex, tileX, tileY, toTile(samples, destRect));
+            } catch (IOException e) {
+                LOG.warning("Could not write overview tile of " + this + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Pixels of this level cover 2 x 2 pixels of the finer level, which lie within the finer level
+    private double[] aggregate(Rectangle destRect) {
+        final Rectangle sourceRect = new Rectangle(2 * destRect.x, 2 * destRect.y, 2 * destRect.width, 2 * destRect.height)
+                .intersection(new Rectangle(0, 0, finerLevelImage.getWidth(), finerLevelImage.getHeight()));
+        final double[] source = finerLevelImage.getData(sourceRect).getSamples(sourceRect.x, sourceRect.y,
+                sourceRect.width, sourceRect.height, 0, (double[]) null);
+        final double[] samples = new double[destRect.width * destRect.height];
+        final double[] block = new double[4];
+        for (int y = 0; y < destRect.height; y++) {
+            for (int x = 0; x < destRect.width; x++) {
+                int numValid = 0;
+                for (int dy = 0; dy < 2; dy++) {
+                    for (int dx = 0; dx < 2; dx++) {
+                        final int sourceX = 2 * (destRect.x + x) + dx - sourceRect.x;
+                        final int sourceY = 2 * (destRect.y + y) + dy - sourceRect.y;
+                        if (sourceX < sourceRect.width && sourceY < sourceRect.height) {
+                            final double value = source[sourceY * sourceRect.width + sourceX];
+                            if (!Double.isNaN(value) && value != noDataValue) {
+                                block[numValid++] = value;
+                            }
+                        }
+                    }
+                }
+                samples[y * destRect.width + x] = numValid == 0 ? getFillValue() :
+                        mode ? getMode(block, numValid) : getMean(block, numValid);
+            }
+        }
+        return samples;
+    }
+
+    private double getFillValue() {
+        return Double.isNaN(noDataValue) && !ProductData.isFloatingPointType(dataType) ? 0 : noDataValue;
+    }
+
+    private double getMean(double[] block, int numValid) {
+        double sum = 0;
+        for (int i = 0; i < numValid; i++) {
+            sum += block[i];
+        }
+        final double mean = sum / numValid;
+        return ProductData.isFloatingPointType(dataType) ? mean : Math.round(mean);
+    }
+
+    // The most frequent value, the smallest one of equally frequent values
+    private static double getMode(double[] block, int numValid) {
+        Arrays.sort(block, 0, numValid);
+        double mode = block[0];
+        int modeCount = 0;
+        int count = 0;
+        for (int i = 0; i < numValid; i++) {
+            count = i > 0 && block[i] == block[i - 1] ? count + 1 : 1;
+            if (count > modeCount) {
+                mode = block[i];
+                modeCount = count;
+            }
+        }
+        return mode;
+    }
+
+    private int getElemSize() {
+        return ProductData.getElemSize(dataType);
+    }
+
+    // Stored tiles are of the full tile size, edge tiles are padded with the fill value
+    private ByteBuffer toTile(double[] samples, Rectangle destRect) {
+        final ByteBuffer tile = ByteBuffer.allocate(getTileWidth() * getTileHeight() * getElemSize())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int y = 0; y < getTileHeight(); y++) {
+            for (int x = 0; x < getTileWidth(); x++) {
+                final double value = x < destRect.width && y < destRect.height ?
+                        samples[y * destRect.width + x] : getFillValue();
+                switch (dataType) {
+                    case ProductData.TYPE_INT8, ProductData.TYPE_UINT8 -> tile.put((byte) (long) value);
+                    case ProductData.TYPE_INT16, ProductData.TYPE_UINT16 -> tile.putShort((short) (long) value);
+                    case ProductData.TYPE_INT32, ProductData.TYPE_UINT32 -> tile.putInt((int) (long) value);
+                    case ProductData.TYPE_FLOAT32 -> tile.putFloat((float) value);
+                    default -> tile.putDouble(value);
+                }
+            }
+        }
+        return tile.flip();
+    }
+
+    private double[] toSamples(ByteBuffer tile, Rectangle destRect) {
+        final double[] samples = new double[destRect.width * destRect.height];
+        for (int y = 0; y < destRect.height; y++) {
+            for (int x = 0; x < destRect.width; x++) {
+                final int index = (y * getTileWidth() + x) * getElemSize();
+                samples[y * destRect.width + x] = switch (dataType) {
+                    case ProductData.TYPE_INT8 -> tile.get(index);
+                    case ProductData.TYPE_UINT8 -> Byte.toUnsignedInt(tile.get(index));
+                    case ProductData.TYPE_INT16 -> tile.getShort(index);
+                    case ProductData.TYPE_UINT16 -> Short.toUnsignedInt(tile.getShort(index));
+                    case ProductData.TYPE_INT32 -> tile.getInt(index);
+                    case ProductData.TYPE_UINT32 -> Integer.toUnsignedLong(tile.getInt(index));
+                    case ProductData.TYPE_FLOAT32 -> tile.getFloat(index);
+                    default -> tile.getDouble(index);
+                };
+            }
+        }
+        return samples;
+    }
+}
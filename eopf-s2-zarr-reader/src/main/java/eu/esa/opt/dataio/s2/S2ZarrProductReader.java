@@ -1,25 +1,28 @@
 package eu.esa.opt.dataio.s2;
 
 import com.bc.ceres.core.ProgressMonitor;
+import com.bc.ceres.multilevel.MultiLevelModel;
+import com.bc.ceres.multilevel.MultiLevelSource;
 import com.bc.ceres.multilevel.support.DefaultMultiLevelImage;
 import com.bc.ceres.multilevel.support.DefaultMultiLevelModel;
 import com.bc.ceres.multilevel.support.DefaultMultiLevelSource;
 import com.bc.zarr.ArrayParams;
 import com.bc.zarr.DataType;
 import com.bc.zarr.ZarrArray;
+import com.bc.zarr.ZarrConstants;
 import com.bc.zarr.ZarrGroup;
-import com.bc.zarr.storage.FileSystemStore;
 import com.bc.zarr.storage.Store;
 import org.esa.snap.core.dataio.AbstractProductReader;
 import org.esa.snap.core.dataio.ProductReaderPlugIn;
+import org.esa.snap.core.dataio.ProductSubsetDef;
 import org.esa.snap.core.dataio.geocoding.*;
 import org.esa.snap.core.dataio.geocoding.forward.PixelForward;
 import org.esa.snap.core.dataio.geocoding.inverse.PixelQuadTreeInverse;
 import org.esa.snap.core.dataio.geocoding.util.RasterUtils;
 import org.esa.snap.core.datamodel.*;
-import org.esa.snap.core.datamodel.quicklooks.Quicklook;
 import org.esa.snap.core.image.ResolutionLevel;
 import org.esa.snap.core.util.ISO8601Converter;
+import org.esa.snap.runtime.Config;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.referencing.operation.transform.AffineTransform2D;
@@ -30,8 +33,13 @@ import ucar.ma2.InvalidRangeException;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
 import java.awt.image.RenderedImage;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.ParseException;
@@ -40,6 +48,10 @@ import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoField;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.prefs.Preferences;
 
 import static eu.esa.opt.dataio.s2.S2ZarrConstants.*;
 import static eu.esa.opt.dataio.s2.S2ZarrUtils.*;
@@ -48,9 +60,31 @@ import static org.esa.snap.core.util.SystemUtils.LOG;
 public class S2ZarrProductReader extends AbstractProductReader {
 
     private Path rootPath;
+    private Store store;
+    private PrefetchStore prefetchStore;
+    // the keys the S3 store took as missing only because access to them was denied
+    private Predicate<String> deniedKeys;
     private ZarrGroup rootGroup;
+    private ZarrV3Group v3RootGroup;
+    private Map<String, Object> rootAttributes;
+    private final Map<String, ZarrArrayReader> arrays = new LinkedHashMap<>();
+    private final Map<String, Map<String, Object>> arrayAttributes = new HashMap<>();
     private Product product;
     private final Map<String, GeoCoding> geoCodings = new HashMap<>();
+    private final Map<String, String> bandArrayKeys = new HashMap<>();
+    private final Map<String, Rectangle> bandRegions = new HashMap<>();
+    // detector footprints which are not bands of the product, by array key
+    private final Map<String, Band> footprintInputs = new HashMap<>();
+    private final Map<String, GeoCoding> subsetGeoCodings = new HashMap<>();
+    private final Map<String, GridCoordinates> gridCoordinates = new HashMap<>();
+
+    // The coordinates of a grid with a pixel geocoding: along their axes and over the grid in C order
+    private record GridCoordinates(String[] bandNames, int[] dataTypes, double[][] axisValues, double[][] values,
+                                   double resolutionInKm) {
+    }
+    private String productId;
+    private OverviewStore overviewStore;
+    private boolean overviewStoreFailed;
     private ColorProvider colorProvider;
 
     /**
@@ -65,45 +99,116 @@ public class S2ZarrProductReader extends AbstractProductReader {
 
     @Override
     protected Product readProductNodesImpl() throws IOException {
-        final Path inputPath = convertToPath(getInput());
-        String fileName = inputPath.getFileName().toString();
+        final URI inputUri = convertToRemoteUri(getInput());
+        final Path inputPath = inputUri == null ? convertToPath(getInput()) : null;
+        String fileName = inputUri != null ? S2ZarrUtils.getFileName(inputUri) : inputPath.getFileName().toString();
         final String lowerName = fileName.toLowerCase();
         final String productType = getProductType(fileName);
 
-        if (lowerName.endsWith(ZIP_CONTAINER_EXTENSION) || lowerName.endsWith(ZARR_FILE_EXTENSION)) {
-            rootPath = inputPath;
+        final boolean isRoot = lowerName.endsWith(ZIP_CONTAINER_EXTENSION) || lowerName.endsWith(ZARR_FILE_EXTENSION);
+        if (isRoot) {
             fileName = fileName.substring(0, fileName.length() - ZARR_FILE_EXTENSION.length());
+        }
+        if (inputUri != null) {
+            final URI rootUri = isRoot ? inputUri : S2ZarrUtils.getParent(inputUri);
+            final Store remoteStore = openRemoteStore(rootUri);
+            productId = getRemoteProductId(rootUri, remoteStore);
+            if (remoteStore instanceof S3Store s3Store) {
+                deniedKeys = s3Store::isDeniedAsMissing;
+            }
+            store = withChunkCache(remoteStore, productId, true);
         } else {
-            rootPath = inputPath.getParent();
+            rootPath = isRoot ? inputPath : inputPath.getParent();
+            assert rootPath != null;
+            if (Files.isRegularFile(rootPath)) {
+                final boolean memoryMapped = Config.instance().preferences().getBoolean(PROPERTY_KEY_ZIP_MEMORY_MAPPED, false);
+                store = openZipStore(rootPath, memoryMapped);
+                productId = rootPath.toAbsolutePath() + "|" + Files.size(rootPath) + "|" +
+                        Files.getLastModifiedTime(rootPath).toMillis();
+            } else {
+                store = new FileSystemRangeStore(rootPath);
+                // a product written anew gets a new root directory
+                productId = rootPath.toAbsolutePath() + "|" + Files.getLastModifiedTime(rootPath).toMillis();
+            }
+            store = withChunkCache(store, productId, false);
         }
-        assert rootPath != null;
-        Store store;
-        if (Files.isRegularFile(rootPath)) {
-            store = new ZarrZipStore(rootPath);
+        prefetchStore = new PrefetchStore(ConsolidatedMetadataStore.wrap(store));
+        store = prefetchStore;
+        v3RootGroup = ZarrV3Group.open(store);
+        if (v3RootGroup != null) {
+            rootAttributes = v3RootGroup.getAttributes();
         } else {
-            store = new FileSystemStore(rootPath);
+            rootGroup = ZarrGroup.open(store);
+            rootAttributes = rootGroup.getAttributes();
         }
-        rootGroup = ZarrGroup.open(store);
-        final Map<String, Object> productAttributes = rootGroup.getAttributes();
 
-        final ProductData.UTC sensingStart = getTime(productAttributes, "start");
-        final ProductData.UTC sensingStop = getTime(productAttributes, "end");
+        final ProductData.UTC sensingStart = getTime(rootAttributes, "start");
+        final ProductData.UTC sensingStop = getTime(rootAttributes, "end");
 
         product = new Product(fileName, productType, this);
         product.setStartTime(sensingStart);
         product.setEndTime(sensingStop);
         product.setAutoGrouping(AUTO_GROUPING);
         readMetadata();
+        openArrays();
         initGeoCodings();
         setSceneGeoCoding();
-        readArraysAsBandsOrMetadata(productAttributes);
+        readArraysAsBandsOrMetadata(rootAttributes);
+        addAngleBands();
         registerRGBProfiles();
-        product.setFileLocation(rootPath.toFile());
+        if (rootPath != null) {
+            product.setFileLocation(rootPath.toFile());
+        }
         product.setProductReader(this);
         product.setModified(false);
         return product;
     }
 
+    /**
+     * Subsets are read as they are defined, by their bands, regions and metadata, except for sub-sampling: the
+     * bands of sub-sampled subsets are read whole and left to SNAP to subset.
+     */
+    @Override
+    public boolean isSubsetReadingFullySupported() {
+        return !isSubSampled();
+    }
+
+    private boolean isSubSampled() {
+        final ProductSubsetDef subsetDef = getSubsetDef();
+        return subsetDef != null && (subsetDef.getSubSamplingX() != 1 || subsetDef.getSubSamplingY() != 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        // Product.dispose() closes the reader, the decoded chunks of the product are of no further use
+        final DecodedChunkCache decodedChunkCache = DecodedChunkCache.getInstance();
+        if (decodedChunkCache != null) {
+            decodedChunkCache.release(this);
+            LOG.fine("Decoded chunk cache: " + decodedChunkCache.getStatistics());
+        }
+        for (Map.Entry<String, ZarrArrayReader> entry : arrays.entrySet()) {
+            if (entry.getValue() instanceof ChunkedArrayReader chunkedArray) {
+                writeChunkStatistics(entry.getKey(), chunkedArray.getChunkStatistics());
+            }
+        }
+        bandArrayKeys.clear();
+        bandRegions.clear();
+        footprintInputs.clear();
+        overviewStore = null;
+        overviewStoreFailed = false;
+        arrays.clear();
+        arrayAttributes.clear();
+        if (store != null) {
+            store.close();
+            store = null;
+            prefetchStore = null;
+            deniedKeys = null;
+        }
+        rootGroup = null;
+        v3RootGroup = null;
+    }
+
     private void registerRGBProfiles() {
         RGBImageProfile profile_10 = new RGBImageProfile(RGB_10M_IMAGE_PROFILE_NAME, // display name
                 new String[]{
@@ -144,6 +249,112 @@ public class S2ZarrProductReader extends AbstractProductReader {
         throw new IllegalStateException("Data is provided by images");
     }
 
+    /**
+     * Returns the tiles of a band which consist of the fill value only, as their chunks are not stored in the
+     * product or are summarized as such in the chunk statistics. Such tiles are served without reading any data.
+     *
+     * @param band A band of the product read by this reader.
+     *
+     * @return A bitmap over the tiles of the source image of the band, with bit {@code tileY * numXTiles + tileX}
+     * set for an empty tile, or {@code null} if neither the stored chunks nor chunk statistics of the band are
+     * known.
+     *
+     * @see S2ZarrOpImage#getEmptyTiles()
+     */
+    public BitSet getEmptyTiles(Band band) {
+        if (band.getProduct() != product || !bandArrayKeys.containsKey(band.getName()) ||
+                !(band.getSourceImage().getImage(0) instanceof S2ZarrOpImage image)) {
+            return null;
+        }
+        return image.getEmptyTiles();
+    }
+
+    /**
+     * Returns the summaries of the chunks of a band collected so far: minimum, maximum and number of valid samples
+     * of each chunk. Chunks are summarized as they are read, and the summaries are kept in the SNAP cache directory
+     * for the next time the product is opened. Jobs looking for samples within a range can skip chunks by means
+     * of {@link ChunkStatistics#selectChunks}, and {@link ChunkStatistics#getTotal()} gives the range of the band
+     * once all chunks are summarized.
+     *
+     * @param band A band of the product read by this reader.
+     *
+     * @return The statistics, or {@code null} if they are disabled or not available for the band, e.g. for bands
+     * of multidimensional arrays.
+     *
+     * @see #computeChunkStatistics(Band, ProgressMonitor)
+     */
+    public ChunkStatistics getChunkStatistics(Band band) {
+        final ChunkedArrayReader array = getStatisticsArray(band);
+        return array != null ? array.getChunkStatistics() : null;
+    }
+
+    /**
+     * Summarizes all chunks of a band not summarized yet, by reading them, and persists the statistics.
+     *
+     * @return The complete statistics, or {@code null} if they are disabled or not available for the band.
+     *
+     * @throws IOException If a chunk could not be read.
+     * @see #getChunkStatistics(Band)
+     */
+    public ChunkStatistics computeChunkStatistics(Band band, ProgressMonitor pm) throws IOException {
+        final ChunkedArrayReader array = getStatisticsArray(band);
+        if (array == null) {
+            return null;
+        }
+        final int[] chunkGridShape = array.getChunkGridShape();
+        pm.beginTask("Computing chunk statistics of " + band.getName(), chunkGridShape[0]);
+        try {
+            // one row of chunks at a time, so that only a row of fetched chunks is held in memory
+            for (int chunkY = 0; chunkY < chunkGridShape[0] && !pm.isCanceled(); chunkY++) {
+                final List<CompletableFuture<Void>> rowSummaries = new ArrayList<>();
+                for (int chunkX = 0; chunkX < chunkGridShape[1]; chunkX++) {
+                    rowSummaries.add(array.summarizeChunk(new int[]{chunkY, chunkX}));
+                }
+                ChunkPipeline.join(CompletableFuture.allOf(rowSummaries.toArray(new CompletableFuture[0])));
+                pm.worked(1);
+            }
+        } finally {
+            pm.done();
+        }
+        writeChunkStatistics(bandArrayKeys.get(band.getName()), array.getChunkStatistics());
+        return array.getChunkStatistics();
+    }
+
+    private ChunkedArrayReader getStatisticsArray(Band band) {
+        // statistics are kept by chunks of the whole array, which those of a region band are not aligned with
+        if (band.getProduct() != product || !bandArrayKeys.containsKey(band.getName()) ||
+                bandRegions.containsKey(band.getName()) ||
+                !(arrays.get(bandArrayKeys.get(band.getName())) instanceof ChunkedArrayReader array)) {
+            return null;
+        }
+        // statistics of lazy bands are read with their images
+        setChunkStatistics(bandArrayKeys.get(band.getName()), array);
+        return array.getChunkStatistics() != null ? array : null;
+    }
+
+    // Statistics are kept for two-dimensional arrays only, bands of multidimensional arrays share their chunks
+    private synchronized void setChunkStatistics(String arrayKey, ZarrArrayReader array) {
+        if (productId == null || !(array instanceof ChunkedArrayReader chunkedArray) ||
+                chunkedArray.getShape().length != 2 || chunkedArray.getChunkStatistics() != null ||
+                !Config.instance().preferences().getBoolean(PROPERTY_KEY_CHUNK_STATISTICS, true)) {
+            return;
+        }
+        chunkedArray.setDeniedKeys(deniedKeys);
+        chunkedArray.setChunkStatistics(ChunkStatistics.read(getCacheDir().resolve(CHUNK_STATISTICS_DIR_NAME),
+                productId + "|" + arrayKey, chunkedArray.getNumChunks()));
+    }
+
+    private void writeChunkStatistics(String arrayKey, ChunkStatistics statistics) {
+        if (statistics == null || !statistics.isModified()) {
+            return;
+        }
+        try {
+            statistics.write(getCacheDir().resolve(CHUNK_STATISTICS_DIR_NAME), productId + "|" + arrayKey);
+        } catch (IOException e) {
+            LOG.warning("Could not write chunk statistics of '" + arrayKey + "': " + e.getMessage());
+        }
+    }
+
     private ProductData.UTC getTime(Map<String, Object> productAttributes, String timeType) throws IOException {
         String timeAttributeName = timeType + "_datetime";
         Map<String, Object> stac_attributes = cast(productAttributes.get(STAC_DISCOVERY_ATTRIBUTES_NAME));
@@ -179,11 +390,125 @@ public class S2ZarrProductReader extends AbstractProductReader {
         return bandName;
     }
 
-    private void readMetadata() throws IOException {
-        Map<String, Object> rootAttributes = rootGroup.getAttributes();
+    private void readMetadata() {
+        if (getSubsetDef() != null && getSubsetDef().isIgnoreMetadata()) {
+            return;
+        }
         addToMetadataElement(product.getMetadataRoot(), rootAttributes);
     }
 
+    // Arrays and their attributes are opened once and shared by geocoding and band creation
+    private void openArrays() throws IOException {
+        final Set<String> arrayKeys = v3RootGroup != null ? v3RootGroup.getArrayKeys() : rootGroup.getArrayKeys();
+        // of the arrays of bands not in the subset, one per group is opened for the geocoding of its grid
+        final Set<String> groupKeys = new HashSet<>();
+        for (String arrayKey : arrayKeys) {
+            final String groupKey = arrayKey.contains("/") ? arrayKey.substring(0, arrayKey.lastIndexOf("/")) : "";
+            if (!isArrayAccepted(arrayKey) && groupKeys.contains(groupKey)) {
+                continue;
+            }
+            if (!COORDINATE_NAMES.contains(arrayKey.substring(arrayKey.lastIndexOf("/") + 1))) {
+                groupKeys.add(groupKey);
+            }
+            try {
+                arrays.put(arrayKey, openArray(arrayKey));
+            } catch (IllegalArgumentException iae) {
+                LOG.warning("Could not read array '" + arrayKey + "'");
+            }
+        }
+    }
+
+    // An array of the product if it has been opened
+    ZarrArrayReader getOpenArray(String arrayKey) {
+        return arrays.get(arrayKey);
+    }
+
+    /**
+     * @return Whether an array is needed for the subset of the product: arrays of metadata, coordinates and
+     * geometry are, arrays of the resolution groups only if one of their bands is in the subset.
+     */
+    private boolean isArrayAccepted(String arrayKey) {
+        final ProductSubsetDef subsetDef = getSubsetDef();
+        final String[] keyParts = arrayKey.split("/");
+        if (subsetDef == null || subsetDef.getNodeNames() == null || keyParts.length < 3 ||
+                getResolution(keyParts) == null || COORDINATE_NAMES.contains(keyParts[keyParts.length - 1])) {
+            return true;
+        }
+        final String bandName = getBandName(keyParts);
+        if (isBandAccepted(bandName, keyParts)) {
+            return true;
+        }
+        final String origBandName = keyParts[keyParts.length - 1];
+        final String[][] bandNameParts = BAND_NAME_PARTS.get(origBandName);
+        if (bandNameParts == null) {
+            return false;
+        }
+        // the bands of a multidimensional array are named after the parts of its dimensions
+        List<String> prefixes = List.of("");
+        for (String[] dimensionParts : bandNameParts) {
+            final List<String> dimensionPrefixes = new ArrayList<>();
+            for (String prefix : prefixes) {
+                for (String part : dimensionParts) {
+                    dimensionPrefixes.add(prefix + part + "_");
+                }
+            }
+            prefixes = dimensionPrefixes;
+        }
+        final String baseName = BASE_NAMES.getOrDefault(origBandName, bandName);
+        return prefixes.stream().anyMatch(prefix -> isNodeAccepted(prefix + baseName));
+    }
+
+    /**
+     * @return Whether a band of an array is read for the subset of the product, i.e. is in the subset or is a
+     * detector footprint whose detector-resolved viewing angles are, which is read as their input only.
+     */
+    private boolean isBandAccepted(String bandName, String[] keyParts) {
+        if (isNodeAccepted(bandName)) {
+            return true;
+        }
+        if (keyParts.length < 3 || !keyParts[keyParts.length - 3].equals(DETECTOR_INDEX_CODING_NAME)) {
+            return false;
+        }
+        for (String angleName : VIEWING_ANGLES_ANGLE_LIST) {
+            if (isNodeAccepted(getDetectorAngleBandName(angleName, keyParts))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getDetectorAngleBandName(String angleName, String[] footprintKeyParts) {
+        return angleName + "_" + footprintKeyParts[footprintKeyParts.length - 1] + "_" +
+                footprintKeyParts[footprintKeyParts.length - 2] + "_" + ANGLES_GROUP_NAME;
+    }
+
+    private ZarrArrayReader openArray(String arrayKey) throws IOException {
+        if (v3RootGroup != null) {
+            return v3RootGroup.openArray(arrayKey);
+        }
+        try {
+            return ZarrV2Array.open(store, arrayKey);
+        } catch (IllegalArgumentException | ClassCastException e) {
+            LOG.fine("Array '" + arrayKey + "' is read by jzarr: " + e.getMessage());
+            return ZarrArrayReader.of(rootGroup.openArray(arrayKey));
+        }
+    }
+
+    // Arrays not opened up front are opened anew, not added to the arrays, which may be iterated meanwhile
+    private ZarrArrayReader getArray(String arrayKey) throws IOException {
+        final ZarrArrayReader array = arrays.get(arrayKey);
+        return array != null ? array : openArray(arrayKey);
+    }
+
+    private Map<String, Object> getArrayAttributes(String arrayKey, ZarrArrayReader array) throws IOException {
+        Map<String, Object> attributes = arrayAttributes.get(arrayKey);
+        if (attributes == null) {
+            attributes = array.getAttributes();
+            arrayAttributes.put(arrayKey, attributes);
+        }
+        return attributes;
+    }
+
     private void addToMetadataElement(MetadataElement element, Map<String, Object> attributes) {
         Map<String, String> metadataSplitter = Map.of(
                 "spectral_response_values", " ", "product_quality_status", ",",
@@ -229,15 +554,10 @@ public class S2ZarrProductReader extends AbstractProductReader {
                 new ArrayList<>(List.of("x", "y")),
                 new ArrayList<>(List.of("longitude", "latitude"))
         };
-        for (String arrayKey : rootGroup.getArrayKeys()) {
-            ZarrArray array;
-            try {
-                array = rootGroup.openArray(arrayKey);
-            } catch (IllegalArgumentException iae) {
-                LOG.warning("Could not read array '" + arrayKey + "'");
-                continue;
-            }
-            Map<String, Object> arrayAttributes = array.getAttributes();
+        for (Map.Entry<String, ZarrArrayReader> arrayEntry : arrays.entrySet()) {
+            String arrayKey = arrayEntry.getKey();
+            ZarrArrayReader array = arrayEntry.getValue();
+            Map<String, Object> arrayAttributes = getArrayAttributes(arrayKey, array);
             if (arrayAttributes.containsKey(ARRAY_DIMENSIONS_ATTRIBUTES_NAME)) {
                 List<String> dimensionList = cast(arrayAttributes.get(ARRAY_DIMENSIONS_ATTRIBUTES_NAME));
                 for (List<String> coordinatePair : coordinatePairs) {
@@ -251,11 +571,44 @@ public class S2ZarrProductReader extends AbstractProductReader {
                 }
             }
         }
+        // the region of a subset is known once the finest grid is
+        for (Map.Entry<String, GridCoordinates> entry : gridCoordinates.entrySet()) {
+            addCoordinateBands(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Adds the bands of the coordinates of a grid with a pixel geocoding, e.g. {@code longitude_cams}, for the
+     * subset of the product.
+     */
+    private void addCoordinateBands(String shapeString, GridCoordinates coordinates) {
+        final String[] shape = shapeString.split("_");
+        final int width = Integer.parseInt(shape[0]);
+        final int height = Integer.parseInt(shape[1]);
+        for (int k = 0; k < coordinates.bandNames().length; k++) {
+            final String bandName = coordinates.bandNames()[k];
+            if (!isNodeAccepted(bandName)) {
+                continue;
+            }
+            Rectangle region = getBandRegion(bandName, geoCodings.get(shapeString), width, height);
+            if (region == null) {
+                region = new Rectangle(width, height);
+            }
+            final Band coordBand = new Band(bandName, coordinates.dataTypes()[k], region.width, region.height);
+            coordBand.ensureRasterData();
+            for (int i = 0; i < region.width; i++) {
+                for (int j = 0; j < region.height; j++) {
+                    coordBand.setPixelDouble(i, j,
+                            coordinates.axisValues()[k][k == 0 ? region.y + j : region.x + i]);
+                }
+            }
+            product.addBand(coordBand);
+        }
     }
 
     private CoordinateReferenceSystem getProductCrs() throws IOException, FactoryException {
         Map<String, Object> stac_map = S2ZarrUtils.cast(
-                rootGroup.getAttributes().get(S2ZarrConstants.STAC_DISCOVERY_ATTRIBUTES_NAME)
+                rootAttributes.get(S2ZarrConstants.STAC_DISCOVERY_ATTRIBUTES_NAME)
         );
         String epsg;
         Map<String, Object> propertiesMap = cast(stac_map.get(PROPERTIES_ATTRIBUTES_NAME));
@@ -264,7 +617,7 @@ public class S2ZarrProductReader extends AbstractProductReader {
             epsg = "EPSG:" + epsg_code;
         } else {
             Map<String, Object> other_metadata_map = S2ZarrUtils.cast(
-                    rootGroup.getAttributes().get(OTHER_METADATA_ATTRIBUTES_NAME)
+                    rootAttributes.get(OTHER_METADATA_ATTRIBUTES_NAME)
             );
             epsg = cast(other_metadata_map.get(HORIZONTAL_EPSG_ATTRIBUTES_NAME));
         }
@@ -275,7 +628,7 @@ public class S2ZarrProductReader extends AbstractProductReader {
         try {
             CoordinateReferenceSystem crs = getProductCrs();
             Map<String, Object> stac_map = S2ZarrUtils.cast(
-                    rootGroup.getAttributes().get(S2ZarrConstants.STAC_DISCOVERY_ATTRIBUTES_NAME)
+                    rootAttributes.get(S2ZarrConstants.STAC_DISCOVERY_ATTRIBUTES_NAME)
             );
             Map<String, Object> propertiesMap = cast(stac_map.get(PROPERTIES_ATTRIBUTES_NAME));
             double easting = 0.0;
@@ -292,8 +645,17 @@ public class S2ZarrProductReader extends AbstractProductReader {
                 easting = translateX + 5.0;
                 northing = translateY - 5.0;
             }
+            int sceneWidth = 109800;
+            int sceneHeight = 109800;
+            final Rectangle sceneRegion = getSceneRegion();
+            if (sceneRegion != null) {
+                easting += sceneRegion.x;
+                northing -= sceneRegion.y;
+                sceneWidth = sceneRegion.width;
+                sceneHeight = sceneRegion.height;
+            }
             GeoCoding geoCoding = new CrsGeoCoding(
-                    crs, 109800, 109800, easting, northing, 1.0, 1.0, 0.0, 0.0
+                    crs, sceneWidth, sceneHeight, easting, northing, 1.0, 1.0, 0.0, 0.0
             );
             product.setSceneGeoCoding(geoCoding);
         } catch (FactoryException | TransformException e) {
@@ -301,25 +663,49 @@ public class S2ZarrProductReader extends AbstractProductReader {
         }
     }
 
+    /**
+     * @return The region of the subset of the product in the scene geocoding, whose pixels are 1 m, from its region
+     * in the finest map grid, or {@code null} if the whole scene is read.
+     */
+    private Rectangle getSceneRegion() {
+        final ProductSubsetDef subsetDef = getSubsetDef();
+        final String referenceShapeString = getReferenceShapeString();
+        if (subsetDef == null || subsetDef.getSubsetRegion() == null || isSubSampled() ||
+                referenceShapeString == null) {
+            return null;
+        }
+        final String[] referenceShape = referenceShapeString.split("_");
+        final int width = Integer.parseInt(referenceShape[0]);
+        final int height = Integer.parseInt(referenceShape[1]);
+        final CrsGeoCoding referenceGeoCoding = (CrsGeoCoding) geoCodings.get(referenceShapeString);
+        final Rectangle region = subsetDef.getSubsetRegion().computeBandPixelRegion(referenceGeoCoding,
+                referenceGeoCoding, width, height, width, height, true).intersection(new Rectangle(width, height));
+        if (region.isEmpty() || region.width == width && region.height == height) {
+            return null;
+        }
+        final int pixelSize = (int) Math.round(
+                Math.abs(((AffineTransform2D) referenceGeoCoding.getImageToMapTransform()).getScaleX()));
+        return new Rectangle(region.x * pixelSize, region.y * pixelSize, region.width * pixelSize,
+                region.height * pixelSize);
+    }
+
     private void readArraysAsBandsOrMetadata(Map<String, Object> productAttributes) throws IOException {
-        ArrayList<String> notMetadata = new ArrayList<>(List.of("x", "y", "longitude", "latitude", "detector", "band"));
         List<String>[] coordinatePairs = new List[]{
                 new ArrayList<>(List.of("x", "y")),
                 new ArrayList<>(List.of("longitude", "latitude"))
         };
-        for (String arrayKey : rootGroup.getArrayKeys()) {
-            ZarrArray array;
-            try {
-                array = rootGroup.openArray(arrayKey);
-            } catch (IllegalArgumentException iae) {
-                LOG.warning("Could not read array '" + arrayKey + "'");
-                continue;
-            }
+        // the quicklook is made from the smallest true colour image, e.g. the r60m one
+        String quicklookArrayKey = null;
+        String quicklookBandName = null;
+        Band[] quicklookBands = null;
+        for (Map.Entry<String, ZarrArrayReader> arrayEntry : arrays.entrySet()) {
+            String arrayKey = arrayEntry.getKey();
+            ZarrArrayReader array = arrayEntry.getValue();
             String[] splitArrayKey = arrayKey.split("/");
             String origBandName = splitArrayKey[splitArrayKey.length - 1];
             String bandName = getBandName(splitArrayKey);
             Map<?, ?> bandDescription = getBandDescription(productAttributes, origBandName);
-            Map<String, Object> arrayAttributes = array.getAttributes();
+            Map<String, Object> arrayAttributes = getArrayAttributes(arrayKey, array);
             boolean bandSet = false;
             List<String> dimensionList = cast(arrayAttributes.get(ARRAY_DIMENSIONS_ATTRIBUTES_NAME));
             for (List<String> coordinatePair : coordinatePairs) {
@@ -327,15 +713,21 @@ public class S2ZarrProductReader extends AbstractProductReader {
                     int[] shape = array.getShape();
                     Band band;
                     if (shape.length == 2) {
-                        band = createBand(bandName, array, new int[0]);
-                        applyBandAttributes(band, bandDescription, arrayAttributes);
-                        addFlagCoding(band, arrayAttributes);
-                        addIndexCoding(band);
-                        addMasks(band);
+                        if (isNodeAccepted(bandName)) {
+                            band = createBand(bandName, arrayKey, array, new int[0]);
+                            applyBandAttributes(band, bandDescription, arrayAttributes);
+                            addFlagCoding(band, arrayAttributes);
+                            addIndexCoding(band);
+                            addMasks(band);
+                        } else if (isBandAccepted(bandName, splitArrayKey)) {
+                            // a detector footprint not in the subset is read for the detector-resolved angles only
+                            footprintInputs.put(arrayKey, createBand(bandName, arrayKey, array, new int[0], false));
+                        }
                         bandSet = true;
                     } else {
                         String[][] bandNameParts = BAND_NAME_PARTS.get(origBandName);
                         int numDims = shape.length - 2;
+                        setDecodedChunkCache(arrayKey, array);
                         int[] additionalIndexes = new int[numDims];
                         ArrayList<Band> resultingBands = new ArrayList<>();
                         while (additionalIndexes[0] < shape[0]) {
@@ -345,12 +737,14 @@ public class S2ZarrProductReader extends AbstractProductReader {
                             }
                             String subDimBandName = subDimBandNameBuilder.toString();
                             subDimBandName += BASE_NAMES.getOrDefault(origBandName, bandName);
-                            band = createBand(subDimBandName, array, additionalIndexes.clone());
-                            applyBandAttributes(band, bandDescription, arrayAttributes);
-                            addFlagCoding(band, arrayAttributes);
-                            addIndexCoding(band);
-                            addMasks(band);
-                            resultingBands.add(band);
+                            if (isNodeAccepted(subDimBandName)) {
+                                band = createBand(subDimBandName, arrayKey, array, additionalIndexes.clone());
+                                applyBandAttributes(band, bandDescription, arrayAttributes);
+                                addFlagCoding(band, arrayAttributes);
+                                addIndexCoding(band);
+                                addMasks(band);
+                                resultingBands.add(band);
+                            }
                             int currentDim = numDims - 1;
                             while (currentDim >= 0) {
                                 additionalIndexes[currentDim]++;
@@ -363,23 +757,26 @@ public class S2ZarrProductReader extends AbstractProductReader {
                                 currentDim--;
                             }
                         }
-                        if (bandName.contains(QUICKLOOK_BAND_NAME)) {
-                            Band[] quicklookBands = resultingBands.toArray(new Band[0]);
-                            Quicklook quicklook = new Quicklook(product, bandName, quicklookBands);
-                            product.getQuicklookGroup().add(quicklook);
+                        if (bandName.contains(QUICKLOOK_BAND_NAME) && resultingBands.size() == shape[0] &&
+                                (quicklookArrayKey == null ||
+                                getNumPixels(array) < getNumPixels(arrays.get(quicklookArrayKey)))) {
+                            quicklookArrayKey = arrayKey;
+                            quicklookBandName = bandName;
+                            quicklookBands = resultingBands.toArray(new Band[0]);
                         }
                         bandSet = true;
                     }
                 }
             }
             if (!bandSet) {
-                if (notMetadata.contains(origBandName)) {
+                if (COORDINATE_NAMES.contains(origBandName) ||
+                        getSubsetDef() != null && getSubsetDef().isIgnoreMetadata()) {
                     continue;
                 }
                 // read as metadata
                 ProductData productData = null;
                 try {
-                    productData = getProductDataFromKey(arrayKey, "");
+                    productData = getProductData(arrayKey, array);
                 } catch (InvalidRangeException e) {
                     LOG.warning("Cannot read '" + origBandName + "' as metadata.");
                 }
@@ -389,7 +786,7 @@ public class S2ZarrProductReader extends AbstractProductReader {
                     product.getMetadataRoot().addElement(new MetadataElement(parentName));
                 }
                 MetadataElement parentElement = product.getMetadataRoot().getElement(parentName);
-                if (arrayShape.length == 1 && arrayShape[0] == 1) {
+                if (arrayShape.length == 0 || arrayShape.length == 1 && arrayShape[0] == 1) {
                     MetadataAttribute metadataAttribute = createMetadataAttribute(
                             origBandName, productData.getElemStringAt(0)
                     );
@@ -434,10 +831,310 @@ public class S2ZarrProductReader extends AbstractProductReader {
                 parentElement.addElement(element);
             }
         }
+        // the stored image shows the whole product, the quicklook of a region is computed from its bands
+        if (quicklookArrayKey != null && bandRegions.isEmpty()) {
+            product.getQuicklookGroup().add(new S2ZarrQuicklook(product, quicklookBandName,
+                    arrays.get(quicklookArrayKey), quicklookBands, getQuicklookCacheFile()));
+        }
+    }
+
+    /**
+     * Adds the sun angles and the mean viewing angles at the resolutions of the product, e.g.
+     * {@code sun_zenith_r10m_angles}, as images interpolated from the angle grids of the geometry group,
+     * and the detector-resolved viewing angles of the spectral bands.
+     */
+    private void addAngleBands() throws IOException {
+        final boolean angleBands = Config.instance().preferences().getBoolean(PROPERTY_KEY_ANGLE_BANDS, true);
+        final boolean detectorAngleBands =
+                Config.instance().preferences().getBoolean(PROPERTY_KEY_DETECTOR_ANGLE_BANDS, true);
+        if (!angleBands && !detectorAngleBands) {
+            return;
+        }
+        for (String arrayKey : new ArrayList<>(arrays.keySet())) {
+            final String[] keyParts = arrayKey.split("/");
+            final String arrayName = keyParts[keyParts.length - 1];
+            if (!arrayName.equals(SUN_ANGLES_ARRAY_NAME) && !arrayName.equals(VIEWING_ANGLES_ARRAY_NAME) ||
+                    !isAnyAngleBandAccepted(arrayName)) {
+                continue;
+            }
+            final ZarrArrayReader array = arrays.get(arrayKey);
+            final int[] shape = array.getShape();
+            final String groupKey = arrayKey.substring(0, arrayKey.lastIndexOf("/"));
+            final double[] gridX;
+            final double[] gridY;
+            try {
+                gridX = getCoordinates(groupKey, "x");
+                gridY = getCoordinates(groupKey, "y");
+            } catch (InvalidRangeException e) {
+                LOG.warning("Cannot read the coordinates of '" + arrayKey + "'.");
+                continue;
+            }
+            if (gridX.length != shape[shape.length - 1] || gridY.length != shape[shape.length - 2] ||
+                    gridX.length < 2 || gridY.length < 2) {
+                continue;
+            }
+            for (Map.Entry<String, GeoCoding> entry : geoCodings.entrySet()) {
+                if (!angleBands || !(entry.getValue() instanceof CrsGeoCoding geoCoding)) {
+                    continue;
+                }
+                final AffineTransform2D i2m = (AffineTransform2D) geoCoding.getImageToMapTransform();
+                final String resolution = "r" + Math.round(Math.abs(i2m.getScaleX())) + "m";
+                if (!RESOLUTIONS.contains(resolution)) {
+                    continue;
+                }
+                final String[] shapeParts = entry.getKey().split("_");
+                for (int angle = 0; angle < VIEWING_ANGLES_ANGLE_LIST.length; angle++) {
+                    final boolean azimuth = angle == 1;
+                    final String angleName = arrayName.equals(SUN_ANGLES_ARRAY_NAME) ?
+                            SUN_ANGLES_LIST[angle] : VIEWING_ANGLES_ANGLE_LIST[angle] + "_mean";
+                    final String bandName = angleName + "_" + resolution + "_" + ANGLES_GROUP_NAME;
+                    if (product.containsBand(bandName) || !isNodeAccepted(bandName)) {
+                        continue;
+                    }
+                    // the angles of a region are located in the pixel coordinates of the region
+                    int width = Integer.parseInt(shapeParts[0]);
+                    int height = Integer.parseInt(shapeParts[1]);
+                    final Rectangle region = getBandRegion(bandName, geoCoding, width, height);
+                    GeoCoding bandGeoCoding = geoCoding;
+                    if (region != null) {
+                        width = region.width;
+                        height = region.height;
+                        bandGeoCoding = getSubsetGeoCoding(entry.getKey(), region);
+                    }
+                    final double[] gridLocation = getAngleGridLocation(gridX, gridY, bandGeoCoding);
+                    if (gridLocation == null) {
+                        continue;
+                    }
+                    final int angleIndex = angle;
+                    final AngleGrid angleGrid = new AngleGrid(gridX.length, gridY.length, gridLocation[0],
+                            gridLocation[1], gridLocation[2], gridLocation[3], azimuth,
+                            () -> readAngles(array, angleIndex, azimuth));
+                    addAngleBand(bandName, width, height, bandGeoCoding, angleGrid);
+                }
+            }
+            if (detectorAngleBands && arrayName.equals(VIEWING_ANGLES_ARRAY_NAME) && shape.length == 5) {
+                addDetectorAngleBands(groupKey, array, gridX, gridY);
+            }
+        }
+    }
+
+    /**
+     * @return Whether any band of the angles of an array is in the subset of the product, so that the coordinates
+     * of its grid are read only then.
+     */
+    private boolean isAnyAngleBandAccepted(String arrayName) {
+        final ProductSubsetDef subsetDef = getSubsetDef();
+        if (subsetDef == null || subsetDef.getNodeNames() == null) {
+            return true;
+        }
+        final String prefix = arrayName.equals(SUN_ANGLES_ARRAY_NAME) ? "sun_" : "view_";
+        return Arrays.stream(subsetDef.getNodeNames())
+                .anyMatch(name -> name.startsWith(prefix) && name.endsWith("_" + ANGLES_GROUP_NAME));
+    }
+
+    /**
+     * @return The location of the points of an angle grid in the pixel coordinates of an image grid: the coordinates
+     * of the first point and the distances of the points along x and y, or {@code null} if there is none.
+     */
+    private static double[] getAngleGridLocation(double[] gridX, double[] gridY, GeoCoding geoCoding) {
+        final AffineTransform m2i;
+        try {
+            m2i = ((AffineTransform2D) geoCoding.getImageToMapTransform()).createInverse();
+        } catch (NoninvertibleTransformException e) {
+            return null;
+        }
+        final Point2D first = m2i.transform(new Point2D.Double(gridX[0], gridY[0]), null);
+        final Point2D second = m2i.transform(new Point2D.Double(gridX[1], gridY[1]), null);
+        return new double[]{first.getX(), first.getY(), second.getX() - first.getX(), second.getY() - first.getY()};
+    }
+
+    /**
+     * Adds the viewing angles of each spectral band with a detector footprint, e.g. {@code view_zenith_b02_r10m_angles},
+     * taking at each pixel the angles of the detector given by the footprint.
+     *
+     * @param array The viewing angles, of shape [band, detector, angle, y, x].
+     */
+    private void addDetectorAngleBands(String groupKey, ZarrArrayReader array, double[] gridX, double[] gridY)
+            throws IOException {
+        final int[] shape = array.getShape();
+        final int[] detectorNumbers = getDetectorNumbers(groupKey, shape[1]);
+        if (detectorNumbers == null) {
+            return;
+        }
+        final Map<String, Band> footprints = new LinkedHashMap<>(footprintInputs);
+        for (Map.Entry<String, String> entry : bandArrayKeys.entrySet()) {
+            footprints.putIfAbsent(entry.getValue(), product.getBand(entry.getKey()));
+        }
+        for (Map.Entry<String, Band> entry : footprints.entrySet()) {
+            final String[] keyParts = entry.getKey().split("/");
+            final int bandIndex = Arrays.asList(VIEWING_ANGLES_BAND_LIST).indexOf(keyParts[keyParts.length - 1]);
+            if (keyParts.length < 3 || !keyParts[keyParts.length - 3].equals(DETECTOR_INDEX_CODING_NAME) ||
+                    bandIndex < 0 || bandIndex >= shape[0]) {
+                continue;
+            }
+            // the angles of the footprint of a region are of the same region
+            final Band footprint = entry.getValue();
+            final GeoCoding geoCoding = footprint != null ? footprint.getGeoCoding() : null;
+            if (!(geoCoding instanceof CrsGeoCoding)) {
+                continue;
+            }
+            final double[] gridLocation = getAngleGridLocation(gridX, gridY, geoCoding);
+            if (gridLocation == null) {
+                continue;
+            }
+            for (int angle = 0; angle < VIEWING_ANGLES_ANGLE_LIST.length; angle++) {
+                final boolean azimuth = angle == 1;
+                final AngleGrid[] detectorGrids = new AngleGrid[Arrays.stream(detectorNumbers).max().orElse(0) + 1];
+                for (int detector = 0; detector < detectorNumbers.length; detector++) {
+                    final int[] offset = {bandIndex, detector, angle, 0, 0};
+                    detectorGrids[detectorNumbers[detector]] = new AngleGrid(gridX.length, gridY.length,
+                            gridLocation[0], gridLocation[1], gridLocation[2], gridLocation[3], azimuth,
+                            () -> readGrid(array, offset));
+                }
+                final String bandName = getDetectorAngleBandName(VIEWING_ANGLES_ANGLE_LIST[angle], keyParts);
+                if (product.containsBand(bandName) || !isNodeAccepted(bandName)) {
+                    continue;
+                }
+                final Band band = new Band(bandName, ProductData.TYPE_FLOAT32, footprint.getRasterWidth(),
+                        footprint.getRasterHeight());
+                band.setUnit("deg");
+                band.setNoDataValue(Double.NaN);
+                band.setNoDataValueUsed(true);
+                band.setGeoCoding(geoCoding);
+                product.addBand(band);
+                band.setSourceImage(new DefaultMultiLevelImage(S2ZarrDetectorAngleOpImage.createMultiLevelSource(band,
+                        footprint, createMultiLevelModel(geoCoding, band.getRasterWidth(), band.getRasterHeight()),
+                        detectorGrids)));
+            }
+        }
+    }
+
+    /**
+     * @return The numbers of the detectors of the viewing angles, as recorded in the detector footprints, from the
+     * {@code detector} coordinates or else from the names of the detectors, or {@code null} if they are not known.
+     */
+    private int[] getDetectorNumbers(String groupKey, int numDetectors) throws IOException {
+        try {
+            final double[] coordinates = getCoordinates(groupKey, "detector");
+            if (coordinates.length == numDetectors) {
+                return Arrays.stream(coordinates).mapToInt(value -> (int) value).toArray();
+            }
+        } catch (InvalidRangeException | IllegalArgumentException | IllegalStateException e) {
+            LOG.fine("Cannot read the detectors of '" + groupKey + "': " + e.getMessage());
+        }
+        if (VIEWING_ANGLES_DETECTOR_LIST.length != numDetectors) {
+            return null;
+        }
+        return Arrays.stream(VIEWING_ANGLES_DETECTOR_LIST)
+                .mapToInt(name -> Integer.parseInt(name.substring(name.lastIndexOf('_') + 1))).toArray();
+    }
+
+    // A grid of the last two dimensions of an array, e.g. the viewing angles of a band, detector and angle
+    static double[] readGrid(ZarrArrayReader array, int[] offset) throws IOException, InvalidRangeException {
+        final int[] shape = array.getShape();
+        final int[] gridShape = new int[shape.length];
+        Arrays.fill(gridShape, 1);
+        gridShape[shape.length - 2] = shape[shape.length - 2];
+        gridShape[shape.length - 1] = shape[shape.length - 1];
+        return readValues(array, gridShape, offset);
+    }
+
+    // Reads a region of an array through a buffer of the data type of the array, as arrays are read into buffers
+    // of their own type only
+    private static double[] readValues(ZarrArrayReader array, int[] shape, int[] offset)
+            throws IOException, InvalidRangeException {
+        int numValues = 1;
+        for (int s : shape) {
+            numValues *= s;
+        }
+        final ProductData productData = ProductData.createInstance(getProductDataType(array.getDataType()), numValues);
+        array.read(productData.getElems(), shape, offset);
+        return toDoubles(productData);
+    }
+
+    private static double[] toDoubles(ProductData productData) {
+        final double[] values = new double[productData.getNumElems()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = productData.getElemDoubleAt(i);
+        }
+        return values;
+    }
+
+    private void addAngleBand(String bandName, int width, int height, GeoCoding geoCoding, AngleGrid angleGrid) {
+        final Band band = new Band(bandName, ProductData.TYPE_FLOAT32, width, height);
+        band.setUnit("deg");
+        band.setNoDataValue(Double.NaN);
+        band.setNoDataValueUsed(true);
+        band.setGeoCoding(geoCoding);
+        product.addBand(band);
+        final Dimension tileSize = new Dimension(getTileSize(width), getTileSize(height));
+        band.setSourceImage(new DefaultMultiLevelImage(S2ZarrAngleOpImage.createMultiLevelSource(
+                band, tileSize, createMultiLevelModel(geoCoding, width, height), angleGrid)));
+    }
+
+    private double[] getCoordinates(String groupKey, String coordinateName) throws IOException, InvalidRangeException {
+        final ZarrArrayReader coordinates = arrays.get(groupKey + "/" + coordinateName);
+        if (coordinates == null || coordinates.getShape().length != 1) {
+            return new double[0];
+        }
+        return toDoubles(getProductDataFromKey(groupKey, coordinateName));
+    }
+
+    /**
+     * Reads an angle of the sun angles, of shape [angle, y, x], or the mean of an angle over the bands and detectors
+     * of the viewing angles, of shape [band, detector, angle, y, x].
+     */
+    static double[] readAngles(ZarrArrayReader array, int angleIndex, boolean azimuth)
+            throws IOException, InvalidRangeException {
+        final int[] shape = array.getShape();
+        final int gridSize = shape[shape.length - 2] * shape[shape.length - 1];
+        final int numAngles = shape[shape.length - 3];
+        int numGrids = 1;
+        for (int i = 0; i < shape.length - 3; i++) {
+            numGrids *= shape[i];
+        }
+        final double[] values = readValues(array, shape, new int[shape.length]);
+        final double[] sums = new double[gridSize];
+        final double[] sumsCos = new double[gridSize];
+        final int[] counts = new int[gridSize];
+        for (int grid = 0; grid < numGrids; grid++) {
+            final int offset = (grid * numAngles + angleIndex) * gridSize;
+            for (int i = 0; i < gridSize; i++) {
+                final double value = values[offset + i];
+                if (!Double.isNaN(value)) {
+                    sums[i] += azimuth ? Math.sin(Math.toRadians(value)) : value;
+                    sumsCos[i] += azimuth ? Math.cos(Math.toRadians(value)) : 0;
+                    counts[i]++;
+                }
+            }
+        }
+        final double[] angles = new double[gridSize];
+        for (int i = 0; i < gridSize; i++) {
+            if (counts[i] == 0) {
+                angles[i] = Double.NaN;
+            } else if (azimuth) {
+                angles[i] = (Math.toDegrees(Math.atan2(sums[i], sumsCos[i])) + 360) % 360;
+            } else {
+                angles[i] = sums[i] / counts[i];
+            }
+        }
+        return angles;
+    }
+
+    private static long getNumPixels(ZarrArrayReader array) {
+        final int[] shape = array.getShape();
+        return (long) shape[shape.length - 2] * shape[shape.length - 1];
+    }
+
+    private Path getQuicklookCacheFile() {
+        if (productId == null || !Config.instance().preferences().getBoolean(PROPERTY_KEY_QUICKLOOK_CACHE, true)) {
+            return null;
+        }
+        return getCacheDir().resolve(QUICKLOOK_DIR_NAME).resolve(S2ZarrQuicklook.getCacheFileName(productId));
     }
 
     private void initGeoCoding(
-            ZarrArray array, Map<String, Object> arrayAttributes, String arrayKey, List<String> coordinatePair
+            ZarrArrayReader array, Map<String, Object> arrayAttributes, String arrayKey, List<String> coordinatePair
     ) throws FactoryException, TransformException, IOException, InvalidRangeException {
         int[] arrayShape = array.getShape();
         int[] shape = new int[]{arrayShape[arrayShape.length - 2], arrayShape[arrayShape.length - 1]};
@@ -476,70 +1173,84 @@ public class S2ZarrProductReader extends AbstractProductReader {
                 geoCodings.put(shapeString, crsGeoCoding);
             } else {
                 String newKey = arrayKey.substring(0,arrayKey.lastIndexOf("/"));
-                Band[] coordinateBands = new Band[2];
+                String[] bandNames = new String[2];
+                int[] dataTypes = new int[2];
+                double[][] axisValues = new double[2][];
                 double[][] coordinateValues = new double[2][];
                 int numCoordinates;
                 for (int k = 0; k < coordinatePair.size(); k++) {
                     int count = 0;
                     String coordinateName = coordinatePair.get(k);
                     String coordKey = newKey + "/" + coordinateName;
-                    ZarrArray coord = rootGroup.openArray(coordKey);
+                    ZarrArrayReader coord = getArray(coordKey);
                     final DataType zarrDataType = coord.getDataType();
                     int productDataType = getProductDataType(zarrDataType);
                     numCoordinates = coord.getShape()[0];
+                    axisValues[k] = new double[numCoordinates];
                     coordinateValues[k] = new double[numCoordinates * numCoordinates];
                     ProductData productData = ProductData.createInstance(productDataType, numCoordinates);
                     coord.read(productData.getElems(), new int[]{numCoordinates});
-                    String bandName = getBandName(coordKey.split("/"));
-                    Band coordBand = new Band(bandName, productDataType, numCoordinates, numCoordinates);
-                    coordBand.ensureRasterData();
                     for (int i = 0; i < numCoordinates; i++) {
+                        axisValues[k][i] = productData.getElemDoubleAt(i);
                         for (int j = 0; j < numCoordinates; j++) {
                             if (k == 0) {
-                                coordBand.setPixelDouble(i, j, productData.getElemDoubleAt(j));
                                 coordinateValues[k][count++] = productData.getElemDoubleAt(j);
                             } else {
-                                coordBand.setPixelDouble(i, j, productData.getElemDoubleAt(i));
                                 coordinateValues[k][count++] = productData.getElemDoubleAt(i);
                             }
                         }
                     }
-                    coordinateBands[k] = coordBand;
-                    product.addBand(coordBand);
+                    bandNames[k] = getBandName(coordKey.split("/"));
+                    dataTypes[k] = productDataType;
                 }
                 double resolutionInKm = RasterUtils.computeResolutionInKm(
                         coordinateValues[0], coordinateValues[1], shape[0], shape[1]
                 );
-                CoordinateReferenceSystem crs = DefaultGeographicCRS.WGS84;
-                GeoRaster geoRaster = new GeoRaster(
-                        coordinateValues[0], coordinateValues[1],
-                        coordinateBands[0].getName(), coordinateBands[1].getName(),
-                        shape[0], shape[1], resolutionInKm
-                );
-                final ForwardCoding forwardCoding = ComponentFactory.getForward(PixelForward.KEY);
-                final InverseCoding inverseCoding = ComponentFactory.getInverse(PixelQuadTreeInverse.KEY);
-                ComponentGeoCoding geoCoding = new ComponentGeoCoding(geoRaster, forwardCoding, inverseCoding, crs);
-                geoCoding.setGeoCRS(DefaultGeographicCRS.WGS84);
-                geoCoding.initialize();
-                geoCodings.put(shapeString, geoCoding);
+                // the bands of the coordinates are added for the subset of the product once all grids are known
+                GridCoordinates coordinates =
+                        new GridCoordinates(bandNames, dataTypes, axisValues, coordinateValues, resolutionInKm);
+                gridCoordinates.put(shapeString, coordinates);
+                geoCodings.put(shapeString, createPixelGeoCoding(coordinates, coordinateValues, shape[0], shape[1]));
             }
         }
     }
 
+    private static GeoCoding createPixelGeoCoding(GridCoordinates coordinates, double[][] coordinateValues,
+                                                  int width, int height) {
+        GeoRaster geoRaster = new GeoRaster(
+                coordinateValues[0], coordinateValues[1],
+                coordinates.bandNames()[0], coordinates.bandNames()[1],
+                width, height, coordinates.resolutionInKm()
+        );
+        final ForwardCoding forwardCoding = ComponentFactory.getForward(PixelForward.KEY);
+        final InverseCoding inverseCoding = ComponentFactory.getInverse(PixelQuadTreeInverse.KEY);
+        ComponentGeoCoding geoCoding = new ComponentGeoCoding(geoRaster, forwardCoding, inverseCoding,
+                DefaultGeographicCRS.WGS84);
+        geoCoding.setGeoCRS(DefaultGeographicCRS.WGS84);
+        geoCoding.initialize();
+        return geoCoding;
+    }
+
     private ProductData getProductDataFromKey(
             String newKey, String coordName
     ) throws IOException, InvalidRangeException {
         String coordKey = newKey + "/" + coordName;
-        ZarrArray coord = rootGroup.openArray(coordKey);
+        return getProductData(coordKey, getArray(coordKey));
+    }
+
+    // Reads a whole array, e.g. a coordinate or a metadata array
+    private ProductData getProductData(String coordKey, ZarrArrayReader coord)
+            throws IOException, InvalidRangeException {
         int[] shape = coord.getShape();
-        if (shape.length == 0) {
+        if (shape.length == 0 && coord instanceof JzarrArrayReader) {
+            ZarrArray zarrArray = ((JzarrArrayReader) coord).getArray();
             ArrayParams params = new ArrayParams();
-            params.byteOrder(coord.getByteOrder());
-            params.dataType(coord.getDataType());
-            params.fillValue(coord.getFillValue());
+            params.byteOrder(zarrArray.getByteOrder());
+            params.dataType(zarrArray.getDataType());
+            params.fillValue(zarrArray.getFillValue());
             params.shape(1);
             params.chunks(1);
-            coord = rootGroup.createArray(coordKey, params);
+            coord = ZarrArrayReader.of(rootGroup.createArray(coordKey, params));
         }
         final DataType zarrDataType = coord.getDataType();
         int productDataType = getProductDataType(zarrDataType);
@@ -675,6 +1386,9 @@ public class S2ZarrProductReader extends AbstractProductReader {
                 maskExpression = rasterName + " == " + sampleValue;
             }
             final String maskName = rasterName + "_" + sampleName;
+            if (!isNodeAccepted(maskName)) {
+                continue;
+            }
             final Color maskColor = getColorProvider().getMaskColor();
             product.addMask(maskName, maskExpression, maskExpression, maskColor, 0.5);
         }
@@ -702,55 +1416,413 @@ public class S2ZarrProductReader extends AbstractProductReader {
         return null;
     }
 
-    private Band createBand(String arrayKey, ZarrArray array, int[] additionalIndices) {
-        final DataType zarrDataType = array.getDataType();
-        int productDataType = getProductDataType(zarrDataType);
+    // The bands split out of a multidimensional array share its decoded chunks, and tiles smaller than the chunks
+    // are cut from them. Returns whether the array has a cache.
+    private boolean setDecodedChunkCache(String arrayKey, ZarrArrayReader array) {
+        if (!(array instanceof ChunkedArrayReader chunkedArray)) {
+            return false;
+        }
+        final DecodedChunkCache cache = DecodedChunkCache.getInstance();
+        if (cache != null && chunkedArray.getChunkCache() == null) {
+            chunkedArray.setChunkCache(cache.getArrayChunks(this, arrayKey));
+        }
+        return chunkedArray.getChunkCache() != null;
+    }
+
+    private TilePrefetcher createTilePrefetcher(String arrayKey, ZarrArrayReader array, int[] additionalIndices) {
+        // chunks of arrays with a decoded chunk cache are fetched once by the cache
+        if (prefetchStore == null ||
+                array instanceof ChunkedArrayReader chunkedArray && chunkedArray.getChunkCache() != null) {
+            return null;
+        }
+        try {
+            final ChunkKeyEncoding chunkKeyEncoding;
+            if (array instanceof ZarrV3Array v3Array) {
+                // inner chunks of a shard are read from the shard index instead
+                if (v3Array.isSharded()) {
+                    return null;
+                }
+                chunkKeyEncoding = v3Array.getChunkKeyEncoding();
+            } else if (array instanceof ZarrV2Array v2Array) {
+                chunkKeyEncoding = v2Array.getChunkKeyEncoding();
+            } else {
+                chunkKeyEncoding = ChunkKeyEncoding.v2(arrayKey, getDimensionSeparator(arrayKey));
+            }
+            return new TilePrefetcher(prefetchStore, chunkKeyEncoding, array.getChunks(), additionalIndices);
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.fine("Tiles of array '" + arrayKey + "' are not prefetched: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private String getDimensionSeparator(String arrayKey) throws IOException {
+        try (InputStream inputStream = store.getInputStream(arrayKey + "/" + ZarrConstants.FILENAME_DOT_ZARRAY)) {
+            if (inputStream != null) {
+                final String arrayMetadata = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+                final String separator = ZarrJson.getRawMembers(arrayMetadata).get(DIMENSION_SEPARATOR_NAME);
+                if (separator != null && ZarrJson.getString(separator) != null) {
+                    return ZarrJson.getString(separator);
+                }
+            }
+        }
+        return DEFAULT_DIMENSION_SEPARATOR;
+    }
+
+    private S2ZarrOpImage createOpImage(Band band, String arrayKey, ZarrArrayReader array, int[] additionalIndices) {
         int[] shape = array.getShape();
         int[] shape2d = new int[]{shape[shape.length - 2], shape[shape.length - 1]};
         int[] chunks = array.getChunks();
         int[] chunks2d = new int[]{chunks[chunks.length - 2], chunks[chunks.length - 1]};
-        int width = shape[shape.length - 2];
-        int height = shape[shape.length - 1];
-        final Band band = new Band(arrayKey, productDataType, width, height);
-        product.addBand(band);
-        String shapeString = shape2d[0] + "_" + shape2d[1];
-        if (geoCodings.containsKey(shapeString)) {
-            GeoCoding geoCoding = geoCodings.get(shapeString);
-            band.setGeoCoding(geoCoding);
-            RenderedImage sourceImage = new S2ZarrOpImage(
-                    band, shape2d, chunks2d, additionalIndices, array, ResolutionLevel.MAXRES
-            );
-            if (geoCoding instanceof CrsGeoCoding) {
-                AffineTransform2D i2m = (AffineTransform2D) geoCoding.getImageToMapTransform();
-                double scaleX = i2m.getScaleX();
-                double scaleY = i2m.getScaleY();
-                double transformX = i2m.getTranslateX();
-                double transformY = i2m.getTranslateY();
-                double translateX = (transformX + Math.abs(0.5 * scaleX)) / scaleX;
-                double translateY = (transformY - Math.abs(0.5 * scaleY)) / scaleY;
-                final AffineTransform imageToModelTransform = new AffineTransform();
-                imageToModelTransform.scale(scaleX, scaleY);
-                if (!Double.isNaN(translateX) && !Double.isNaN(translateY)) {
-                    imageToModelTransform.translate(translateX, translateY);
+        int[] tileSize = new int[]{getTileSize(chunks2d[0]), getTileSize(chunks2d[1])};
+        // tiles smaller than the chunks are cut from the decoded chunks, without a cache the chunks are the tiles
+        if (!Arrays.equals(tileSize, chunks2d) && !setDecodedChunkCache(arrayKey, array)) {
+            tileSize = chunks2d;
+        }
+        final boolean chunkTiles = Arrays.equals(tileSize, chunks2d);
+        return new S2ZarrOpImage(
+                band, shape2d, tileSize, additionalIndices, array, ResolutionLevel.MAXRES,
+                chunkTiles ? createTilePrefetcher(arrayKey, array, additionalIndices) : null
+        );
+    }
+
+    /**
+     * Creates the levels of a band. If the band is stored at coarser resolutions as well, like {@code b02} at r10m,
+     * r20m and r60m, lower levels are served from these, and only levels without a stored counterpart are
+     * computed, from the closest finer one.
+     * A band which is resampled to a finer grid gets the upsampled image as its full resolution level, and the
+     * stored images as its lower levels.
+     *
+     * @param resampleFactor The factor by which the band is upsampled, 1 if it is not.
+     */
+    private MultiLevelSource createMultiLevelSource(Band band, String arrayKey, ZarrArrayReader array,
+                                                    int[] additionalIndices, RenderedImage sourceImage,
+                                                    int resampleFactor, MultiLevelModel model) {
+        final List<RenderedImage> storedImages = new ArrayList<>();
+        final List<Integer> storedFactors = new ArrayList<>();
+        if (resampleFactor > 1) {
+            storedImages.add(new S2ZarrUpsampledOpImage(band, sourceImage, resampleFactor,
+                    RESAMPLE_BILINEAR.equals(getResampling())));
+            storedFactors.add(1);
+        }
+        storedImages.add(sourceImage);
+        storedFactors.add(resampleFactor);
+        final String[] keyParts = arrayKey.split("/");
+        final int resolutionIndex = Arrays.asList(keyParts).indexOf(getResolution(keyParts));
+        if (resolutionIndex >= 0 && Config.instance().preferences().getBoolean(PROPERTY_KEY_PYRAMID_STORED_LEVELS, true)) {
+            final int resolution = getResolutionInMeters(keyParts[resolutionIndex]);
+            for (String storedResolution : RESOLUTIONS) {
+                final int storedResolutionInMeters = getResolutionInMeters(storedResolution);
+                if (storedResolutionInMeters <= resolution || storedResolutionInMeters % resolution != 0) {
+                    continue;
+                }
+                keyParts[resolutionIndex] = storedResolution;
+                final String storedArrayKey = String.join("/", keyParts);
+                final ZarrArrayReader storedArray = arrays.get(storedArrayKey);
+                final int factor = storedResolutionInMeters / resolution;
+                if (storedArray != null && storedArray.getDataType() == array.getDataType() &&
+                        isScaledShape(array.getShape(), storedArray.getShape(), factor)) {
+                    storedImages.add(createOpImage(band, storedArrayKey, storedArray, additionalIndices));
+                    storedFactors.add(factor * resampleFactor);
+                }
+            }
+        }
+        // levels which would be computed from the full resolution are persisted, for stored two-dimensional arrays
+        // read whole, as overviews are computed and stored for the whole array
+        final OverviewStore overviews = additionalIndices.length == 0 && resampleFactor == 1 &&
+                !bandRegions.containsKey(band.getName()) ? getOverviewStore() : null;
+        if (storedImages.size() == 1 && overviews == null) {
+            return new DefaultMultiLevelSource(sourceImage, model);
+        }
+        return new S2ZarrMultiLevelSource(model, storedImages.toArray(new RenderedImage[0]),
+                storedFactors.stream().mapToInt(Integer::intValue).toArray(), band, arrayKey, overviews);
+    }
+
+    private static String getResampling() {
+        return Config.instance().preferences().get(PROPERTY_KEY_RESAMPLING, RESAMPLE_NONE);
+    }
+
+    /**
+     * @return The shape of the finest grid with a map geocoding, e.g. of r10m, if bands of a coarser grid are to be
+     * upsampled to it and the grid is an integer multiple of theirs, or {@code null}.
+     */
+    private String getResampledShapeString(String shapeString) {
+        final String resampling = getResampling();
+        if (!RESAMPLE_NEAREST.equals(resampling) && !RESAMPLE_BILINEAR.equals(resampling)) {
+            return null;
+        }
+        String finestShapeString = null;
+        for (Map.Entry<String, GeoCoding> entry : geoCodings.entrySet()) {
+            if (getResampleFactor(shapeString, entry.getKey()) > 1 && (finestShapeString == null ||
+                    getResampleFactor(finestShapeString, entry.getKey()) > 1)) {
+                finestShapeString = entry.getKey();
+            }
+        }
+        return finestShapeString;
+    }
+
+    /**
+     * @return The integer factor by which the pixels of a grid are larger than those of a finer grid covering
+     * the same area in the same CRS, 1 otherwise.
+     */
+    private int getResampleFactor(String shapeString, String finerShapeString) {
+        if (!(geoCodings.get(shapeString) instanceof CrsGeoCoding geoCoding) ||
+                !(geoCodings.get(finerShapeString) instanceof CrsGeoCoding finerGeoCoding) ||
+                !CRS.equalsIgnoreMetadata(geoCoding.getMapCRS(), finerGeoCoding.getMapCRS())) {
+            return 1;
+        }
+        final AffineTransform2D i2m = (AffineTransform2D) geoCoding.getImageToMapTransform();
+        final AffineTransform2D finerI2m = (AffineTransform2D) finerGeoCoding.getImageToMapTransform();
+        final double ratio = i2m.getScaleX() / finerI2m.getScaleX();
+        final int factor = (int) Math.round(ratio);
+        final String[] shape = shapeString.split("_");
+        final String[] finerShape = finerShapeString.split("_");
+        if (factor <= 1 || Math.abs(ratio - factor) > 1e-9 ||
+                Math.abs(i2m.getScaleY() / finerI2m.getScaleY() - factor) > 1e-9 ||
+                Math.abs(i2m.getTranslateX() - finerI2m.getTranslateX()) > 1e-6 * Math.abs(finerI2m.getScaleX()) ||
+                Math.abs(i2m.getTranslateY() - finerI2m.getTranslateY()) > 1e-6 * Math.abs(finerI2m.getScaleY()) ||
+                Integer.parseInt(finerShape[0]) != Integer.parseInt(shape[0]) * factor ||
+                Integer.parseInt(finerShape[1]) != Integer.parseInt(shape[1]) * factor) {
+            return 1;
+        }
+        return factor;
+    }
+
+    // The overviews of the product are opened with the first band needing them
+    private OverviewStore getOverviewStore() {
+        final Preferences preferences = Config.instance().preferences();
+        final long maxSizeMB = preferences.getLong(PROPERTY_KEY_PYRAMID_OVERVIEWS_MAX_SIZE, DEFAULT_OVERVIEWS_MAX_SIZE_MB);
+        if (overviewStore == null && !overviewStoreFailed && productId != null && maxSizeMB > 0 &&
+                preferences.getBoolean(PROPERTY_KEY_PYRAMID_OVERVIEWS, true)) {
+            try {
+                overviewStore = OverviewStore.open(getCacheDir().resolve(OVERVIEW_DIR_NAME), productId,
+                        maxSizeMB << 20);
+            } catch (IOException e) {
+                LOG.warning("Overviews are not available: " + e.getMessage());
+                overviewStoreFailed = true;
+            }
+        }
+        return overviewStore;
+    }
+
+    private static String getResolution(String[] keyParts) {
+        for (String keyPart : keyParts) {
+            if (RESOLUTIONS.contains(keyPart)) {
+                return keyPart;
+            }
+        }
+        return null;
+    }
+
+    private static int getResolutionInMeters(String resolution) {
+        return Integer.parseInt(resolution.substring(1, resolution.length() - 1));
+    }
+
+    // The spatial dimensions of a stored array must be those of the full resolution array divided by the factor
+    private static boolean isScaledShape(int[] shape, int[] storedShape, int factor) {
+        if (shape.length != storedShape.length) {
+            return false;
+        }
+        for (int i = 0; i < shape.length; i++) {
+            final int expected = i < shape.length - 2 ? storedShape[i] : storedShape[i] * factor;
+            if (shape[i] != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static DefaultMultiLevelModel createMultiLevelModel(GeoCoding geoCoding, int width, int height) {
+        AffineTransform2D i2m = (AffineTransform2D) geoCoding.getImageToMapTransform();
+        double scaleX = i2m.getScaleX();
+        double scaleY = i2m.getScaleY();
+        double transformX = i2m.getTranslateX();
+        double transformY = i2m.getTranslateY();
+        double translateX = (transformX + Math.abs(0.5 * scaleX)) / scaleX;
+        double translateY = (transformY - Math.abs(0.5 * scaleY)) / scaleY;
+        final AffineTransform imageToModelTransform = new AffineTransform();
+        imageToModelTransform.scale(scaleX, scaleY);
+        if (!Double.isNaN(translateX) && !Double.isNaN(translateY)) {
+            imageToModelTransform.translate(translateX, translateY);
+        }
+        return new DefaultMultiLevelModel(imageToModelTransform, width, height);
+    }
+
+    /**
+     * @return The region of a band in the subset of the product, from the region map of the subset or else from
+     * its region in pixel coordinates of the finest map grid, or {@code null} if the whole band is read.
+     *
+     * @throws IllegalArgumentException If the region does not intersect the band.
+     */
+    private Rectangle getBandRegion(String bandName, GeoCoding geoCoding, int width, int height) {
+        final ProductSubsetDef subsetDef = getSubsetDef();
+        // sub-sampled subsets are left to SNAP, which applies their regions as well
+        if (subsetDef == null || geoCoding == null || isSubSampled()) {
+            return null;
+        }
+        Rectangle region = subsetDef.getRegionMap() != null ? subsetDef.getRegionMap().get(bandName) : null;
+        if (region == null && subsetDef.getSubsetRegion() != null) {
+            final String referenceShapeString = getReferenceShapeString();
+            if (referenceShapeString == null) {
+                return null;
+            }
+            final String[] referenceShape = referenceShapeString.split("_");
+            region = subsetDef.getSubsetRegion().computeBandPixelRegion(geoCodings.get(referenceShapeString),
+                    geoCoding, Integer.parseInt(referenceShape[0]), Integer.parseInt(referenceShape[1]),
+                    width, height, true);
+        }
+        if (region == null) {
+            return null;
+        }
+        region = region.intersection(new Rectangle(width, height));
+        if (region.isEmpty()) {
+            throw new IllegalArgumentException("The subset region does not intersect band '" + bandName + "'");
+        }
+        return region.width == width && region.height == height ? null : region;
+    }
+
+    /**
+     * @return The shape of the finest grid with a map geocoding, e.g. of r10m, in which the region of a subset
+     * is given, or {@code null}.
+     */
+    private String getReferenceShapeString() {
+        String referenceShapeString = null;
+        double referencePixelSize = Double.POSITIVE_INFINITY;
+        for (Map.Entry<String, GeoCoding> entry : geoCodings.entrySet()) {
+            if (entry.getValue() instanceof CrsGeoCoding geoCoding) {
+                final double pixelSize = Math.abs(((AffineTransform2D) geoCoding.getImageToMapTransform()).getScaleX());
+                if (pixelSize < referencePixelSize) {
+                    referenceShapeString = entry.getKey();
+                    referencePixelSize = pixelSize;
+                }
+            }
+        }
+        return referenceShapeString;
+    }
+
+    // The geocodings of the regions of a grid are shared by its bands
+    private GeoCoding getSubsetGeoCoding(String shapeString, Rectangle region) {
+        final String key = shapeString + "_" + region.x + "_" + region.y + "_" + region.width + "_" + region.height;
+        GeoCoding subsetGeoCoding = subsetGeoCodings.get(key);
+        if (subsetGeoCoding == null) {
+            if (geoCodings.get(shapeString) instanceof CrsGeoCoding geoCoding) {
+                final AffineTransform i2m = new AffineTransform((AffineTransform2D) geoCoding.getImageToMapTransform());
+                i2m.translate(region.x, region.y);
+                try {
+                    subsetGeoCoding = new CrsGeoCoding(geoCoding.getMapCRS(),
+                            new Rectangle(region.width, region.height), i2m);
+                } catch (FactoryException | TransformException e) {
+                    throw new IllegalStateException("Cannot initialise geocoding of subset", e);
                 }
-                final DefaultMultiLevelModel targetModel = new DefaultMultiLevelModel(
-                        imageToModelTransform, sourceImage.getWidth(), sourceImage.getHeight()
-                );
-                final DefaultMultiLevelSource targetMultiLevelSource =
-                        new DefaultMultiLevelSource(sourceImage, targetModel);
-                sourceImage = new DefaultMultiLevelImage(targetMultiLevelSource);
             } else {
+                // a pixel geocoding is made from the coordinates within the region
+                final GridCoordinates coordinates = gridCoordinates.get(shapeString);
+                final int width = Integer.parseInt(shapeString.split("_")[0]);
+                final double[][] regionValues = new double[2][region.width * region.height];
+                for (int k = 0; k < 2; k++) {
+                    for (int y = 0; y < region.height; y++) {
+                        System.arraycopy(coordinates.values()[k], (region.y + y) * width + region.x,
+                                regionValues[k], y * region.width, region.width);
+                    }
+                }
+                subsetGeoCoding = createPixelGeoCoding(coordinates, regionValues, region.width, region.height);
+            }
+            subsetGeoCodings.put(key, subsetGeoCoding);
+        }
+        return subsetGeoCoding;
+    }
+
+    private Band createBand(String bandName, String arrayKey, ZarrArrayReader array, int[] additionalIndices) {
+        return createBand(bandName, arrayKey, array, additionalIndices, true);
+    }
+
+    /**
+     * @param productBand Whether the band is added to the product, or only read as input of other bands.
+     */
+    private Band createBand(String bandName, String arrayKey, ZarrArrayReader array, int[] additionalIndices,
+                            boolean productBand) {
+        final DataType zarrDataType = array.getDataType();
+        int productDataType = getProductDataType(zarrDataType);
+        int[] shape = array.getShape();
+        int[] shape2d = new int[]{shape[shape.length - 2], shape[shape.length - 1]};
+        String shapeString = shape2d[0] + "_" + shape2d[1];
+        // bands of coarser grids may be upsampled to the finest grid
+        final String resampledShapeString = getResampledShapeString(shapeString);
+        final int resampleFactor = resampledShapeString != null ? getResampleFactor(shapeString, resampledShapeString) : 1;
+        int width = shape[shape.length - 2] * resampleFactor;
+        int height = shape[shape.length - 1] * resampleFactor;
+        final String gridShapeString = resampleFactor > 1 ? resampledShapeString : shapeString;
+        final GeoCoding geoCoding = geoCodings.get(gridShapeString);
+        // bands of map grids are read for the region of a subset only
+        final Rectangle region = getBandRegion(bandName, geoCoding, width, height);
+        if (region != null) {
+            width = region.width;
+            height = region.height;
+        }
+        final Band band = isLazy() ? new S2ZarrBand(bandName, productDataType, width, height) :
+                new Band(bandName, productDataType, width, height);
+        if (productBand) {
+            product.addBand(band);
+            if (additionalIndices.length == 0) {
+                bandArrayKeys.put(bandName, arrayKey);
+            }
+        }
+        if (region != null) {
+            bandRegions.put(bandName, region);
+        }
+        if (geoCoding != null) {
+            final GeoCoding bandGeoCoding = region != null ? getSubsetGeoCoding(gridShapeString, region) : geoCoding;
+            band.setGeoCoding(bandGeoCoding);
+            if (!(geoCoding instanceof CrsGeoCoding)) {
                 GeoCoding referenceGeoCoding = product.getSceneGeoCoding();
                 S2ZarrGeoCodingSceneTransformProvider sceneTransformProvider =
-                        new S2ZarrGeoCodingSceneTransformProvider(referenceGeoCoding, geoCoding);
+                        new S2ZarrGeoCodingSceneTransformProvider(referenceGeoCoding, bandGeoCoding);
                 band.setModelToSceneTransform(sceneTransformProvider.getModelToSceneTransform());
                 band.setSceneToModelTransform(sceneTransformProvider.getSceneToModelTransform());
             }
-            band.setSourceImage(sourceImage);
+            final Supplier<RenderedImage> sourceImage = () -> createSourceImage(band, arrayKey, array,
+                    additionalIndices, geoCoding, resampleFactor, region);
+            if (band instanceof S2ZarrBand lazyBand) {
+                lazyBand.setSourceImageFactory(sourceImage);
+            } else {
+                band.setSourceImage(sourceImage.get());
+            }
         }
         return band;
     }
 
+    private static boolean isLazy() {
+        return Config.instance().preferences().getBoolean(PROPERTY_KEY_LAZY_BANDS, true);
+    }
+
+    /**
+     * Creates the image of a band, on first use of the band if bands are lazy.
+     *
+     * @param region The region of the band in the subset of the product, or {@code null} for the whole band.
+     */
+    private RenderedImage createSourceImage(Band band, String arrayKey, ZarrArrayReader array,
+                                            int[] additionalIndices, GeoCoding geoCoding, int resampleFactor,
+                                            Rectangle region) {
+        if (additionalIndices.length == 0) {
+            setChunkStatistics(arrayKey, array);
+        }
+        RenderedImage sourceImage = createOpImage(band, arrayKey, array, additionalIndices);
+        if (geoCoding instanceof CrsGeoCoding) {
+            final DefaultMultiLevelModel targetModel = createMultiLevelModel(geoCoding,
+                    sourceImage.getWidth() * resampleFactor, sourceImage.getHeight() * resampleFactor);
+            final MultiLevelSource targetMultiLevelSource = createMultiLevelSource(band, arrayKey, array,
+                    additionalIndices, sourceImage, resampleFactor, targetModel);
+            sourceImage = new DefaultMultiLevelImage(targetMultiLevelSource);
+            if (region != null) {
+                sourceImage = new DefaultMultiLevelImage(S2ZarrSubsetOpImage.createMultiLevelSource(band,
+                        (DefaultMultiLevelImage) sourceImage, region,
+                        createMultiLevelModel(band.getGeoCoding(), region.width, region.height)));
+            }
+        } else if (region != null) {
+            sourceImage = new S2ZarrSubsetOpImage(band, sourceImage, region, ResolutionLevel.MAXRES);
+        }
+        return sourceImage;
+    }
+
     void applyBandAttributes(Band band, Map<?, ?> bandDescription, Map<String, Object> arrayAttributes) {
         if (bandDescription != null) {
             if (bandDescription.containsKey(BANDWITH_ATTRIBUTES_NAME)) {
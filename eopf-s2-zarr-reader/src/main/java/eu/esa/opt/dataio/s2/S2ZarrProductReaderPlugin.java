@@ -1,5 +1,6 @@
 package eu.esa.opt.dataio.s2;
 
+import com.bc.zarr.storage.Store;
 import org.esa.snap.core.dataio.DecodeQualification;
 import org.esa.snap.core.dataio.ProductReader;
 import org.esa.snap.core.dataio.ProductReaderPlugIn;
@@ -10,6 +11,7 @@ import static com.bc.zarr.ZarrConstants.*;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -19,12 +21,21 @@ import java.util.TreeSet;
 import java.util.stream.Stream;
 
 import static eu.esa.opt.dataio.s2.S2ZarrConstants.*;
+import static eu.esa.opt.dataio.s2.S2ZarrUtils.convertToRemoteUri;
 import static eu.esa.opt.dataio.s2.S2ZarrUtils.convertToPath;
+import static eu.esa.opt.dataio.s2.S2ZarrUtils.getFileName;
+import static eu.esa.opt.dataio.s2.S2ZarrUtils.getParent;
+import static eu.esa.opt.dataio.s2.S2ZarrUtils.openRemoteStore;
+import static eu.esa.opt.dataio.s2.S2ZarrUtils.openZipStore;
 
 public class S2ZarrProductReaderPlugin implements ProductReaderPlugIn  {
 
     @Override
     public DecodeQualification getDecodeQualification(Object input) {
+        final URI inputUri = convertToRemoteUri(input);
+        if (inputUri != null) {
+            return getRemoteDecodeQualification(inputUri);
+        }
         final Path inputPath = convertToPath(input);
         if (inputPath == null) {
             return DecodeQualification.UNABLE;
@@ -42,13 +53,17 @@ public class S2ZarrProductReaderPlugin implements ProductReaderPlugIn  {
                         productRootName.toString().toLowerCase().endsWith(ZARR_FILE_EXTENSION);
         if (isValidRootDirName) {
             final boolean productRootIsDirectory = Files.isDirectory(productRoot);
-            final Path productHeader = productRoot.resolve(FILENAME_DOT_ZGROUP);
+            // Zarr version 3 products have zarr.json documents instead of .zgroup and .zarray files
+            final boolean isV3 = Files.isRegularFile(productRoot.resolve(ZARR_JSON_KEY));
+            final Path productHeader = productRoot.resolve(isV3 ? ZARR_JSON_KEY : FILENAME_DOT_ZGROUP);
             final boolean productHeaderExist = Files.exists(productHeader);
             final boolean productHeaderIsFile = Files.isRegularFile(productHeader);
+            final String arrayHeaderName = isV3 ? ZARR_JSON_KEY : FILENAME_DOT_ZARRAY;
 
             if (productRootIsDirectory && productHeaderExist && productHeaderIsFile) {
                 try (Stream<Path> stream = Files.find(productRoot, 5,
-                        (path, basicFileAttributes) -> Files.isRegularFile(path) && path.endsWith(FILENAME_DOT_ZARRAY),
+                        (path, basicFileAttributes) -> Files.isRegularFile(path) && path.endsWith(arrayHeaderName) &&
+                                !path.equals(productHeader),
                         FileVisitOption.FOLLOW_LINKS)) {
                     final List<Path> pathList = stream.toList();
                     if (!pathList.isEmpty()) {
@@ -61,7 +76,7 @@ public class S2ZarrProductReaderPlugin implements ProductReaderPlugIn  {
         }
         final boolean isValidZipArchiveName = productRootName != null && productRootName.toString().toLowerCase().endsWith(ZIP_CONTAINER_EXTENSION);
         if (isValidZipArchiveName) {
-            try (ZarrZipStore zipStore = new ZarrZipStore(productRoot)) {
+            try (ZarrZipRangeStore zipStore = openZipStore(productRoot, false)) {
                 final InputStream productHeaderStream = zipStore.getInputStream(FILENAME_DOT_ZGROUP);
                 final boolean productHeaderExist = productHeaderStream != null;
                 if (productHeaderExist) {
@@ -69,6 +84,8 @@ public class S2ZarrProductReaderPlugin implements ProductReaderPlugIn  {
                     if (arrayKeys.size() > 0) {
                         return DecodeQualification.INTENDED;
                     }
+                } else if (isV3Product(zipStore)) {
+                    return DecodeQualification.INTENDED;
                 }
             } catch (IOException e) {
                 return DecodeQualification.UNABLE;
@@ -77,6 +94,43 @@ public class S2ZarrProductReaderPlugin implements ProductReaderPlugIn  {
         return DecodeQualification.UNABLE;
     }
 
+    // Remote products cannot be listed, so they are only accepted if they provide consolidated metadata or are zipped
+    private DecodeQualification getRemoteDecodeQualification(URI inputUri) {
+        final URI productRoot;
+        final String lowerName = getFileName(inputUri).toLowerCase();
+        if (lowerName.endsWith(ZIP_CONTAINER_EXTENSION) || lowerName.endsWith(ZARR_FILE_EXTENSION)) {
+            productRoot = inputUri;
+        } else {
+            productRoot = getParent(inputUri);
+        }
+        final String lowerRootName = getFileName(productRoot).toLowerCase();
+        if (!lowerRootName.endsWith(ZARR_FILE_EXTENSION) && !lowerRootName.endsWith(ZIP_CONTAINER_EXTENSION)) {
+            return DecodeQualification.UNABLE;
+        }
+        try (Store store = ConsolidatedMetadataStore.wrap(openRemoteStore(productRoot))) {
+            // the arrays of Zarr version 3 products are taken from the consolidated metadata in the root zarr.json
+            if (isV3Product(store)) {
+                return DecodeQualification.INTENDED;
+            }
+            if (!(store instanceof ConsolidatedMetadataStore) && !(store instanceof ZarrZipRangeStore)) {
+                return DecodeQualification.UNABLE;
+            }
+            try (InputStream productHeaderStream = store.getInputStream(FILENAME_DOT_ZGROUP)) {
+                if (productHeaderStream != null && !store.getArrayKeys().isEmpty()) {
+                    return DecodeQualification.INTENDED;
+                }
+            }
+        } catch (IOException e) {
+            return DecodeQualification.UNABLE;
+        }
+        return DecodeQualification.UNABLE;
+    }
+
+    private static boolean isV3Product(Store store) throws IOException {
+        final ZarrV3Group rootGroup = ZarrV3Group.open(store);
+        return rootGroup != null && !rootGroup.getArrayKeys().isEmpty();
+    }
+
     @Override
     public Class[] getInputTypes() {
         return IO_TYPES;
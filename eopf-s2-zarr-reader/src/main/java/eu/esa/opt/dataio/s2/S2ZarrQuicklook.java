@@ -0,0 +1,141 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.ceres.core.ProgressMonitor;
+import com.bc.zarr.DataType;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.quicklooks.Quicklook;
+import ucar.ma2.InvalidRangeException;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import static org.esa.snap.core.util.SystemUtils.LOG;
+
+/**
+ * The quicklook of a product, made from its smallest stored true colour image ({@code tci}), i.e. the r60m one.
+ * The three channels are read at once with a single read of the array, rather than band by band through the
+ * tiles of the images, and the thumbnail is kept in a cache directory for the next time the product is opened.
+ * If the array cannot be read this way, the quicklook is computed from the bands as usual.
+ */
+final class S2ZarrQuicklook extends Quicklook {
+
+    /**
+     * The maximum width and height of the thumbnail, which is subsampled from the array if it is larger.
+     */
+    static final int MAX_SIZE = 1024;
+
+    private static final String CACHE_FILE_EXTENSION = ".png";
+
+    private final ZarrArrayReader array;
+    private final Path cacheFile;
+
+    /**
+     * Constructor.
+     *
+     * @param array     The {@code tci} array, of shape [3, height, width] and of unsigned bytes.
+     * @param bands     The bands of the channels of the array.
+     * @param cacheFile The file of the cached thumbnail, or {@code null} to not cache it.
+     */
+    S2ZarrQuicklook(Product product, String name, ZarrArrayReader array, Band[] bands, Path cacheFile) {
+        super(product, name, bands);
+        this.array = array;
+        this.cacheFile = cacheFile;
+    }
+
+    static String getCacheFileName(String productId) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(productId.getBytes(StandardCharsets.UTF_8))) +
+                    CACHE_FILE_EXTENSION;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public synchronized BufferedImage getImage(ProgressMonitor pm) {
+        if (!hasImage()) {
+            final BufferedImage image = readImage();
+            if (image != null) {
+                setImage(image);
+            }
+        }
+        return super.getImage(pm);
+    }
+
+    private BufferedImage readImage() {
+        if (cacheFile != null && Files.isRegularFile(cacheFile)) {
+            try {
+                final BufferedImage image = ImageIO.read(cacheFile.toFile());
+                if (image != null) {
+                    return image;
+                }
+            } catch (IOException e) {
+                LOG.fine("Ignoring invalid quicklook file '" + cacheFile + "': " + e.getMessage());
+            }
+        }
+        final int[] shape = array.getShape();
+        if (shape.length != 3 || shape[0] != 3 || array.getDataType() != DataType.u1) {
+            return null;
+        }
+        final byte[] samples = new byte[shape[0] * shape[1] * shape[2]];
+        try {
+            array.read(samples, shape);
+        } catch (IOException | InvalidRangeException e) {
+            LOG.warning("Could not read quicklook of " + getProduct().getName() + ": " + e.getMessage());
+            return null;
+        }
+        final BufferedImage image = toImage(samples, shape[2], shape[1]);
+        if (cacheFile != null) {
+            writeImage(image);
+        }
+        return image;
+    }
+
+    /**
+     * @param samples The channels in C order, i.e. all red samples, then all green and all blue samples.
+     *
+     * @return An RGB image, subsampled to at most {@link #MAX_SIZE} pixels wide and high.
+     */
+    static BufferedImage toImage(byte[] samples, int width, int height) {
+        final int step = (Math.max(width, height) + MAX_SIZE - 1) / MAX_SIZE;
+        final int imageWidth = (width + step - 1) / step;
+        final int imageHeight = (height + step - 1) / step;
+        final int channelSize = width * height;
+        final BufferedImage image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
+        final int[] row = new int[imageWidth];
+        for (int y = 0; y < imageHeight; y++) {
+            for (int x = 0; x < imageWidth; x++) {
+                final int index = y * step * width + x * step;
+                row[x] = (samples[index] & 0xff) << 16 | (samples[channelSize + index] & 0xff) << 8 |
+                        samples[2 * channelSize + index] & 0xff;
+            }
+            image.setRGB(0, y, imageWidth, 1, row, 0, imageWidth);
+        }
+        return image;
+    }
+
+    private void writeImage(BufferedImage image) {
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            final Path tempFile = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+            try {
+                ImageIO.write(image, "png", tempFile.toFile());
+                Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            LOG.warning("Could not write quicklook of " + getProduct().getName() + ": " + e.getMessage());
+        }
+    }
+}
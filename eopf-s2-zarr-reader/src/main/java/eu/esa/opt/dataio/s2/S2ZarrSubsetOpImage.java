@@ -0,0 +1,112 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.ceres.multilevel.MultiLevelImage;
+import com.bc.ceres.multilevel.MultiLevelModel;
+import com.bc.ceres.multilevel.MultiLevelSource;
+import com.bc.ceres.multilevel.support.AbstractMultiLevelSource;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.image.ImageManager;
+import org.esa.snap.core.image.ResolutionLevel;
+import org.esa.snap.core.image.SingleBandedOpImage;
+
+import javax.media.jai.PlanarImage;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * The image of a band read for a region of the product only, i.e. a window of the image of the whole band. Each
+ * tile is copied from the tiles of the whole image it overlaps, so that only the chunks intersecting the region
+ * are ever read, and the levels of the region are windows of the levels of the whole image, which may be stored
+ * arrays or overviews.
+ */
+final class S2ZarrSubsetOpImage extends SingleBandedOpImage {
+
+    private final RasterDataNode rasterDataNode;
+    private final RenderedImage sourceImage;
+    private final Rectangle region;
+
+    /**
+     * Constructor.
+     *
+     * @param rasterDataNode The band, of the size of the region.
+     * @param sourceImage    The image of the whole band at the resolution level.
+     * @param region         The region in pixel coordinates of the full resolution of the whole band.
+     * @param level          The resolution level.
+     */
+    S2ZarrSubsetOpImage(RasterDataNode rasterDataNode, RenderedImage sourceImage, Rectangle region,
+                        ResolutionLevel level) {
+        super(ImageManager.getDataBufferType(rasterDataNode.getDataType()),
+                rasterDataNode.getRasterWidth(), rasterDataNode.getRasterHeight(),
+                new Dimension(sourceImage.getTileWidth(), sourceImage.getTileHeight()), null, level);
+        this.rasterDataNode = rasterDataNode;
+        this.sourceImage = sourceImage;
+        this.region = new Rectangle(region);
+    }
+
+    /**
+     * @param sourceImage The image of the whole band, whose levels are created on first use of the region levels.
+     *
+     * @return The levels of the region of a band.
+     */
+    static MultiLevelSource createMultiLevelSource(RasterDataNode rasterDataNode, MultiLevelImage sourceImage,
+                                                   Rectangle region, MultiLevelModel model) {
+        return new AbstractMultiLevelSource(model) {
+            @Override
+            protected RenderedImage createImage(int level) {
+                return new S2ZarrSubsetOpImage(rasterDataNode, sourceImage.getImage(level), region,
+                        ResolutionLevel.create(getModel(), level));
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        String className = getClass().getSimpleName();
+        String productName = "";
+        if (rasterDataNode.getProduct() != null) {
+            productName = ":" + rasterDataNode.getProduct().getName();
+        }
+        String bandName = "." + rasterDataNode.getName();
+        return className + productName + bandName + "@" + getLevel().getIndex();
+    }
+
+    @Override
+    protected void computeRect(PlanarImage[] sourceImages, WritableRaster tile, Rectangle destRect) {
+        final Rectangle sourceRect = getSourceRect(destRect, region, getScale(), sourceImage.getWidth(),
+                sourceImage.getHeight());
+        if (sourceRect.width < destRect.width || sourceRect.height < destRect.height) {
+            // levels of the whole image may be rounded differently at its edges
+            final double[] fill = new double[destRect.width * destRect.height];
+            Arrays.fill(fill, rasterDataNode.isNoDataValueUsed() ? rasterDataNode.getNoDataValue() : 0);
+            tile.setSamples(destRect.x, destRect.y, destRect.width, destRect.height, 0, fill);
+        }
+        if (!sourceRect.isEmpty()) {
+            // the samples of the whole image are shifted to the origin of the region
+            tile.setRect(-getOffset(region.x, getScale()), -getOffset(region.y, getScale()),
+                    sourceImage.getData(sourceRect));
+        }
+    }
+
+    /**
+     * @param destRect The region of a tile of this image.
+     * @param region   The region of the band in pixel coordinates of the full resolution of the whole band.
+     * @param scale    The scale of the resolution level.
+     * @param width    The width of the whole image at the resolution level.
+     * @param height   The height of the whole image at the resolution level.
+     *
+     * @return The region of the whole image at the resolution level covered by the tile, which is empty if there
+     * is none.
+     */
+    static Rectangle getSourceRect(Rectangle destRect, Rectangle region, double scale, int width, int height) {
+        final Rectangle sourceRect = new Rectangle(destRect);
+        sourceRect.translate(getOffset(region.x, scale), getOffset(region.y, scale));
+        return sourceRect.intersection(new Rectangle(width, height));
+    }
+
+    private static int getOffset(int regionOffset, double scale) {
+        return (int) Math.floor(regionOffset / scale);
+    }
+}
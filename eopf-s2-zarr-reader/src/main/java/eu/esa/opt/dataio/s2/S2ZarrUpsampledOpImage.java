@@ -0,0 +1,146 @@
+package eu.esa.opt.dataio.s2;
+
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.image.ImageManager;
+import org.esa.snap.core.image.ResolutionLevel;
+import org.esa.snap.core.image.SingleBandedOpImage;
+
+import javax.media.jai.PlanarImage;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+
+/**
+ * A band of a coarser grid, e.g. r20m or r60m, upsampled to a finer grid, e.g. r10m, by an integer factor.
+ * Each tile is computed from the region of the stored image it covers, which lies within a single tile of the
+ * stored image as the tiles of this image divide the upsampled tiles of the stored one, so that nothing is
+ * materialised at the finer resolution and the chunks are read as they are stored.
+ * <p>
+ * Pixels are replicated by nearest neighbour, or interpolated bilinearly between the centres of the stored pixels.
+ * Flag and index bands, as well as pixels next to invalid ones, are always upsampled by nearest neighbour.
+ */
+final class S2ZarrUpsampledOpImage extends SingleBandedOpImage {
+
+    private final RasterDataNode rasterDataNode;
+    private final RenderedImage storedImage;
+    private final int factor;
+    private final boolean bilinear;
+
+    /**
+     * Constructor.
+     *
+     * @param rasterDataNode The band, of the size of the finer grid.
+     * @param storedImage    The image of the stored array.
+     * @param factor         The ratio of the resolution of the stored array to the one of the finer grid.
+     * @param bilinear       Whether to interpolate bilinearly rather than by nearest neighbour.
+     */
+    S2ZarrUpsampledOpImage(RasterDataNode rasterDataNode, RenderedImage storedImage, int factor, boolean bilinear) {
+        super(ImageManager.getDataBufferType(rasterDataNode.getDataType()),
+                storedImage.getWidth() * factor, storedImage.getHeight() * factor,
+                new Dimension(S2ZarrUtils.getTileSize(storedImage.getTileWidth() * factor),
+                        S2ZarrUtils.getTileSize(storedImage.getTileHeight() * factor)),
+                null, ResolutionLevel.MAXRES);
+        this.rasterDataNode = rasterDataNode;
+        this.storedImage = storedImage;
+        this.factor = factor;
+        this.bilinear = bilinear;
+    }
+
+    @Override
+    public String toString() {
+        String className = getClass().getSimpleName();
+        String productName = "";
+        if (rasterDataNode.getProduct() != null) {
+            productName = ":" + rasterDataNode.getProduct().getName();
+        }
+        String bandName = "." + rasterDataNode.getName();
+        return className + productName + bandName + "x" + factor;
+    }
+
+    @Override
+    protected void computeRect(PlanarImage[] sourceImages, WritableRaster tile, Rectangle destRect) {
+        // codings and no-data value are set after the image is created
+        final boolean interpolate = bilinear && !rasterDataNode.isFlagBand() && !rasterDataNode.isIndexBand();
+        final double noDataValue = rasterDataNode.isNoDataValueUsed() ? rasterDataNode.getNoDataValue() : Double.NaN;
+        final Rectangle sourceRect = getSourceRect(destRect, interpolate);
+        final double[] source = storedImage.getData(sourceRect).getSamples(sourceRect.x, sourceRect.y,
+                sourceRect.width, sourceRect.height, 0, (double[]) null);
+        final double[] samples = upsample(source, sourceRect, destRect, factor, interpolate, noDataValue,
+                storedImage.getWidth(), storedImage.getHeight());
+        if (interpolate && !ProductData.isFloatingPointType(rasterDataNode.getDataType())) {
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = Math.round(samples[i]);
+            }
+        }
+        tile.setSamples(destRect.x, destRect.y, destRect.width, destRect.height, 0, samples);
+    }
+
+    // The stored pixels covered by a region, and their neighbours if interpolated
+    private Rectangle getSourceRect(Rectangle destRect, boolean interpolate) {
+        final int border = interpolate ? 1 : 0;
+        final int x0 = Math.max(0, Math.floorDiv(destRect.x, factor) - border);
+        final int y0 = Math.max(0, Math.floorDiv(destRect.y, factor) - border);
+        final int x1 = Math.min(storedImage.getWidth(), (destRect.x + destRect.width - 1) / factor + 1 + border);
+        final int y1 = Math.min(storedImage.getHeight(), (destRect.y + destRect.height - 1) / factor + 1 + border);
+        return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    /**
+     * Upsamples a region of a stored image.
+     *
+     * @param source      The samples of the stored image within the source region.
+     * @param sourceRect  The source region, which must cover the pixels of the destination region and, if
+     *                    interpolated, their neighbours within the stored image.
+     * @param destRect    The region of the upsampled image to compute.
+     * @param noDataValue The no-data value, or NaN.
+     * @param width       The width of the stored image.
+     * @param height      The height of the stored image.
+     *
+     * @return The samples of the destination region.
+     */
+    static double[] upsample(double[] source, Rectangle sourceRect, Rectangle destRect, int factor,
+                             boolean interpolate, double noDataValue, int width, int height) {
+        final double[] samples = new double[destRect.width * destRect.height];
+        for (int y = 0; y < destRect.height; y++) {
+            final int destY = destRect.y + y;
+            for (int x = 0; x < destRect.width; x++) {
+                final int destX = destRect.x + x;
+                final double nearest = source[(destY / factor - sourceRect.y) * sourceRect.width +
+                        destX / factor - sourceRect.x];
+                double value = nearest;
+                if (interpolate) {
+                    // the centre of the pixel in pixel coordinates of the stored image, relative to pixel centres
+                    final double sourceX = (destX + 0.5) / factor - 0.5;
+                    final double sourceY = (destY + 0.5) / factor - 0.5;
+                    final int x0 = (int) Math.floor(sourceX);
+                    final int y0 = (int) Math.floor(sourceY);
+                    final double wx = sourceX - x0;
+                    final double wy = sourceY - y0;
+                    final double v00 = getSample(source, sourceRect, x0, y0, width, height);
+                    final double v10 = getSample(source, sourceRect, x0 + 1, y0, width, height);
+                    final double v01 = getSample(source, sourceRect, x0, y0 + 1, width, height);
+                    final double v11 = getSample(source, sourceRect, x0 + 1, y0 + 1, width, height);
+                    if (isValid(v00, noDataValue) && isValid(v10, noDataValue) &&
+                            isValid(v01, noDataValue) && isValid(v11, noDataValue)) {
+                        value = (1 - wy) * ((1 - wx) * v00 + wx * v10) + wy * ((1 - wx) * v01 + wx * v11);
+                    }
+                }
+                samples[y * destRect.width + x] = value;
+            }
+        }
+        return samples;
+    }
+
+    // Pixels beyond the edges of the stored image take the value of the edge pixel
+    private static double getSample(double[] source, Rectangle sourceRect, int x, int y, int width, int height) {
+        final int clampedX = Math.min(Math.max(x, 0), width - 1);
+        final int clampedY = Math.min(Math.max(y, 0), height - 1);
+        return source[(clampedY - sourceRect.y) * sourceRect.width + clampedX - sourceRect.x];
+    }
+
+    private static boolean isValid(double value, double noDataValue) {
+        return !Double.isNaN(value) && value != noDataValue;
+    }
+}
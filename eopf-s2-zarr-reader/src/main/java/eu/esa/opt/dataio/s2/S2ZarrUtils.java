@@ -1,11 +1,26 @@
 package eu.esa.opt.dataio.s2;
 
 import com.bc.zarr.DataType;
+import com.bc.zarr.ZarrConstants;
+import com.bc.zarr.storage.Store;
 import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.util.SystemUtils;
+import org.esa.snap.runtime.Config;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.prefs.Preferences;
+
+import static eu.esa.opt.dataio.s2.S2ZarrConstants.*;
 
 
 public class S2ZarrUtils {
@@ -17,12 +32,170 @@ public class S2ZarrUtils {
         if (object instanceof File) {
             return ((File) object).toPath();
         }
-        if (object instanceof String) {
+        if (object instanceof String && convertToRemoteUri(object) == null) {
             return Paths.get((String) object);
         }
         return null;
     }
 
+    private static final List<String> REMOTE_SCHEMES = List.of("http", "https", "s3");
+
+    /**
+     * @return The URI of an HTTP(S) or S3 input, or {@code null} if the input does not denote a remote resource.
+     */
+    static URI convertToRemoteUri(final Object object) {
+        URI uri = null;
+        if (object instanceof URI) {
+            uri = (URI) object;
+        } else if (object instanceof String) {
+            final String string = (String) object;
+            final int schemeEnd = string.indexOf("://");
+            if (schemeEnd < 0 || !REMOTE_SCHEMES.contains(string.substring(0, schemeEnd).toLowerCase())) {
+                return null;
+            }
+            try {
+                uri = new URI(string);
+            } catch (URISyntaxException e) {
+                return null;
+            }
+        }
+        if (uri != null && uri.getScheme() != null && uri.getAuthority() != null &&
+                REMOTE_SCHEMES.contains(uri.getScheme().toLowerCase())) {
+            return uri;
+        }
+        return null;
+    }
+
+    /**
+     * @return The last segment of the path of a URI, ignoring a trailing slash.
+     */
+    static String getFileName(URI uri) {
+        String path = uri.getPath() != null ? uri.getPath() : "";
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * @return The URI of the directory containing the resource denoted by a URI.
+     */
+    static URI getParent(URI uri) {
+        final String path = uri.getPath() != null ? uri.getPath() : "";
+        return uri.resolve(path.endsWith("/") ? ".." : ".");
+    }
+
+    static Path getCacheDir() {
+        return SystemUtils.getCacheDir().toPath().resolve(CACHE_DIR_NAME);
+    }
+
+    static ZarrZipRangeStore openZipStore(Path zipFilePath, boolean memoryMapped) throws IOException {
+        Path indexCacheDir = null;
+        if (Config.instance().preferences().getBoolean(PROPERTY_KEY_ZIP_INDEX_CACHE, true)) {
+            indexCacheDir = getCacheDir().resolve(ZIP_INDEX_CACHE_DIR_NAME);
+        }
+        return configureReadCoalescing(new ZarrZipRangeStore(zipFilePath, memoryMapped, indexCacheDir));
+    }
+
+    private static ZarrZipRangeStore configureReadCoalescing(ZarrZipRangeStore store) {
+        final Preferences preferences = Config.instance().preferences();
+        store.setReadCoalescing(preferences.getInt(PROPERTY_KEY_READ_COALESCING_MAX_GAP, DEFAULT_READ_COALESCING_MAX_GAP),
+                preferences.getInt(PROPERTY_KEY_READ_COALESCING_MAX_SIZE, DEFAULT_READ_COALESCING_MAX_SIZE));
+        return store;
+    }
+
+    /**
+     * Opens a remote product. Zipped products are read with range requests on the archive.
+     *
+     * @param rootUri The HTTP(S) or S3 URI of the product root directory or of the zipped product.
+     */
+    static Store openRemoteStore(URI rootUri) throws IOException {
+        final boolean zipped = getFileName(rootUri).toLowerCase().endsWith(ZIP_CONTAINER_EXTENSION);
+        if ("s3".equalsIgnoreCase(rootUri.getScheme())) {
+            final Preferences preferences = Config.instance().preferences();
+            final String region = preferences.get(PROPERTY_KEY_S3_REGION, DEFAULT_S3_REGION);
+            final URI endpoint = URI.create(preferences.get(PROPERTY_KEY_S3_ENDPOINT, "https://s3." + region + ".amazonaws.com"));
+            final String bucket = rootUri.getAuthority();
+            final String prefix = rootUri.getPath().startsWith("/") ? rootUri.getPath().substring(1) : rootUri.getPath();
+            if (zipped) {
+                return configureReadCoalescing(new ZarrZipRangeStore(new HttpRangeReader(
+                        S3Store.getObjectUri(endpoint, bucket, prefix), S3Store.createSignerFromEnvironment(region))));
+            }
+            final int maxConnections = preferences.getInt(PROPERTY_KEY_S3_MAX_CONNECTIONS, DEFAULT_S3_MAX_CONNECTIONS);
+            return new S3Store(endpoint, bucket, prefix, region, maxConnections);
+        }
+        if (zipped) {
+            return configureReadCoalescing(new ZarrZipRangeStore(new HttpRangeReader(rootUri)));
+        }
+        return new HttpStore(rootUri);
+    }
+
+    /**
+     * Returns an identifier of a remote product which changes whenever the product is written anew: its URI together
+     * with a hash of its root metadata, i.e. of the root {@code zarr.json}, of the consolidated {@code .zmetadata}
+     * or of the root {@code .zattrs}, whichever comes first. The metadata must be read from the remote store itself,
+     * not through the chunk cache, which is identified by the product.
+     *
+     * @param rootUri The URI of the product root directory or of the zipped product.
+     * @param store   The store on the remote product.
+     */
+    static String getRemoteProductId(URI rootUri, Store store) throws IOException {
+        for (String key : new String[]{ZARR_JSON_KEY, CONSOLIDATED_METADATA_KEY, ZarrConstants.FILENAME_DOT_ZATTRS}) {
+            try (InputStream inputStream = store.getInputStream(key)) {
+                if (inputStream != null) {
+                    final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                    return rootUri + "|" + HexFormat.of().formatHex(digest.digest(inputStream.readAllBytes()));
+                }
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return rootUri.toString();
+    }
+
+    /**
+     * Wraps a store in a {@link DiskCacheStore}, if the chunk cache is enabled for the kind of store.
+     *
+     * @param productId An identifier of the product which changes whenever the product changes.
+     * @param remote    Whether the store reads a remote product. Local products are only cached on request.
+     */
+    static Store withChunkCache(Store store, String productId, boolean remote) {
+        final Preferences preferences = Config.instance().preferences();
+        final long maxSizeMB = preferences.getLong(PROPERTY_KEY_CHUNK_CACHE_MAX_SIZE, DEFAULT_CHUNK_CACHE_MAX_SIZE_MB);
+        if (maxSizeMB <= 0 || !remote && !preferences.getBoolean(PROPERTY_KEY_CHUNK_CACHE_LOCAL, false)) {
+            return store;
+        }
+        try {
+            final DiskChunkCache cache = DiskChunkCache.getInstance(getCacheDir().resolve(CHUNK_CACHE_DIR_NAME), maxSizeMB << 20);
+            return new DiskCacheStore(store, productId, cache);
+        } catch (IOException e) {
+            SystemUtils.LOG.warning("Chunk cache is not available: " + e.getMessage());
+            return store;
+        }
+    }
+
+    /**
+     * Returns the size of image tiles along a dimension of an array. This is the configured tile size, adjusted to
+     * the largest divisor of the chunk size not above it if there is one not less than half of it, so that tiles
+     * do not span chunks, or the chunk size if it is smaller or no tile size is configured.
+     */
+    static int getTileSize(int chunkSize) {
+        final int preferredTileSize = Config.instance().preferences().getInt(PROPERTY_KEY_TILE_SIZE, DEFAULT_TILE_SIZE);
+        return getTileSize(chunkSize, preferredTileSize);
+    }
+
+    static int getTileSize(int chunkSize, int preferredTileSize) {
+        if (preferredTileSize <= 0 || chunkSize <= preferredTileSize) {
+            return chunkSize;
+        }
+        for (int tileSize = preferredTileSize; tileSize >= preferredTileSize / 2; tileSize--) {
+            if (chunkSize % tileSize == 0) {
+                return tileSize;
+            }
+        }
+        return preferredTileSize;
+    }
+
     static int getProductDataType(DataType zarrDataType) {
         if (zarrDataType == DataType.f8) {
             return ProductData.TYPE_FLOAT64;
@@ -0,0 +1,133 @@
+package eu.esa.opt.dataio.s2;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Signs S3 requests with AWS Signature Version 4, as required by AWS S3 and most S3-compatible object stores.
+ * Only requests without query parameters and without payload are supported, which is all a read-only store needs.
+ */
+final class S3RequestSigner {
+
+    static final String EMPTY_PAYLOAD_HASH = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final String SERVICE = "s3";
+    private static final DateTimeFormatter DATE_TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+    private final String accessKey;
+    private final String secretKey;
+    private final String sessionToken;
+    private final String region;
+
+    /**
+     * @param sessionToken The token of temporary credentials, or {@code null}.
+     */
+    S3RequestSigner(String accessKey, String secretKey, String sessionToken, String region) {
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.sessionToken = sessionToken;
+        this.region = region;
+    }
+
+    /**
+     * Computes the headers to add to a request.
+     *
+     * @param method  The HTTP method.
+     * @param uri     The request URI, without query.
+     * @param headers Further headers of the request to be signed, e.g. {@code Range}.
+     * @param time    The time of the request.
+     *
+     * @return The {@code Authorization} header and the {@code x-amz-*} headers it refers to.
+     */
+    Map<String, String> sign(String method, URI uri, Map<String, String> headers, Instant time) {
+        final String dateTime = DATE_TIME_FORMAT.format(time);
+        final String date = dateTime.substring(0, 8);
+        final Map<String, String> amzHeaders = new TreeMap<>();
+        amzHeaders.put("x-amz-content-sha256", EMPTY_PAYLOAD_HASH);
+        amzHeaders.put("x-amz-date", dateTime);
+        if (sessionToken != null) {
+            amzHeaders.put("x-amz-security-token", sessionToken);
+        }
+
+        final Map<String, String> signedHeaders = new TreeMap<>();
+        signedHeaders.put("host", uri.getPort() < 0 ? uri.getHost() : uri.getHost() + ":" + uri.getPort());
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            signedHeaders.put(header.getKey().toLowerCase(Locale.ROOT), header.getValue().trim());
+        }
+        signedHeaders.putAll(amzHeaders);
+        final StringBuilder canonicalHeaders = new StringBuilder();
+        for (Map.Entry<String, String> header : signedHeaders.entrySet()) {
+            canonicalHeaders.append(header.getKey()).append(':').append(header.getValue()).append('\n');
+        }
+        final String signedHeaderNames = String.join(";", signedHeaders.keySet());
+        final String canonicalRequest = method + "\n" +
+                encodePath(uri.getRawPath()) + "\n" +
+                "\n" +
+                canonicalHeaders + "\n" +
+                signedHeaderNames + "\n" +
+                EMPTY_PAYLOAD_HASH;
+
+        final String scope = date + "/" + region + "/" + SERVICE + "/aws4_request";
+        final String stringToSign = ALGORITHM + "\n" + dateTime + "\n" + scope + "\n" +
+                HexFormat.of().formatHex(sha256(canonicalRequest));
+        byte[] signingKey = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        signingKey = hmac(signingKey, region);
+        signingKey = hmac(signingKey, SERVICE);
+        signingKey = hmac(signingKey, "aws4_request");
+        final String signature = HexFormat.of().formatHex(hmac(signingKey, stringToSign));
+
+        amzHeaders.put("Authorization", ALGORITHM + " Credential=" + accessKey + "/" + scope +
+                ", SignedHeaders=" + signedHeaderNames + ", Signature=" + signature);
+        return amzHeaders;
+    }
+
+    // S3 expects each path segment to be URI-encoded once; already encoded octets are decoded first
+    static String encodePath(String rawPath) {
+        if (rawPath == null || rawPath.isEmpty()) {
+            return "/";
+        }
+        final String path = URI.create("s3:" + rawPath).getPath();
+        final StringBuilder builder = new StringBuilder();
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            final char c = (char) (b & 0xFF);
+            if (c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9' ||
+                    c == '-' || c == '_' || c == '.' || c == '~' || c == '/') {
+                builder.append(c);
+            } else {
+                builder.append('%').append(HexFormat.of().withUpperCase().toHexDigits(b));
+            }
+        }
+        return builder.toString();
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String value) {
+        try {
+            final Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.ZarrConstants;
+import com.bc.zarr.storage.Store;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import static eu.esa.opt.dataio.s2.S2ZarrConstants.CONSOLIDATED_METADATA_KEY;
+import static eu.esa.opt.dataio.s2.S2ZarrConstants.ZARR_JSON_KEY;
+
+/**
+ * A read-only {@link Store} on a Zarr product in an S3-compatible object store. Objects are addressed path-style,
+ * i.e. as {@code <endpoint>/<bucket>/<product prefix>/<key>}, which is supported by AWS S3 and its stand-ins.
+ * <p>
+ * Like {@link HttpStore}, this store never lists objects and relies on the consolidated metadata of the product.
+ * Requests are signed with the credentials taken from the standard {@code AWS_*} environment variables,
+ * or sent anonymously if there are none. Without permission to list the bucket, S3 answers requests for
+ * missing objects, e.g. chunks containing only fill values, with status 403 instead of 404. Such an
+ * {@code AccessDenied} answer is taken as a missing object only for keys other than metadata, only once
+ * metadata of the product has been read, i.e. once access to the product is known to be granted, and only if
+ * a request for an object known not to exist is denied as well, i.e. if the bucket cannot be listed.
+ * The keys taken as missing this way are kept, as the objects may exist nonetheless.
+ * <p>
+ * The number of concurrent requests is bounded. Connections are kept alive and reused by the HTTP client,
+ * so at most as many connections as concurrent requests are opened to the endpoint.
+ */
+public class S3Store extends HttpStore {
+
+    private static final String ACCESS_DENIED_CODE = "<Code>AccessDenied</Code>";
+    private static final String PROBE_KEY_PREFIX = ".s2zarr-probe-";
+
+    private final S3RequestSigner signer;
+    private final Semaphore requestPermits;
+    private final Set<String> deniedKeys = ConcurrentHashMap.newKeySet();
+    private volatile boolean metadataRead;
+    private volatile Boolean listingDenied;
+
+    /**
+     * @param endpoint              The URI of the S3 endpoint, e.g. {@code https://s3.eu-central-1.amazonaws.com}.
+     * @param bucket                The name of the bucket.
+     * @param prefix                The key prefix of the product root, e.g. {@code products/S2A_...zarr}.
+     * @param region                The region to sign requests for.
+     * @param maxConcurrentRequests The maximum number of requests in flight at the same time.
+     */
+    public S3Store(URI endpoint, String bucket, String prefix, String region, int maxConcurrentRequests) {
+        this(endpoint, bucket, prefix, createSignerFromEnvironment(region), maxConcurrentRequests);
+    }
+
+    S3Store(URI endpoint, String bucket, String prefix, S3RequestSigner signer, int maxConcurrentRequests) {
+        super(getObjectUri(endpoint, bucket, prefix), HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .build());
+        this.signer = signer;
+        requestPermits = new Semaphore(Math.max(1, maxConcurrentRequests));
+    }
+
+    /**
+     * @return The path-style URI of an object.
+     */
+    static URI getObjectUri(URI endpoint, String bucket, String key) {
+        String endpointString = endpoint.toString();
+        if (endpointString.endsWith("/")) {
+            endpointString = endpointString.substring(0, endpointString.length() - 1);
+        }
+        return URI.create(endpointString + S3RequestSigner.encodePath("/" + bucket + "/" + key));
+    }
+
+    /**
+     * @return A signer for the credentials given in the environment, or {@code null} for anonymous access.
+     */
+    static S3RequestSigner createSignerFromEnvironment(String region) {
+        final String accessKey = System.getenv("AWS_ACCESS_KEY_ID");
+        final String secretKey = System.getenv("AWS_SECRET_ACCESS_KEY");
+        if (accessKey == null || accessKey.isEmpty() || secretKey == null || secretKey.isEmpty()) {
+            return null;
+        }
+        return new S3RequestSigner(accessKey, secretKey, System.getenv("AWS_SESSION_TOKEN"), region);
+    }
+
+    @Override
+    protected HttpRequest createRequest(URI uri) {
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(uri);
+        if (signer != null) {
+            signer.sign("GET", uri, Map.of(), Instant.now()).forEach(builder::header);
+        }
+        return builder.build();
+    }
+
+    @Override
+    protected HttpResponse<byte[]> send(HttpRequest request) throws IOException {
+        try {
+            requestPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to read '" + request.uri() + "'");
+        }
+        final HttpResponse<byte[]> response;
+        try {
+            response = super.send(request);
+        } finally {
+            requestPermits.release();
+        }
+        if (response.statusCode() == 200 && isMetadataKey(request.uri().getPath())) {
+            metadataRead = true;
+        }
+        return response;
+    }
+
+    @Override
+    protected boolean isMissing(String key, HttpResponse<byte[]> response) throws IOException {
+        if (super.isMissing(key, response)) {
+            return true;
+        }
+        if (!metadataRead || isMetadataKey(key) || !isAccessDenied(response) || !isListingDenied()) {
+            return false;
+        }
+        deniedKeys.add(key);
+        return true;
+    }
+
+    /**
+     * @return Whether a key has been taken as missing only because access to it was denied. The object may exist,
+     * so nothing should be derived from its absence beyond the current session.
+     */
+    boolean isDeniedAsMissing(String key) {
+        return deniedKeys.contains(key);
+    }
+
+    // Without permission to list the bucket, a request for an object known not to exist is denied as well
+    private boolean isListingDenied() throws IOException {
+        Boolean denied = listingDenied;
+        if (denied == null) {
+            final HttpResponse<byte[]> response = send(createRequest(getUri(PROBE_KEY_PREFIX + UUID.randomUUID())));
+            denied = isAccessDenied(response);
+            listingDenied = denied;
+        }
+        return denied;
+    }
+
+    private static boolean isAccessDenied(HttpResponse<byte[]> response) {
+        return response.statusCode() == 403 &&
+                new String(response.body(), StandardCharsets.UTF_8).contains(ACCESS_DENIED_CODE);
+    }
+
+    private static boolean isMetadataKey(String key) {
+        final String name = key.substring(key.lastIndexOf('/') + 1);
+        return name.equals(CONSOLIDATED_METADATA_KEY) || name.equals(ZARR_JSON_KEY) ||
+                name.equals(ZarrConstants.FILENAME_DOT_ZGROUP) || name.equals(ZarrConstants.FILENAME_DOT_ZATTRS) ||
+                name.equals(ZarrConstants.FILENAME_DOT_ZARRAY);
+    }
+}
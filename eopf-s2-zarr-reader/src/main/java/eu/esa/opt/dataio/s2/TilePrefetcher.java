@@ -0,0 +1,60 @@
+package eu.esa.opt.dataio.s2;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reads the chunks of several tiles of an {@link S2ZarrOpImage} in a single batch, so that reads of chunks
+ * lying next to each other in the store are merged. The tiles of the image must be the chunks of the array.
+ */
+final class TilePrefetcher {
+
+    private final PrefetchStore store;
+    private final ChunkKeyEncoding chunkKeyEncoding;
+    private final int[] chunkIndices;
+
+    /**
+     * @param store             The store the array is read from.
+     * @param chunkKeyEncoding  The encoding of the chunk keys of the array.
+     * @param chunks            The chunk shape of the array.
+     * @param additionalIndices The indices of the image in the non-spatial dimensions of the array.
+     */
+    TilePrefetcher(PrefetchStore store, ChunkKeyEncoding chunkKeyEncoding, int[] chunks, int[] additionalIndices) {
+        this.store = store;
+        this.chunkKeyEncoding = chunkKeyEncoding;
+        chunkIndices = new int[additionalIndices.length + 2];
+        for (int i = 0; i < additionalIndices.length; i++) {
+            chunkIndices[i] = additionalIndices[i] / chunks[i];
+        }
+    }
+
+    String getChunkKey(int tileX, int tileY) {
+        final int[] tileChunkIndices = chunkIndices.clone();
+        tileChunkIndices[tileChunkIndices.length - 2] = tileY;
+        tileChunkIndices[tileChunkIndices.length - 1] = tileX;
+        return chunkKeyEncoding.getKey(tileChunkIndices);
+    }
+
+    /**
+     * Reads the chunks of the given tiles, which are then served once by the store.
+     *
+     * @return The keys of the prefetched chunks, to be passed to {@link #release(Collection)}.
+     */
+    Collection<String> prefetch(Collection<Point> tileIndices) throws IOException {
+        final List<String> chunkKeys = new ArrayList<>(tileIndices.size());
+        for (Point tileIndex : tileIndices) {
+            chunkKeys.add(getChunkKey(tileIndex.x, tileIndex.y));
+        }
+        return store.prefetch(chunkKeys);
+    }
+
+    /**
+     * Drops prefetched chunks which have not been read.
+     */
+    void release(Collection<String> chunkKeys) {
+        store.release(chunkKeys);
+    }
+}
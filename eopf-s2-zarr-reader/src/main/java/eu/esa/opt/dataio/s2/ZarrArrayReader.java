@@ -0,0 +1,93 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.DataType;
+import com.bc.zarr.ZarrArray;
+import ucar.ma2.InvalidRangeException;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Read access to a Zarr array, independent of the Zarr format version.
+ * Version 2 arrays are read by {@link ZarrV2Array}, or by jzarr if it does not support them, version 3 arrays
+ * by {@link ZarrV3Array}.
+ */
+interface ZarrArrayReader {
+
+    int[] getShape();
+
+    /**
+     * @return The shape of the units in which the array is read, i.e. of the chunks, or of the inner chunks
+     * if the array is sharded.
+     */
+    int[] getChunks();
+
+    DataType getDataType();
+
+    Number getFillValue();
+
+    Map<String, Object> getAttributes() throws IOException;
+
+    /**
+     * Reads a region of the array in C order into a primitive array of the Java type matching the data type.
+     *
+     * @param buffer      The primitive array to read into, with at least as many elements as the region.
+     * @param bufferShape The shape of the region.
+     * @param offset      The position of the region in the array.
+     */
+    void read(Object buffer, int[] bufferShape, int[] offset) throws IOException, InvalidRangeException;
+
+    default void read(Object buffer, int[] bufferShape) throws IOException, InvalidRangeException {
+        read(buffer, bufferShape, new int[bufferShape.length]);
+    }
+
+    /**
+     * Reads a region asynchronously, see {@link #read(Object, int[], int[])}.
+     * By default, the region is read as a whole on a fetch thread of the {@link ChunkPipeline}.
+     *
+     * @return A future completed when the region has been read into the buffer.
+     */
+    default CompletableFuture<Void> readAsync(Object buffer, int[] bufferShape, int[] offset) {
+        return ChunkPipeline.fetch(() -> {
+            try {
+                read(buffer, bufferShape, offset);
+            } catch (InvalidRangeException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Reads a region asynchronously into a part of a larger primitive array, e.g. the data buffer of a raster.
+     * The rows of the region, i.e. its elements along the last dimension, are placed {@code rowStride} elements
+     * apart, starting at {@code bufferOffset}.
+     * By default, the region is read into an intermediate array which is then copied row by row.
+     *
+     * @return A future completed when the region has been read into the buffer.
+     */
+    default CompletableFuture<Void> readAsync(Object buffer, int bufferOffset, int rowStride, int[] bufferShape,
+                                              int[] offset) {
+        final int rowLength = bufferShape.length > 0 ? bufferShape[bufferShape.length - 1] : 1;
+        if (bufferOffset == 0 && rowStride == rowLength) {
+            return readAsync(buffer, bufferShape, offset);
+        }
+        int size = 1;
+        for (int dimension : bufferShape) {
+            size *= dimension;
+        }
+        final int numElements = size;
+        final Object region = Array.newInstance(buffer.getClass().getComponentType(), numElements);
+        return readAsync(region, bufferShape, offset).thenRun(() -> {
+            for (int row = 0; row * rowLength < numElements; row++) {
+                System.arraycopy(region, row * rowLength, buffer, bufferOffset + row * rowStride, rowLength);
+            }
+        });
+    }
+
+    static ZarrArrayReader of(ZarrArray array) {
+        return new JzarrArrayReader(array);
+    }
+}
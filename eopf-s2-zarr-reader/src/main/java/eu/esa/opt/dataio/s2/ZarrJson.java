@@ -0,0 +1,265 @@
+package eu.esa.opt.dataio.s2;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON support for Zarr metadata documents.
+ * Members of an object can be extracted as raw JSON text, so that values are passed on unchanged,
+ * e.g. to jzarr, without a round trip through Java objects.
+ * Documents can also be parsed into maps, lists, strings, numbers and booleans, as jzarr does for attributes.
+ */
+final class ZarrJson {
+
+    private final String text;
+    private int pos;
+
+    private ZarrJson(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @param json A JSON object.
+     *
+     * @return The raw JSON text of each member of the object, in document order.
+     *
+     * @throws IllegalArgumentException If the text is not a JSON object.
+     */
+    static Map<String, String> getRawMembers(String json) {
+        final ZarrJson parser = new ZarrJson(json);
+        final Map<String, String> members = parser.readRawMembers();
+        parser.skipWhitespace();
+        if (parser.pos != json.length()) {
+            throw parser.error("Unexpected content after end of object");
+        }
+        return members;
+    }
+
+    /**
+     * @param rawValue The raw JSON text of a value.
+     *
+     * @return The string the value denotes, or {@code null} if the value is not a string.
+     */
+    static String getString(String rawValue) {
+        final ZarrJson parser = new ZarrJson(rawValue.trim());
+        if (parser.text.isEmpty() || parser.peek() != '"') {
+            return null;
+        }
+        final String string = parser.readString();
+        if (parser.pos != parser.text.length()) {
+            throw parser.error("Unexpected content after end of string");
+        }
+        return string;
+    }
+
+    /**
+     * Parses a JSON document. Objects become {@code Map}s keeping the member order, arrays become {@code List}s,
+     * integral numbers become {@code Integer}s or {@code Long}s if they fit, and all other numbers {@code Double}s.
+     * The non-standard literals {@code NaN}, {@code Infinity} and {@code -Infinity} are accepted.
+     *
+     * @throws IllegalArgumentException If the text is not a JSON document.
+     */
+    static Object parse(String json) {
+        final ZarrJson parser = new ZarrJson(json);
+        parser.skipWhitespace();
+        final Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.pos != json.length()) {
+            throw parser.error("Unexpected content after end of document");
+        }
+        return value;
+    }
+
+    private Object readValue() {
+        final char c = peek();
+        if (c == '{') {
+            final Map<String, Object> object = new LinkedHashMap<>();
+            for (Map.Entry<String, String> member : readRawMembers().entrySet()) {
+                object.put(member.getKey(), parse(member.getValue()));
+            }
+            return object;
+        }
+        if (c == '[') {
+            pos++;
+            final List<Object> array = new ArrayList<>();
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return array;
+            }
+            while (true) {
+                skipWhitespace();
+                array.add(readValue());
+                skipWhitespace();
+                final char next = next();
+                if (next == ']') {
+                    return array;
+                }
+                if (next != ',') {
+                    throw error("Expected ',' or ']'");
+                }
+            }
+        }
+        if (c == '"') {
+            return readString();
+        }
+        final int start = pos;
+        skipValue();
+        final String literal = text.substring(start, pos);
+        switch (literal) {
+            case "null":
+                return null;
+            case "true":
+                return Boolean.TRUE;
+            case "false":
+                return Boolean.FALSE;
+            case "NaN":
+                return Double.NaN;
+            case "Infinity":
+                return Double.POSITIVE_INFINITY;
+            case "-Infinity":
+                return Double.NEGATIVE_INFINITY;
+        }
+        try {
+            if (literal.indexOf('.') < 0 && literal.indexOf('e') < 0 && literal.indexOf('E') < 0) {
+                try {
+                    final long value = Long.parseLong(literal);
+                    return value == (int) value ? (Object) (int) value : (Object) value;
+                } catch (NumberFormatException e) {
+                    // too large for a long
+                }
+            }
+            return Double.parseDouble(literal);
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw error("Invalid value '" + literal + "'");
+        }
+    }
+
+    private Map<String, String> readRawMembers() {
+        final Map<String, String> members = new LinkedHashMap<>();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return members;
+        }
+        while (true) {
+            skipWhitespace();
+            final String name = readString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            final int start = pos;
+            skipValue();
+            members.put(name, text.substring(start, pos));
+            skipWhitespace();
+            final char c = next();
+            if (c == '}') {
+                return members;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    private void skipValue() {
+        final char c = peek();
+        if (c == '{' || c == '[') {
+            skipContainer();
+        } else if (c == '"') {
+            readString();
+        } else {
+            // numbers, literals, and the non-standard NaN and Infinity written by Python
+            final int start = pos;
+            while (pos < text.length() && ",:]} \t\r\n".indexOf(text.charAt(pos)) < 0) {
+                pos++;
+            }
+            if (pos == start) {
+                throw error("Value expected");
+            }
+        }
+    }
+
+    private void skipContainer() {
+        int depth = 0;
+        do {
+            final char c = next();
+            if (c == '"') {
+                pos--;
+                readString();
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+
+    private String readString() {
+        expect('"');
+        final StringBuilder builder = new StringBuilder();
+        while (true) {
+            final char c = next();
+            if (c == '"') {
+                return builder.toString();
+            }
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            final char escaped = next();
+            switch (escaped) {
+                case 'b' -> builder.append('\b');
+                case 'f' -> builder.append('\f');
+                case 'n' -> builder.append('\n');
+                case 'r' -> builder.append('\r');
+                case 't' -> builder.append('\t');
+                case 'u' -> {
+                    if (pos + 4 > text.length()) {
+                        throw error("Incomplete unicode escape");
+                    }
+                    try {
+                        builder.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid unicode escape");
+                    }
+                    pos += 4;
+                }
+                default -> builder.append(escaped);
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private void expect(char expected) {
+        if (next() != expected) {
+            throw error("Expected '" + expected + "'");
+        }
+    }
+
+    private char peek() {
+        if (pos >= text.length()) {
+            throw error("Unexpected end of document");
+        }
+        return text.charAt(pos);
+    }
+
+    private char next() {
+        final char c = peek();
+        pos++;
+        return c;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + pos);
+    }
+}
@@ -0,0 +1,92 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.ZarrConstants;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * An immutable index over the keys of a Zarr store, built once from a complete key listing.
+ * Keys are kept in a sorted array, so that prefix queries are binary searches.
+ * Array and group keys are derived once; results of suffix queries are memoized.
+ */
+final class ZarrKeyIndex {
+
+    private final String[] sortedKeys;
+    private final TreeSet<String> arrayKeys;
+    private final TreeSet<String> groupKeys;
+    private final Map<String, TreeSet<String>> keysBySuffix = new ConcurrentHashMap<>();
+
+    ZarrKeyIndex(Collection<String> keys) {
+        sortedKeys = keys.toArray(new String[0]);
+        Arrays.sort(sortedKeys);
+        arrayKeys = getParentsOf(getKeysEndingWith(ZarrConstants.FILENAME_DOT_ZARRAY));
+        groupKeys = getParentsOf(getKeysEndingWith(ZarrConstants.FILENAME_DOT_ZGROUP));
+    }
+
+    static String getParent(String key) {
+        final int separatorIndex = key.lastIndexOf('/');
+        return separatorIndex < 0 ? "" : key.substring(0, separatorIndex);
+    }
+
+    private static TreeSet<String> getParentsOf(Collection<String> keys) {
+        final TreeSet<String> parents = new TreeSet<>();
+        for (String key : keys) {
+            parents.add(getParent(key));
+        }
+        return parents;
+    }
+
+    boolean contains(String key) {
+        return Arrays.binarySearch(sortedKeys, key) >= 0;
+    }
+
+    int size() {
+        return sortedKeys.length;
+    }
+
+    TreeSet<String> getArrayKeys() {
+        return new TreeSet<>(arrayKeys);
+    }
+
+    TreeSet<String> getGroupKeys() {
+        return new TreeSet<>(groupKeys);
+    }
+
+    TreeSet<String> getKeysEndingWith(String suffix) {
+        final TreeSet<String> keys = keysBySuffix.computeIfAbsent(suffix, s -> {
+            final TreeSet<String> matchingKeys = new TreeSet<>();
+            for (String key : sortedKeys) {
+                if (key.endsWith(s)) {
+                    matchingKeys.add(key);
+                }
+            }
+            return matchingKeys;
+        });
+        return new TreeSet<>(keys);
+    }
+
+    /**
+     * @param key A group or array key, empty for the root.
+     *
+     * @return All keys below the given key, relative to it.
+     */
+    Stream<String> getRelativeLeafKeys(String key) {
+        final String prefix = key.isEmpty() || key.endsWith("/") ? key : key + "/";
+        int start = Arrays.binarySearch(sortedKeys, prefix);
+        if (start < 0) {
+            start = -start - 1;
+        }
+        int end = start;
+        while (end < sortedKeys.length && sortedKeys[end].startsWith(prefix)) {
+            end++;
+        }
+        return Arrays.stream(sortedKeys, start, end)
+                .map(leafKey -> leafKey.substring(prefix.length()))
+                .filter(relativeKey -> !relativeKey.trim().isEmpty());
+    }
+}
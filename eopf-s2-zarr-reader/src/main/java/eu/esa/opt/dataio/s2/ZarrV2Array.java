@@ -0,0 +1,180 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.Compressor;
+import com.bc.zarr.CompressorFactory;
+import com.bc.zarr.DataType;
+import com.bc.zarr.ZarrConstants;
+import com.bc.zarr.storage.Store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static eu.esa.opt.dataio.s2.S2ZarrConstants.DEFAULT_DIMENSION_SEPARATOR;
+import static eu.esa.opt.dataio.s2.S2ZarrConstants.DIMENSION_SEPARATOR_NAME;
+import static eu.esa.opt.dataio.s2.S2ZarrUtils.cast;
+
+/**
+ * A Zarr version 2 array, read from its {@code .zarray} metadata.
+ * Unlike jzarr, which decompresses a chunk into new arrays and converts it into a typed chunk array before copying
+ * it into the destination, chunks are decompressed into the buffers of the decoding thread, see
+ * {@link PooledDecompressor}, and copied from there straight into the destination. Chunks are fetched as the
+ * buffers the store holds, so that prefetched or memory-mapped direct buffers reach blosc without a copy. Arrays with filters, in Fortran
+ * order or with compressors other than blosc and those of jzarr are not supported and left to jzarr.
+ */
+final class ZarrV2Array extends ChunkedArrayReader {
+
+    private static final String BLOSC_COMPRESSOR_ID = "blosc";
+
+    private final Store store;
+    private final String arrayKey;
+    private final ChunkKeyEncoding chunkKeyEncoding;
+    private final ByteOrder byteOrder;
+    private final String compressorId;
+    private final Compressor compressor;
+
+    private ZarrV2Array(Store store, String arrayKey, int[] shape, int[] chunks, DataType dataType, Number fillValue,
+                       ChunkKeyEncoding chunkKeyEncoding, ByteOrder byteOrder, String compressorId,
+                       Compressor compressor) {
+        super(shape, chunks, dataType, fillValue);
+        this.store = store;
+        this.arrayKey = arrayKey;
+        this.chunkKeyEncoding = chunkKeyEncoding;
+        this.byteOrder = byteOrder;
+        this.compressorId = compressorId;
+        this.compressor = compressor;
+    }
+
+    /**
+     * Opens an array.
+     *
+     * @param store    The store holding the array.
+     * @param arrayKey The key of the array.
+     *
+     * @throws IllegalArgumentException If the array does not exist or its data type, order, filters or compressor
+     *                                  are not supported.
+     */
+    static ZarrV2Array open(Store store, String arrayKey) throws IOException {
+        final Map<String, Object> metadata = readJson(store, getKey(arrayKey, ZarrConstants.FILENAME_DOT_ZARRAY));
+        if (metadata == null) {
+            throw new IllegalArgumentException("No array at '" + arrayKey + "'");
+        }
+        final int[] shape = toIntArray(cast(metadata.get("shape")));
+        final int[] chunks = toIntArray(cast(metadata.get("chunks")));
+        final String dtype = String.valueOf(metadata.get("dtype"));
+        final DataType dataType = getDataType(dtype);
+        final ByteOrder byteOrder = dtype.startsWith(">") ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        if (shape.length > 1 && !"C".equals(metadata.get("order"))) {
+            throw new IllegalArgumentException("Unsupported order '" + metadata.get("order") + "'");
+        }
+        final List<?> filters = cast(metadata.get("filters"));
+        if (filters != null && !filters.isEmpty()) {
+            throw new IllegalArgumentException("Unsupported filters " + filters);
+        }
+
+        String compressorId = null;
+        Compressor compressor = null;
+        final Map<String, Object> compressorConfiguration = cast(metadata.get("compressor"));
+        if (compressorConfiguration != null) {
+            compressorId = String.valueOf(compressorConfiguration.get("id"));
+            if (!BLOSC_COMPRESSOR_ID.equals(compressorId)) {
+                compressor = createCompressor(compressorId, compressorConfiguration);
+            }
+        }
+
+        final Object separator = metadata.get(DIMENSION_SEPARATOR_NAME);
+        final ChunkKeyEncoding chunkKeyEncoding = ChunkKeyEncoding.v2(arrayKey,
+                separator != null ? separator.toString() : DEFAULT_DIMENSION_SEPARATOR);
+        return new ZarrV2Array(store, arrayKey, shape, chunks, dataType,
+                getFillValue(metadata.get("fill_value"), dataType), chunkKeyEncoding, byteOrder, compressorId,
+                compressor);
+    }
+
+    private static DataType getDataType(String dtype) {
+        return switch (dtype.length() == 3 ? dtype.substring(1) : dtype) {
+            case "b1", "u1" -> DataType.u1;
+            case "i1" -> DataType.i1;
+            case "i2" -> DataType.i2;
+            case "u2" -> DataType.u2;
+            case "i4" -> DataType.i4;
+            case "u4" -> DataType.u4;
+            case "i8" -> DataType.i8;
+            case "f4" -> DataType.f4;
+            case "f8" -> DataType.f8;
+            default -> throw new IllegalArgumentException("Unsupported data type '" + dtype + "'");
+        };
+    }
+
+    private static Compressor createCompressor(String compressorId, Map<String, Object> configuration) {
+        final List<Object> keyValuePairs = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : configuration.entrySet()) {
+            if (!"id".equals(entry.getKey())) {
+                keyValuePairs.add(entry.getKey());
+                keyValuePairs.add(entry.getValue());
+            }
+        }
+        final Compressor compressor = CompressorFactory.create(compressorId, keyValuePairs.toArray());
+        if (compressor == null) {
+            throw new IllegalArgumentException("Unsupported compressor '" + compressorId + "'");
+        }
+        return compressor;
+    }
+
+    private static String getKey(String arrayKey, String name) {
+        return arrayKey.isEmpty() ? name : arrayKey + "/" + name;
+    }
+
+    private static Map<String, Object> readJson(Store store, String key) throws IOException {
+        try (InputStream inputStream = store.getInputStream(key)) {
+            if (inputStream == null) {
+                return null;
+            }
+            final Object json = ZarrJson.parse(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+            return json instanceof Map ? cast(json) : null;
+        }
+    }
+
+    ChunkKeyEncoding getChunkKeyEncoding() {
+        return chunkKeyEncoding;
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() throws IOException {
+        final Map<String, Object> attributes = readJson(store, getKey(arrayKey, ZarrConstants.FILENAME_DOT_ZATTRS));
+        return attributes != null ? attributes : new LinkedHashMap<>();
+    }
+
+    @Override
+    protected Set<String> listStoredKeys() {
+        return listKeys(store, arrayKey);
+    }
+
+    @Override
+    protected String getStoredKey(int[] chunkIndices) {
+        return chunkKeyEncoding.getKey(chunkIndices);
+    }
+
+    @Override
+    protected ByteBuffer fetchChunk(int[] chunkIndices) throws IOException {
+        return BatchReadStore.getByteBuffer(store, chunkKeyEncoding.getKey(chunkIndices));
+    }
+
+    @Override
+    protected ByteBuffer decodeChunk(ByteBuffer encoded) throws IOException {
+        if (compressorId == null) {
+            return encoded.order(byteOrder);
+        }
+        final PooledDecompressor decompressor = PooledDecompressor.get();
+        final ByteBuffer decoded = BLOSC_COMPRESSOR_ID.equals(compressorId) ?
+                decompressor.uncompressBlosc(encoded) :
+                decompressor.uncompress(new ByteBufferInputStream(encoded), compressor);
+        return decoded.order(byteOrder);
+    }
+}
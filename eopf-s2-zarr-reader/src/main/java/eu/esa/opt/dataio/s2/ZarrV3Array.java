@@ -0,0 +1,212 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.DataType;
+import com.bc.zarr.storage.Store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static eu.esa.opt.dataio.s2.S2ZarrConstants.ARRAY_DIMENSIONS_ATTRIBUTES_NAME;
+import static eu.esa.opt.dataio.s2.S2ZarrUtils.cast;
+
+/**
+ * A Zarr version 3 array, read from its {@code zarr.json} metadata.
+ * If the array is sharded, it is read in units of inner chunks: the index of a shard is read once and kept,
+ * and only the inner chunks a region needs are read from the shard by range reads.
+ */
+final class ZarrV3Array extends ChunkedArrayReader {
+
+    private static final long[] MISSING_SHARD = new long[0];
+
+    private final Store store;
+    private final String arrayKey;
+    private final ChunkKeyEncoding chunkKeyEncoding;
+    private final ZarrV3Codecs codecs;
+    private final ZarrV3Codecs.Sharding sharding;
+    private final int[] chunksPerShard;
+    private final int numChunksPerShard;
+    private final Map<String, Object> attributes;
+    private final Map<String, CompletableFuture<long[]>> shardIndices = new ConcurrentHashMap<>();
+
+    private ZarrV3Array(Store store, String arrayKey, int[] shape, int[] chunks, DataType dataType, Number fillValue,
+                        ChunkKeyEncoding chunkKeyEncoding, ZarrV3Codecs codecs, int[] chunksPerShard,
+                        Map<String, Object> attributes) {
+        super(shape, chunks, dataType, fillValue);
+        this.store = store;
+        this.arrayKey = arrayKey;
+        this.chunkKeyEncoding = chunkKeyEncoding;
+        this.codecs = codecs;
+        this.sharding = codecs.getSharding();
+        this.chunksPerShard = chunksPerShard;
+        int numChunks = 1;
+        for (int chunksInShard : chunksPerShard) {
+            numChunks *= chunksInShard;
+        }
+        this.numChunksPerShard = numChunks;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Opens an array.
+     *
+     * @param store    The store holding the array.
+     * @param arrayKey The key of the array.
+     * @param metadata The parsed {@code zarr.json} document of the array.
+     *
+     * @throws IllegalArgumentException If the data type, chunk grid or a codec of the array is not supported.
+     */
+    static ZarrV3Array open(Store store, String arrayKey, Map<String, Object> metadata) {
+        final int[] shape = toIntArray(cast(metadata.get("shape")));
+        final DataType dataType = getDataType(String.valueOf(metadata.get("data_type")));
+
+        final Map<String, Object> chunkGrid = cast(metadata.get("chunk_grid"));
+        if (!"regular".equals(chunkGrid.get("name"))) {
+            throw new IllegalArgumentException("Unsupported chunk grid '" + chunkGrid.get("name") + "'");
+        }
+        final Map<String, Object> chunkGridConfiguration = cast(chunkGrid.get("configuration"));
+        final int[] shardShape = toIntArray(cast(chunkGridConfiguration.get("chunk_shape")));
+
+        final ZarrV3Codecs codecs = ZarrV3Codecs.parse(cast(metadata.get("codecs")));
+        final int[] chunks;
+        final int[] chunksPerShard = new int[shape.length];
+        if (codecs.getSharding() != null) {
+            chunks = codecs.getSharding().chunkShape();
+            for (int i = 0; i < shape.length; i++) {
+                if (shardShape[i] % chunks[i] != 0) {
+                    throw new IllegalArgumentException("Shard shape is not a multiple of the inner chunk shape");
+                }
+                chunksPerShard[i] = shardShape[i] / chunks[i];
+            }
+        } else {
+            chunks = shardShape;
+        }
+
+        final Map<String, Object> attributes = metadata.get("attributes") != null ?
+                new LinkedHashMap<>(cast(metadata.get("attributes"))) : new LinkedHashMap<>();
+        if (metadata.get("dimension_names") != null && !attributes.containsKey(ARRAY_DIMENSIONS_ATTRIBUTES_NAME)) {
+            attributes.put(ARRAY_DIMENSIONS_ATTRIBUTES_NAME, metadata.get("dimension_names"));
+        }
+        return new ZarrV3Array(store, arrayKey, shape, chunks, dataType, getFillValue(metadata.get("fill_value"), dataType),
+                getChunkKeyEncoding(arrayKey, metadata), codecs, chunksPerShard, attributes);
+    }
+
+    private static ChunkKeyEncoding getChunkKeyEncoding(String arrayKey, Map<String, Object> metadata) {
+        final Map<String, Object> encoding = metadata.get("chunk_key_encoding") != null ?
+                cast(metadata.get("chunk_key_encoding")) : Map.of("name", "default");
+        final Map<String, Object> configuration = encoding.get("configuration") != null ?
+                cast(encoding.get("configuration")) : Map.of();
+        final Object separator = configuration.get("separator");
+        return switch (String.valueOf(encoding.get("name"))) {
+            case "default" -> ChunkKeyEncoding.v3Default(arrayKey, separator != null ? separator.toString() : "/");
+            case "v2" -> ChunkKeyEncoding.v2(arrayKey, separator != null ? separator.toString() : ".");
+            default -> throw new IllegalArgumentException("Unsupported chunk key encoding '" + encoding.get("name") + "'");
+        };
+    }
+
+    private static DataType getDataType(String dataType) {
+        return switch (dataType) {
+            case "bool", "uint8" -> DataType.u1;
+            case "int8" -> DataType.i1;
+            case "int16" -> DataType.i2;
+            case "uint16" -> DataType.u2;
+            case "int32" -> DataType.i4;
+            case "uint32" -> DataType.u4;
+            case "int64" -> DataType.i8;
+            case "float32" -> DataType.f4;
+            case "float64" -> DataType.f8;
+            default -> throw new IllegalArgumentException("Unsupported data type '" + dataType + "'");
+        };
+    }
+
+    boolean isSharded() {
+        return sharding != null;
+    }
+
+    /**
+     * @return The encoding of the keys of the chunks, or of the shards if the array is sharded.
+     */
+    ChunkKeyEncoding getChunkKeyEncoding() {
+        return chunkKeyEncoding;
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    protected Set<String> listStoredKeys() {
+        return listKeys(store, arrayKey);
+    }
+
+    @Override
+    protected String getStoredKey(int[] chunkIndices) {
+        if (sharding == null) {
+            return chunkKeyEncoding.getKey(chunkIndices);
+        }
+        final int[] shardIndices = new int[chunkIndices.length];
+        for (int i = 0; i < chunkIndices.length; i++) {
+            shardIndices[i] = chunkIndices[i] / chunksPerShard[i];
+        }
+        return chunkKeyEncoding.getKey(shardIndices);
+    }
+
+    @Override
+    protected ByteBuffer fetchChunk(int[] chunkIndices) throws IOException {
+        if (sharding == null) {
+            return BatchReadStore.getByteBuffer(store, chunkKeyEncoding.getKey(chunkIndices));
+        }
+        int chunkInShard = 0;
+        for (int i = 0; i < chunkIndices.length; i++) {
+            chunkInShard = chunkInShard * chunksPerShard[i] + chunkIndices[i] % chunksPerShard[i];
+        }
+        final String shardKey = getStoredKey(chunkIndices);
+        final long[] index = getShardIndex(shardKey);
+        if (index == MISSING_SHARD) {
+            return null;
+        }
+        final long offset = index[2 * chunkInShard];
+        final long length = index[2 * chunkInShard + 1];
+        if (offset == -1 && length == -1) {
+            return null;
+        }
+        if (offset < 0 || length < 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Invalid index entry of chunk " + chunkInShard + " in shard '" + shardKey + "'");
+        }
+        return RangeReadStore.getRange(store, shardKey, offset, (int) length);
+    }
+
+    @Override
+    protected ByteBuffer decodeChunk(ByteBuffer encoded) throws IOException {
+        return sharding != null ? sharding.codecs().decode(encoded) : codecs.decode(encoded);
+    }
+
+    // The index of a shard is read on first access and kept, missing shards are remembered as well.
+    // Concurrent fetches of chunks of the same shard wait for the index being read.
+    private long[] getShardIndex(String shardKey) throws IOException {
+        final CompletableFuture<long[]> newIndex = new CompletableFuture<>();
+        final CompletableFuture<long[]> index = shardIndices.putIfAbsent(shardKey, newIndex);
+        if (index != null) {
+            return ChunkPipeline.join(index);
+        }
+        try {
+            final int indexSize = sharding.getIndexSize(numChunksPerShard);
+            final ByteBuffer encodedIndex = sharding.indexAtEnd() ?
+                    RangeReadStore.getSuffix(store, shardKey, indexSize) :
+                    RangeReadStore.getRange(store, shardKey, 0, indexSize);
+            final long[] offsetsAndLengths = encodedIndex != null ?
+                    sharding.decodeIndex(encodedIndex, numChunksPerShard) : MISSING_SHARD;
+            newIndex.complete(offsetsAndLengths);
+            return offsetsAndLengths;
+        } catch (IOException | RuntimeException e) {
+            shardIndices.remove(shardKey, newIndex);
+            newIndex.completeExceptionally(e);
+            throw e;
+        }
+    }
+}
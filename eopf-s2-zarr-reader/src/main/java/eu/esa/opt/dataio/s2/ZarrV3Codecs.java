@@ -0,0 +1,207 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.Compressor;
+import com.bc.zarr.CompressorFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPInputStream;
+
+import static eu.esa.opt.dataio.s2.S2ZarrUtils.cast;
+
+/**
+ * The codec pipeline of a Zarr version 3 array, or of the inner chunks or the index of its shards.
+ * Supported are the {@code bytes} codec, {@code transpose} in natural order, {@code sharding_indexed} as outermost
+ * codec of an array, and the {@code crc32c}, {@code gzip}, {@code blosc} and {@code zstd} byte codecs, the latter
+ * as far as jzarr provides it. Chunks are decompressed into the buffers of the decoding thread,
+ * see {@link PooledDecompressor}.
+ */
+final class ZarrV3Codecs {
+
+    static final String SHARDING_CODEC_NAME = "sharding_indexed";
+    private static final String CRC32C_CODEC_NAME = "crc32c";
+    private static final int CRC32C_SIZE = 4;
+    private static final String BLOSC_CODEC_NAME = "blosc";
+
+    private final ByteOrder byteOrder;
+    private final List<String> byteCodecNames;
+    private final List<Compressor> compressors;
+    private final Sharding sharding;
+
+    private ZarrV3Codecs(ByteOrder byteOrder, List<String> byteCodecNames, List<Compressor> compressors,
+                         Sharding sharding) {
+        this.byteOrder = byteOrder;
+        this.byteCodecNames = byteCodecNames;
+        this.compressors = compressors;
+        this.sharding = sharding;
+    }
+
+    /**
+     * The configuration of the {@code sharding_indexed} codec.
+     *
+     * @param chunkShape  The shape of the inner chunks.
+     * @param codecs      The codecs of the inner chunks.
+     * @param indexCodecs The codecs of the shard index.
+     * @param indexAtEnd  Whether the index is stored at the end of the shard rather than at its start.
+     */
+    record Sharding(int[] chunkShape, ZarrV3Codecs codecs, ZarrV3Codecs indexCodecs, boolean indexAtEnd) {
+
+        /**
+         * @return The number of bytes of the encoded index of a shard with the given number of inner chunks.
+         */
+        int getIndexSize(int numChunks) {
+            return numChunks * 2 * Long.BYTES + indexCodecs.getChecksumSize();
+        }
+
+        /**
+         * Decodes a shard index into offset and length pairs of the inner chunks in C order.
+         * Both are {@code -1} for chunks not stored in the shard.
+         */
+        long[] decodeIndex(ByteBuffer encodedIndex, int numChunks) throws IOException {
+            final ByteBuffer index = indexCodecs.decode(encodedIndex);
+            if (index.remaining() != numChunks * 2 * Long.BYTES) {
+                throw new IOException("Shard index has " + index.remaining() + " bytes instead of " +
+                        numChunks * 2 * Long.BYTES);
+            }
+            final long[] offsetsAndLengths = new long[numChunks * 2];
+            index.asLongBuffer().get(offsetsAndLengths);
+            return offsetsAndLengths;
+        }
+    }
+
+    /**
+     * Parses the {@code codecs} of an array metadata document.
+     *
+     * @param codecs The parsed list of codecs.
+     *
+     * @throws IllegalArgumentException If a codec is not supported.
+     */
+    static ZarrV3Codecs parse(List<?> codecs) {
+        ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
+        Sharding sharding = null;
+        final List<String> byteCodecNames = new ArrayList<>();
+        final List<Compressor> compressors = new ArrayList<>();
+        for (Object codec : codecs) {
+            final Map<String, Object> codecMap = cast(codec);
+            final String name = (String) codecMap.get("name");
+            final Map<String, Object> configuration = codecMap.get("configuration") != null ?
+                    cast(codecMap.get("configuration")) : Map.of();
+            switch (name) {
+                case "transpose" -> {
+                    final List<Number> order = cast(configuration.get("order"));
+                    for (int i = 0; i < order.size(); i++) {
+                        if (order.get(i).intValue() != i) {
+                            throw new IllegalArgumentException("Unsupported transpose order " + order);
+                        }
+                    }
+                }
+                case "bytes" -> byteOrder = "big".equals(configuration.get("endian")) ?
+                        ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+                case SHARDING_CODEC_NAME -> {
+                    if (!byteCodecNames.isEmpty()) {
+                        throw new IllegalArgumentException("Unsupported codecs before " + SHARDING_CODEC_NAME);
+                    }
+                    sharding = parseSharding(configuration);
+                }
+                case CRC32C_CODEC_NAME, "gzip", BLOSC_CODEC_NAME -> {
+                    byteCodecNames.add(name);
+                    compressors.add(null);
+                }
+                case "zstd" -> {
+                    byteCodecNames.add(name);
+                    compressors.add(CompressorFactory.create(name));
+                }
+                default -> throw new IllegalArgumentException("Unsupported codec '" + name + "'");
+            }
+        }
+        if (sharding != null && !byteCodecNames.isEmpty()) {
+            throw new IllegalArgumentException("Unsupported codecs after " + SHARDING_CODEC_NAME);
+        }
+        return new ZarrV3Codecs(byteOrder, byteCodecNames, compressors, sharding);
+    }
+
+    private static Sharding parseSharding(Map<String, Object> configuration) {
+        final List<Number> chunkShapeList = cast(configuration.get("chunk_shape"));
+        final int[] chunkShape = new int[chunkShapeList.size()];
+        for (int i = 0; i < chunkShape.length; i++) {
+            chunkShape[i] = chunkShapeList.get(i).intValue();
+        }
+        final ZarrV3Codecs codecs = parse(cast(configuration.get("codecs")));
+        final ZarrV3Codecs indexCodecs = parse(cast(configuration.get("index_codecs")));
+        if (codecs.sharding != null) {
+            throw new IllegalArgumentException("Unsupported nested " + SHARDING_CODEC_NAME);
+        }
+        for (String indexCodecName : indexCodecs.byteCodecNames) {
+            if (!CRC32C_CODEC_NAME.equals(indexCodecName)) {
+                throw new IllegalArgumentException("Unsupported index codec '" + indexCodecName + "'");
+            }
+        }
+        final boolean indexAtEnd = !"start".equals(configuration.get("index_location"));
+        return new Sharding(chunkShape, codecs, indexCodecs, indexAtEnd);
+    }
+
+    /**
+     * @return The sharding configuration, or {@code null} if the array is not sharded.
+     */
+    Sharding getSharding() {
+        return sharding;
+    }
+
+    private int getChecksumSize() {
+        int size = 0;
+        for (String name : byteCodecNames) {
+            if (CRC32C_CODEC_NAME.equals(name)) {
+                size += CRC32C_SIZE;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Decodes an encoded chunk.
+     *
+     * @return The elements of the chunk in C order, in a buffer with the byte order of the elements set.
+     */
+    ByteBuffer decode(ByteBuffer encoded) throws IOException {
+        ByteBuffer data = encoded;
+        for (int i = byteCodecNames.size() - 1; i >= 0; i--) {
+            final String name = byteCodecNames.get(i);
+            if (CRC32C_CODEC_NAME.equals(name)) {
+                data = checkCrc32c(data);
+                continue;
+            }
+            final PooledDecompressor decompressor = PooledDecompressor.get();
+            if (BLOSC_CODEC_NAME.equals(name)) {
+                data = decompressor.uncompressBlosc(data);
+            } else if ("gzip".equals(name)) {
+                data = decompressor.uncompress(new GZIPInputStream(new ByteBufferInputStream(data)), null);
+            } else {
+                data = decompressor.uncompress(new ByteBufferInputStream(data), compressors.get(i));
+            }
+            if (i > 0) {
+                // the buffers of the decompressor are reused by the next codec
+                data = ByteBuffer.allocate(data.remaining()).put(data).flip();
+            }
+        }
+        return data.order(byteOrder);
+    }
+
+    private static ByteBuffer checkCrc32c(ByteBuffer data) throws IOException {
+        if (data.remaining() < CRC32C_SIZE) {
+            throw new IOException("Missing CRC32C checksum");
+        }
+        final ByteBuffer payload = data.slice(data.position(), data.remaining() - CRC32C_SIZE);
+        final CRC32C crc32c = new CRC32C();
+        crc32c.update(payload.duplicate());
+        final int checksum = data.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(data.limit() - CRC32C_SIZE);
+        if ((int) crc32c.getValue() != checksum) {
+            throw new IOException("CRC32C checksum mismatch");
+        }
+        return payload;
+    }
+}
@@ -0,0 +1,103 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.storage.Store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static eu.esa.opt.dataio.s2.S2ZarrConstants.ZARR_JSON_KEY;
+import static eu.esa.opt.dataio.s2.S2ZarrUtils.cast;
+
+/**
+ * The root group of a Zarr version 3 product.
+ * The metadata of the arrays is taken from the consolidated metadata inlined in the root {@code zarr.json}
+ * if present, so that a remote product is opened with a single request, or else read from the store.
+ */
+final class ZarrV3Group {
+
+    private final Store store;
+    private final Map<String, Object> attributes;
+    private final Map<String, Map<String, Object>> arrayMetadata;
+
+    private ZarrV3Group(Store store, Map<String, Object> attributes, Map<String, Map<String, Object>> arrayMetadata) {
+        this.store = store;
+        this.attributes = attributes;
+        this.arrayMetadata = arrayMetadata;
+    }
+
+    /**
+     * Opens the root group of a store.
+     *
+     * @return The root group, or {@code null} if the store holds no Zarr version 3 root group.
+     */
+    static ZarrV3Group open(Store store) throws IOException {
+        final Map<String, Object> rootMetadata = readMetadata(store, ZARR_JSON_KEY);
+        if (rootMetadata == null || !isNode(rootMetadata, "group")) {
+            return null;
+        }
+        final Map<String, Map<String, Object>> arrayMetadata = new TreeMap<>();
+        final Map<String, Object> consolidated = cast(rootMetadata.get("consolidated_metadata"));
+        if (consolidated != null && consolidated.get("metadata") != null) {
+            final Map<String, Object> nodes = cast(consolidated.get("metadata"));
+            for (Map.Entry<String, Object> node : nodes.entrySet()) {
+                final Map<String, Object> metadata = cast(node.getValue());
+                if (isNode(metadata, "array")) {
+                    arrayMetadata.put(node.getKey(), metadata);
+                }
+            }
+        } else {
+            for (String key : store.getKeysEndingWith("/" + ZARR_JSON_KEY)) {
+                final Map<String, Object> metadata = readMetadata(store, key);
+                if (metadata != null && isNode(metadata, "array")) {
+                    arrayMetadata.put(key.substring(0, key.length() - ZARR_JSON_KEY.length() - 1), metadata);
+                }
+            }
+        }
+        final Map<String, Object> attributes = rootMetadata.get("attributes") != null ?
+                cast(rootMetadata.get("attributes")) : Map.of();
+        return new ZarrV3Group(store, attributes, arrayMetadata);
+    }
+
+    private static boolean isNode(Map<String, Object> metadata, String nodeType) {
+        final Object zarrFormat = metadata.get("zarr_format");
+        return zarrFormat instanceof Number && ((Number) zarrFormat).intValue() == 3 &&
+                nodeType.equals(metadata.get("node_type"));
+    }
+
+    private static Map<String, Object> readMetadata(Store store, String key) throws IOException {
+        try (InputStream inputStream = store.getInputStream(key)) {
+            if (inputStream == null) {
+                return null;
+            }
+            final Object metadata = ZarrJson.parse(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+            return metadata instanceof Map ? cast(metadata) : null;
+        }
+    }
+
+    Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    Set<String> getArrayKeys() {
+        return Collections.unmodifiableSet(arrayMetadata.keySet());
+    }
+
+    /**
+     * @throws IllegalArgumentException If the array does not exist or is not supported.
+     */
+    ZarrV3Array openArray(String arrayKey) throws IOException {
+        Map<String, Object> metadata = arrayMetadata.get(arrayKey);
+        if (metadata == null) {
+            metadata = readMetadata(store, arrayKey + "/" + ZARR_JSON_KEY);
+            if (metadata == null || !isNode(metadata, "array")) {
+                throw new IllegalArgumentException("No array at '" + arrayKey + "'");
+            }
+        }
+        return ZarrV3Array.open(store, arrayKey, metadata);
+    }
+}
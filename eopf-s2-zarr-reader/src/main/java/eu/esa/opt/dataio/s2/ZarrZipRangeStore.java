@@ -0,0 +1,445 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.ZarrConstants;
+import com.bc.zarr.storage.Store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import static eu.esa.opt.dataio.s2.ZipEntryTable.LOCAL_HEADER_SIGNATURE;
+import static eu.esa.opt.dataio.s2.ZipEntryTable.LOCAL_HEADER_SIZE;
+import static eu.esa.opt.dataio.s2.ZipEntryTable.METHOD_DEFLATED;
+import static eu.esa.opt.dataio.s2.ZipEntryTable.METHOD_STORED;
+
+/**
+ * A read-only {@link Store} on a zipped Zarr product.
+ * The central directory is parsed once into a {@link ZipEntryTable}; entries are then served by positional reads
+ * on the archive, so concurrent chunk reads do not block each other.
+ * <p>
+ * Key listings are answered from a {@link ZarrKeyIndex} built once from the entry table.
+ * If an index cache directory is given, the entry table is persisted there and reused as long as
+ * the archive is unchanged, so that the central directory is not parsed again on the next open.
+ * <p>
+ * Byte ranges of uncompressed entries, e.g. single inner chunks of Zarr v3 shards, can be read without reading
+ * the whole entry.
+ * <p>
+ * Several entries can be read at once with {@link #getByteBuffers(Collection)}, which merges the reads of entries
+ * lying close to each other in the archive. This saves system calls on local archives and requests on remote ones.
+ * <p>
+ * In memory-mapped mode, uncompressed (STORED) entries are served as read-only slices of a mapping of the archive,
+ * without copying them to the heap. Deflated entries are always read and inflated.
+ * <p>
+ * The archive itself is never modified. Keys written through {@link #getOutputStream(String)} are kept in memory
+ * and take precedence over archive entries; {@link #delete(String)} only affects such keys.
+ */
+public class ZarrZipRangeStore implements BatchReadStore, RangeReadStore {
+
+    private final RangeReader reader;
+    private final long archiveSize;
+    private final ZipEntryTable entryTable;
+    private final ZarrKeyIndex keyIndex;
+    private final Map<String, byte[]> writtenEntries = new ConcurrentHashMap<>();
+    private final Map<String, Long> dataOffsets = new ConcurrentHashMap<>();
+    private volatile int maxGap = S2ZarrConstants.DEFAULT_READ_COALESCING_MAX_GAP;
+    private volatile int maxReadSize = S2ZarrConstants.DEFAULT_READ_COALESCING_MAX_SIZE;
+
+    public ZarrZipRangeStore(Path zipFilePath) throws IOException {
+        this(zipFilePath, false);
+    }
+
+    public ZarrZipRangeStore(Path zipFilePath, boolean memoryMapped) throws IOException {
+        this(zipFilePath, memoryMapped, null);
+    }
+
+    /**
+     * @param zipFilePath   The path of the archive.
+     * @param memoryMapped  Whether STORED entries shall be served from a memory mapping of the archive.
+     * @param indexCacheDir The directory to persist the entry table in, or {@code null} to not persist it.
+     */
+    public ZarrZipRangeStore(Path zipFilePath, boolean memoryMapped, Path indexCacheDir) throws IOException {
+        this(new FileRangeReader(zipFilePath, memoryMapped), zipFilePath, indexCacheDir);
+    }
+
+    ZarrZipRangeStore(RangeReader reader) throws IOException {
+        this(reader, null, null);
+    }
+
+    private ZarrZipRangeStore(RangeReader reader, Path zipFilePath, Path indexCacheDir) throws IOException {
+        this.reader = reader;
+        try {
+            archiveSize = reader.size();
+            if (zipFilePath != null && indexCacheDir != null) {
+                entryTable = ZipEntryTable.read(zipFilePath, reader, indexCacheDir);
+            } else {
+                entryTable = ZipEntryTable.read(reader);
+            }
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+        keyIndex = new ZarrKeyIndex(entryTable.keys());
+    }
+
+    @Override
+    public InputStream getInputStream(String key) throws IOException {
+        final ByteBuffer buffer = getByteBuffer(key);
+        if (buffer == null) {
+            return null;
+        }
+        if (buffer.hasArray()) {
+            return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        return new ByteBufferInputStream(buffer);
+    }
+
+    /**
+     * Provides the uncompressed bytes of an entry. In memory-mapped mode, the buffer of a STORED entry is
+     * a direct, read-only slice of the mapped archive.
+     *
+     * @param key The key of the entry.
+     *
+     * @return The bytes of the entry, or {@code null} if there is no such entry.
+     */
+    @Override
+    public ByteBuffer getByteBuffer(String key) throws IOException {
+        final byte[] writtenBytes = writtenEntries.get(key);
+        if (writtenBytes != null) {
+            return ByteBuffer.wrap(writtenBytes);
+        }
+        final ZipEntryTable.Entry entry = entryTable.get(key);
+        if (entry == null) {
+            return null;
+        }
+        return getEntryData(entry);
+    }
+
+    /**
+     * Provides the uncompressed bytes of several entries. Entries lying close to each other in the archive
+     * are read in a single operation, as configured by {@link #setReadCoalescing(int, int)}.
+     *
+     * @param keys The keys of the entries.
+     *
+     * @return The bytes of the entries by key. Keys without an entry are not contained.
+     */
+    @Override
+    public Map<String, ByteBuffer> getByteBuffers(Collection<String> keys) throws IOException {
+        final Map<String, ByteBuffer> buffers = new HashMap<>();
+        final List<ZipEntryTable.Entry> entries = new ArrayList<>();
+        for (String key : new LinkedHashSet<>(keys)) {
+            final byte[] writtenBytes = writtenEntries.get(key);
+            if (writtenBytes != null) {
+                buffers.put(key, ByteBuffer.wrap(writtenBytes));
+                continue;
+            }
+            final ZipEntryTable.Entry entry = entryTable.get(key);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        entries.sort(Comparator.comparingLong(entry -> entry.localHeaderOffset));
+        int runStart = 0;
+        for (int i = 1; i <= entries.size(); i++) {
+            if (i == entries.size() || !canCoalesce(entries.get(runStart), entries.get(i - 1), entries.get(i))) {
+                readCoalesced(entries.subList(runStart, i), buffers);
+                runStart = i;
+            }
+        }
+        return buffers;
+    }
+
+    /**
+     * Reads a byte range of the uncompressed bytes of an entry. Only the range is read from STORED entries,
+     * while compressed entries are read as a whole.
+     */
+    @Override
+    public ByteBuffer getRange(String key, long offset, int length) throws IOException {
+        final byte[] writtenBytes = writtenEntries.get(key);
+        if (writtenBytes != null) {
+            return RangeReadStore.slice(ByteBuffer.wrap(writtenBytes), key, offset, length);
+        }
+        final ZipEntryTable.Entry entry = entryTable.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.method != METHOD_STORED) {
+            return RangeReadStore.slice(getEntryData(entry), key, offset, length);
+        }
+        if (offset < 0 || offset + length > entry.size) {
+            throw new EOFException("Range exceeds entry '" + key + "'");
+        }
+        final long position = getDataOffset(entry) + offset;
+        final ByteBuffer view = reader.view(position, length);
+        if (view != null) {
+            return view;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        reader.readFully(buffer, position);
+        return buffer.flip();
+    }
+
+    @Override
+    public ByteBuffer getSuffix(String key, int length) throws IOException {
+        final byte[] writtenBytes = writtenEntries.get(key);
+        if (writtenBytes != null) {
+            return RangeReadStore.slice(ByteBuffer.wrap(writtenBytes), key, writtenBytes.length - (long) length, length);
+        }
+        final ZipEntryTable.Entry entry = entryTable.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (length > entry.size) {
+            throw new EOFException("Entry '" + key + "' is shorter than " + length + " bytes");
+        }
+        return getRange(key, entry.size - length, length);
+    }
+
+    // The data of an entry follows its local header, whose length is only known after reading it
+    private long getDataOffset(ZipEntryTable.Entry entry) throws IOException {
+        Long dataOffset = dataOffsets.get(entry.name);
+        if (dataOffset == null) {
+            final ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            reader.readFully(header, entry.localHeaderOffset);
+            if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid local header of entry '" + entry.name + "'");
+            }
+            dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE +
+                    Short.toUnsignedInt(header.getShort(26)) + Short.toUnsignedInt(header.getShort(28));
+            dataOffsets.put(entry.name, dataOffset);
+        }
+        return dataOffset;
+    }
+
+    /**
+     * Sets how {@link #getByteBuffers(Collection)} merges the reads of several entries.
+     *
+     * @param maxGap      The maximum number of unrequested bytes between two entries read in a single operation.
+     * @param maxReadSize The maximum number of bytes read in a single operation.
+     */
+    public void setReadCoalescing(int maxGap, int maxReadSize) {
+        this.maxGap = maxGap;
+        this.maxReadSize = maxReadSize;
+    }
+
+    private boolean canCoalesce(ZipEntryTable.Entry first, ZipEntryTable.Entry last, ZipEntryTable.Entry next) {
+        return next.localHeaderOffset - getExpectedEnd(last) <= maxGap &&
+                getExpectedEnd(next) - first.localHeaderOffset <= maxReadSize;
+    }
+
+    private static long getExpectedEnd(ZipEntryTable.Entry entry) {
+        return entry.localHeaderOffset + entry.getExpectedLocalHeaderLength() + entry.compressedSize;
+    }
+
+    // Reads a run of entries sorted by offset with a single read, or a single view in memory-mapped mode.
+    // Entries not contained in the range, because of unexpected local header lengths, are read separately.
+    private void readCoalesced(List<ZipEntryTable.Entry> run, Map<String, ByteBuffer> buffers) throws IOException {
+        if (run.size() == 1) {
+            buffers.put(run.get(0).name, getEntryData(run.get(0)));
+            return;
+        }
+        final long start = run.get(0).localHeaderOffset;
+        final int length = (int) (Math.min(getExpectedEnd(run.get(run.size() - 1)), archiveSize) - start);
+        ByteBuffer window = reader.view(start, length);
+        if (window == null) {
+            window = ByteBuffer.allocate(length);
+            reader.readFully(window, start);
+        }
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        for (ZipEntryTable.Entry entry : run) {
+            final int headerPosition = (int) (entry.localHeaderOffset - start);
+            ByteBuffer data = null;
+            if (headerPosition + LOCAL_HEADER_SIZE <= length) {
+                if (window.getInt(headerPosition) != LOCAL_HEADER_SIGNATURE) {
+                    throw new ZipException("Invalid local header of entry '" + entry.name + "'");
+                }
+                final int headerLength = LOCAL_HEADER_SIZE + Short.toUnsignedInt(window.getShort(headerPosition + 26)) +
+                        Short.toUnsignedInt(window.getShort(headerPosition + 28));
+                if (headerPosition + headerLength + entry.compressedSize <= length) {
+                    data = window.slice(headerPosition + headerLength, (int) entry.compressedSize);
+                }
+            }
+            buffers.put(entry.name, data != null ? decode(entry, data) : getEntryData(entry));
+        }
+    }
+
+    private ByteBuffer getEntryData(ZipEntryTable.Entry entry) throws IOException {
+        if (entry.method == METHOD_STORED) {
+            final ByteBuffer view = viewStoredEntryData(entry);
+            return view != null ? view : readEntryData(entry);
+        } else if (entry.method == METHOD_DEFLATED) {
+            return ByteBuffer.wrap(inflate(entry, readEntryData(entry)));
+        }
+        throw new ZipException("Unsupported compression method " + entry.method + " of entry '" + entry.name + "'");
+    }
+
+    private static ByteBuffer decode(ZipEntryTable.Entry entry, ByteBuffer data) throws IOException {
+        if (entry.method == METHOD_STORED) {
+            return data;
+        } else if (entry.method == METHOD_DEFLATED) {
+            return ByteBuffer.wrap(inflate(entry, data));
+        }
+        throw new ZipException("Unsupported compression method " + entry.method + " of entry '" + entry.name + "'");
+    }
+
+    private ByteBuffer viewStoredEntryData(ZipEntryTable.Entry entry) throws IOException {
+        final int expectedHeaderLength = entry.getExpectedLocalHeaderLength();
+        if (entry.compressedSize > Integer.MAX_VALUE - expectedHeaderLength) {
+            return null;
+        }
+        final ByteBuffer window = reader.view(entry.localHeaderOffset, expectedHeaderLength + (int) entry.compressedSize);
+        if (window == null) {
+            return null;
+        }
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        if (window.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header of entry '" + entry.name + "'");
+        }
+        final int headerLength = LOCAL_HEADER_SIZE +
+                Short.toUnsignedInt(window.getShort(26)) + Short.toUnsignedInt(window.getShort(28));
+        if (headerLength == expectedHeaderLength) {
+            return window.position(headerLength).slice();
+        }
+        return reader.view(entry.localHeaderOffset + headerLength, (int) entry.compressedSize);
+    }
+
+    // Reads the local header and the data of an entry, in a single read if the local header has the expected length
+    private ByteBuffer readEntryData(ZipEntryTable.Entry entry) throws IOException {
+        final int expectedHeaderLength = entry.getExpectedLocalHeaderLength();
+        if (entry.compressedSize > Integer.MAX_VALUE - expectedHeaderLength) {
+            throw new ZipException("Entry '" + entry.name + "' is too large");
+        }
+        final long availableLength = archiveSize - entry.localHeaderOffset;
+        final int windowLength = (int) Math.min(expectedHeaderLength + entry.compressedSize, availableLength);
+        if (windowLength < LOCAL_HEADER_SIZE) {
+            throw new ZipException("Invalid local header offset of entry '" + entry.name + "'");
+        }
+        final ByteBuffer window = ByteBuffer.allocate(windowLength).order(ByteOrder.LITTLE_ENDIAN);
+        reader.readFully(window, entry.localHeaderOffset);
+        if (window.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header of entry '" + entry.name + "'");
+        }
+        final int headerLength = LOCAL_HEADER_SIZE +
+                Short.toUnsignedInt(window.getShort(26)) + Short.toUnsignedInt(window.getShort(28));
+        if (headerLength + entry.compressedSize <= windowLength) {
+            window.limit(headerLength + (int) entry.compressedSize).position(headerLength);
+            return window.slice();
+        }
+        final ByteBuffer data = ByteBuffer.allocate((int) entry.compressedSize);
+        reader.readFully(data, entry.localHeaderOffset + headerLength);
+        data.flip();
+        return data;
+    }
+
+    private static byte[] inflate(ZipEntryTable.Entry entry, ByteBuffer data) throws IOException {
+        if (entry.size > Integer.MAX_VALUE) {
+            throw new ZipException("Entry '" + entry.name + "' is too large");
+        }
+        final byte[] bytes = new byte[(int) entry.size];
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            int offset = 0;
+            while (offset < bytes.length) {
+                final int numInflated = inflater.inflate(bytes, offset, bytes.length - offset);
+                if (numInflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += numInflated;
+            }
+            if (offset != bytes.length) {
+                throw new ZipException("Unexpected end of deflated data of entry '" + entry.name + "'");
+            }
+            return bytes;
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid deflated data of entry '" + entry.name + "': " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public OutputStream getOutputStream(String key) {
+        return new ByteArrayOutputStream() {
+            private boolean closed = false;
+
+            @Override
+            public void close() {
+                if (!closed) {
+                    writtenEntries.put(key, toByteArray());
+                    closed = true;
+                }
+            }
+        };
+    }
+
+    @Override
+    public void delete(String key) {
+        final String prefix = key.endsWith("/") ? key : key + "/";
+        writtenEntries.keySet().removeIf(writtenKey -> writtenKey.equals(key) || writtenKey.startsWith(prefix));
+    }
+
+    @Override
+    public TreeSet<String> getArrayKeys() {
+        final TreeSet<String> arrayKeys = keyIndex.getArrayKeys();
+        addWrittenKeys(arrayKeys, ZarrConstants.FILENAME_DOT_ZARRAY, true);
+        return arrayKeys;
+    }
+
+    @Override
+    public TreeSet<String> getGroupKeys() {
+        final TreeSet<String> groupKeys = keyIndex.getGroupKeys();
+        addWrittenKeys(groupKeys, ZarrConstants.FILENAME_DOT_ZGROUP, true);
+        return groupKeys;
+    }
+
+    @Override
+    public TreeSet<String> getKeysEndingWith(String suffix) {
+        final TreeSet<String> keys = keyIndex.getKeysEndingWith(suffix);
+        addWrittenKeys(keys, suffix, false);
+        return keys;
+    }
+
+    private void addWrittenKeys(TreeSet<String> keys, String suffix, boolean addParents) {
+        for (String writtenKey : writtenEntries.keySet()) {
+            if (writtenKey.endsWith(suffix)) {
+                keys.add(addParents ? ZarrKeyIndex.getParent(writtenKey) : writtenKey);
+            }
+        }
+    }
+
+    @Override
+    public Stream<String> getRelativeLeafKeys(String key) {
+        if (writtenEntries.isEmpty()) {
+            return keyIndex.getRelativeLeafKeys(key);
+        }
+        final String prefix = key.isEmpty() || key.endsWith("/") ? key : key + "/";
+        final Stream<String> writtenLeafKeys = writtenEntries.keySet().stream()
+                .filter(writtenKey -> writtenKey.startsWith(prefix))
+                .map(writtenKey -> writtenKey.substring(prefix.length()));
+        return Stream.concat(keyIndex.getRelativeLeafKeys(key), writtenLeafKeys).distinct();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
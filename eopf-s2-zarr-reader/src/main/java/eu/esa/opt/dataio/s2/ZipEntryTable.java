@@ -0,0 +1,286 @@
+package eu.esa.opt.dataio.s2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipException;
+
+import static org.esa.snap.core.util.SystemUtils.LOG;
+
+/**
+ * An immutable table of the file entries of a ZIP archive, read once from its central directory.
+ * Supports ZIP64 archives. Directory entries are omitted.
+ * <p>
+ * Tables of local archives can be persisted in a cache directory. A cached table is only used
+ * while size and modification time of the archive are unchanged.
+ */
+final class ZipEntryTable {
+
+    static final int METHOD_STORED = 0;
+    static final int METHOD_DEFLATED = 8;
+
+    static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int ZIP64_END_HEADER_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_END_HEADER_SIZE = 56;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final long ZIP64_MAGIC_VALUE = 0xFFFFFFFFL;
+
+    private static final int CACHE_FILE_MAGIC = 0x5A495058;
+    private static final int CACHE_FILE_VERSION = 1;
+    private static final String CACHE_FILE_EXTENSION = ".idx";
+
+    private final Map<String, Entry> entries;
+
+    private ZipEntryTable(Map<String, Entry> entries) {
+        this.entries = Collections.unmodifiableMap(entries);
+    }
+
+    static ZipEntryTable read(RangeReader reader) throws IOException {
+        final long archiveSize = reader.size();
+        final int tailLength = (int) Math.min(archiveSize, END_HEADER_SIZE + MAX_COMMENT_LENGTH + ZIP64_LOCATOR_SIZE);
+        final ByteBuffer tail = ByteBuffer.allocate(tailLength).order(ByteOrder.LITTLE_ENDIAN);
+        reader.readFully(tail, archiveSize - tailLength);
+        int endHeaderPosition = -1;
+        for (int i = tailLength - END_HEADER_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_HEADER_SIGNATURE) {
+                endHeaderPosition = i;
+                break;
+            }
+        }
+        if (endHeaderPosition < 0) {
+            throw new ZipException("No end of central directory record found");
+        }
+        long numEntries = Short.toUnsignedInt(tail.getShort(endHeaderPosition + 10));
+        long directorySize = Integer.toUnsignedLong(tail.getInt(endHeaderPosition + 12));
+        long directoryOffset = Integer.toUnsignedLong(tail.getInt(endHeaderPosition + 16));
+        final int locatorPosition = endHeaderPosition - ZIP64_LOCATOR_SIZE;
+        if (locatorPosition >= 0 && tail.getInt(locatorPosition) == ZIP64_LOCATOR_SIGNATURE) {
+            final long zip64EndHeaderOffset = tail.getLong(locatorPosition + 8);
+            final ByteBuffer zip64EndHeader = ByteBuffer.allocate(ZIP64_END_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            reader.readFully(zip64EndHeader, zip64EndHeaderOffset);
+            if (zip64EndHeader.getInt(0) != ZIP64_END_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid ZIP64 end of central directory record");
+            }
+            numEntries = zip64EndHeader.getLong(32);
+            directorySize = zip64EndHeader.getLong(40);
+            directoryOffset = zip64EndHeader.getLong(48);
+        }
+        if (directorySize > Integer.MAX_VALUE || directoryOffset + directorySize > archiveSize) {
+            throw new ZipException("Invalid central directory size " + directorySize);
+        }
+        final long tailOffset = archiveSize - tailLength;
+        final ByteBuffer directory;
+        if (directoryOffset >= tailOffset) {
+            // the central directory has already been read with the tail, which saves a request on remote archives
+            directory = tail.slice((int) (directoryOffset - tailOffset), (int) directorySize)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        } else {
+            directory = ByteBuffer.allocate((int) directorySize).order(ByteOrder.LITTLE_ENDIAN);
+            reader.readFully(directory, directoryOffset);
+        }
+        return new ZipEntryTable(parseCentralDirectory(directory, numEntries));
+    }
+
+    /**
+     * Reads the table of a local archive from the cache directory, or from the archive if there is no valid
+     * cached table. In the latter case, the table is written to the cache directory.
+     */
+    static ZipEntryTable read(Path archivePath, RangeReader reader, Path cacheDir) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(archivePath, BasicFileAttributes.class);
+        final long archiveSize = attributes.size();
+        final long lastModified = attributes.lastModifiedTime().toMillis();
+        final Path cacheFile = cacheDir.resolve(getCacheFileName(archivePath));
+        if (Files.isRegularFile(cacheFile)) {
+            try {
+                final ZipEntryTable cachedTable = readCacheFile(cacheFile, archiveSize, lastModified);
+                if (cachedTable != null) {
+                    return cachedTable;
+                }
+            } catch (IOException e) {
+                LOG.fine("Ignoring invalid ZIP index cache file '" + cacheFile + "': " + e.getMessage());
+            }
+        }
+        final ZipEntryTable table = read(reader);
+        try {
+            table.writeCacheFile(cacheFile, archiveSize, lastModified);
+        } catch (IOException e) {
+            LOG.warning("Could not write ZIP index cache file '" + cacheFile + "': " + e.getMessage());
+        }
+        return table;
+    }
+
+    static String getCacheFileName(Path archivePath) {
+        final String pathString = archivePath.toAbsolutePath().normalize().toString();
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(pathString.getBytes(StandardCharsets.UTF_8))) +
+                    CACHE_FILE_EXTENSION;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ZipEntryTable readCacheFile(Path cacheFile, long archiveSize, long lastModified) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != CACHE_FILE_MAGIC || in.readInt() != CACHE_FILE_VERSION ||
+                    in.readLong() != archiveSize || in.readLong() != lastModified) {
+                return null;
+            }
+            final int numEntries = in.readInt();
+            final Map<String, Entry> entries = new HashMap<>();
+            for (int i = 0; i < numEntries; i++) {
+                final Entry entry = new Entry(in.readUTF(), in.readUnsignedShort(), in.readLong(), in.readLong(),
+                        in.readLong(), in.readUnsignedShort(), in.readUnsignedShort());
+                entries.put(entry.name, entry);
+            }
+            return new ZipEntryTable(entries);
+        }
+    }
+
+    private void writeCacheFile(Path cacheFile, long archiveSize, long lastModified) throws IOException {
+        Files.createDirectories(cacheFile.getParent());
+        final Path tempFile = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(CACHE_FILE_MAGIC);
+                out.writeInt(CACHE_FILE_VERSION);
+                out.writeLong(archiveSize);
+                out.writeLong(lastModified);
+                out.writeInt(entries.size());
+                for (Entry entry : entries.values()) {
+                    out.writeUTF(entry.name);
+                    out.writeShort(entry.method);
+                    out.writeLong(entry.compressedSize);
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.localHeaderOffset);
+                    out.writeShort(entry.nameLength);
+                    out.writeShort(entry.extraLength);
+                }
+            }
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static Map<String, Entry> parseCentralDirectory(ByteBuffer directory, long numEntries) throws ZipException {
+        final Map<String, Entry> entries = new HashMap<>();
+        final byte[] bytes = directory.array();
+        final int bytesOffset = directory.arrayOffset();
+        int position = 0;
+        for (long i = 0; i < numEntries; i++) {
+            if (position + CENTRAL_HEADER_SIZE > directory.limit() ||
+                    directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header at entry " + i);
+            }
+            final int method = Short.toUnsignedInt(directory.getShort(position + 10));
+            long compressedSize = Integer.toUnsignedLong(directory.getInt(position + 20));
+            long size = Integer.toUnsignedLong(directory.getInt(position + 24));
+            final int nameLength = Short.toUnsignedInt(directory.getShort(position + 28));
+            final int extraLength = Short.toUnsignedInt(directory.getShort(position + 30));
+            final int commentLength = Short.toUnsignedInt(directory.getShort(position + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(directory.getInt(position + 42));
+            final int namePosition = position + CENTRAL_HEADER_SIZE;
+            final String name = new String(bytes, bytesOffset + namePosition, nameLength, StandardCharsets.UTF_8);
+            if (size == ZIP64_MAGIC_VALUE || compressedSize == ZIP64_MAGIC_VALUE ||
+                    localHeaderOffset == ZIP64_MAGIC_VALUE) {
+                int extraPosition = namePosition + nameLength;
+                final int extraEnd = extraPosition + extraLength;
+                while (extraPosition + 4 <= extraEnd) {
+                    final int fieldId = Short.toUnsignedInt(directory.getShort(extraPosition));
+                    final int fieldSize = Short.toUnsignedInt(directory.getShort(extraPosition + 2));
+                    if (fieldId == ZIP64_EXTRA_FIELD_ID) {
+                        int valuePosition = extraPosition + 4;
+                        if (size == ZIP64_MAGIC_VALUE) {
+                            size = directory.getLong(valuePosition);
+                            valuePosition += 8;
+                        }
+                        if (compressedSize == ZIP64_MAGIC_VALUE) {
+                            compressedSize = directory.getLong(valuePosition);
+                            valuePosition += 8;
+                        }
+                        if (localHeaderOffset == ZIP64_MAGIC_VALUE) {
+                            localHeaderOffset = directory.getLong(valuePosition);
+                        }
+                        break;
+                    }
+                    extraPosition += 4 + fieldSize;
+                }
+            }
+            position = namePosition + nameLength + extraLength + commentLength;
+            if (name.endsWith("/")) {
+                continue;
+            }
+            final String key = name.startsWith("/") ? name.substring(1) : name;
+            entries.put(key, new Entry(key, method, compressedSize, size, localHeaderOffset, nameLength, extraLength));
+        }
+        return entries;
+    }
+
+    Entry get(String key) {
+        return entries.get(key);
+    }
+
+    Set<String> keys() {
+        return entries.keySet();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    static final class Entry {
+
+        final String name;
+        final int method;
+        final long compressedSize;
+        final long size;
+        final long localHeaderOffset;
+        final int nameLength;
+        final int extraLength;
+
+        Entry(String name, int method, long compressedSize, long size, long localHeaderOffset,
+              int nameLength, int extraLength) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+            this.nameLength = nameLength;
+            this.extraLength = extraLength;
+        }
+
+        /**
+         * @return The expected length of the local header, assuming it carries the same extra fields
+         * as the central directory header. Most writers do so.
+         */
+        int getExpectedLocalHeaderLength() {
+            return LOCAL_HEADER_SIZE + nameLength + extraLength;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package eu.esa.opt.dataio.s2;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class AngleGridTest {
+
+    @Test
+    public void testInterpolate() throws IOException {
+        // 2 x 2 grid points, 10 pixels apart, the first one at the centre of the first pixel
+        final AngleGrid grid = new AngleGrid(2, 2, 0.5, 0.5, 10, 10, false, () -> new double[]{
+                10, 20,
+                30, Double.NaN
+        });
+        assertEquals(10, grid.interpolate(0.5, 0.5), 1e-12);
+        assertEquals(15, grid.interpolate(5.5, 0.5), 1e-12);
+        assertEquals(20, grid.interpolate(10.5, 0.5), 1e-12);
+        // beyond the grid, the edge values
+        assertEquals(10, grid.interpolate(-100, -100), 1e-12);
+        // grid points without an angle are left out
+        assertEquals(30, grid.interpolate(5.5, 10.5), 1e-12);
+        assertEquals(Double.NaN, grid.interpolate(10.5, 10.5), 0.0);
+        assertEquals(20, grid.interpolate(5.5, 5.5), 1e-12);
+    }
+
+    @Test
+    public void testInterpolate_azimuth() throws IOException {
+        final AngleGrid grid = new AngleGrid(2, 2, 0, 0, 1, 1, true, () -> new double[]{
+                350, 10,
+                350, 10
+        });
+        assertEquals(0, grid.interpolate(0.5, 0.5), 1e-9);
+        assertEquals(355, grid.interpolate(0.25, 0.5), 0.1);
+    }
+}
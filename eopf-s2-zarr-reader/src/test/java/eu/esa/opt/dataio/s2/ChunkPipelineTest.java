@@ -0,0 +1,54 @@
+package eu.esa.opt.dataio.s2;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ChunkPipelineTest {
+
+    @Test
+    public void testFetchesAreInFlightConcurrently() throws IOException {
+        // each fetch waits for all others to have started, which only succeeds if they run concurrently
+        final int numFetches = 32;
+        final CountDownLatch started = new CountDownLatch(numFetches);
+        final List<CompletableFuture<String>> reads = new ArrayList<>();
+        for (int i = 0; i < numFetches; i++) {
+            final int index = i;
+            final CompletableFuture<Boolean> fetched = ChunkPipeline.fetch(() -> {
+                started.countDown();
+                try {
+                    return started.await(10, TimeUnit.SECONDS) && Thread.currentThread().isVirtual();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            });
+            reads.add(ChunkPipeline.decode(fetched, allStarted -> {
+                assertFalse(Thread.currentThread().isVirtual());
+                return allStarted + "-" + index;
+            }));
+        }
+        for (int i = 0; i < numFetches; i++) {
+            assertEquals("true-" + i, ChunkPipeline.join(reads.get(i)));
+        }
+    }
+
+    @Test
+    public void testJoinRethrowsIOException() {
+        final CompletableFuture<Object> read = ChunkPipeline.decode(ChunkPipeline.fetch(() -> "chunk"), chunk -> {
+            throw new IOException("Corrupt chunk");
+        });
+        try {
+            ChunkPipeline.join(read);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertEquals("Corrupt chunk", expected.getMessage());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package eu.esa.opt.dataio.s2;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ChunkStatisticsTest {
+
+    private Path cacheDir;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDir = Files.createTempDirectory("chunk-statistics");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(cacheDir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testSelectChunks() {
+        final ChunkStatistics statistics = new ChunkStatistics(4);
+        statistics.put(0, new ChunkStatistics.Summary(10, 20, 100));
+        statistics.put(1, new ChunkStatistics.Summary(30, 40, 100));
+        statistics.put(2, ChunkStatistics.Summary.FILL_ONLY);
+
+        // chunk 3 is not summarized and must be read
+        final BitSet expected = new BitSet();
+        expected.set(1);
+        expected.set(3);
+        assertEquals(expected, statistics.selectChunks(25, 50));
+        assertNull(statistics.getTotal());
+        assertFalse(statistics.isComplete());
+
+        statistics.put(3, new ChunkStatistics.Summary(5, 8, 1));
+        assertTrue(statistics.isComplete());
+        assertEquals(new ChunkStatistics.Summary(5, 40, 201), statistics.getTotal());
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        final ChunkStatistics statistics = new ChunkStatistics(3);
+        assertFalse(statistics.isModified());
+        statistics.put(0, new ChunkStatistics.Summary(-1.5, 2.5, 7));
+        statistics.put(2, ChunkStatistics.Summary.FILL_ONLY);
+        assertTrue(statistics.isModified());
+        statistics.write(cacheDir, "product|measurements/b02");
+        assertFalse(statistics.isModified());
+
+        final ChunkStatistics read = ChunkStatistics.read(cacheDir, "product|measurements/b02", 3);
+        assertEquals(new ChunkStatistics.Summary(-1.5, 2.5, 7), read.get(0));
+        assertNull(read.get(1));
+        assertTrue(read.get(2).isFillOnly());
+        assertFalse(read.isModified());
+
+        // statistics of another array, or of a different chunk grid, are not used
+        assertNull(ChunkStatistics.read(cacheDir, "product|measurements/b03", 3).get(0));
+        assertNull(ChunkStatistics.read(cacheDir, "product|measurements/b02", 4).get(0));
+    }
+
+    @Test
+    public void testWriteAndRead_transientSummaries() throws IOException {
+        final ChunkStatistics statistics = new ChunkStatistics(2);
+        statistics.putTransient(0, ChunkStatistics.Summary.FILL_ONLY);
+        statistics.put(1, new ChunkStatistics.Summary(1, 2, 3));
+        assertTrue(statistics.get(0).isFillOnly());
+        assertTrue(statistics.isComplete());
+        statistics.write(cacheDir, "product|measurements/b02");
+
+        // transient summaries are kept in memory only
+        final ChunkStatistics read = ChunkStatistics.read(cacheDir, "product|measurements/b02", 2);
+        assertNull(read.get(0));
+        assertEquals(new ChunkStatistics.Summary(1, 2, 3), read.get(1));
+    }
+
+    @Test
+    public void testSummarize_nanWithOtherFillValue() throws Exception {
+        // a float32 array of two chunks with the fill value 0, the second holding NaN and the fill value only
+        final Path arrayDir = Files.createDirectories(cacheDir.resolve("product.zarr/measurements/aot"));
+        Files.writeString(arrayDir.resolve(".zarray"), "{\"chunks\": [2, 2], \"compressor\": null," +
+                " \"dimension_separator\": \".\", \"dtype\": \"<f4\", \"fill_value\": 0, \"filters\": null," +
+                " \"order\": \"C\", \"shape\": [2, 4], \"zarr_format\": 2}");
+        Files.write(arrayDir.resolve("0.0"), toBytes(Float.NaN, 0, 1.5f, 3));
+        Files.write(arrayDir.resolve("0.1"), toBytes(Float.NaN, 0, 0, Float.NaN));
+        try (FileSystemRangeStore store = new FileSystemRangeStore(cacheDir.resolve("product.zarr"))) {
+            final ZarrV2Array array = ZarrV2Array.open(store, "measurements/aot");
+            final ChunkStatistics statistics = new ChunkStatistics(array.getNumChunks());
+            array.setChunkStatistics(statistics);
+            ChunkPipeline.join(array.summarizeChunk(new int[]{0, 0}));
+            ChunkPipeline.join(array.summarizeChunk(new int[]{0, 1}));
+
+            // NaN samples are neither valid nor counted
+            assertEquals(new ChunkStatistics.Summary(1.5, 3, 2), statistics.get(0));
+            assertTrue(statistics.get(1).isFillOnly());
+        }
+    }
+
+    private static byte[] toBytes(float... values) {
+        final ByteBuffer buffer = ByteBuffer.allocate(values.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (float value : values) {
+            buffer.putFloat(value);
+        }
+        return buffer.array();
+    }
+}
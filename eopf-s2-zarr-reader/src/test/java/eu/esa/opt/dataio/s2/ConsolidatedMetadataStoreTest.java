@@ -0,0 +1,164 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.storage.FileSystemStore;
+import com.bc.zarr.storage.Store;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ConsolidatedMetadataStoreTest {
+
+    private final String MULTI_DIMS_PRODUCT = "geometry.zarr";
+    private final String S2_PRODUCT = "S2A_MSIL2A_20180701T102021_N0500_R065_T32UPC_20230811T042458.zarr";
+
+    private Path productDir;
+    private Map<String, byte[]> expectedEntries;
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        expectedEntries = ZarrZipRangeStoreTest.readEntries(getResourcePath(MULTI_DIMS_PRODUCT));
+        productDir = Files.createTempDirectory("geometry.zarr");
+        final StringBuilder document = new StringBuilder("{\"metadata\": {");
+        for (Map.Entry<String, byte[]> entry : expectedEntries.entrySet()) {
+            final Path path = productDir.resolve(entry.getKey());
+            Files.createDirectories(path.getParent());
+            Files.write(path, entry.getValue());
+            // y/.zattrs exists, but is not part of the consolidated metadata
+            if (entry.getKey().contains("/.z") && !entry.getKey().equals("y/.zattrs") || entry.getKey().startsWith(".z")) {
+                if (document.charAt(document.length() - 1) != '{') {
+                    document.append(",\n");
+                }
+                document.append('"').append(entry.getKey()).append("\": ")
+                        .append(new String(entry.getValue(), StandardCharsets.UTF_8));
+            }
+        }
+        document.append("}, \"zarr_consolidated_format\": 1}");
+        Files.writeString(productDir.resolve(".zmetadata"), document);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(productDir)) {
+            for (Path path : paths.sorted((p1, p2) -> p2.compareTo(p1)).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private Path getResourcePath(String name) throws URISyntaxException {
+        final URL resource = getClass().getResource(name);
+        assertNotNull(resource);
+        return Paths.get(new URI(resource.toString()));
+    }
+
+    @Test
+    public void testGetInputStream() throws IOException {
+        try (Store store = ConsolidatedMetadataStore.wrap(new FileSystemStore(productDir))) {
+            assertTrue(store instanceof ConsolidatedMetadataStore);
+            for (Map.Entry<String, byte[]> entry : expectedEntries.entrySet()) {
+                if (entry.getKey().equals("y/.zattrs")) {
+                    assertNull(store.getInputStream(entry.getKey()));
+                    continue;
+                }
+                try (InputStream inputStream = store.getInputStream(entry.getKey())) {
+                    assertNotNull(entry.getKey(), inputStream);
+                    if (entry.getKey().contains(".z")) {
+                        assertEquals(entry.getKey(), new String(entry.getValue(), StandardCharsets.UTF_8).trim(),
+                                new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+                    } else {
+                        assertArrayEquals(entry.getKey(), entry.getValue(), inputStream.readAllBytes());
+                    }
+                }
+            }
+            assertNull(store.getInputStream("sun_angles/9.9.9"));
+        }
+    }
+
+    @Test
+    public void testMetadataIsNotReadFromWrappedStore() throws IOException {
+        try (Store store = ConsolidatedMetadataStore.wrap(new FileSystemStore(productDir))) {
+            Files.delete(productDir.resolve("sun_angles/.zarray"));
+            try (InputStream inputStream = store.getInputStream("sun_angles/.zarray")) {
+                assertArrayEquals(new String(expectedEntries.get("sun_angles/.zarray"), StandardCharsets.UTF_8).trim()
+                        .getBytes(StandardCharsets.UTF_8), inputStream.readAllBytes());
+            }
+            try (InputStream inputStream = store.getInputStream("sun_angles/0.0.0")) {
+                assertArrayEquals(expectedEntries.get("sun_angles/0.0.0"), inputStream.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    public void testGetKeys() throws IOException {
+        try (Store store = ConsolidatedMetadataStore.wrap(new FileSystemStore(productDir))) {
+            assertEquals(new TreeSet<>(List.of("sun_angles", "viewing_incidence_angles", "x", "y")),
+                    store.getArrayKeys());
+            assertEquals(new TreeSet<>(List.of("")), store.getGroupKeys());
+            assertEquals(4, store.getKeysEndingWith(".zattrs").size());
+            assertEquals(List.of(".zarray", ".zattrs", "0.0.0"),
+                    store.getRelativeLeafKeys("sun_angles").sorted().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testWrittenKeysAreKeptInMemory() throws IOException {
+        try (Store store = ConsolidatedMetadataStore.wrap(new FileSystemStore(productDir))) {
+            try (OutputStream outputStream = store.getOutputStream("sun_angles/.zarray")) {
+                outputStream.write(new byte[]{1, 2, 3});
+            }
+            assertArrayEquals(new byte[]{1, 2, 3}, store.getInputStream("sun_angles/.zarray").readAllBytes());
+            store.delete("sun_angles");
+            assertNotNull(store.getInputStream("sun_angles/.zarray"));
+        }
+        assertArrayEquals(expectedEntries.get("sun_angles/.zarray"),
+                Files.readAllBytes(productDir.resolve("sun_angles/.zarray")));
+    }
+
+    @Test
+    public void testWrap_withoutConsolidatedMetadata() throws IOException, URISyntaxException {
+        final Store store = new FileSystemStore(getResourcePath(MULTI_DIMS_PRODUCT));
+        assertSame(store, ConsolidatedMetadataStore.wrap(store));
+    }
+
+    @Test
+    public void testWrap_invalidConsolidatedMetadata() throws IOException {
+        Files.writeString(productDir.resolve(".zmetadata"), "{\"metadata\": {\".zgroup\": {\"zarr_format\": 2}");
+        final Store store = new FileSystemStore(productDir);
+        assertSame(store, ConsolidatedMetadataStore.wrap(store));
+    }
+
+    @Test
+    public void testWrap_productMetadata() throws IOException, URISyntaxException {
+        try (Store store = ConsolidatedMetadataStore.wrap(new FileSystemStore(getResourcePath(S2_PRODUCT)))) {
+            assertTrue(store instanceof ConsolidatedMetadataStore);
+            final TreeSet<String> arrayKeys = store.getArrayKeys();
+            assertEquals(149, arrayKeys.size());
+            assertTrue(arrayKeys.contains("measurements/reflectance/r10m/b02"));
+            try (InputStream inputStream = store.getInputStream("measurements/reflectance/r10m/b02/.zarray")) {
+                final Map<String, String> members =
+                        ZarrJson.getRawMembers(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+                assertEquals("\"<u2\"", members.get("dtype"));
+                assertEquals("2", members.get("zarr_format"));
+            }
+            assertNull(store.getInputStream("measurements/reflectance/r10m/b99/.zarray"));
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package eu.esa.opt.dataio.s2;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DecodedChunkCacheTest {
+
+    private final Object product = new Object();
+    private final AtomicInteger decodes = new AtomicInteger();
+
+    @Test
+    public void testGet_decodesOnce() {
+        final DecodedChunkCache.ArrayChunks chunks =
+                new DecodedChunkCache(1024, false).getArrayChunks(product, "conditions/geometry/angles");
+        final CompletableFuture<ByteBuffer> decoding = new CompletableFuture<>();
+
+        final CompletableFuture<ByteBuffer> first = chunks.get(new int[]{0, 1, 0}, () -> {
+            decodes.incrementAndGet();
+            return decoding;
+        });
+        // requested again while being decoded
+        final CompletableFuture<ByteBuffer> second = get(chunks, 0, 1, 0);
+        assertFalse(second.isDone());
+
+        final ByteBuffer chunk = ByteBuffer.allocate(16);
+        decoding.complete(chunk);
+        assertSame(chunk, first.join());
+        assertSame(chunk, second.join());
+        assertSame(chunk, get(chunks, 0, 1, 0).join());
+        assertEquals(1, decodes.get());
+    }
+
+    @Test
+    public void testGet_frequentChunksSurviveScans() {
+        final DecodedChunkCache cache = new DecodedChunkCache(64, false);
+        final DecodedChunkCache.ArrayChunks chunks = cache.getArrayChunks(product, "measurements/b02");
+        // chunk 0 is in repeated use
+        get(chunks, 0).join();
+        get(chunks, 0).join();
+        for (int i = 1; i <= 8; i++) {
+            get(chunks, i).join();
+        }
+        assertEquals(9, decodes.get());
+        get(chunks, 0).join();
+        assertEquals(9, decodes.get());
+
+        final DecodedChunkCache.Statistics statistics = cache.getStatistics();
+        assertEquals(2, statistics.hits());
+        assertEquals(9, statistics.misses());
+        assertEquals(5, statistics.evictions());
+        assertEquals(64, statistics.size());
+    }
+
+    @Test
+    public void testRelease() {
+        final DecodedChunkCache cache = new DecodedChunkCache(1024, true);
+        final Object otherProduct = new Object();
+        final DecodedChunkCache.ArrayChunks chunks = cache.getArrayChunks(product, "measurements/b02");
+        final DecodedChunkCache.ArrayChunks otherChunks = cache.getArrayChunks(otherProduct, "measurements/b02");
+        assertTrue(chunks.allocate(16).isDirect());
+        get(chunks, 0).join();
+        get(chunks, 1).join();
+        get(otherChunks, 0).join();
+        assertEquals(3, decodes.get());
+        assertEquals(32, cache.getSize(product));
+        assertEquals(16, cache.getSize(otherProduct));
+
+        cache.release(product);
+        assertEquals(0, cache.getSize(product));
+        assertEquals(16, cache.getStatistics().size());
+        get(otherChunks, 0).join();
+        assertEquals(3, decodes.get());
+    }
+
+    @Test
+    public void testGet_failureNotCached() {
+        final DecodedChunkCache.ArrayChunks chunks = new DecodedChunkCache(1024, false).getArrayChunks(product, "b02");
+        final CompletableFuture<ByteBuffer> failed = chunks.get(new int[]{3}, () ->
+                CompletableFuture.failedFuture(new UncheckedIOException(new IOException("broken chunk"))));
+        try {
+            failed.join();
+            fail("CompletionException expected");
+        } catch (CompletionException expected) {
+            assertTrue(expected.getCause() instanceof UncheckedIOException);
+        }
+        get(chunks, 3).join();
+        assertEquals(1, decodes.get());
+    }
+
+    private CompletableFuture<ByteBuffer> get(DecodedChunkCache.ArrayChunks chunks, int... chunkIndices) {
+        return chunks.get(chunkIndices, () -> {
+            decodes.incrementAndGet();
+            return CompletableFuture.completedFuture(chunks.allocate(8 * 2));
+        });
+    }
+}
@@ -0,0 +1,264 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.storage.FileSystemStore;
+import com.bc.zarr.storage.Store;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class DiskCacheStoreTest {
+
+    private final String MULTI_DIMS_PRODUCT = "geometry.zarr";
+
+    private Path productDir;
+    private Map<String, byte[]> expectedEntries;
+    private Path cacheDir;
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        final URL resource = getClass().getResource(MULTI_DIMS_PRODUCT);
+        assertNotNull(resource);
+        productDir = Paths.get(new URI(resource.toString()));
+        expectedEntries = ZarrZipRangeStoreTest.readEntries(productDir);
+        cacheDir = Files.createTempDirectory("chunks");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> cacheFiles = Files.walk(cacheDir)) {
+            for (Path cacheFile : cacheFiles.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(cacheFile);
+            }
+        }
+    }
+
+    @Test
+    public void testSecondReadIsServedFromCache() throws IOException {
+        final CountingStore countingStore = new CountingStore(new FileSystemStore(productDir));
+        final DiskChunkCache cache = new DiskChunkCache(cacheDir, 1 << 20);
+        try (Store store = new DiskCacheStore(countingStore, "product", cache)) {
+            assertAllEntries(store);
+            assertEquals(expectedEntries.size(), countingStore.readCount.get());
+            assertAllEntries(store);
+            assertEquals(expectedEntries.size(), countingStore.readCount.get());
+            assertNull(store.getInputStream("sun_angles/9.9.9"));
+            assertNull(store.getInputStream("sun_angles/9.9.9"));
+            assertEquals(expectedEntries.size() + 2, countingStore.readCount.get());
+        }
+        assertTrue(cache.getTotalSize() > 0);
+    }
+
+    @Test
+    public void testCacheSurvivesRestart() throws IOException {
+        try (Store store = new DiskCacheStore(new FileSystemStore(productDir), "product", new DiskChunkCache(cacheDir, 1 << 20))) {
+            assertAllEntries(store);
+        }
+        final DiskChunkCache cache = new DiskChunkCache(cacheDir, 1 << 20);
+        assertEquals(expectedEntries.values().stream().mapToLong(bytes -> bytes.length).sum(), cache.getTotalSize());
+        final CountingStore countingStore = new CountingStore(new FileSystemStore(productDir));
+        try (Store store = new DiskCacheStore(countingStore, "product", cache)) {
+            assertAllEntries(store);
+        }
+        assertEquals(0, countingStore.readCount.get());
+
+        // another product with the same keys is not served from the entries of the first one
+        final CountingStore otherStore = new CountingStore(new FileSystemStore(productDir));
+        try (Store store = new DiskCacheStore(otherStore, "other product", cache)) {
+            assertAllEntries(store);
+        }
+        assertEquals(expectedEntries.size(), otherStore.readCount.get());
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        final DiskChunkCache cache = new DiskChunkCache(cacheDir, 10_000);
+        final byte[] bytes = new byte[400];
+        for (int i = 0; i < 100; i++) {
+            cache.put(DiskChunkCache.getId("product", "chunk/" + i), bytes);
+            // keep the first entry in use
+            assertNotNull(cache.get(DiskChunkCache.getId("product", "chunk/0")));
+            assertTrue(cache.getTotalSize() <= cache.getMaxSize());
+        }
+        assertNotNull(cache.get(DiskChunkCache.getId("product", "chunk/0")));
+        assertNotNull(cache.get(DiskChunkCache.getId("product", "chunk/99")));
+        assertNull(cache.get(DiskChunkCache.getId("product", "chunk/1")));
+        assertEquals(cache.getTotalSize(), new DiskChunkCache(cacheDir, 10_000).getTotalSize());
+
+        // too large to be cached
+        cache.put(DiskChunkCache.getId("product", "large"), new byte[2000]);
+        assertNull(cache.get(DiskChunkCache.getId("product", "large")));
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        // two caches on the same directory, as used by two processes
+        final DiskChunkCache cache1 = new DiskChunkCache(cacheDir, 1 << 20);
+        final DiskChunkCache cache2 = new DiskChunkCache(cacheDir, 1 << 20);
+        final ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                final DiskChunkCache cache = i % 2 == 0 ? cache1 : cache2;
+                futures.add(executorService.submit(() -> {
+                    try (Store store = new DiskCacheStore(new FileSystemStore(productDir), "product", cache)) {
+                        assertAllEntries(store);
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        final CountingStore countingStore = new CountingStore(new FileSystemStore(productDir));
+        try (Store store = new DiskCacheStore(countingStore, "product", new DiskChunkCache(cacheDir, 1 << 20))) {
+            assertAllEntries(store);
+        }
+        assertEquals(0, countingStore.readCount.get());
+        try (Stream<Path> cacheFiles = Files.walk(cacheDir)) {
+            assertTrue(cacheFiles.noneMatch(file -> file.toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    public void testWrittenKeysAreNotCached() throws IOException {
+        final Path writableDir = Files.createTempDirectory("product");
+        try {
+            Files.writeString(writableDir.resolve(".zgroup"), "{\"zarr_format\":2}");
+            try (Store store = new DiskCacheStore(new FileSystemStore(writableDir), "product", new DiskChunkCache(cacheDir, 1 << 20))) {
+                assertEquals("{\"zarr_format\":2}", readString(store, ".zgroup"));
+                try (OutputStream outputStream = store.getOutputStream(".zgroup")) {
+                    outputStream.write("{\"zarr_format\": 2}".getBytes(StandardCharsets.UTF_8));
+                }
+                assertEquals("{\"zarr_format\": 2}", readString(store, ".zgroup"));
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(writableDir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRewrittenRemoteProductIsNotServedFromCache() throws IOException {
+        final Path remoteDir = Files.createDirectories(cacheDir.resolve("remote/product.zarr"));
+        Files.createDirectories(remoteDir.resolve("b02"));
+        Files.writeString(remoteDir.resolve(".zmetadata"), "{\"metadata\": {}, \"zarr_consolidated_format\": 1}");
+        Files.writeString(remoteDir.resolve("b02/0.0"), "first");
+        final DiskChunkCache cache = new DiskChunkCache(cacheDir.resolve("chunks"), 1 << 20);
+        try (TestHttpServer server = new TestHttpServer(cacheDir.resolve("remote"))) {
+            final URI rootUri = server.getUri("product.zarr");
+            final String productId;
+            try (HttpStore remoteStore = new HttpStore(rootUri)) {
+                productId = S2ZarrUtils.getRemoteProductId(rootUri, remoteStore);
+                try (Store store = new DiskCacheStore(remoteStore, productId, cache)) {
+                    assertEquals("first", readString(store, "b02/0.0"));
+                }
+            }
+
+            // the product is written anew at the same URI
+            Files.writeString(remoteDir.resolve(".zmetadata"), "{\"metadata\": {}, \"zarr_consolidated_format\": 1} ");
+            Files.writeString(remoteDir.resolve("b02/0.0"), "second");
+            try (HttpStore remoteStore = new HttpStore(rootUri)) {
+                final String newProductId = S2ZarrUtils.getRemoteProductId(rootUri, remoteStore);
+                assertNotEquals(productId, newProductId);
+                try (Store store = new DiskCacheStore(remoteStore, newProductId, cache)) {
+                    assertEquals("second", readString(store, "b02/0.0"));
+                }
+                // the chunk cached for the former product is not served for the new one
+                try (Store store = new DiskCacheStore(remoteStore, productId, cache)) {
+                    assertEquals("first", readString(store, "b02/0.0"));
+                }
+            }
+        }
+    }
+
+    private void assertAllEntries(Store store) throws IOException {
+        for (Map.Entry<String, byte[]> entry : expectedEntries.entrySet()) {
+            try (InputStream inputStream = store.getInputStream(entry.getKey())) {
+                assertNotNull(entry.getKey(), inputStream);
+                assertArrayEquals(entry.getKey(), entry.getValue(), inputStream.readAllBytes());
+            }
+        }
+    }
+
+    private static String readString(Store store, String key) throws IOException {
+        try (InputStream inputStream = store.getInputStream(key)) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class CountingStore implements Store {
+
+        private final Store store;
+        private final AtomicInteger readCount = new AtomicInteger();
+
+        CountingStore(Store store) {
+            this.store = store;
+        }
+
+        @Override
+        public InputStream getInputStream(String key) throws IOException {
+            readCount.incrementAndGet();
+            return store.getInputStream(key);
+        }
+
+        @Override
+        public OutputStream getOutputStream(String key) throws IOException {
+            return store.getOutputStream(key);
+        }
+
+        @Override
+        public void delete(String key) throws IOException {
+            store.delete(key);
+        }
+
+        @Override
+        public TreeSet<String> getArrayKeys() throws IOException {
+            return store.getArrayKeys();
+        }
+
+        @Override
+        public TreeSet<String> getGroupKeys() throws IOException {
+            return store.getGroupKeys();
+        }
+
+        @Override
+        public TreeSet<String> getKeysEndingWith(String suffix) throws IOException {
+            return store.getKeysEndingWith(suffix);
+        }
+
+        @Override
+        public Stream<String> getRelativeLeafKeys(String key) throws IOException {
+            return store.getRelativeLeafKeys(key);
+        }
+    }
+}
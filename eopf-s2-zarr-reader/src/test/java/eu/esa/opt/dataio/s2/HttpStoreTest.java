@@ -0,0 +1,142 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.storage.Store;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class HttpStoreTest {
+
+    private final String MULTI_DIMS_PRODUCT = "geometry.zarr";
+    private final String S2_PRODUCT = "S2A_MSIL2A_20180701T102021_N0500_R065_T32UPC_20230811T042458.zarr";
+
+    private Path resourceDir;
+    private Path zipDir;
+    private Map<String, byte[]> expectedEntries;
+    private TestHttpServer server;
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        final URL resource = getClass().getResource(MULTI_DIMS_PRODUCT);
+        assertNotNull(resource);
+        final Path productDir = Paths.get(new URI(resource.toString()));
+        resourceDir = productDir.getParent();
+        expectedEntries = ZarrZipRangeStoreTest.readEntries(productDir);
+        zipDir = Files.createTempDirectory("http-zip");
+        // a large leading entry, which must not be transferred when reading the other entries
+        final Map<String, byte[]> zipEntries = new TreeMap<>(expectedEntries);
+        zipEntries.put("_padding/0", new byte[4 << 20]);
+        ZarrZipRangeStoreTest.writeZip(zipDir.resolve("geometry.zarr.zip"), zipEntries);
+        server = new TestHttpServer(resourceDir);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        Files.deleteIfExists(zipDir.resolve("geometry.zarr.zip"));
+        Files.deleteIfExists(zipDir);
+    }
+
+    @Test
+    public void testGetInputStream() throws IOException {
+        try (HttpStore store = new HttpStore(server.getUri(MULTI_DIMS_PRODUCT))) {
+            for (Map.Entry<String, byte[]> entry : expectedEntries.entrySet()) {
+                try (InputStream inputStream = store.getInputStream(entry.getKey())) {
+                    assertNotNull(entry.getKey(), inputStream);
+                    assertArrayEquals(entry.getKey(), entry.getValue(), inputStream.readAllBytes());
+                }
+            }
+            assertNull(store.getInputStream("sun_angles/9.9.9"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testGetArrayKeys_notSupported() throws IOException {
+        try (HttpStore store = new HttpStore(server.getUri(MULTI_DIMS_PRODUCT))) {
+            store.getArrayKeys();
+        }
+    }
+
+    @Test
+    public void testOpenWithConsolidatedMetadata() throws IOException {
+        try (Store store = ConsolidatedMetadataStore.wrap(new HttpStore(server.getUri(S2_PRODUCT + "/")))) {
+            assertTrue(store instanceof ConsolidatedMetadataStore);
+            assertEquals(149, store.getArrayKeys().size());
+            assertNotNull(store.getInputStream("measurements/reflectance/r10m/b02/.zarray"));
+            assertNotNull(store.getInputStream(".zattrs"));
+            assertEquals(1, server.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testZipStoreWithRangeRequests() throws IOException {
+        final long zipSize = Files.size(zipDir.resolve("geometry.zarr.zip"));
+        try (TestHttpServer zipServer = new TestHttpServer(zipDir);
+             ZarrZipRangeStore store = new ZarrZipRangeStore(new HttpRangeReader(zipServer.getUri("geometry.zarr.zip")))) {
+            final TreeSet<String> keys = store.getKeysEndingWith("");
+            keys.remove("_padding/0");
+            assertEquals(expectedEntries.keySet(), keys);
+            for (Map.Entry<String, byte[]> entry : expectedEntries.entrySet()) {
+                try (InputStream inputStream = store.getInputStream(entry.getKey())) {
+                    assertArrayEquals(entry.getKey(), entry.getValue(), inputStream.readAllBytes());
+                }
+            }
+            assertTrue(zipServer.getTransferredBytes() < zipSize / 10);
+        }
+    }
+
+    @Test
+    public void testRangeReaderWithoutRangeSupport() throws IOException {
+        final long zipSize = Files.size(zipDir.resolve("geometry.zarr.zip"));
+        try (TestHttpServer zipServer = new TestHttpServer(zipDir)) {
+            final URI zipUri = zipServer.getUri("geometry.zarr.zip");
+            zipServer.setHeadAllowed(false);
+            try (HttpRangeReader reader = new HttpRangeReader(zipUri)) {
+                assertEquals(zipSize, reader.size());
+            }
+            // servers answering range requests with the whole resource are rejected without reading it
+            zipServer.setRangesIgnored(true);
+            try (HttpRangeReader reader = new HttpRangeReader(zipUri)) {
+                reader.size();
+                fail("IOException expected");
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage().contains("does not support range requests"));
+            }
+            zipServer.setHeadAllowed(true);
+            try (HttpRangeReader reader = new HttpRangeReader(zipUri)) {
+                assertEquals(zipSize, reader.size());
+                reader.readFully(ByteBuffer.allocate(16), 0);
+                fail("IOException expected");
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage().contains("does not support range requests"));
+            }
+        }
+    }
+
+    @Test
+    public void testConvertToHttpUri() {
+        assertEquals(URI.create("https://example.com/a.zarr"), S2ZarrUtils.convertToRemoteUri("https://example.com/a.zarr"));
+        assertEquals(URI.create("HTTP://example.com/a.zarr"), S2ZarrUtils.convertToRemoteUri("HTTP://example.com/a.zarr"));
+        assertNull(S2ZarrUtils.convertToRemoteUri("/data/a.zarr"));
+        assertNull(S2ZarrUtils.convertToRemoteUri("ftp://example.com/a.zarr"));
+        assertNull(S2ZarrUtils.convertToPath("https://example.com/a.zarr"));
+        assertEquals("a.zarr", S2ZarrUtils.getFileName(URI.create("https://example.com/a.zarr/")));
+        assertEquals(URI.create("https://example.com/a.zarr/"),
+                S2ZarrUtils.getParent(URI.create("https://example.com/a.zarr/.zgroup")));
+    }
+}
@@ -0,0 +1,111 @@
+package eu.esa.opt.dataio.s2;
+
+import org.esa.snap.core.datamodel.ProductData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class OverviewStoreTest {
+
+    private static final String ARRAY_KEY = "measurements/reflectance/r10m/b08";
+    private static final long MAX_SIZE = 16 << 20;
+    private static final int TILE_SIZE = 512 * 512 * 2;
+
+    private Path cacheDir;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDir = Files.createTempDirectory("overviews");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(cacheDir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testWriteAndReadTile() throws IOException {
+        final OverviewStore store = OverviewStore.open(cacheDir, "product", MAX_SIZE);
+        store.createLevel(ARRAY_KEY, 1, 5490, 5490, 512, 512, ProductData.TYPE_UINT16, 0);
+        assertNull(store.readTile(ARRAY_KEY, 1, 2, 3));
+
+        final ByteBuffer tile = ByteBuffer.allocate(512 * 512 * 2).order(ByteOrder.LITTLE_ENDIAN);
+        tile.putShort(0, (short) 42);
+        store.writeTile(ARRAY_KEY, 1, 2, 3, tile);
+
+        // the overviews are a Zarr group, resumed when the product is opened again
+        final Path rootDir = cacheDir.resolve(OverviewStore.getCacheDirName("product"));
+        assertTrue(Files.isRegularFile(rootDir.resolve(".zgroup")));
+        final String metadata = Files.readString(rootDir.resolve(ARRAY_KEY + "/1/.zarray"));
+        assertTrue(metadata.contains("\"dtype\": \"<u2\""));
+        assertTrue(metadata.contains("\"id\": \"blosc\""));
+        // the written tiles are accounted for the size bound
+        assertEquals(Files.size(rootDir.resolve(ARRAY_KEY + "/1/3/2")), store.getTotalSize());
+        final OverviewStore reopened = OverviewStore.open(cacheDir, "product", MAX_SIZE);
+        reopened.createLevel(ARRAY_KEY, 1, 5490, 5490, 512, 512, ProductData.TYPE_UINT16, 0);
+        final ByteBuffer read = reopened.readTile(ARRAY_KEY, 1, 2, 3);
+        assertNotNull(read);
+        assertEquals(512 * 512 * 2, read.remaining());
+        assertEquals(42, read.getShort(0));
+    }
+
+    @Test
+    public void testCreateLevel_discardsTilesOfOtherLayout() throws IOException {
+        final OverviewStore store = OverviewStore.open(cacheDir, "product", MAX_SIZE);
+        store.createLevel(ARRAY_KEY, 2, 2745, 2745, 512, 512, ProductData.TYPE_FLOAT32, Float.NaN);
+        store.writeTile(ARRAY_KEY, 2, 0, 0, ByteBuffer.allocate(512 * 512 * 4));
+        assertTrue(Files.readString(cacheDir.resolve(OverviewStore.getCacheDirName("product"))
+                .resolve(ARRAY_KEY + "/2/.zarray")).contains("\"fill_value\": \"NaN\""));
+
+        store.createLevel(ARRAY_KEY, 2, 2745, 2745, 256, 256, ProductData.TYPE_FLOAT32, Float.NaN);
+        assertNull(store.readTile(ARRAY_KEY, 2, 0, 0));
+    }
+
+    @Test
+    public void testWriteTile_evictsLeastRecentlyOpenedProducts() throws IOException {
+        // overviews of products opened by another process, the older one opened first
+        final Path olderGroup = createGroup("older", TILE_SIZE, 1_000_000);
+        final Path newerGroup = createGroup("newer", TILE_SIZE, 2_000_000);
+
+        final OverviewStore store = OverviewStore.open(cacheDir, "product", 3 * TILE_SIZE);
+        assertTrue(store.getTotalSize() > 2 * TILE_SIZE);
+        store.createLevel(ARRAY_KEY, 1, 5490, 5490, 512, 512, ProductData.TYPE_UINT16, 0);
+        store.writeTile(ARRAY_KEY, 1, 0, 0, ByteBuffer.allocate(TILE_SIZE));
+        assertFalse(Files.exists(olderGroup));
+        assertTrue(Files.exists(newerGroup));
+        assertNotNull(store.readTile(ARRAY_KEY, 1, 0, 0));
+
+        // the overviews of products opened in this JVM are kept, further tiles are not written
+        store.writeTile(ARRAY_KEY, 1, 1, 0, ByteBuffer.allocate(TILE_SIZE));
+        assertFalse(Files.exists(newerGroup));
+        store.writeTile(ARRAY_KEY, 1, 2, 0, ByteBuffer.allocate(TILE_SIZE));
+        store.writeTile(ARRAY_KEY, 1, 3, 0, ByteBuffer.allocate(TILE_SIZE));
+        assertNotNull(store.readTile(ARRAY_KEY, 1, 1, 0));
+        assertNull(store.readTile(ARRAY_KEY, 1, 3, 0));
+        assertTrue(store.getTotalSize() <= 3 * TILE_SIZE);
+    }
+
+    private Path createGroup(String productId, int size, long openTime) throws IOException {
+        final Path group = Files.createDirectories(cacheDir.resolve(OverviewStore.getCacheDirName(productId)));
+        Files.writeString(group.resolve(".zgroup"), "{\"zarr_format\": 2}");
+        Files.setLastModifiedTime(group.resolve(".zgroup"), FileTime.fromMillis(openTime));
+        Files.write(Files.createDirectories(group.resolve(ARRAY_KEY + "/1/0")).resolve("0"), new byte[size]);
+        return group;
+    }
+}
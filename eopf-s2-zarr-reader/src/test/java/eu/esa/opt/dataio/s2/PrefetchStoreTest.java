@@ -0,0 +1,80 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.storage.FileSystemStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PrefetchStoreTest {
+
+    private final String MULTI_DIMS_PRODUCT = "geometry.zarr";
+
+    private Path zipFile;
+    private Map<String, byte[]> expectedEntries;
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        final URL resource = getClass().getResource(MULTI_DIMS_PRODUCT);
+        assertNotNull(resource);
+        expectedEntries = ZarrZipRangeStoreTest.readEntries(Paths.get(new URI(resource.toString())));
+        zipFile = Files.createTempFile("geometry", ".zarr.zip");
+        ZarrZipRangeStoreTest.writeZip(zipFile, expectedEntries);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(zipFile);
+    }
+
+    @Test
+    public void testPrefetchedEntriesAreServedOnce() throws IOException {
+        try (PrefetchStore store = new PrefetchStore(new ZarrZipRangeStore(zipFile))) {
+            final Collection<String> prefetchedKeys = store.prefetch(List.of("sun_angles/0.0.0", "sun_angles/9.9.9"));
+            assertEquals(Set.of("sun_angles/0.0.0"), Set.copyOf(prefetchedKeys));
+            assertTrue(store.prefetch(List.of("sun_angles/0.0.0")).isEmpty());
+            assertEntry(store, "sun_angles/0.0.0");
+            // read from the wrapped store again
+            assertEntry(store, "sun_angles/0.0.0");
+            store.release(prefetchedKeys);
+            assertNull(store.getInputStream("sun_angles/9.9.9"));
+        }
+    }
+
+    @Test
+    public void testTilePrefetcher() throws IOException, URISyntaxException {
+        final URL resource = getClass().getResource(MULTI_DIMS_PRODUCT);
+        assertNotNull(resource);
+        try (PrefetchStore store = new PrefetchStore(new FileSystemStore(Paths.get(new URI(resource.toString()))))) {
+            final TilePrefetcher prefetcher = new TilePrefetcher(store, ChunkKeyEncoding.v2("viewing_incidence_angles", "."),
+                    new int[]{7, 4, 2, 23, 23}, new int[]{8, 5, 1});
+            assertEquals("viewing_incidence_angles/1.1.0.0.1", prefetcher.getChunkKey(1, 0));
+            final Collection<String> prefetchedKeys = prefetcher.prefetch(List.of(new Point(0, 0)));
+            assertEquals(Set.of("viewing_incidence_angles/1.1.0.0.0"), Set.copyOf(prefetchedKeys));
+            assertEntry(store, "viewing_incidence_angles/1.1.0.0.0");
+            prefetcher.release(prefetchedKeys);
+        }
+    }
+
+    private void assertEntry(PrefetchStore store, String key) throws IOException {
+        try (InputStream inputStream = store.getInputStream(key)) {
+            assertNotNull(key, inputStream);
+            assertArrayEquals(key, expectedEntries.get(key), inputStream.readAllBytes());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package eu.esa.opt.dataio.s2;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.image.ResolutionLevel;
+import org.junit.Test;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class S2ZarrDetectorAngleOpImageTest {
+
+    // a footprint of 4 x 2 pixels: no detector, detectors 1 and 2, and detector 3 without a grid
+    private static final int[] FOOTPRINT = {
+            0, 1, 1, 2,
+            1, 2, 2, 3
+    };
+    private static final Rectangle FOOTPRINT_RECT = new Rectangle(0, 0, 4, 2);
+
+    @Test
+    public void testComputeAngles() throws IOException {
+        final float[] samples = computeAngles(createZenithGrids(), FOOTPRINT_RECT);
+        assertEquals(Float.NaN, samples[0], 0.0f);
+        // each pixel takes the angle of its own detector, also next to pixels of other detectors
+        assertEquals(10.0f, samples[1], 1e-6f);
+        assertEquals(10.0f, samples[2], 1e-6f);
+        assertEquals(20.0f, samples[3], 1e-6f);
+        assertEquals(10.0f, samples[4], 1e-6f);
+        assertEquals(20.0f, samples[5], 1e-6f);
+        assertEquals(20.0f, samples[6], 1e-6f);
+        assertEquals(Float.NaN, samples[7], 0.0f);
+    }
+
+    @Test
+    public void testComputeAngles_interpolatedPerDetector() throws IOException {
+        // the grid of detector 1 increases along x, that of detector 2 along y
+        final AngleGrid[] grids = {null,
+                new AngleGrid(2, 2, 0.5, 0.5, 3, 1, false, () -> new double[]{0, 3, 0, 3}),
+                new AngleGrid(2, 2, 0.5, 0.5, 3, 1, false, () -> new double[]{40, 40, 50, 50}), null};
+        final float[] samples = computeAngles(grids, FOOTPRINT_RECT);
+        assertEquals(1.0f, samples[1], 1e-6f);
+        assertEquals(2.0f, samples[2], 1e-6f);
+        assertEquals(0.0f, samples[4], 1e-6f);
+        assertEquals(40.0f, samples[3], 1e-6f);
+        assertEquals(50.0f, samples[5], 1e-6f);
+    }
+
+    @Test
+    public void testComputeAngles_azimuthAcrossNorth() throws IOException {
+        final AngleGrid[] grids = {null,
+                new AngleGrid(2, 2, 0.5, 0.5, 2, 1, true, () -> new double[]{350, 10, 350, 10}),
+                new AngleGrid(2, 2, 0.5, 0.5, 2, 1, true, () -> new double[]{340, 340, 340, 340}), null};
+        final float[] samples = computeAngles(grids, FOOTPRINT_RECT);
+        // half way between 350 and 10 degrees is north, not 180 degrees
+        final float azimuth = samples[1];
+        assertEquals(0.0f, azimuth > 180 ? azimuth - 360 : azimuth, 1e-4f);
+        assertEquals(340.0f, samples[3], 1e-4f);
+    }
+
+    @Test
+    public void testComputeAngles_lowerLevel() throws IOException {
+        // at level 1, the pixel at (1, 0) is centred on (3, 1) of the full resolution
+        final float[] samples = new float[8];
+        Arrays.fill(samples, Float.NaN);
+        final AngleGrid[] grids = {null,
+                new AngleGrid(2, 2, 0.5, 0.5, 6, 1, false, () -> new double[]{0, 6, 0, 6}), null, null};
+        S2ZarrDetectorAngleOpImage.computeAngles(new int[]{1, 1}, new Rectangle(0, 0, 2, 1), samples,
+                new Rectangle(0, 0, 4, 2), 2.0, grids);
+        assertEquals(0.5f, samples[0], 1e-6f);
+        assertEquals(2.5f, samples[1], 1e-6f);
+        assertEquals(Float.NaN, samples[2], 0.0f);
+    }
+
+    @Test
+    public void testGetData() {
+        final BufferedImage footprint = new BufferedImage(4, 2, BufferedImage.TYPE_BYTE_GRAY);
+        footprint.getRaster().setSamples(0, 0, 4, 2, 0, FOOTPRINT);
+        final Band band = new Band("view_zenith_b02", ProductData.TYPE_FLOAT32, 4, 2);
+        final S2ZarrDetectorAngleOpImage image = new S2ZarrDetectorAngleOpImage(band, new Dimension(4, 2),
+                ResolutionLevel.MAXRES, footprint, createZenithGrids());
+        final Raster data = image.getData();
+        assertEquals(Float.NaN, data.getSampleFloat(0, 0, 0), 0.0f);
+        assertEquals(10.0f, data.getSampleFloat(1, 0, 0), 1e-6f);
+        assertEquals(20.0f, data.getSampleFloat(3, 0, 0), 1e-6f);
+        assertEquals(20.0f, data.getSampleFloat(1, 1, 0), 1e-6f);
+        assertEquals(Float.NaN, data.getSampleFloat(3, 1, 0), 0.0f);
+    }
+
+    // constant zenith angles of 10 and 20 degrees for detectors 1 and 2
+    private static AngleGrid[] createZenithGrids() {
+        return new AngleGrid[]{null,
+                new AngleGrid(2, 2, 0.5, 0.5, 3, 1, false, () -> new double[]{10, 10, 10, 10}),
+                new AngleGrid(2, 2, 0.5, 0.5, 3, 1, false, () -> new double[]{20, 20, 20, 20}), null};
+    }
+
+    private static float[] computeAngles(AngleGrid[] grids, Rectangle rect) throws IOException {
+        final float[] samples = new float[rect.width * rect.height];
+        Arrays.fill(samples, Float.NaN);
+        S2ZarrDetectorAngleOpImage.computeAngles(FOOTPRINT, rect, samples, rect, 1.0, grids);
+        return samples;
+    }
+}
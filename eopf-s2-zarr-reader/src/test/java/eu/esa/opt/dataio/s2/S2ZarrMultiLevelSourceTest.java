@@ -0,0 +1,23 @@
+package eu.esa.opt.dataio.s2;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class S2ZarrMultiLevelSourceTest {
+
+    @Test
+    public void testGetStoredImageIndex() {
+        // r10m, r20m and r60m
+        final int[] storedFactors = {1, 2, 6};
+        assertEquals(0, S2ZarrMultiLevelSource.getStoredImageIndex(storedFactors, 1));
+        assertEquals(1, S2ZarrMultiLevelSource.getStoredImageIndex(storedFactors, 2));
+        assertEquals(1, S2ZarrMultiLevelSource.getStoredImageIndex(storedFactors, 4));
+        assertEquals(2, S2ZarrMultiLevelSource.getStoredImageIndex(storedFactors, 8));
+        assertEquals(2, S2ZarrMultiLevelSource.getStoredImageIndex(storedFactors, 64));
+
+        // r20m and r60m
+        assertEquals(0, S2ZarrMultiLevelSource.getStoredImageIndex(new int[]{1, 3}, 2));
+        assertEquals(1, S2ZarrMultiLevelSource.getStoredImageIndex(new int[]{1, 3}, 4));
+    }
+}
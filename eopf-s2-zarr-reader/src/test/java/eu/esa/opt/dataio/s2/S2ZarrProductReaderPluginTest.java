@@ -1,5 +1,6 @@
 package eu.esa.opt.dataio.s2;
 
+import org.esa.snap.core.dataio.DecodeQualification;
 import org.esa.snap.core.util.io.SnapFileFilter;
 import org.junit.Assert;
 import org.junit.Before;
@@ -10,6 +11,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import static org.junit.Assert.assertEquals;
 
@@ -74,4 +76,21 @@ public class S2ZarrProductReaderPluginTest {
         Assert.assertFalse(filter.isCompoundDocument(zarrFile.getParentFile()));
     }
 
+    @Test
+    public void testGetDecodeQualification_http() throws Exception {
+        final URL resource = getClass().getResource(ZARR_TEST_PRODUCT);
+        Assert.assertNotNull(resource);
+        try (TestHttpServer server = new TestHttpServer(Paths.get(resource.toURI()).getParent())) {
+            assertEquals(DecodeQualification.INTENDED,
+                    plugin.getDecodeQualification(server.getUri(ZARR_TEST_PRODUCT).toString()));
+            assertEquals(DecodeQualification.INTENDED,
+                    plugin.getDecodeQualification(server.getUri(ZARR_TEST_PRODUCT + "/.zgroup").toString()));
+            // no consolidated metadata
+            assertEquals(DecodeQualification.UNABLE,
+                    plugin.getDecodeQualification(server.getUri("geometry.zarr").toString()));
+            assertEquals(DecodeQualification.UNABLE,
+                    plugin.getDecodeQualification(server.getUri("missing.zarr").toString()));
+        }
+    }
+
 }
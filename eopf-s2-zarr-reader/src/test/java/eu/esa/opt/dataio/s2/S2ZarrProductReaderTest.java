@@ -0,0 +1,316 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.CompressorFactory;
+import org.esa.snap.core.dataio.ProductSubsetDef;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.MetadataElement;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.subset.PixelSubsetRegion;
+import org.esa.snap.runtime.Config;
+import org.geotools.referencing.operation.transform.AffineTransform2D;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.prefs.Preferences;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class S2ZarrProductReaderTest {
+
+    private static final String ZARR_TEST_PRODUCT = "S2A_MSIL2A_20180701T102021_N0500_R065_T32UPC_20230811T042458.zarr";
+    private static final String B02_ARRAY_KEY = "measurements/reflectance/r10m/b02";
+    private static final String B02_BAND_NAME = "b02_r10m_reflectance";
+    private static final String B03_ARRAY_KEY = "measurements/reflectance/r10m/b03";
+    private static final String GEOMETRY_KEY = "conditions/geometry";
+    private static final int GRID_SIZE = 23;
+    private static final int CHUNK_SIZE = 1830;
+
+    private Path tempDir;
+    private Path productDir;
+    private final List<Product> products = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        // the test product holds metadata only, the first chunk of b02 at 10 m and the coordinates of the
+        // angle grids are written to a copy, b03 is stored without chunks
+        final Path resourceDir = Paths.get(getClass().getResource(ZARR_TEST_PRODUCT).toURI());
+        tempDir = Files.createTempDirectory("s2_reader_test");
+        productDir = tempDir.resolve(ZARR_TEST_PRODUCT);
+        for (String arrayKey : List.of(B02_ARRAY_KEY, B03_ARRAY_KEY, GEOMETRY_KEY + "/x", GEOMETRY_KEY + "/y")) {
+            Files.createDirectories(productDir.resolve(arrayKey));
+        }
+        for (String fileName : List.of(".zgroup", ".zattrs", ".zmetadata")) {
+            Files.copy(resourceDir.resolve(fileName), productDir.resolve(fileName));
+        }
+        final ByteBuffer samples = ByteBuffer.allocate(CHUNK_SIZE * CHUNK_SIZE * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int y = 0; y < CHUNK_SIZE; y++) {
+            for (int x = 0; x < CHUNK_SIZE; x++) {
+                samples.putShort((short) getSample(x, y));
+            }
+        }
+        writeChunk(productDir.resolve(B02_ARRAY_KEY).resolve("0.0"), samples);
+        final ByteBuffer gridX = ByteBuffer.allocate(GRID_SIZE * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer gridY = ByteBuffer.allocate(GRID_SIZE * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < GRID_SIZE; i++) {
+            gridX.putLong(600000 + 5000L * i);
+            gridY.putLong(5800020 - 5000L * i);
+        }
+        writeChunk(productDir.resolve(GEOMETRY_KEY).resolve("x").resolve("0"), gridX);
+        writeChunk(productDir.resolve(GEOMETRY_KEY).resolve("y").resolve("0"), gridY);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (Product product : products) {
+            product.dispose();
+        }
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testReadProductNodes_subset() throws IOException {
+        final Rectangle region = new Rectangle(1700, 1750, 300, 200);
+        final ProductSubsetDef subsetDef = new ProductSubsetDef();
+        subsetDef.setNodeNames(new String[]{B02_BAND_NAME});
+        subsetDef.setSubsetRegion(new PixelSubsetRegion(region, 0));
+        final Product product = readProduct(null);
+        final Product subset = readProduct(subsetDef);
+
+        final S2ZarrProductReader reader = (S2ZarrProductReader) subset.getProductReader();
+        assertTrue(reader.isSubsetReadingFullySupported());
+        assertNotNull(reader.getOpenArray(B02_ARRAY_KEY));
+        assertNull(reader.getOpenArray(B03_ARRAY_KEY));
+        assertNull(reader.getOpenArray("measurements/reflectance/r10m/b04"));
+        assertNull(subset.getBand("b03_r10m_reflectance"));
+        assertNull(subset.getBand("sun_zenith_r10m_angles"));
+
+        final Band band = subset.getBand(B02_BAND_NAME);
+        assertNotNull(band);
+        assertEquals(region.width, band.getRasterWidth());
+        assertEquals(region.height, band.getRasterHeight());
+        final AffineTransform2D i2m = getImageToMap(band);
+        final AffineTransform2D productI2m = getImageToMap(product.getBand(B02_BAND_NAME));
+        assertEquals(productI2m.getTranslateX() + 10.0 * region.x, i2m.getTranslateX(), 1e-6);
+        assertEquals(productI2m.getTranslateY() - 10.0 * region.y, i2m.getTranslateY(), 1e-6);
+
+        // the region spans the first stored chunk and the unstored chunks next to it
+        final Raster subsetData = band.getSourceImage().getData(new Rectangle(region.width, region.height));
+        final Raster productData = product.getBand(B02_BAND_NAME).getSourceImage().getData(region);
+        assertEquals(getSample(region.x, region.y), subsetData.getSample(0, 0, 0));
+        for (int y = 0; y < region.height; y++) {
+            for (int x = 0; x < region.width; x++) {
+                assertEquals(productData.getSample(region.x + x, region.y + y, 0), subsetData.getSample(x, y, 0));
+            }
+        }
+    }
+
+    @Test
+    public void testReadProductNodes_subSampledSubset() throws IOException {
+        final ProductSubsetDef subsetDef = new ProductSubsetDef();
+        subsetDef.setNodeNames(new String[]{B02_BAND_NAME});
+        subsetDef.setSubsetRegion(new PixelSubsetRegion(0, 0, 100, 100, 0));
+        subsetDef.setSubSampling(2, 2);
+        final Product subset = readProduct(subsetDef);
+
+        // sub-sampled subsets are left to SNAP, the bands are read whole
+        assertFalse(((S2ZarrProductReader) subset.getProductReader()).isSubsetReadingFullySupported());
+        assertEquals(10980, subset.getBand(B02_BAND_NAME).getRasterWidth());
+        assertNull(subset.getBand("b03_r10m_reflectance"));
+    }
+
+    @Test
+    public void testReadProductNodes_lazyBands() throws IOException {
+        final Product product = readProduct(null);
+        final S2ZarrProductReader reader = (S2ZarrProductReader) product.getProductReader();
+        final Band band = product.getBand(B02_BAND_NAME);
+        final ChunkedArrayReader array = (ChunkedArrayReader) reader.getOpenArray(B02_ARRAY_KEY);
+
+        // neither the image nor the chunk statistics of a band exist before it is used
+        assertTrue(band instanceof S2ZarrBand);
+        assertFalse(band.isSourceImageSet());
+        assertNull(array.getChunkStatistics());
+
+        assertTrue(band.getSourceImage().getImage(0) instanceof S2ZarrOpImage);
+        assertTrue(band.isSourceImageSet());
+        assertNotNull(array.getChunkStatistics());
+        assertFalse(product.getBand("b03_r10m_reflectance").isSourceImageSet());
+    }
+
+    @Test
+    public void testReadProductNodes_eagerBands() throws IOException {
+        final Rectangle region = new Rectangle(1700, 1750, 300, 200);
+        final Product lazyProduct = readProduct(null);
+        final Preferences preferences = Config.instance().preferences();
+        final Product eagerProduct;
+        preferences.putBoolean(S2ZarrConstants.PROPERTY_KEY_LAZY_BANDS, false);
+        try {
+            eagerProduct = readProduct(null);
+        } finally {
+            preferences.remove(S2ZarrConstants.PROPERTY_KEY_LAZY_BANDS);
+        }
+
+        final Band eagerBand = eagerProduct.getBand(B02_BAND_NAME);
+        final Band lazyBand = lazyProduct.getBand(B02_BAND_NAME);
+        assertFalse(eagerBand instanceof S2ZarrBand);
+        assertTrue(eagerBand.isSourceImageSet());
+        assertEquals(lazyProduct.getBandGroup().getNodeCount(), eagerProduct.getBandGroup().getNodeCount());
+        assertEquals(lazyBand.getSourceImage().getImage(0).getClass(), eagerBand.getSourceImage().getImage(0).getClass());
+        assertEquals(lazyBand.getSourceImage().getModel().getLevelCount(),
+                eagerBand.getSourceImage().getModel().getLevelCount());
+        final Raster lazyData = lazyBand.getSourceImage().getData(region);
+        final Raster eagerData = eagerBand.getSourceImage().getData(region);
+        for (int y = region.y; y < region.y + region.height; y++) {
+            for (int x = region.x; x < region.x + region.width; x++) {
+                assertEquals(lazyData.getSample(x, y, 0), eagerData.getSample(x, y, 0));
+            }
+        }
+    }
+
+    @Test
+    public void testGetEmptyTilesAndChunkStatistics_beforeImage() throws IOException {
+        final Product product = readProduct(null);
+        final S2ZarrProductReader reader = (S2ZarrProductReader) product.getProductReader();
+        final Band band = product.getBand(B02_BAND_NAME);
+        assertFalse(band.isSourceImageSet());
+
+        // only the first chunk of the band is stored, the tiles of the other chunks are empty
+        final BitSet emptyTiles = reader.getEmptyTiles(band);
+        assertNotNull(emptyTiles);
+        final RenderedImage image = band.getSourceImage().getImage(0);
+        assertFalse(emptyTiles.get(0));
+        assertTrue(emptyTiles.get(image.getNumXTiles() * image.getNumYTiles() - 1));
+
+        final Band otherBand = product.getBand("b03_r10m_reflectance");
+        assertFalse(otherBand.isSourceImageSet());
+        final ChunkStatistics statistics = reader.getChunkStatistics(otherBand);
+        assertNotNull(statistics);
+        assertNull(statistics.get(0));
+        assertFalse(otherBand.isSourceImageSet());
+        // none of the chunks of the other band is stored
+        final BitSet otherEmptyTiles = reader.getEmptyTiles(otherBand);
+        final RenderedImage otherImage = otherBand.getSourceImage().getImage(0);
+        assertEquals(otherImage.getNumXTiles() * otherImage.getNumYTiles(), otherEmptyTiles.cardinality());
+    }
+
+    @Test
+    public void testReadProductNodes_detectorAngleSubset() throws IOException {
+        final Rectangle region = new Rectangle(1700, 1750, 300, 200);
+        final ProductSubsetDef subsetDef = new ProductSubsetDef();
+        subsetDef.setNodeNames(new String[]{"view_zenith_b02_r10m_angles"});
+        subsetDef.setSubsetRegion(new PixelSubsetRegion(region, 0));
+        final Product subset = readProduct(subsetDef);
+
+        // the detector footprint is read as input of the angles, but is not a band of the subset
+        final S2ZarrProductReader reader = (S2ZarrProductReader) subset.getProductReader();
+        assertNotNull(reader.getOpenArray("conditions/mask/detector_footprint/r10m/b02"));
+        assertNull(subset.getBand("b02_r10m_detector_footprint"));
+        assertNull(subset.getBand("view_azimuth_b02_r10m_angles"));
+        final Band angles = subset.getBand("view_zenith_b02_r10m_angles");
+        assertNotNull(angles);
+        assertEquals(region.width, angles.getRasterWidth());
+        assertEquals(region.height, angles.getRasterHeight());
+        assertTrue(angles.getSourceImage().getImage(0) instanceof S2ZarrDetectorAngleOpImage);
+        // no detector is recorded in the unstored footprint
+        assertTrue(Float.isNaN(angles.getSourceImage().getData(new Rectangle(10, 10)).getSampleFloat(0, 0, 0)));
+
+        // the footprint is a band of subsets naming it
+        subsetDef.setNodeNames(new String[]{"view_zenith_b02_r10m_angles", "b02_r10m_detector_footprint"});
+        final Product footprintSubset = readProduct(subsetDef);
+        assertNotNull(footprintSubset.getBand("b02_r10m_detector_footprint"));
+        assertNotNull(footprintSubset.getBand("view_zenith_b02_r10m_angles"));
+    }
+
+    @Test
+    public void testReadProductNodes_metadataArrays() throws IOException {
+        // the arrays which are neither bands nor coordinates are read as metadata while the arrays are iterated
+        final Product product = readProduct(null);
+
+        final MetadataElement geometry = product.getMetadataRoot().getElement("geometry");
+        assertNotNull(geometry);
+        final MetadataElement meanSunAngles = geometry.getElement("mean_sun_angles");
+        assertNotNull(meanSunAngles);
+        assertNotNull(meanSunAngles.getAttribute("zenith"));
+        assertNotNull(meanSunAngles.getAttribute("azimuth"));
+        // scalar arrays are read as single attributes
+        final MetadataElement cams = product.getMetadataRoot().getElement("cams");
+        assertNotNull(cams);
+        assertNotNull(cams.getAttribute("isobaricInhPa"));
+    }
+
+    @Test
+    public void testReadAngles_float32() throws Exception {
+        // sun angles of shape [angle, y, x] stored as float32, zenith then azimuth
+        final String arrayKey = "conditions/geometry/sun_angles";
+        final Path arrayDir = Files.createDirectories(tempDir.resolve("angles.zarr").resolve(arrayKey));
+        Files.writeString(arrayDir.resolve(".zarray"), "{\"chunks\": [2, 2, 2], \"compressor\": null," +
+                " \"dimension_separator\": \".\", \"dtype\": \"<f4\", \"fill_value\": \"NaN\", \"filters\": null," +
+                " \"order\": \"C\", \"shape\": [2, 2, 2], \"zarr_format\": 2}");
+        final ByteBuffer chunk = ByteBuffer.allocate(8 * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (float value : new float[]{30.5f, 31.5f, Float.NaN, 33.5f, 350, 10, 180, 190}) {
+            chunk.putFloat(value);
+        }
+        Files.write(arrayDir.resolve("0.0.0"), chunk.array());
+        try (FileSystemRangeStore store = new FileSystemRangeStore(tempDir.resolve("angles.zarr"))) {
+            final ZarrV2Array array = ZarrV2Array.open(store, arrayKey);
+            assertArrayEquals(new double[]{30.5, 31.5, Double.NaN, 33.5},
+                    S2ZarrProductReader.readAngles(array, 0, false), 1e-6);
+            assertArrayEquals(new double[]{350, 10, 180, 190},
+                    S2ZarrProductReader.readGrid(array, new int[]{1, 0, 0}), 1e-6);
+            final double[] azimuths = S2ZarrProductReader.readAngles(array, 1, true);
+            assertEquals(350, azimuths[0], 1e-4);
+            assertEquals(190, azimuths[3], 1e-4);
+        }
+    }
+
+    Product readProduct(ProductSubsetDef subsetDef) throws IOException {
+        final S2ZarrProductReader reader =
+                (S2ZarrProductReader) new S2ZarrProductReaderPlugin().createReaderInstance();
+        final Product product = reader.readProductNodes(productDir.toFile(), subsetDef);
+        products.add(product);
+        return product;
+    }
+
+    static int getSample(int x, int y) {
+        return 1 + (x + 7 * y) % 10000;
+    }
+
+    private static AffineTransform2D getImageToMap(Band band) {
+        return (AffineTransform2D) ((CrsGeoCoding) band.getGeoCoding()).getImageToMapTransform();
+    }
+
+    // A chunk compressed as given by the metadata of the product for both the reflectances and the coordinates
+    private static void writeChunk(Path chunkFile, ByteBuffer samples) throws IOException {
+        try (OutputStream outputStream = Files.newOutputStream(chunkFile)) {
+            CompressorFactory.create("blosc", "cname", "zstd", "clevel", 3, "shuffle", 2, "blocksize", 0)
+                    .compress(new ByteArrayInputStream(samples.array()), outputStream);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package eu.esa.opt.dataio.s2;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.assertEquals;
+
+public class S2ZarrQuicklookTest {
+
+    @Test
+    public void testToImage() {
+        // red, green and blue channels of 2 x 2 pixels
+        final byte[] samples = {
+                1, 2, 3, 4,
+                10, 20, 30, 40,
+                (byte) 200, (byte) 210, (byte) 220, (byte) 230
+        };
+        final BufferedImage image = S2ZarrQuicklook.toImage(samples, 2, 2);
+        assertEquals(2, image.getWidth());
+        assertEquals(2, image.getHeight());
+        assertEquals(1 << 16 | 10 << 8 | 200, image.getRGB(0, 0) & 0xffffff);
+        assertEquals(4 << 16 | 40 << 8 | 230, image.getRGB(1, 1) & 0xffffff);
+    }
+
+    @Test
+    public void testToImage_subsampled() {
+        final int width = 2 * S2ZarrQuicklook.MAX_SIZE;
+        final int height = 3;
+        final byte[] samples = new byte[3 * width * height];
+        // the red sample of the pixel at (2, 2), which is the pixel at (1, 1) of the thumbnail
+        samples[2 * width + 2] = 7;
+        final BufferedImage image = S2ZarrQuicklook.toImage(samples, width, height);
+        assertEquals(S2ZarrQuicklook.MAX_SIZE, image.getWidth());
+        assertEquals(2, image.getHeight());
+        assertEquals(7 << 16, image.getRGB(1, 1) & 0xffffff);
+        assertEquals(0, image.getRGB(0, 1) & 0xffffff);
+    }
+}
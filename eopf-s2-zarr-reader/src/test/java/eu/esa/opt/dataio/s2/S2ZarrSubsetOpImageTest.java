@@ -0,0 +1,38 @@
+package eu.esa.opt.dataio.s2;
+
+import org.junit.Test;
+
+import java.awt.Rectangle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class S2ZarrSubsetOpImageTest {
+
+    // a region of 1000 x 500 pixels of a band of 10980 x 10980 pixels
+    private static final Rectangle REGION = new Rectangle(2000, 3000, 1000, 500);
+
+    @Test
+    public void testGetSourceRect() {
+        final Rectangle sourceRect = S2ZarrSubsetOpImage.getSourceRect(new Rectangle(512, 0, 488, 500), REGION,
+                1.0, 10980, 10980);
+        assertEquals(new Rectangle(2512, 3000, 488, 500), sourceRect);
+    }
+
+    @Test
+    public void testGetSourceRect_lowerLevel() {
+        // at level 2 the region starts at 500, 750 of the whole image of 2745 x 2745 pixels
+        final Rectangle sourceRect = S2ZarrSubsetOpImage.getSourceRect(new Rectangle(0, 0, 250, 125), REGION,
+                4.0, 2745, 2745);
+        assertEquals(new Rectangle(500, 750, 250, 125), sourceRect);
+    }
+
+    @Test
+    public void testGetSourceRect_beyondEdge() {
+        final Rectangle region = new Rectangle(10900, 0, 80, 80);
+        assertEquals(new Rectangle(10900, 0, 80, 80),
+                S2ZarrSubsetOpImage.getSourceRect(new Rectangle(0, 0, 100, 80), region, 1.0, 10980, 10980));
+        assertTrue(S2ZarrSubsetOpImage.getSourceRect(new Rectangle(0, 0, 10, 10), region, 1.0, 10900, 10980)
+                .isEmpty());
+    }
+}
@@ -0,0 +1,40 @@
+package eu.esa.opt.dataio.s2;
+
+import org.junit.Test;
+
+import java.awt.Rectangle;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class S2ZarrUpsampledOpImageTest {
+
+    // a stored image of 2 x 2 pixels
+    private static final double[] SOURCE = {
+            0, 4,
+            8, Double.NaN
+    };
+    private static final Rectangle SOURCE_RECT = new Rectangle(0, 0, 2, 2);
+
+    @Test
+    public void testUpsample_nearest() {
+        final double[] samples = S2ZarrUpsampledOpImage.upsample(SOURCE, SOURCE_RECT, new Rectangle(0, 0, 4, 2),
+                2, false, Double.NaN, 2, 2);
+        assertArrayEquals(new double[]{0, 0, 4, 4, 0, 0, 4, 4}, samples, 0.0);
+    }
+
+    @Test
+    public void testUpsample_bilinear() {
+        final double[] samples = S2ZarrUpsampledOpImage.upsample(SOURCE, SOURCE_RECT, new Rectangle(0, 0, 4, 1),
+                2, true, Double.NaN, 2, 2);
+        // the first row lies a quarter of a pixel above the centres of the first stored row, the edge is replicated
+        assertArrayEquals(new double[]{0, 1, 3, 4}, samples, 1e-12);
+    }
+
+    @Test
+    public void testUpsample_bilinearNextToInvalid() {
+        final double[] samples = S2ZarrUpsampledOpImage.upsample(SOURCE, SOURCE_RECT, new Rectangle(0, 2, 4, 1),
+                2, true, Double.NaN, 2, 2);
+        // pixels with an invalid neighbour take the nearest value
+        assertArrayEquals(new double[]{6, 8, Double.NaN, Double.NaN}, samples, 1e-12);
+    }
+}
@@ -0,0 +1,20 @@
+package eu.esa.opt.dataio.s2;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class S2ZarrUtilsTest {
+
+    @Test
+    public void testGetTileSize() {
+        // divisor of the 10 m, 20 m and 60 m chunk size
+        assertEquals(366, S2ZarrUtils.getTileSize(1830, 512));
+        assertEquals(512, S2ZarrUtils.getTileSize(2048, 512));
+        // no divisor close to the preferred size
+        assertEquals(500, S2ZarrUtils.getTileSize(1009, 500));
+        // chunks smaller than tiles, e.g. of angle grids
+        assertEquals(23, S2ZarrUtils.getTileSize(23, 512));
+        assertEquals(1830, S2ZarrUtils.getTileSize(1830, 0));
+    }
+}
@@ -0,0 +1,121 @@
+package eu.esa.opt.dataio.s2;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A local HTTP server serving the files below a directory, with support for single range requests.
+ * Counts the requests and the transferred body bytes.
+ */
+class TestHttpServer implements AutoCloseable {
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    private final Path rootDir;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private volatile boolean rangesIgnored;
+    private volatile boolean headAllowed = true;
+
+    TestHttpServer(Path rootDir) throws IOException {
+        this.rootDir = rootDir.toAbsolutePath().normalize();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    URI getUri(String path) {
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/" + path);
+    }
+
+    int getRequestCount() {
+        return requestCount.get();
+    }
+
+    long getTransferredBytes() {
+        return transferredBytes.get();
+    }
+
+    // Lets the server answer range requests with the whole file, as servers without range support do
+    void setRangesIgnored(boolean rangesIgnored) {
+        this.rangesIgnored = rangesIgnored;
+    }
+
+    // Lets the server answer HEAD requests with status 405 (Method Not Allowed)
+    void setHeadAllowed(boolean headAllowed) {
+        this.headAllowed = headAllowed;
+    }
+
+    void resetCounters() {
+        requestCount.set(0);
+        transferredBytes.set(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try (exchange) {
+            final Path file = rootDir.resolve(exchange.getRequestURI().getPath().substring(1)).normalize();
+            if (!file.startsWith(rootDir) || !Files.isRegularFile(file)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            final byte[] bytes = Files.readAllBytes(file);
+            final boolean head = "HEAD".equals(exchange.getRequestMethod());
+            if (head && !headAllowed) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            final String range = rangesIgnored ? null : exchange.getRequestHeaders().getFirst("Range");
+            byte[] body = bytes;
+            int status = 200;
+            if (range != null) {
+                final Matcher matcher = RANGE_PATTERN.matcher(range);
+                if (!matcher.matches() || Long.parseLong(matcher.group(1)) >= bytes.length) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + bytes.length);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                final int start = Integer.parseInt(matcher.group(1));
+                final int end = matcher.group(2).isEmpty() ? bytes.length - 1 :
+                        (int) Math.min(Long.parseLong(matcher.group(2)), bytes.length - 1);
+                body = Arrays.copyOfRange(bytes, start, end + 1);
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + bytes.length);
+            }
+            if (head) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+            transferredBytes.addAndGet(body.length);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
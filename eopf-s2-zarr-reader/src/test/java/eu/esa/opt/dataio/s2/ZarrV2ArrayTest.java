@@ -0,0 +1,222 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.DataType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ZarrV2ArrayTest {
+
+    private static final String ARRAY_KEY = "measurements/b02";
+    private static final short FILL_VALUE = 7;
+    private static final int HEIGHT = 5;
+    private static final int WIDTH = 6;
+    private static final int CHUNK_SIZE = 4;
+
+    private static final String ARRAY_METADATA = "{\"chunks\": [4, 4], \"compressor\": {\"blocksize\": 0," +
+            " \"clevel\": 3, \"cname\": \"zstd\", \"id\": \"blosc\", \"shuffle\": 2}, \"dimension_separator\": \"/\"," +
+            " \"dtype\": \"<u2\", \"fill_value\": 7, \"filters\": null, \"order\": \"C\", \"shape\": [5, 6]," +
+            " \"zarr_format\": 2}";
+
+    private Path productDir;
+
+    @Before
+    public void setUp() throws IOException {
+        productDir = Files.createTempDirectory("s2_v2_product.zarr");
+        final Path arrayDir = Files.createDirectories(productDir.resolve(ARRAY_KEY));
+        Files.writeString(arrayDir.resolve(".zarray"), ARRAY_METADATA);
+        Files.writeString(arrayDir.resolve(".zattrs"), "{\"long_name\": \"blue\", \"_ARRAY_DIMENSIONS\": [\"y\", \"x\"]}");
+        // chunk 1/1 is missing and read as fill value
+        for (int[] chunk : new int[][]{{0, 0}, {0, 1}, {1, 0}}) {
+            final Path chunkPath = arrayDir.resolve(chunk[0] + "/" + chunk[1]);
+            Files.createDirectories(chunkPath.getParent());
+            Files.write(chunkPath, createBloscFrame(chunk[0], chunk[1]));
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(productDir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testOpen() throws IOException {
+        try (FileSystemRangeStore store = new FileSystemRangeStore(productDir)) {
+            final ZarrV2Array array = ZarrV2Array.open(store, ARRAY_KEY);
+            assertArrayEquals(new int[]{HEIGHT, WIDTH}, array.getShape());
+            assertArrayEquals(new int[]{CHUNK_SIZE, CHUNK_SIZE}, array.getChunks());
+            assertEquals(DataType.u2, array.getDataType());
+            assertEquals(FILL_VALUE, array.getFillValue().intValue());
+            assertEquals("measurements/b02/1/0", array.getChunkKeyEncoding().getKey(new int[]{1, 0}));
+            assertEquals("blue", array.getAttributes().get("long_name"));
+            assertEquals(List.of("y", "x"), array.getAttributes().get(S2ZarrConstants.ARRAY_DIMENSIONS_ATTRIBUTES_NAME));
+        }
+    }
+
+    @Test
+    public void testOpen_unsupported() throws IOException {
+        Files.writeString(productDir.resolve(ARRAY_KEY).resolve(".zarray"),
+                ARRAY_METADATA.replace("\"filters\": null", "\"filters\": [{\"id\": \"delta\", \"dtype\": \"<u2\"}]"));
+        try (FileSystemRangeStore store = new FileSystemRangeStore(productDir)) {
+            ZarrV2Array.open(store, ARRAY_KEY);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("filters"));
+        }
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        try (FileSystemRangeStore store = new FileSystemRangeStore(productDir)) {
+            final ZarrV2Array array = ZarrV2Array.open(store, ARRAY_KEY);
+            final short[] buffer = new short[HEIGHT * WIDTH];
+            array.read(buffer, new int[]{HEIGHT, WIDTH});
+            assertArrayEquals(getExpectedData(0, 0, HEIGHT, WIDTH), buffer);
+
+            final short[] region = new short[3 * 4];
+            ChunkPipeline.join(array.readAsync(region, new int[]{3, 4}, new int[]{2, 1}));
+            assertArrayEquals(getExpectedData(2, 1, 3, 4), region);
+        }
+    }
+
+    @Test
+    public void testReadAsync_strided() throws Exception {
+        try (FileSystemRangeStore store = new FileSystemRangeStore(productDir)) {
+            final ZarrV2Array array = ZarrV2Array.open(store, ARRAY_KEY);
+            // a region of 3 x 4 pixels at (1, 1) of a raster with a scanline stride of 8
+            final int rowStride = 8;
+            final short[] buffer = new short[4 * rowStride];
+            Arrays.fill(buffer, (short) -1);
+            ChunkPipeline.join(array.readAsync(buffer, rowStride + 1, rowStride, new int[]{3, 4}, new int[]{2, 1}));
+            final short[] expected = getExpectedData(2, 1, 3, 4);
+            for (int y = 0; y < 4; y++) {
+                for (int x = 0; x < rowStride; x++) {
+                    final boolean inRegion = y >= 1 && x >= 1 && x < 5;
+                    assertEquals(inRegion ? expected[(y - 1) * 4 + x - 1] : -1, buffer[y * rowStride + x]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGetMissingChunks() throws Exception {
+        try (FileSystemRangeStore store = new FileSystemRangeStore(productDir)) {
+            final ZarrV2Array array = ZarrV2Array.open(store, ARRAY_KEY);
+            final BitSet missingChunks = array.getMissingChunks();
+            assertNotNull(missingChunks);
+            assertEquals(BitSet.valueOf(new long[]{0b1000}), missingChunks);
+            assertTrue(array.isFillOnly(new int[]{1, 2}, new int[]{4, 4}));
+            assertFalse(array.isFillOnly(new int[]{1, 2}, new int[]{4, 3}));
+
+            final short[] region = new short[2];
+            ChunkPipeline.join(array.readAsync(region, new int[]{1, 2}, new int[]{4, 4}));
+            assertArrayEquals(new short[]{FILL_VALUE, FILL_VALUE}, region);
+        }
+    }
+
+    @Test
+    public void testSummarizeChunks() throws Exception {
+        try (FileSystemRangeStore store = new FileSystemRangeStore(productDir)) {
+            final ZarrV2Array array = ZarrV2Array.open(store, ARRAY_KEY);
+            final ChunkStatistics statistics = new ChunkStatistics(array.getNumChunks());
+            array.setChunkStatistics(statistics);
+
+            // chunks are summarized as they are read
+            ChunkPipeline.join(array.readAsync(new short[2], new int[]{1, 2}, new int[]{0, 0}));
+            // the fill value at (1, 1) is not valid
+            assertEquals(new ChunkStatistics.Summary(0, 21, 15), statistics.get(0));
+            assertNull(statistics.get(1));
+            assertNull(statistics.getTotal());
+
+            for (int[] chunkIndices : new int[][]{{0, 1}, {1, 0}, {1, 1}}) {
+                ChunkPipeline.join(array.summarizeChunk(chunkIndices));
+            }
+            // the parts of edge chunks outside the array are not summarized
+            assertEquals(new ChunkStatistics.Summary(4, 23, 8), statistics.get(1));
+            assertEquals(new ChunkStatistics.Summary(24, 27, 4), statistics.get(2));
+            assertTrue(statistics.get(3).isFillOnly());
+            assertEquals(new ChunkStatistics.Summary(0, 27, 27), statistics.getTotal());
+        }
+    }
+
+    @Test
+    public void testFetchChunk_prefetchedDirectBuffer() throws Exception {
+        // chunks are stored in the archive, so that they are prefetched as direct slices of its mapping
+        final Path zipFile = Files.createTempFile("s2_v2_product", ".zarr.zip");
+        try {
+            ZarrZipRangeStoreTest.writeZip(zipFile, ZarrZipRangeStoreTest.readEntries(productDir));
+            try (PrefetchStore store = new PrefetchStore(new ZarrZipRangeStore(zipFile, true))) {
+                final ZarrV2Array array = ZarrV2Array.open(store, ARRAY_KEY);
+                final String chunkKey = array.getChunkKeyEncoding().getKey(new int[]{0, 0});
+                assertEquals(List.of(chunkKey), List.copyOf(store.prefetch(List.of(chunkKey))));
+
+                final ByteBuffer encoded = array.fetchChunk(new int[]{0, 0});
+                assertTrue(encoded.isDirect());
+                assertFalse(encoded.hasArray());
+                final ByteBuffer decoded = array.decodeChunk(encoded);
+                assertEquals(CHUNK_SIZE * CHUNK_SIZE * Short.BYTES, decoded.remaining());
+                assertEquals(WIDTH + 1, decoded.getShort(2 * (CHUNK_SIZE + 1)));
+            }
+        } finally {
+            Files.delete(zipFile);
+        }
+    }
+
+    @Test
+    public void testUncompressBlosc_reusesBuffers() throws IOException {
+        final PooledDecompressor decompressor = PooledDecompressor.get();
+        final ByteBuffer first = decompressor.uncompressBlosc(ByteBuffer.wrap(createBloscFrame(0, 0)));
+        assertEquals(CHUNK_SIZE * CHUNK_SIZE * Short.BYTES, first.remaining());
+        assertEquals(1, first.order(ByteOrder.LITTLE_ENDIAN).getShort(2));
+
+        final ByteBuffer second = decompressor.uncompressBlosc(ByteBuffer.wrap(createBloscFrame(1, 0)));
+        assertEquals(4 * WIDTH, second.order(ByteOrder.LITTLE_ENDIAN).getShort(0));
+        assertEquals(4 * WIDTH, first.getShort(0));
+    }
+
+    private static short[] getExpectedData(int y, int x, int height, int width) {
+        final short[] data = new short[height * width];
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                final boolean missing = y + i >= CHUNK_SIZE && x + j >= CHUNK_SIZE;
+                data[i * width + j] = missing ? FILL_VALUE : (short) ((y + i) * WIDTH + x + j);
+            }
+        }
+        return data;
+    }
+
+    // A blosc frame storing the chunk uncompressed, which blosc does for incompressible data
+    private static byte[] createBloscFrame(int chunkY, int chunkX) {
+        final int size = CHUNK_SIZE * CHUNK_SIZE * Short.BYTES;
+        final ByteBuffer frame = ByteBuffer.allocate(16 + size).order(ByteOrder.LITTLE_ENDIAN);
+        frame.put((byte) 2).put((byte) 1).put((byte) 0x02).put((byte) Short.BYTES);
+        frame.putInt(size).putInt(size).putInt(16 + size);
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            for (int j = 0; j < CHUNK_SIZE; j++) {
+                final int y = chunkY * CHUNK_SIZE + i;
+                final int x = chunkX * CHUNK_SIZE + j;
+                // edge chunks are stored in full, with the part outside the array undefined
+                frame.putShort(y < HEIGHT && x < WIDTH ? (short) (y * WIDTH + x) : -1);
+            }
+        }
+        return frame.array();
+    }
+}
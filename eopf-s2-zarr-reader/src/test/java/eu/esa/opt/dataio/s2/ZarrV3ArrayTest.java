@@ -0,0 +1,322 @@
+package eu.esa.opt.dataio.s2;
+
+import com.bc.zarr.DataType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ZarrV3ArrayTest {
+
+    private static final String ARRAY_KEY = "measurements/b02";
+    private static final short FILL_VALUE = 7;
+    private static final int HEIGHT = 5;
+    private static final int WIDTH = 6;
+
+    private static final String SHARDED_ARRAY_METADATA = "{\"zarr_format\": 3, \"node_type\": \"array\"," +
+            " \"shape\": [5, 6], \"data_type\": \"uint16\"," +
+            " \"chunk_grid\": {\"name\": \"regular\", \"configuration\": {\"chunk_shape\": [4, 4]}}," +
+            " \"chunk_key_encoding\": {\"name\": \"default\", \"configuration\": {\"separator\": \"/\"}}," +
+            " \"fill_value\": 7," +
+            " \"codecs\": [{\"name\": \"sharding_indexed\", \"configuration\": {\"chunk_shape\": [2, 2]," +
+            " \"codecs\": [{\"name\": \"bytes\", \"configuration\": {\"endian\": \"little\"}}, {\"name\": \"gzip\"," +
+            " \"configuration\": {\"level\": 5}}]," +
+            " \"index_codecs\": [{\"name\": \"bytes\", \"configuration\": {\"endian\": \"little\"}}," +
+            " {\"name\": \"crc32c\"}], \"index_location\": \"end\"}}]," +
+            " \"attributes\": {\"long_name\": \"blue\"}, \"dimension_names\": [\"y\", \"x\"]}";
+
+    private Path productDir;
+
+    @Before
+    public void setUp() throws IOException {
+        productDir = Files.createTempDirectory("s2_v3_product.zarr");
+        final Map<String, byte[]> entries = createShardedProduct();
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            final Path path = productDir.resolve(entry.getKey());
+            Files.createDirectories(path.getParent());
+            Files.write(path, entry.getValue());
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(productDir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testOpen() throws IOException {
+        try (FileSystemRangeStore store = new FileSystemRangeStore(productDir)) {
+            final ZarrV3Group group = ZarrV3Group.open(store);
+            assertNotNull(group);
+            assertEquals("S2B_MSIL1C", group.getAttributes().get("product_type"));
+            assertEquals(List.of(ARRAY_KEY), List.copyOf(group.getArrayKeys()));
+
+            final ZarrV3Array array = group.openArray(ARRAY_KEY);
+            assertTrue(array.isSharded());
+            assertArrayEquals(new int[]{HEIGHT, WIDTH}, array.getShape());
+            assertArrayEquals(new int[]{2, 2}, array.getChunks());
+            assertEquals(DataType.u2, array.getDataType());
+            assertEquals(FILL_VALUE, array.getFillValue().intValue());
+            assertEquals("blue", array.getAttributes().get("long_name"));
+            assertEquals(List.of("y", "x"), array.getAttributes().get(S2ZarrConstants.ARRAY_DIMENSIONS_ATTRIBUTES_NAME));
+        }
+    }
+
+    @Test
+    public void testOpen_noV3Product() throws IOException {
+        Files.delete(productDir.resolve(S2ZarrConstants.ZARR_JSON_KEY));
+        try (FileSystemRangeStore store = new FileSystemRangeStore(productDir)) {
+            assertNull(ZarrV3Group.open(store));
+        }
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        try (FileSystemRangeStore store = new FileSystemRangeStore(productDir)) {
+            final ZarrV3Array array = ZarrV3Group.open(store).openArray(ARRAY_KEY);
+            final short[] buffer = new short[HEIGHT * WIDTH];
+            array.read(buffer, new int[]{HEIGHT, WIDTH});
+            assertArrayEquals(getExpectedData(0, 0, HEIGHT, WIDTH), buffer);
+
+            final short[] region = new short[3 * 4];
+            array.read(region, new int[]{3, 4}, new int[]{1, 2});
+            assertArrayEquals(getExpectedData(1, 2, 3, 4), region);
+        }
+    }
+
+    @Test
+    public void testReadAsync() throws Exception {
+        try (FileSystemRangeStore store = new FileSystemRangeStore(productDir)) {
+            final ZarrV3Array array = ZarrV3Group.open(store).openArray(ARRAY_KEY);
+            final short[] buffer = new short[HEIGHT * WIDTH];
+            ChunkPipeline.join(array.readAsync(buffer, new int[]{HEIGHT, WIDTH}, new int[]{0, 0}));
+            assertArrayEquals(getExpectedData(0, 0, HEIGHT, WIDTH), buffer);
+
+            try {
+                ChunkPipeline.join(array.readAsync(buffer, new int[]{HEIGHT, WIDTH}, new int[]{1, 0}));
+                fail("IOException expected");
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage().contains("exceeds"));
+            }
+        }
+    }
+
+    @Test
+    public void testRead_innerChunksOnly() throws Exception {
+        try (CountingStore store = new CountingStore(productDir)) {
+            final ZarrV3Array array = ZarrV3Group.open(store).openArray(ARRAY_KEY);
+            store.inputStreams.set(0);
+            final short[] buffer = new short[4];
+            array.read(buffer, new int[]{2, 2}, new int[]{0, 2});
+            assertArrayEquals(getExpectedData(0, 2, 2, 2), buffer);
+            assertEquals(1, store.suffixReads.get());
+            assertEquals(1, store.rangeReads.get());
+            assertEquals(0, store.inputStreams.get());
+
+            // the index of the shard is kept
+            array.read(buffer, new int[]{2, 2}, new int[]{2, 2});
+            assertArrayEquals(getExpectedData(2, 2, 2, 2), buffer);
+            assertEquals(1, store.suffixReads.get());
+            assertEquals(2, store.rangeReads.get());
+
+            // neither a missing inner chunk nor a shard missing from the listed keys is read
+            array.read(buffer, new int[]{2, 2}, new int[]{0, 0});
+            array.read(buffer, new int[]{1, 2}, new int[]{4, 4});
+            array.read(buffer, new int[]{1, 2}, new int[]{4, 4});
+            assertEquals(1, store.suffixReads.get());
+            assertEquals(2, store.rangeReads.get());
+        }
+    }
+
+    @Test
+    public void testRead_zip() throws Exception {
+        final Path zipFile = Files.createTempFile("s2_v3_product", ".zarr.zip");
+        try {
+            ZarrZipRangeStoreTest.writeZip(zipFile, ZarrZipRangeStoreTest.readEntries(productDir));
+            try (ZarrZipRangeStore store = new ZarrZipRangeStore(zipFile)) {
+                final ZarrV3Array array = ZarrV3Group.open(store).openArray(ARRAY_KEY);
+                final short[] buffer = new short[HEIGHT * WIDTH];
+                array.read(buffer, new int[]{HEIGHT, WIDTH});
+                assertArrayEquals(getExpectedData(0, 0, HEIGHT, WIDTH), buffer);
+            }
+        } finally {
+            Files.deleteIfExists(zipFile);
+        }
+    }
+
+    @Test
+    public void testRead_consolidatedMetadata() throws Exception {
+        final String rootMetadata = "{\"zarr_format\": 3, \"node_type\": \"group\", \"attributes\": {}," +
+                " \"consolidated_metadata\": {\"kind\": \"inline\", \"must_understand\": false, \"metadata\": {" +
+                "\"measurements\": {\"zarr_format\": 3, \"node_type\": \"group\", \"attributes\": {}}," +
+                "\"" + ARRAY_KEY + "\": " + SHARDED_ARRAY_METADATA + "}}}";
+        Files.writeString(productDir.resolve(S2ZarrConstants.ZARR_JSON_KEY), rootMetadata);
+        Files.delete(productDir.resolve(ARRAY_KEY + "/" + S2ZarrConstants.ZARR_JSON_KEY));
+        try (CountingStore store = new CountingStore(productDir)) {
+            final ZarrV3Group group = ZarrV3Group.open(store);
+            assertEquals(1, store.inputStreams.get());
+            final short[] buffer = new short[HEIGHT * WIDTH];
+            group.openArray(ARRAY_KEY).read(buffer, new int[]{HEIGHT, WIDTH});
+            assertArrayEquals(getExpectedData(0, 0, HEIGHT, WIDTH), buffer);
+        }
+    }
+
+    @Test
+    public void testRead_unsharded() throws Exception {
+        final String metadata = "{\"zarr_format\": 3, \"node_type\": \"array\", \"shape\": [2, 3]," +
+                " \"data_type\": \"float32\", \"fill_value\": \"NaN\"," +
+                " \"chunk_grid\": {\"name\": \"regular\", \"configuration\": {\"chunk_shape\": [2, 2]}}," +
+                " \"chunk_key_encoding\": {\"name\": \"v2\", \"configuration\": {\"separator\": \".\"}}," +
+                " \"codecs\": [{\"name\": \"bytes\", \"configuration\": {\"endian\": \"big\"}}]}";
+        Files.createDirectories(productDir.resolve("angles"));
+        Files.writeString(productDir.resolve("angles/zarr.json"), metadata);
+        final ByteBuffer chunk = ByteBuffer.allocate(16).order(ByteOrder.BIG_ENDIAN);
+        chunk.putFloat(1.0F).putFloat(2.0F).putFloat(4.0F).putFloat(5.0F);
+        Files.write(productDir.resolve("angles/0.0"), chunk.array());
+        try (FileSystemRangeStore store = new FileSystemRangeStore(productDir)) {
+            final ZarrV3Array array = ZarrV3Group.open(store).openArray("angles");
+            assertFalse(array.isSharded());
+            assertEquals("angles/1.0", array.getChunkKeyEncoding().getKey(new int[]{1, 0}));
+            final float[] buffer = new float[6];
+            array.read(buffer, new int[]{2, 3});
+            assertArrayEquals(new float[]{1.0F, 2.0F, Float.NaN, 4.0F, 5.0F, Float.NaN}, buffer, 0.0F);
+        }
+    }
+
+    @Test
+    public void testOpen_unsupportedCodec() throws IOException {
+        final String metadata = SHARDED_ARRAY_METADATA.replace("\"gzip\"", "\"lz4\"");
+        Files.writeString(productDir.resolve(ARRAY_KEY + "/" + S2ZarrConstants.ZARR_JSON_KEY), metadata);
+        try (FileSystemRangeStore store = new FileSystemRangeStore(productDir)) {
+            final ZarrV3Group group = ZarrV3Group.open(store);
+            try {
+                group.openArray(ARRAY_KEY);
+                fail("IllegalArgumentException expected");
+            } catch (IllegalArgumentException expected) {
+                assertTrue(expected.getMessage().contains("lz4"));
+            }
+        }
+    }
+
+    private static short[] getExpectedData(int y, int x, int height, int width) {
+        final short[] data = new short[height * width];
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                data[j * width + i] = getValue(y + j, x + i);
+            }
+        }
+        return data;
+    }
+
+    // The inner chunk (0, 0) and the shard (1, 1) are not written
+    private static short getValue(int y, int x) {
+        if ((y < 2 && x < 2) || (y >= 4 && x >= 4)) {
+            return FILL_VALUE;
+        }
+        return (short) (y * 10 + x);
+    }
+
+    private static Map<String, byte[]> createShardedProduct() throws IOException {
+        final Map<String, byte[]> entries = new TreeMap<>();
+        entries.put(S2ZarrConstants.ZARR_JSON_KEY, ("{\"zarr_format\": 3, \"node_type\": \"group\"," +
+                " \"attributes\": {\"product_type\": \"S2B_MSIL1C\"}}").getBytes(StandardCharsets.UTF_8));
+        entries.put("measurements/" + S2ZarrConstants.ZARR_JSON_KEY,
+                "{\"zarr_format\": 3, \"node_type\": \"group\"}".getBytes(StandardCharsets.UTF_8));
+        entries.put(ARRAY_KEY + "/" + S2ZarrConstants.ZARR_JSON_KEY,
+                SHARDED_ARRAY_METADATA.getBytes(StandardCharsets.UTF_8));
+        for (int shardY = 0; shardY < 2; shardY++) {
+            for (int shardX = 0; shardX < 2; shardX++) {
+                if (shardY == 1 && shardX == 1) {
+                    continue;
+                }
+                entries.put(ARRAY_KEY + "/c/" + shardY + "/" + shardX, createShard(shardY, shardX));
+            }
+        }
+        return entries;
+    }
+
+    private static byte[] createShard(int shardY, int shardX) throws IOException {
+        final ByteArrayOutputStream shard = new ByteArrayOutputStream();
+        final ByteBuffer index = ByteBuffer.allocate(4 * 16).order(ByteOrder.LITTLE_ENDIAN);
+        for (int chunkY = 0; chunkY < 2; chunkY++) {
+            for (int chunkX = 0; chunkX < 2; chunkX++) {
+                final int y = shardY * 4 + chunkY * 2;
+                final int x = shardX * 4 + chunkX * 2;
+                if (y < 2 && x < 2) {
+                    index.putLong(-1L).putLong(-1L);
+                    continue;
+                }
+                final ByteBuffer chunk = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                for (int j = 0; j < 2; j++) {
+                    for (int i = 0; i < 2; i++) {
+                        chunk.putShort((short) ((y + j) * 10 + x + i));
+                    }
+                }
+                final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+                    gzip.write(chunk.array());
+                }
+                index.putLong(shard.size()).putLong(compressed.size());
+                shard.write(compressed.toByteArray());
+            }
+        }
+        final CRC32C crc32c = new CRC32C();
+        crc32c.update(index.array());
+        shard.write(index.array());
+        shard.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt((int) crc32c.getValue()).array());
+        return shard.toByteArray();
+    }
+
+    private static class CountingStore extends FileSystemRangeStore {
+
+        final AtomicInteger inputStreams = new AtomicInteger();
+        final AtomicInteger rangeReads = new AtomicInteger();
+        final AtomicInteger suffixReads = new AtomicInteger();
+
+        CountingStore(Path rootPath) {
+            super(rootPath);
+        }
+
+        @Override
+        public InputStream getInputStream(String key) throws IOException {
+            inputStreams.incrementAndGet();
+            return super.getInputStream(key);
+        }
+
+        @Override
+        public ByteBuffer getRange(String key, long offset, int length) throws IOException {
+            rangeReads.incrementAndGet();
+            return super.getRange(key, offset, length);
+        }
+
+        @Override
+        public ByteBuffer getSuffix(String key, int length) throws IOException {
+            suffixReads.incrementAndGet();
+            return super.getSuffix(key, length);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package eu.esa.opt.dataio.s2;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ZarrZipRangeStoreTest {
+
+    private final String MULTI_DIMS_PRODUCT = "geometry.zarr";
+
+    private Path zipFile;
+    private Map<String, byte[]> expectedEntries;
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        final URL resource = getClass().getResource(MULTI_DIMS_PRODUCT);
+        assertNotNull(resource);
+        final Path productDir = Paths.get(new URI(resource.toString()));
+        expectedEntries = readEntries(productDir);
+        zipFile = Files.createTempFile("geometry", ".zarr.zip");
+        writeZip(zipFile, expectedEntries);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(zipFile);
+    }
+
+    static Map<String, byte[]> readEntries(Path productDir) throws IOException {
+        final Map<String, byte[]> entries = new TreeMap<>();
+        try (Stream<Path> paths = Files.walk(productDir)) {
+            for (Path path : paths.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                entries.put(productDir.relativize(path).toString().replace('\\', '/'), Files.readAllBytes(path));
+            }
+        }
+        return entries;
+    }
+
+    // Metadata entries are deflated, chunk entries are stored
+    static void writeZip(Path zipFile, Map<String, byte[]> entries) throws IOException {
+        try (OutputStream outputStream = Files.newOutputStream(zipFile);
+             ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                final ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                final byte[] bytes = entry.getValue();
+                if (!entry.getKey().contains("/.z") && !entry.getKey().startsWith(".z")) {
+                    final CRC32 crc = new CRC32();
+                    crc.update(bytes);
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(bytes.length);
+                    zipEntry.setCompressedSize(bytes.length);
+                    zipEntry.setCrc(crc.getValue());
+                }
+                zipOutputStream.putNextEntry(zipEntry);
+                zipOutputStream.write(bytes);
+                zipOutputStream.closeEntry();
+            }
+        }
+    }
+
+    @Test
+    public void testGetInputStream() throws IOException {
+        try (ZarrZipRangeStore store = new ZarrZipRangeStore(zipFile)) {
+            for (Map.Entry<String, byte[]> entry : expectedEntries.entrySet()) {
+                try (InputStream inputStream = store.getInputStream(entry.getKey())) {
+                    assertNotNull(entry.getKey(), inputStream);
+                    assertArrayEquals(entry.getKey(), entry.getValue(), inputStream.readAllBytes());
+                }
+            }
+            assertNull(store.getInputStream("sun_angles/9.9.9"));
+        }
+    }
+
+    @Test
+    public void testGetByteBuffer_memoryMapped() throws IOException {
+        try (ZarrZipRangeStore store = new ZarrZipRangeStore(zipFile, true)) {
+            final ByteBuffer storedBuffer = store.getByteBuffer("viewing_incidence_angles/1.1.0.0.0");
+            assertTrue(storedBuffer.isDirect());
+            assertTrue(storedBuffer.isReadOnly());
+            final byte[] storedBytes = new byte[storedBuffer.remaining()];
+            storedBuffer.get(storedBytes);
+            assertArrayEquals(expectedEntries.get("viewing_incidence_angles/1.1.0.0.0"), storedBytes);
+
+            final ByteBuffer deflatedBuffer = store.getByteBuffer("viewing_incidence_angles/.zarray");
+            assertFalse(deflatedBuffer.isDirect());
+            final byte[] deflatedBytes = new byte[deflatedBuffer.remaining()];
+            deflatedBuffer.get(deflatedBytes);
+            assertArrayEquals(expectedEntries.get("viewing_incidence_angles/.zarray"), deflatedBytes);
+
+            for (Map.Entry<String, byte[]> entry : expectedEntries.entrySet()) {
+                try (InputStream inputStream = store.getInputStream(entry.getKey())) {
+                    assertArrayEquals(entry.getKey(), entry.getValue(), inputStream.readAllBytes());
+                }
+            }
+            assertNull(store.getByteBuffer("sun_angles/9.9.9"));
+        }
+    }
+
+    @Test
+    public void testGetByteBuffers_coalesced() throws IOException {
+        final CountingRangeReader reader = new CountingRangeReader(new FileRangeReader(zipFile, false));
+        try (ZarrZipRangeStore store = new ZarrZipRangeStore(reader)) {
+            final List<String> keys = new ArrayList<>(expectedEntries.keySet());
+            keys.add("sun_angles/9.9.9");
+            final int readCount = reader.readCount;
+            final Map<String, ByteBuffer> buffers = store.getByteBuffers(keys);
+            assertEquals(readCount + 1, reader.readCount);
+            assertBuffers(buffers);
+
+            // without merging, every entry is read separately
+            store.setReadCoalescing(0, 0);
+            assertBuffers(store.getByteBuffers(keys));
+            assertEquals(readCount + 1 + expectedEntries.size(), reader.readCount);
+        }
+    }
+
+    @Test
+    public void testGetByteBuffers_memoryMapped() throws IOException {
+        try (ZarrZipRangeStore store = new ZarrZipRangeStore(zipFile, true)) {
+            assertBuffers(store.getByteBuffers(expectedEntries.keySet()));
+        }
+    }
+
+    private void assertBuffers(Map<String, ByteBuffer> buffers) {
+        assertEquals(expectedEntries.keySet(), buffers.keySet());
+        for (Map.Entry<String, ByteBuffer> entry : buffers.entrySet()) {
+            final byte[] bytes = new byte[entry.getValue().remaining()];
+            entry.getValue().get(bytes);
+            assertArrayEquals(entry.getKey(), expectedEntries.get(entry.getKey()), bytes);
+        }
+    }
+
+    @Test
+    public void testGetKeys() throws IOException {
+        try (ZarrZipRangeStore store = new ZarrZipRangeStore(zipFile)) {
+            assertEquals(new TreeSet<>(List.of("sun_angles", "viewing_incidence_angles", "x", "y")),
+                    store.getArrayKeys());
+            assertEquals(new TreeSet<>(List.of("")), store.getGroupKeys());
+            assertEquals(5, store.getKeysEndingWith(".zattrs").size());
+            assertEquals(List.of(".zarray", ".zattrs", "0.0.0"),
+                    store.getRelativeLeafKeys("sun_angles").sorted().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testWrittenKeysAreKeptInMemory() throws IOException {
+        try (ZarrZipRangeStore store = new ZarrZipRangeStore(zipFile)) {
+            try (OutputStream outputStream = store.getOutputStream("sun_angles/.zarray")) {
+                outputStream.write(new byte[]{1, 2, 3});
+            }
+            assertArrayEquals(new byte[]{1, 2, 3}, store.getInputStream("sun_angles/.zarray").readAllBytes());
+            store.delete("sun_angles");
+            assertArrayEquals(expectedEntries.get("sun_angles/.zarray"),
+                    store.getInputStream("sun_angles/.zarray").readAllBytes());
+        }
+        try (ZarrZipRangeStore store = new ZarrZipRangeStore(zipFile)) {
+            assertArrayEquals(expectedEntries.get("sun_angles/.zarray"),
+                    store.getInputStream("sun_angles/.zarray").readAllBytes());
+        }
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        final ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try (ZarrZipRangeStore store = new ZarrZipRangeStore(zipFile)) {
+            final List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executorService.submit(() -> {
+                    for (Map.Entry<String, byte[]> entry : expectedEntries.entrySet()) {
+                        try (InputStream inputStream = store.getInputStream(entry.getKey())) {
+                            assertArrayEquals(entry.getValue(), inputStream.readAllBytes());
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testIndexCache() throws IOException {
+        final Path cacheDir = Files.createTempDirectory("zip-index");
+        try {
+            try (ZarrZipRangeStore store = new ZarrZipRangeStore(zipFile, false, cacheDir)) {
+                assertEquals(4, store.getArrayKeys().size());
+            }
+            final Path cacheFile = cacheDir.resolve(ZipEntryTable.getCacheFileName(zipFile));
+            assertTrue(Files.isRegularFile(cacheFile));
+
+            // break the central directory, keeping size and modification time of the archive
+            final FileTime lastModified = Files.getLastModifiedTime(zipFile);
+            final byte[] zipBytes = Files.readAllBytes(zipFile);
+            for (int i = zipBytes.length - 22; i >= 0; i--) {
+                if (zipBytes[i] == 0x50 && zipBytes[i + 1] == 0x4b && zipBytes[i + 2] == 0x05 && zipBytes[i + 3] == 0x06) {
+                    zipBytes[i] = 0;
+                    break;
+                }
+            }
+            Files.write(zipFile, zipBytes);
+            Files.setLastModifiedTime(zipFile, lastModified);
+
+            try (ZarrZipRangeStore store = new ZarrZipRangeStore(zipFile, false, cacheDir)) {
+                assertEquals(new TreeSet<>(List.of("sun_angles", "viewing_incidence_angles", "x", "y")),
+                        store.getArrayKeys());
+                assertArrayEquals(expectedEntries.get("sun_angles/0.0.0"),
+                        store.getInputStream("sun_angles/0.0.0").readAllBytes());
+            }
+            try {
+                new ZarrZipRangeStore(zipFile).close();
+                fail("IOException expected");
+            } catch (IOException expected) {
+                // the central directory is not readable
+            }
+
+            Files.setLastModifiedTime(zipFile, FileTime.fromMillis(lastModified.toMillis() + 2000));
+            try {
+                new ZarrZipRangeStore(zipFile, false, cacheDir).close();
+                fail("IOException expected");
+            } catch (IOException expected) {
+                // the cached index is outdated
+            }
+        } finally {
+            try (Stream<Path> cacheFiles = Files.list(cacheDir)) {
+                for (Path cacheFile : cacheFiles.collect(Collectors.toList())) {
+                    Files.delete(cacheFile);
+                }
+            }
+            Files.delete(cacheDir);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenNoZip() throws IOException, URISyntaxException {
+        final URL resource = getClass().getResource(MULTI_DIMS_PRODUCT + "/.zattrs");
+        assertNotNull(resource);
+        new ZarrZipRangeStore(Paths.get(new URI(resource.toString()))).close();
+    }
+
+    private static class CountingRangeReader implements RangeReader {
+
+        private final RangeReader reader;
+        private volatile int readCount;
+
+        CountingRangeReader(RangeReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return reader.size();
+        }
+
+        @Override
+        public void readFully(ByteBuffer buffer, long position) throws IOException {
+            readCount++;
+            reader.readFully(buffer, position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}